@@ -1,18 +1,19 @@
 package loghub;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.zip.DataFormatException;
 
 import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.compress.compressors.CompressorStreamFactory;
-import org.apache.commons.compress.utils.IOUtils;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufInputStream;
 import io.netty.buffer.ByteBufOutputStream;
 import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import lombok.EqualsAndHashCode;
 import lombok.Setter;
 import lombok.ToString;
@@ -31,16 +32,11 @@ abstract class AbstractCompDecomp implements Filter {
         csf = new CompressorStreamFactory(true, builder.memoryLimitInKb);
     }
 
+    // Used to copy between streams, reused by each thread
+    private static final ThreadLocal<byte[]> copyBuffers = ThreadLocal.withInitial(() -> new byte[8192]);
+
     public byte[] filter(byte[] in, int offset, int length) throws FilterException {
-        ByteBuf outb = PooledByteBufAllocator.DEFAULT.compositeBuffer(length);
-        try (InputStream ins = source(new ByteArrayInputStream(in, offset, length));
-             OutputStream outs = destination(new ByteBufOutputStream(outb));
-            ){
-            IOUtils.copy(ins, outs);
-        } catch (IOException | CompressorException e) {
-            outb.release();
-            throw new FilterException("Failed to (de)compress: " + Helpers.resolveThrowableException(e), e);
-        }
+        ByteBuf outb = filter(Unpooled.wrappedBuffer(in, offset, length), PooledByteBufAllocator.DEFAULT);
         try {
             byte[] out = new byte[outb.readableBytes()];
             outb.readBytes(out);
@@ -51,18 +47,38 @@ abstract class AbstractCompDecomp implements Filter {
     }
 
     public ByteBuf filter(ByteBuf in) throws FilterException {
-        ByteBuf out = in.alloc().compositeBuffer(in.readableBytes());
-        try (InputStream ins = source(new ByteBufInputStream(in));
-             OutputStream outs = destination(new ByteBufOutputStream(out));
-                        ){
-            IOUtils.copy(ins, outs);
-        } catch (IOException | CompressorException e) {
+        return filter(in, in.alloc());
+    }
+
+    private ByteBuf filter(ByteBuf in, ByteBufAllocator alloc) throws FilterException {
+        ByteBuf out = alloc.buffer(in.readableBytes());
+        try {
+            if (! fastFilter(in, out)) {
+                try (InputStream ins = source(new ByteBufInputStream(in));
+                     OutputStream outs = destination(new ByteBufOutputStream(out))) {
+                    byte[] buffer = copyBuffers.get();
+                    int read;
+                    while ((read = ins.read(buffer)) >= 0) {
+                        outs.write(buffer, 0, read);
+                    }
+                }
+            }
+            return out;
+        } catch (IOException | CompressorException | DataFormatException e) {
             out.release();
             throw new FilterException("Failed to (de)compress: " + Helpers.resolveThrowableException(e), e);
         }
-        return out;
     }
 
+    /**
+     * Process gzip or zlib content with {@link DeflateCodec}, that reuses compression contexts.
+     * @param in the input content
+     * @param out the destination
+     * @return false if the format is not handled and generic streams must be used.
+     * @throws DataFormatException
+     */
+    protected abstract boolean fastFilter(ByteBuf in, ByteBuf out) throws DataFormatException;
+
     protected abstract InputStream source(InputStream wrappedInput) throws CompressorException;
 
     protected abstract OutputStream destination(OutputStream wrappedOutput) throws CompressorException;
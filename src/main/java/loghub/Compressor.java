@@ -4,7 +4,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
 
+import io.netty.buffer.ByteBuf;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
@@ -33,6 +35,19 @@ public class Compressor extends AbstractCompDecomp {
         this.format = builder.format;
     }
 
+    @Override
+    protected boolean fastFilter(ByteBuf in, ByteBuf out) {
+        if (CompressorStreamFactory.GZIP.equals(format)) {
+            DeflateCodec.gzip(in, out);
+            return true;
+        } else if (CompressorStreamFactory.DEFLATE.equals(format)) {
+            DeflateCodec.zlib(in, out);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
     protected InputStream source(InputStream wrappedInput) throws CompressorException {
         return wrappedInput;
     }
@@ -10,8 +10,10 @@ import loghub.configuration.Properties;
 import loghub.netty.http.AbstractHttpServer;
 import loghub.netty.http.GetMetric;
 import loghub.netty.http.GraphMetric;
+import loghub.netty.http.HotProcessors;
 import loghub.netty.http.JmxProxy;
 import loghub.netty.http.JwtToken;
+import loghub.netty.http.PrometheusMetrics;
 import loghub.netty.http.ResourceFiles;
 import loghub.netty.http.RootRedirect;
 import loghub.netty.http.TokenFilter;
@@ -35,6 +37,8 @@ public class DashboardHttpServer extends AbstractHttpServer<DashboardHttpServer,
     private final SimpleChannelInboundHandler<FullHttpRequest> JMXPROXY = new JmxProxy();
     private final SimpleChannelInboundHandler<FullHttpRequest> GETMETRIC = new GetMetric();
     private final SimpleChannelInboundHandler<FullHttpRequest> GRAPHMETRIC = new GraphMetric();
+    private final SimpleChannelInboundHandler<FullHttpRequest> HOTPROCESSORS = new HotProcessors();
+    private final SimpleChannelInboundHandler<FullHttpRequest> PROMETHEUS = new PrometheusMetrics();
     private final SimpleChannelInboundHandler<FullHttpRequest> TOKENGENERATOR;
     private final SimpleChannelInboundHandler<FullHttpRequest> TOKENFILTER;
 
@@ -57,6 +61,8 @@ public class DashboardHttpServer extends AbstractHttpServer<DashboardHttpServer,
         p.addLast(JMXPROXY);
         p.addLast(GETMETRIC);
         p.addLast(GRAPHMETRIC);
+        p.addLast(HOTPROCESSORS);
+        p.addLast(PROMETHEUS);
         if (TOKENGENERATOR != null && TOKENFILTER != null) {
             p.addLast(TOKENFILTER);
             p.addLast(TOKENGENERATOR);
@@ -2,10 +2,13 @@ package loghub;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.zip.DataFormatException;
 
 import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.compress.compressors.CompressorStreamFactory;
 
+import io.netty.buffer.ByteBuf;
+
 public class Decompressor extends AbstractCompDecomp {
 
     public static class Builder extends AbstractCompDecomp.Builder<Decompressor> {
@@ -21,6 +24,19 @@ public class Decompressor extends AbstractCompDecomp {
         super(builder);
     }
 
+    @Override
+    protected boolean fastFilter(ByteBuf in, ByteBuf out) throws DataFormatException {
+        if (DeflateCodec.isGzip(in)) {
+            DeflateCodec.gunzip(in, out);
+            return true;
+        } else if (DeflateCodec.isZlib(in)) {
+            DeflateCodec.inflate(in, out);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
     protected InputStream source(InputStream wrappedInput) throws CompressorException {
         return csf.createCompressorInputStream(CompressorStreamFactory.detect(wrappedInput), wrappedInput);
     }
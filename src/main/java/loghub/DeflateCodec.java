@@ -0,0 +1,194 @@
+package loghub;
+
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Gzip and zlib compression and decompression, using {@link Deflater} and {@link Inflater} reused by each thread.
+ * <p>
+ * Data are read and written directly from and to {@link ByteBuf}, with a per thread scratch buffer, so no stream or
+ * intermediate array is created for each message.
+ *
+ * @author Fabrice Bacchella
+ *
+ */
+public final class DeflateCodec {
+
+    private static final int GZIPMAGIC = 0x8b1f;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final int CHUNKSIZE = 16 * 1024;
+
+    private static class Context {
+        private final Deflater rawDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final Deflater zlibDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, false);
+        private final Inflater rawInflater = new Inflater(true);
+        private final Inflater zlibInflater = new Inflater(false);
+        private final CRC32 crc = new CRC32();
+        private final byte[] input = new byte[CHUNKSIZE];
+        private final byte[] output = new byte[CHUNKSIZE];
+    }
+
+    private static final ThreadLocal<Context> contexts = ThreadLocal.withInitial(Context::new);
+
+    private DeflateCodec() {
+    }
+
+    /**
+     * Check if the buffer content starts with a gzip header
+     */
+    public static boolean isGzip(ByteBuf in) {
+        return in.readableBytes() >= 10 && in.getUnsignedShortLE(in.readerIndex()) == GZIPMAGIC && in.getByte(in.readerIndex() + 2) == Deflater.DEFLATED;
+    }
+
+    /**
+     * Check if the buffer content starts with a zlib header, using the same check than commons-compress
+     */
+    public static boolean isZlib(ByteBuf in) {
+        if (in.readableBytes() < 2 || in.getByte(in.readerIndex()) != 0x78) {
+            return false;
+        }
+        switch (in.getByte(in.readerIndex() + 1)) {
+        case 0x01:
+        case 0x5e:
+        case (byte) 0x9c:
+        case (byte) 0xda:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    public static void gzip(ByteBuf in, ByteBuf out) {
+        Context ctx = contexts.get();
+        ctx.crc.reset();
+        out.writeShortLE(GZIPMAGIC);
+        out.writeByte(Deflater.DEFLATED);
+        // No flags, no mtime, no extra flags
+        out.writeZero(6);
+        // OS unknown
+        out.writeByte(0xff);
+        int size = in.readableBytes();
+        deflate(ctx, ctx.rawDeflater, in, out, true);
+        out.writeIntLE((int) ctx.crc.getValue());
+        out.writeIntLE(size);
+    }
+
+    public static void zlib(ByteBuf in, ByteBuf out) {
+        Context ctx = contexts.get();
+        deflate(ctx, ctx.zlibDeflater, in, out, false);
+    }
+
+    private static void deflate(Context ctx, Deflater deflater, ByteBuf in, ByteBuf out, boolean withCrc) {
+        try {
+            while (in.isReadable()) {
+                int length = Math.min(in.readableBytes(), CHUNKSIZE);
+                in.readBytes(ctx.input, 0, length);
+                if (withCrc) {
+                    ctx.crc.update(ctx.input, 0, length);
+                }
+                deflater.setInput(ctx.input, 0, length);
+                while (! deflater.needsInput()) {
+                    drain(ctx, deflater, out);
+                }
+            }
+            deflater.finish();
+            while (! deflater.finished()) {
+                drain(ctx, deflater, out);
+            }
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    private static void drain(Context ctx, Deflater deflater, ByteBuf out) {
+        int written = deflater.deflate(ctx.output, 0, CHUNKSIZE);
+        out.writeBytes(ctx.output, 0, written);
+    }
+
+    /**
+     * Decompress gzip content, with possibly many members.
+     * @param in the compressed content
+     * @param out where the decompressed content is written
+     * @throws DataFormatException if the content is not a valid gzip content
+     */
+    public static void gunzip(ByteBuf in, ByteBuf out) throws DataFormatException {
+        Context ctx = contexts.get();
+        do {
+            readGzipHeader(in);
+            ctx.crc.reset();
+            int start = out.writerIndex();
+            inflate(ctx, ctx.rawInflater, in, out, true);
+            if (in.readableBytes() < 8) {
+                throw new DataFormatException("Truncated gzip trailer");
+            }
+            long crc = in.readUnsignedIntLE();
+            long size = in.readUnsignedIntLE();
+            if (crc != ctx.crc.getValue() || size != ((out.writerIndex() - start) & 0xffffffffL)) {
+                throw new DataFormatException("Corrupted gzip content");
+            }
+        } while (isGzip(in));
+    }
+
+    public static void inflate(ByteBuf in, ByteBuf out) throws DataFormatException {
+        Context ctx = contexts.get();
+        inflate(ctx, ctx.zlibInflater, in, out, false);
+    }
+
+    private static void readGzipHeader(ByteBuf in) throws DataFormatException {
+        if (! isGzip(in)) {
+            throw new DataFormatException("Not a gzip content");
+        }
+        in.skipBytes(3);
+        int flags = in.readUnsignedByte();
+        // mtime, extra flags and OS
+        in.skipBytes(6);
+        if ((flags & FEXTRA) != 0) {
+            in.skipBytes(in.readUnsignedShortLE());
+        }
+        if ((flags & FNAME) != 0) {
+            in.skipBytes(in.bytesBefore((byte) 0) + 1);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            in.skipBytes(in.bytesBefore((byte) 0) + 1);
+        }
+        if ((flags & FHCRC) != 0) {
+            in.skipBytes(2);
+        }
+    }
+
+    private static void inflate(Context ctx, Inflater inflater, ByteBuf in, ByteBuf out, boolean withCrc) throws DataFormatException {
+        try {
+            while (! inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (! in.isReadable()) {
+                        throw new DataFormatException("Truncated compressed content");
+                    }
+                    int length = Math.min(in.readableBytes(), CHUNKSIZE);
+                    in.getBytes(in.readerIndex(), ctx.input, 0, length);
+                    inflater.setInput(ctx.input, 0, length);
+                    // The reader index is moved once the inflater know what was really consumed
+                    in.skipBytes(length);
+                } else if (inflater.needsDictionary()) {
+                    throw new DataFormatException("Dictionary needed");
+                }
+                int read = inflater.inflate(ctx.output, 0, CHUNKSIZE);
+                if (withCrc) {
+                    ctx.crc.update(ctx.output, 0, read);
+                }
+                out.writeBytes(ctx.output, 0, read);
+            }
+            // Give back the unused bytes, a trailer or another member
+            in.readerIndex(in.readerIndex() - inflater.getRemaining());
+        } finally {
+            inflater.reset();
+        }
+    }
+
+}
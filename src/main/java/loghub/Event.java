@@ -8,7 +8,6 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.function.BiFunction;
 import java.util.stream.Stream;
 
@@ -53,74 +52,96 @@ public abstract class Event extends HashMap<String, Object> implements Serializa
         return applyAtPath(f, path, value, false);
     }
 
-    @SuppressWarnings("unchecked")
     public Object applyAtPath(Action f, String[] path, Object value, boolean create) throws ProcessorException {
-        Map<String, Object> current = this;
         String key = path[0];
         if (key != null && key.startsWith("#")) {
             return f.action.apply(getMetas(), key.substring(1), value);
         } else if (TIMESTAMPKEY.equals(key)) {
-            switch(f) {
-            case GET: return getTimestamp();
-            case PUT: {
-                if (!setTimestamp(value)) {
-                    throw buildException(String.valueOf(value) + " is not usable as a timestamp from path " + Arrays.toString(path));
-                };
-                return null;
-            }
-            case REMOVE: return getTimestamp();
-            case CONTAINS: return true;
-            case SIZE: return 1;
-            case ISEMPTY: return false;
-            case CLEAR: return null;
-            case CONTAINSVALUE: return getTimestamp().equals(value);
-            case KEYSET: return Collections.singleton(TIMESTAMPKEY);
-            case VALUES: return Collections.singleton(getTimestamp());
-            default: return null;
-            }
+            return applyAtTimestamp(f, value, path);
+        } else if (".".equals(key) && path.length > 1) {
+            return walkPath(f, getRealEvent(), path, 1, value, create);
         } else {
-            int startwalk = 0;
-            if (".".equals(path[0])) {
-                current = getRealEvent();
-                key = path[1];
-                startwalk = 1;
-            }
-            for (int i = startwalk ; i < path.length - 1; i++) {
-                String currentkey = key;
-                Optional<Object> peekNext = Optional.of(current).filter(c -> c.containsKey(currentkey)).map(c -> c.get(currentkey));
-                Map<String, Object> next;
-                if (! peekNext.isPresent()) {
-                    if (create) {
-                        next = new HashMap<>();
-                        current.put(path[i], next);
-                    } else {
-                        switch(f) {
-                        case GET:
-                        case SIZE:
-                            throw IgnoredEventException.INSTANCE;
-                        case CONTAINSVALUE:
-                        case CONTAINS:
-                            return false;
-                        case ISEMPTY:
-                            return true;
-                        case KEYSET:
-                            return Collections.emptySet();
-                        case VALUES:
-                            return Collections.emptySet();
-                        default:
-                            return null;
-                        }
-                    }
-                } else if (! (peekNext.get() instanceof Map)) {
-                    throw buildException("Can descend into " + key + " from " + Arrays.toString(path) + " , it's not an object");
+            return walkPath(f, this, path, 0, value, create);
+        }
+    }
+
+    public Object applyAtPath(Action f, VariablePath path, Object value) throws ProcessorException {
+        return applyAtPath(f, path, value, false);
+    }
+
+    /**
+     * Apply an action on a pre-resolved path. The kind of path was already identified, so
+     * single key, meta and timestamp access are directly done.
+     */
+    public Object applyAtPath(Action f, VariablePath path, Object value, boolean create) throws ProcessorException {
+        switch (path.kind) {
+        case META:
+            return f.action.apply(getMetas(), path.first, value);
+        case TIMESTAMP:
+            return applyAtTimestamp(f, value, path.segments);
+        case SIMPLE:
+            return f.action.apply(this, path.first, value);
+        case ROOT:
+            return walkPath(f, getRealEvent(), path.segments, 1, value, create);
+        default:
+            return walkPath(f, this, path.segments, 0, value, create);
+        }
+    }
+
+    private Object applyAtTimestamp(Action f, Object value, String[] path) throws ProcessorException {
+        switch(f) {
+        case GET: return getTimestamp();
+        case PUT: {
+            if (!setTimestamp(value)) {
+                throw buildException(String.valueOf(value) + " is not usable as a timestamp from path " + Arrays.toString(path));
+            };
+            return null;
+        }
+        case REMOVE: return getTimestamp();
+        case CONTAINS: return true;
+        case SIZE: return 1;
+        case ISEMPTY: return false;
+        case CLEAR: return null;
+        case CONTAINSVALUE: return getTimestamp().equals(value);
+        case KEYSET: return Collections.singleton(TIMESTAMPKEY);
+        case VALUES: return Collections.singleton(getTimestamp());
+        default: return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object walkPath(Action f, Map<String, Object> current, String[] path, int startwalk, Object value, boolean create) throws ProcessorException {
+        for (int i = startwalk ; i < path.length - 1; i++) {
+            String key = path[i];
+            Object next = current.get(key);
+            if (next == null) {
+                if (create) {
+                    next = new HashMap<>();
+                    current.put(key, next);
                 } else {
-                    next = (Map<String, Object>) peekNext.get();
+                    switch(f) {
+                    case GET:
+                    case SIZE:
+                        throw IgnoredEventException.INSTANCE;
+                    case CONTAINSVALUE:
+                    case CONTAINS:
+                        return false;
+                    case ISEMPTY:
+                        return true;
+                    case KEYSET:
+                        return Collections.emptySet();
+                    case VALUES:
+                        return Collections.emptySet();
+                    default:
+                        return null;
+                    }
                 }
-                current = next;
-                key = path[i + 1];
+            } else if (! (next instanceof Map)) {
+                throw buildException("Can descend into " + key + " from " + Arrays.toString(path) + " , it's not an object");
             }
-            return f.action.apply(current, key, value);
+            current = (Map<String, Object>) next;
         }
+        return f.action.apply(current, path[path.length - 1], value);
     }
 
     abstract Map<String, Object> getMetas();
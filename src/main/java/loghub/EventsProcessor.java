@@ -1,6 +1,8 @@
 package loghub;
 
 import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -37,21 +39,38 @@ public class EventsProcessor extends Thread {
     private static final Logger logger = LogManager.getLogger();
     private static final AtomicInteger id = new AtomicInteger();
 
-    private final BlockingQueue<Event> inQueue;
-    private final Map<String, BlockingQueue<Event>> outQueues;
-    private final Map<String,Pipeline> namedPipelines;
+    /**
+     * The pipelines and the output queues, swapped as a whole when the configuration is reloaded
+     */
+    private static class Plan {
+        private final Map<String, BlockingQueue<Event>> outQueues;
+        private final Map<String,Pipeline> namedPipelines;
+        private Plan(Map<String, BlockingQueue<Event>> outQueues, Map<String,Pipeline> namedPipelines) {
+            this.outQueues = outQueues;
+            this.namedPipelines = namedPipelines;
+        }
+    }
+
+    private final PriorityBlockingQueue inQueue;
+    private volatile Plan plan;
     private final int maxSteps;
+    // The maximum number of events taken from the main queue at once
+    private final int drainSize;
     private final EventsRepository<Future<?>> evrepo;
     
     // Used to handle events async processing
     private final BlockingQueue<Event> blockedAsync = new LinkedBlockingQueue<>();
     private Event lastblockedAsync = null;
 
-    public EventsProcessor(PriorityBlockingQueue inQueue, Map<String, BlockingQueue<Event>> outQueues, Map<String,Pipeline> namedPipelines, int maxSteps, EventsRepository<Future<?>> evrepo) {
+    // The events taken from the main queue at each wake-up, only used by this thread
+    private final List<Event> batch;
+
+    public EventsProcessor(PriorityBlockingQueue inQueue, Map<String, BlockingQueue<Event>> outQueues, Map<String,Pipeline> namedPipelines, int maxSteps, int drainSize, EventsRepository<Future<?>> evrepo) {
         this.inQueue = inQueue;
-        this.outQueues = outQueues;
-        this.namedPipelines = namedPipelines;
+        this.plan = new Plan(outQueues, namedPipelines);
         this.maxSteps = maxSteps;
+        this.drainSize = drainSize;
+        this.batch = new ArrayList<>(drainSize);
         this.evrepo = evrepo;
         setName("EventsProcessor/" + id.getAndIncrement());
         setDaemon(false);
@@ -74,98 +93,135 @@ public class EventsProcessor extends Thread {
                     lastblockedAsync = blockedAsync.poll();
                 }
             } while (lasttryblockedAsync != lastblockedAsync);
+            if (evrepo != null) {
+                evrepo.retryWakeups();
+            }
 
-            Event event = null;
+            // Wait for one event, and take the other waiting ones with it
             try {
-                event = inQueue.take();
+                batch.add(inQueue.take());
+                inQueue.drainTo(batch, drainSize - 1);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 break;
             }
-            { // Needed because eventtemp must be final
-                final Event eventtemp  = event;
-                logger.trace("received {} in {}", () -> eventtemp, () -> eventtemp.getCurrentPipeline());
-            }
-            Context tctxt = Stats.startProcessingEvent();
-            Processor processor = event.next();
-            while (processor != null) {
-                logger.trace("processing with {}", processor);
-                if (processor instanceof WrapEvent) {
-                    event = new EventWrapper(event, processor.getPathArray());
-                } else if (processor instanceof UnwrapEvent) {
-                    event = event.unwrap();
-                } else {
-                    ProcessingStatus processingstatus = process(event, processor);
-                    if (processingstatus != ProcessingStatus.CONTINUE) {
-                        // Processing status was non null, so the event will not be processed any more
-                        // But it's needed to check why.
-                        switch (processingstatus) {
-                        case DROPED: {
-                            //It was a drop action
-                            logger.debug("Dropped event {}", event);
-                            event.drop();
-                            break;
-                        }
-                        case FAILED: {
-                            //Processing failed critically (with an exception) and no recovery was attempted
-                            logger.debug("Failed event {}", event);
-                            event.end();
-                            break;
-                        }
-                        default:
-                            // Non fatal processing interruption
-                            break;
-                        }
-                        event = null;
+            // Read once, so an event is processed with a consistent plan
+            Plan current = plan;
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    processEvent(batch.get(i), current);
+                    if (isInterrupted()) {
+                        requeue(batch.subList(i + 1, batch.size()));
                         break;
                     }
                 }
-                processor = event.next();
-                // If next processor is null, refill the event
-                while (processor == null && event.getNextPipeline() != null) {
-                    logger.trace("next processor is {}", processor);
-                    // Send to another pipeline, loop in the main processing queue
-                    Pipeline next = namedPipelines.get(event.getNextPipeline());
-                    if (next == null) {
-                        logger.error("Failed to forward to pipeline {} from {}, not found", event.getNextPipeline(), event.getCurrentPipeline());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Put back in the main queue the events of an interrupted batch, so another thread will process them.
+     * The ones that don't fit any more are lost.
+     */
+    private void requeue(List<Event> left) {
+        int requeued = inQueue.offerAll(left);
+        for (Event event: left.subList(requeued, left.size())) {
+            event.doMetric(PipelineStat.EXCEPTION, new InterruptedException("Interrupted processing"));
+            event.end();
+        }
+        if (requeued < left.size()) {
+            logger.warn("{} events lost after an interruption", left.size() - requeued);
+        }
+    }
+
+    private void processEvent(Event event, Plan current) {
+        { // Needed because eventtemp must be final
+            final Event eventtemp  = event;
+            logger.trace("received {} in {}", () -> eventtemp, () -> eventtemp.getCurrentPipeline());
+        }
+        Map<String, BlockingQueue<Event>> outQueues = current.outQueues;
+        Map<String,Pipeline> namedPipelines = current.namedPipelines;
+        Context tctxt = Stats.startProcessingEvent();
+        Processor processor = event.next();
+        while (processor != null) {
+            logger.trace("processing with {}", processor);
+            if (processor instanceof WrapEvent) {
+                event = new EventWrapper(event, processor.getPathArray());
+            } else if (processor instanceof UnwrapEvent) {
+                event = event.unwrap();
+            } else {
+                ProcessingStatus processingstatus = process(event, processor);
+                if (processingstatus != ProcessingStatus.CONTINUE) {
+                    // Processing status was non null, so the event will not be processed any more
+                    // But it's needed to check why.
+                    switch (processingstatus) {
+                    case DROPED: {
+                        //It was a drop action
+                        logger.debug("Dropped event {}", event);
                         event.drop();
                         break;
-                    } else {
-                        event.refill(next);
-                        processor = event.next();
                     }
-                }
-            }
-            logger.trace("event is now {}", event);
-            // Processing of the event is finished, what to do next with it ?
-            // Detect if will send to another pipeline, or just wait for a sender to take it
-            if (event != null) {
-                if (event.isTest()) {
-                    // A test event, it will not be send an output queue
-                    // Checked after pipeline forwarding, but before output sending
-                    TestEventProcessing.log(event);
-                    event.end();
-                } else if (event.getCurrentPipeline() != null && outQueues.containsKey(event.getCurrentPipeline())){
-                    // Put in the output queue, where the wanting output will come to take it
-                    try {
-                        outQueues.get(event.getCurrentPipeline()).put(event);
-                    } catch (InterruptedException e) {
-                        event.doMetric(PipelineStat.EXCEPTION, e);
+                    case FAILED: {
+                        //Processing failed critically (with an exception) and no recovery was attempted
+                        logger.debug("Failed event {}", event);
                         event.end();
-                        Thread.currentThread().interrupt();
+                        break;
                     }
-                } else if (event.getCurrentPipeline() != null && ! outQueues.containsKey(event.getCurrentPipeline())){
-                    event.doMetric(PipelineStat.EXCEPTION, new IllegalArgumentException("No sender consumming pipeline " + event.getCurrentPipeline()));
-                    logger.debug("No sender using pipeline {} for event {}", event.getCurrentPipeline(), event);
-                    event.end();
+                    default:
+                        // Non fatal processing interruption
+                        break;
+                    }
+                    event = null;
+                    break;
+                }
+            }
+            processor = event.next();
+            // If next processor is null, refill the event
+            while (processor == null && event.getNextPipeline() != null) {
+                logger.trace("next processor is {}", processor);
+                // Send to another pipeline, loop in the main processing queue
+                Pipeline next = namedPipelines.get(event.getNextPipeline());
+                if (next == null) {
+                    logger.error("Failed to forward to pipeline {} from {}, not found", event.getNextPipeline(), event.getCurrentPipeline());
+                    event.drop();
+                    break;
                 } else {
-                    event.doMetric(PipelineStat.EXCEPTION, new IllegalStateException("Invalid end state for event, no pipeline"));
-                    logger.debug("Invalid end state for event {}", event);
-                    event.end();
-                } 
+                    event.refill(next);
+                    processor = event.next();
+                }
             }
-            Stats.endProcessingEvent(tctxt);
         }
+        logger.trace("event is now {}", event);
+        // Processing of the event is finished, what to do next with it ?
+        // Detect if will send to another pipeline, or just wait for a sender to take it
+        if (event != null) {
+            if (event.isTest()) {
+                // A test event, it will not be send an output queue
+                // Checked after pipeline forwarding, but before output sending
+                TestEventProcessing.log(event);
+                event.end();
+            } else if (event.getCurrentPipeline() != null && outQueues.containsKey(event.getCurrentPipeline())){
+                // Put in the output queue, where the wanting output will come to take it
+                try {
+                    outQueues.get(event.getCurrentPipeline()).put(event);
+                } catch (InterruptedException e) {
+                    event.doMetric(PipelineStat.EXCEPTION, e);
+                    event.end();
+                    Thread.currentThread().interrupt();
+                }
+            } else if (event.getCurrentPipeline() != null && ! outQueues.containsKey(event.getCurrentPipeline())){
+                event.doMetric(PipelineStat.EXCEPTION, new IllegalArgumentException("No sender consumming pipeline " + event.getCurrentPipeline()));
+                logger.debug("No sender using pipeline {} for event {}", event.getCurrentPipeline(), event);
+                event.end();
+            } else {
+                event.doMetric(PipelineStat.EXCEPTION, new IllegalStateException("Invalid end state for event, no pipeline"));
+                logger.debug("Invalid end state for event {}", event);
+                event.end();
+            } 
+        }
+        Stats.endProcessingEvent(tctxt);
     }
 
     ProcessingStatus process(Event e, Processor p) {
@@ -191,7 +247,16 @@ public class EventsProcessor extends Thread {
             try {
                 boolean success = false;
                 if (p.isprocessNeeded(e)) {
-                    success = e.process(p);
+                    if (Stats.sampleLatency()) {
+                        long start = System.nanoTime();
+                        try {
+                            success = e.process(p);
+                        } finally {
+                            Stats.processorLatency(e.getCurrentPipeline(), p, System.nanoTime() - start);
+                        }
+                    } else {
+                        success = e.process(p);
+                    }
                 }
                 // After processing, check the failures and success processors
                 Processor failureProcessor = p.getFailure();
@@ -295,6 +360,16 @@ public class EventsProcessor extends Thread {
         return status;
     }
 
+    /**
+     * Change the pipelines and the output queues used by this thread, when the configuration is reloaded.
+     * Events already in a pipeline keep their processors, only the forwarding and the output use the new ones.
+     * @param outQueues the new output queues
+     * @param namedPipelines the new pipelines
+     */
+    public void setPlan(Map<String, BlockingQueue<Event>> outQueues, Map<String,Pipeline> namedPipelines) {
+        plan = new Plan(outQueues, namedPipelines);
+    }
+
     public void stopProcessing() {
         interrupt();
     }
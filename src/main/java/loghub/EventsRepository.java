@@ -2,13 +2,13 @@ package loghub;
 
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
 
 import org.apache.logging.log4j.Level;
@@ -21,6 +21,16 @@ import loghub.configuration.Properties;
 import loghub.metrics.Stats;
 import loghub.metrics.Stats.PipelineStat;
 
+/**
+ * Store the paused events, waiting for their asynchronous processing to finish.
+ * <p>
+ * The paused events are spread by key hash over many shards, each one using its own timer wheel
+ * for the time out. So with many paused events, neither the storage nor the timers are
+ * shared between all the threads. Awaken events are queued in a lock free queue and moved to the main
+ * queue by whichever thread come first, one thread at a time to keep their order, so many events can go back to the
+ * workers in a row.
+ *
+ */
 public class EventsRepository<KEY> {
 
     private static class PauseContext<K> {
@@ -44,49 +54,73 @@ public class EventsRepository<KEY> {
             Stats.restartEvent(pausedEvent.event.getCurrentPipeline(), startTime);
         }
 
-        static <K> PauseContext<K> of(PausedEvent<K> paused, EventsRepository<K> repository, Lock lock) {
+        static <K> PauseContext<K> of(PausedEvent<K> paused, EventsRepository<K> repository, HashedWheelTimer timer) {
             Timeout task;
             if (paused.timeoutHandling && paused.duration > 0 && paused.unit != null) {
-                task = processExpiration.newTimeout(i -> repository.runTimeout(paused), paused.duration, paused.unit);
+                task = timer.newTimeout(i -> repository.runTimeout(paused), paused.duration, paused.unit);
             } else {
                 task = null;
             }
-            try {
-                lock.lock();
-                return new PauseContext<K>(paused, task);
-            } finally {
-                lock.unlock();
-            }
+            return new PauseContext<K>(paused, task);
+        }
+    }
+
+    private static class Shard<K> {
+        private final Map<K, PauseContext<K>> paused = new ConcurrentHashMap<>();
+        private final HashedWheelTimer timer;
+        private Shard(HashedWheelTimer timer) {
+            this.timer = timer;
         }
     }
 
     private static final Logger logger = LogManager.getLogger();
 
-    private static final HashedWheelTimer processExpiration;
+    private static final HashedWheelTimer[] processExpiration;
     static {
         ThreadFactory defaulttf = Executors.defaultThreadFactory();
         AtomicInteger counter = new AtomicInteger(0);
-        processExpiration = new HashedWheelTimer(r -> 
-            ThreadBuilder.get()
-                         .setTask(r)
-                         .setFactory(defaulttf)
-                         .setName("EventsRepository-timeoutmanager-" + counter.incrementAndGet())
-                         .build()
-        );
-        processExpiration.start();
+        processExpiration = new HashedWheelTimer[Math.max(1, Runtime.getRuntime().availableProcessors() / 2)];
+        for (int i = 0; i < processExpiration.length; i++) {
+            processExpiration[i] = new HashedWheelTimer(r -> 
+                ThreadBuilder.get()
+                             .setTask(r)
+                             .setFactory(defaulttf)
+                             .setName("EventsRepository-timeoutmanager-" + counter.incrementAndGet())
+                             .setDaemon(true)
+                             .build()
+            );
+            processExpiration[i].start();
+        }
     }
 
-    private final Map<KEY, PauseContext<KEY>> allPaused = new ConcurrentHashMap<>();
+    private final Shard<KEY>[] shards;
     private final PriorityBlockingQueue mainQueue;
-    private final ReadWriteLock backPressureLock = new ReentrantReadWriteLock();
+    private final Queue<Event> wakeups = new ConcurrentLinkedQueue<>();
+    // Only one thread at a time moves the awaken events, so they keep their order
+    private final ReentrantLock flushLock = new ReentrantLock();
 
     public EventsRepository(Properties properties) {
         mainQueue = properties.mainQueue;
+        @SuppressWarnings("unchecked")
+        Shard<KEY>[] newShards = new Shard[Math.max(processExpiration.length, properties.numWorkers)];
+        for (int i = 0; i < newShards.length; i++) {
+            newShards[i] = new Shard<>(processExpiration[i % processExpiration.length]);
+        }
+        shards = newShards;
+    }
+
+    private Shard<KEY> shard(KEY key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return shards[(h & 0x7fffffff) % shards.length];
     }
 
     public PausedEvent<KEY> pause(PausedEvent<KEY> paused) {
         logger.trace("Pausing {}", paused);
-        return allPaused.computeIfAbsent(paused.key, k -> PauseContext.of(paused, this, backPressureLock.readLock())).pausedEvent;
+        Shard<KEY> shard = shard(paused.key);
+        PausedEvent<KEY> pe = shard.paused.computeIfAbsent(paused.key, k -> PauseContext.of(paused, this, shard.timer)).pausedEvent;
+        backPressure();
+        return pe;
     }
 
     /**
@@ -97,15 +131,18 @@ public class EventsRepository<KEY> {
      */
     public PausedEvent<KEY> getOrPause(KEY key, Function<KEY, PausedEvent<KEY>> creator) {
         logger.trace("looking for key {}", key);
-        return allPaused.computeIfAbsent(key, i -> {
+        Shard<KEY> shard = shard(key);
+        PausedEvent<KEY> pe = shard.paused.computeIfAbsent(key, i -> {
             PausedEvent<KEY> paused = creator.apply(i);
-            return PauseContext.of(paused, this, backPressureLock.readLock());
+            return PauseContext.of(paused, this, shard.timer);
         }).pausedEvent;
+        backPressure();
+        return pe;
     }
 
     public PausedEvent<KEY> cancel(KEY key) {
         logger.trace("cancel {}", key);
-        PauseContext<KEY> ctx = allPaused.remove(key);
+        PauseContext<KEY> ctx = shard(key).paused.remove(key);
         if (ctx == null) {
             logger.warn("Canceling unknown event with key {}", key);
             return null;
@@ -129,7 +166,7 @@ public class EventsRepository<KEY> {
 
     public void timeout(KEY key) throws InterruptedException {
         logger.trace("timeout {}", key);
-        Optional.ofNullable(allPaused.get(key)).map(p -> p.pausedEvent).ifPresent(pe -> pe.timeout(pe.event, key));
+        Optional.ofNullable(shard(key).paused.get(key)).map(p -> p.pausedEvent).ifPresent(pe -> pe.timeout(pe.event, key));
         awake(key, i -> i.onTimeout, i -> i.timeoutTransform);
     }
 
@@ -138,7 +175,7 @@ public class EventsRepository<KEY> {
     }
 
     private void awake(KEY key, Function<PausedEvent<KEY>, Processor> source, Function<PausedEvent<KEY>, Function<Event, Event>> transform) throws InterruptedException {
-        PauseContext<KEY> ctx = allPaused.remove(key);
+        PauseContext<KEY> ctx = shard(key).paused.remove(key);
         if (ctx == null) {
             return;
         }
@@ -153,15 +190,68 @@ public class EventsRepository<KEY> {
         event.insertProcessor(source.apply(pausedEvent));
         // Eventually transform the event before handling it
         Event transformed = transform.apply(pausedEvent).apply(event);
-        Lock writeLock = backPressureLock.writeLock();
+        wakeups.add(transformed);
+        flushWakeups(true);
+    }
+
+    /**
+     * Move all the awaken events to the main queue. Any thread can do it.
+     * <p>
+     * If the main queue is full, it waits for space only if <code>wait</code> is true. Otherwise the event is kept
+     * for a later flush. An event is removed from the awaken events only once moved, so one that could not be, because
+     * of the full queue or an interruption, stays first and it's never lost or overtaken.
+     * <p>
+     * If another thread is already moving them, a call that doesn't wait returns immediately.
+     * @param wait true to wait for space in the main queue
+     * @throws InterruptedException
+     */
+    private void flushWakeups(boolean wait) throws InterruptedException {
+        if (wait) {
+            flushLock.lockInterruptibly();
+        } else if (! flushLock.tryLock()) {
+            return;
+        }
         try {
-            writeLock.lock();
-            mainQueue.put(transformed);
+            Event e;
+            while ((e = wakeups.peek()) != null) {
+                if (! mainQueue.offer(e)) {
+                    if (! wait) {
+                        break;
+                    }
+                    mainQueue.put(e);
+                }
+                // Only the lock holder removes events, so it's the one just moved
+                wakeups.poll();
+            }
         } finally {
-            writeLock.unlock();
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * If some awaken events are still waiting for the main queue, the thread that
+     * want to pause an event must help to flush them first. This thread is usually a worker
+     * that empties the main queue, so it never waits for space in it.
+     */
+    private void backPressure() {
+        if (! wakeups.isEmpty()) {
+            try {
+                flushWakeups(false);
+            } catch (InterruptedException ex) {
+                // Not possible without waiting
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
+    /**
+     * Retry to move the awaken events left by a full main queue, without waiting. Used by the workers, so they are not
+     * stranded if no other event is paused or awaken.
+     */
+    void retryWakeups() {
+        backPressure();
+    }
+
     private void runTimeout(PausedEvent<KEY> paused) {
         // HashedWheelTimer silently swallows Throwable, we handle them ourselves
         try {
@@ -181,16 +271,26 @@ public class EventsRepository<KEY> {
     }
 
     public Event get(KEY key) {
-        return allPaused.get(key).pausedEvent.event;
+        return shard(key).paused.get(key).pausedEvent.event;
     }
 
     public int waiting() {
-        return allPaused.size();
+        int waiting = 0;
+        for (Shard<KEY> s: shards) {
+            waiting += s.paused.size();
+        }
+        return waiting;
     }
 
     @Override
     public String toString() {
-        return "EventsRepository [" + allPaused + "]";
+        StringBuilder buffer = new StringBuilder("EventsRepository [");
+        for (Shard<KEY> s: shards) {
+            if (! s.paused.isEmpty()) {
+                buffer.append(s.paused);
+            }
+        }
+        return buffer.append("]").toString();
     }
 
 }
@@ -1,5 +1,7 @@
 package loghub;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -17,7 +19,10 @@ import lombok.Getter;
 /**
  * Evaluate groovy expressions.
  * <p>
- * It uses an internal compiled cache, for lazy compilation. But it still check expression during instantiation
+ * It uses an internal compiled cache, for lazy compilation. But it still check expression during instantiation.
+ * <p>
+ * If a cache directory is given, the compiled classes are saved there, and an expression already found in it is
+ * neither checked nor compiled again.
  * @author Fabrice Bacchella
  *
  */
@@ -39,6 +44,7 @@ public class Expression {
 
     private static final Binding EMPTYBIDDING = new Binding();
     private static final Map<String, ThreadLocal<Script>> compilationCache = new ConcurrentHashMap<>();
+    private static volatile ExpressionDiskCache diskCache = null;
 
     @Getter
     private final String expression;
@@ -47,13 +53,20 @@ public class Expression {
 
     public Expression(String expression, GroovyClassLoader loader, Map<String, VarFormatter> formatters) throws ExpressionException {
         logger.trace("adding expression {}", expression);
-        try {
-            // Check the expression, but using a CompilationUnit is much faster than generating the execution class
-            CompilationUnit cu = new CompilationUnit(loader);
-            cu.addSource("", expression);
-            cu.compile();
-        } catch (CompilationFailedException ex) {
-            throw new ExpressionException(ex);
+        ExpressionDiskCache cache = diskCache;
+        if (cache == null || ! cache.contains(expression)) {
+            try {
+                // Check the expression, but using a CompilationUnit is much faster than generating the execution class
+                CompilationUnit cu = new CompilationUnit(loader);
+                cu.addSource(cache == null ? "" : cache.className(expression) + ".groovy", expression);
+                cu.compile();
+                if (cache != null) {
+                    // The classes are generated anyway, so save them for the next start
+                    cache.store(expression, cu.getClasses());
+                }
+            } catch (CompilationFailedException ex) {
+                throw new ExpressionException(ex);
+            }
         }
         this.expression = expression;
         this.loader = loader;
@@ -86,15 +99,19 @@ public class Expression {
 
     @SuppressWarnings("unchecked")
     private ThreadLocal<Script> compile(String unused) {
-        Class<Script> groovyClass;
-        try {
-            groovyClass = loader.parseClass(expression);
-        } catch (CompilationFailedException e) {
-            throw new UnsupportedOperationException(new ExpressionException(e));
+        ExpressionDiskCache cache = diskCache;
+        Class<Script> groovyClass = cache != null ? cache.load(expression, loader) : null;
+        if (groovyClass == null) {
+            try {
+                groovyClass = loader.parseClass(expression);
+            } catch (CompilationFailedException e) {
+                throw new UnsupportedOperationException(new ExpressionException(e));
+            }
         }
+        Class<Script> scriptClass = groovyClass;
         return ThreadLocal.withInitial(() -> {
             try {
-                return groovyClass.newInstance();
+                return scriptClass.newInstance();
             } catch (IllegalAccessException | InstantiationException e) {
                 throw new UnsupportedOperationException(e);
             }
@@ -111,6 +128,15 @@ public class Expression {
         }
     }
 
+    /**
+     * Set the directory where compiled expressions are saved
+     * @param directory the cache directory, or null to disable the disk cache
+     * @throws IOException if the directory can't be created
+     */
+    public static void setCacheDirectory(Path directory) throws IOException {
+        diskCache = directory != null ? new ExpressionDiskCache(directory) : null;
+    }
+
     /**
      * Clear the compilation cache
      */
@@ -0,0 +1,165 @@
+package loghub;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codehaus.groovy.tools.GroovyClass;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovySystem;
+import groovy.lang.Script;
+
+/**
+ * Store the classes generated for the expressions in a directory, so they are not compiled again
+ * on the next start.
+ * <p>
+ * An expression is stored in a file named from a hash of its source, of LogHub's version and of Groovy's version,
+ * so an upgrade will not use stale classes. The script class name is derived from the same hash, so the classes
+ * can be defined directly in the Groovy class loader.
+ *
+ * @author Fabrice Bacchella
+ *
+ */
+final class ExpressionDiskCache {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final int FORMAT = 1;
+    private static final String VERSION = Optional.ofNullable(ExpressionDiskCache.class.getPackage().getImplementationVersion()).orElse("dev")
+                                          + "/" + GroovySystem.getVersion();
+    private static final char[] HEXDIGITS = "0123456789abcdef".toCharArray();
+
+    private final Path directory;
+
+    ExpressionDiskCache(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    /**
+     * @param expression the expression source
+     * @return the name of the generated script class
+     */
+    String className(String expression) {
+        return "LoghubExpression_" + key(expression);
+    }
+
+    boolean contains(String expression) {
+        return Files.isRegularFile(path(expression));
+    }
+
+    /**
+     * Save the compiled classes of an expression, failures are only logged
+     * @param expression the expression source
+     * @param classes the classes generated by the compilation
+     */
+    void store(String expression, List<GroovyClass> classes) {
+        Path destination = path(expression);
+        Path temp = destination.resolveSibling(destination.getFileName() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                dos.writeInt(FORMAT);
+                byte[] source = expression.getBytes(StandardCharsets.UTF_8);
+                dos.writeInt(source.length);
+                dos.write(source);
+                dos.writeInt(classes.size());
+                for (GroovyClass gc: classes) {
+                    dos.writeUTF(gc.getName());
+                    dos.writeInt(gc.getBytes().length);
+                    dos.write(gc.getBytes());
+                }
+            }
+            Files.move(temp, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Unable to save compiled expression {}: {}", expression, Helpers.resolveThrowableException(e));
+            logger.catching(Level.DEBUG, e);
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e1) {
+                // Nothing to do
+            }
+        }
+    }
+
+    /**
+     * Define the saved classes of an expression in the class loader.
+     * @param expression the expression source
+     * @param loader the class loader that will hold the classes
+     * @return the script class, or null if the expression is not in the cache or it's unusable
+     */
+    @SuppressWarnings("unchecked")
+    Class<Script> load(String expression, GroovyClassLoader loader) {
+        Path source = path(expression);
+        if (! Files.isRegularFile(source)) {
+            return null;
+        }
+        String scriptName = className(expression);
+        Class<Script> scriptClass = null;
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(source)))) {
+            if (dis.readInt() != FORMAT) {
+                return null;
+            }
+            byte[] savedExpression = new byte[dis.readInt()];
+            dis.readFully(savedExpression);
+            if (! expression.equals(new String(savedExpression, StandardCharsets.UTF_8))) {
+                return null;
+            }
+            int count = dis.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = dis.readUTF();
+                byte[] content = new byte[dis.readInt()];
+                dis.readFully(content);
+                Class<?> c;
+                try {
+                    c = loader.defineClass(name, content);
+                } catch (LinkageError e) {
+                    // Already defined in this class loader
+                    c = loader.loadClass(name);
+                }
+                if (scriptName.equals(name)) {
+                    scriptClass = (Class<Script>) c;
+                }
+            }
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            logger.warn("Unusable compiled expression {}: {}", expression, Helpers.resolveThrowableException(e));
+            logger.catching(Level.DEBUG, e);
+            return null;
+        }
+        return scriptClass;
+    }
+
+    private Path path(String expression) {
+        return directory.resolve(key(expression) + ".classes");
+    }
+
+    private String key(String expression) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(VERSION.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            byte[] hash = digest.digest(expression.getBytes(StandardCharsets.UTF_8));
+            char[] hex = new char[hash.length * 2];
+            for (int i = 0; i < hash.length; i++) {
+                hex[2 * i] = HEXDIGITS[(hash[i] >> 4) & 0xf];
+                hex[2 * i + 1] = HEXDIGITS[hash[i] & 0xf];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+    }
+
+}
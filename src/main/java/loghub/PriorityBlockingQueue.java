@@ -1,5 +1,6 @@
 package loghub;
 
+import java.util.AbstractCollection;
 import java.util.AbstractQueue;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -396,19 +397,159 @@ public class PriorityBlockingQueue extends AbstractQueue<Event>
     }
 
     /**
-     * Not implemented, will throws a {@link UnsupportedOperationException}
+     * Removes all available {@link Event} from this queue and adds them
+     * to the given collection, with the same rules than {@link #drainTo(Collection, int)}.
+     *
+     * @param c the collection to transfer elements into
+     * @return the number of {@link Event} transferred
+     * @throws NullPointerException if the specified collection is null
+     * @throws IllegalArgumentException if the specified collection is this queue
      */
     @Override
     public int drainTo(Collection<? super Event> c) {
-        throw new UnsupportedOperationException();
+        return drainTo(c, Integer.MAX_VALUE);
     }
 
     /**
-     * Not implemented, will throws a {@link UnsupportedOperationException}
+     * Removes at most the given number of available {@link Event} from
+     * this queue and adds them to the given collection.
+     * <p>
+     * The queue is locked once for all the {@link Event} transferred, not once for each of them. So the weight ratio is
+     * applied to the batch: the queue with the longest waiting {@link Event} is drained first, and the other one
+     * fills the remaining space.
+     *
+     * @param c the collection to transfer elements into
+     * @param maxElements the maximum number of {@link Event} to transfer
+     * @return the number of {@link Event} transferred
+     * @throws NullPointerException if the specified collection is null
+     * @throws IllegalArgumentException if the specified collection is this queue
      */
     @Override
     public int drainTo(Collection<? super Event> c, int maxElements) {
-        throw new UnsupportedOperationException();
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        if (c == this) {
+            throw new IllegalArgumentException("Can't drain to itself");
+        }
+        if (maxElements <= 0) {
+            return 0;
+        }
+        Collection<QueueElement> unwrapper = new AbstractCollection<QueueElement>() {
+            @Override
+            public boolean add(QueueElement qe) {
+                return c.add(qe.event);
+            }
+            @Override
+            public Iterator<QueueElement> iterator() {
+                throw new UnsupportedOperationException();
+            }
+            @Override
+            public int size() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        if (weight == 0) {
+            return asyncQueue.drainTo(unwrapper, maxElements);
+        } else {
+            readLock.lock();
+            try {
+                BlockingQueue<QueueElement> first = select();
+                BlockingQueue<QueueElement> second = first == asyncQueue ? syncQueue : asyncQueue;
+                int drained = first.drainTo(unwrapper, maxElements);
+                if (drained < maxElements) {
+                    drained += second.drainTo(unwrapper, maxElements - drained);
+                }
+                return drained;
+            } finally {
+                readLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Inserts all the {@link Event} into the asynchronous queue, waiting if necessary
+     * for space to become available.
+     * <p>
+     * If interrupted while waiting, it stops and the interrupt status is set again, so the caller can know
+     * which {@link Event} were added.
+     *
+     * @param events the {@link Event} to add
+     * @return the number of {@link Event} added, in iteration order
+     * @throws NullPointerException if one of the {@link Event} is {@code null}
+     */
+    public int putAll(Collection<? extends Event> events) {
+        return privatePutAll(events, asyncQueue);
+    }
+
+    /**
+     * Inserts all the {@link Event} into the blocking queue, waiting if necessary
+     * for space to become available.
+     * <p>
+     * If interrupted while waiting, it stops and the interrupt status is set again, so the caller can know
+     * which {@link Event} were added.
+     *
+     * @param events the {@link Event} to add
+     * @return the number of {@link Event} added, in iteration order
+     * @throws NullPointerException if one of the {@link Event} is {@code null}
+     */
+    public int putAllBlocking(Collection<? extends Event> events) {
+        return privatePutAll(events, syncQueue);
+    }
+
+    private int privatePutAll(Collection<? extends Event> events, BlockingQueue<QueueElement> queue) {
+        int added = 0;
+        try {
+            if (this.weight == 0) {
+                for (Event e: events) {
+                    queue.put(new QueueElement(e));
+                    added++;
+                }
+            } else {
+                Iterator<? extends Event> i = events.iterator();
+                QueueElement qe = i.hasNext() ? new QueueElement(i.next()) : null;
+                while (qe != null) {
+                    // A loop to avoid holding the read lock, but it's taken once for all the events that can be inserted
+                    readLock.lockInterruptibly();
+                    try {
+                        while (qe != null && queue.offer(qe, 10, TimeUnit.MILLISECONDS)) {
+                            added++;
+                            qe = i.hasNext() ? new QueueElement(i.next()) : null;
+                        }
+                    } finally {
+                        readLock.unlock();
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return added;
+    }
+
+    /**
+     * Inserts the {@link Event} into the asynchronous queue as long as it is possible to do
+     * so immediately without violating capacity restrictions. The {@link Event} are inserted
+     * in the iteration order and it stops at the first one that can't be inserted.
+     *
+     * @param events the {@link Event} to add
+     * @return the number of {@link Event} added
+     * @throws NullPointerException if one of the {@link Event} is {@code null}
+     */
+    public int offerAll(Collection<? extends Event> events) {
+        int added = 0;
+        readLock.lock();
+        try {
+            for (Event e: events) {
+                if (! asyncQueue.offer(new QueueElement(e))) {
+                    break;
+                }
+                added++;
+            }
+        } finally {
+            readLock.unlock();
+        }
+        return added;
     }
 
     /**
@@ -8,6 +8,7 @@ import org.apache.logging.log4j.Logger;
 
 import loghub.Expression.ExpressionException;
 import loghub.configuration.Properties;
+import loghub.metrics.LatencyHistogram;
 
 public abstract class Processor {
 
@@ -23,6 +24,8 @@ public abstract class Processor {
     private Processor exception = null;
     private String ifsource = null;
     private String id = null;
+    // Allocated on the first sampled duration, most processors are never sampled
+    private volatile LatencyHistogram latency = null;
 
     public Processor() {
         logger = LogManager.getLogger(Helpers.getFirstInitClass());
@@ -163,4 +166,29 @@ public abstract class Processor {
         this.id = id;
     }
 
+    /**
+     * @return the sampled processing durations of this processor, in nanoseconds
+     */
+    public LatencyHistogram getLatency() {
+        LatencyHistogram l = latency;
+        if (l == null) {
+            synchronized (this) {
+                if (latency == null) {
+                    latency = new LatencyHistogram();
+                }
+                l = latency;
+            }
+        }
+        return l;
+    }
+
+    /**
+     * The processor that is charged with the processing duration of this one. Processors created on the fly for an
+     * event must return the configured processor they work for.
+     * @return the processor that owns the latency histogram
+     */
+    public Processor getLatencyOwner() {
+        return this;
+    }
+
 }
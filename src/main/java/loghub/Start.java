@@ -6,9 +6,20 @@ import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Set;
+import java.util.TimerTask;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
@@ -84,6 +95,13 @@ public class Start {
     // It's exported for tests
     private static Thread shutdownAction;
 
+    // How long to wait for the removed senders to empty their queues, when the configuration is reloaded
+    private static final long DRAINTIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    // The running configuration, changed by reload
+    private volatile Properties props = null;
+    private final Set<EventsProcessor> allep = new HashSet<>();
+
     static public void main(final String[] args) {
         Start main = new Start();
         JCommander jcom = JCommander
@@ -238,10 +256,10 @@ public class Start {
             }
         }
 
-        Set<EventsProcessor> allep = new HashSet<>(props.numWorkers);
+        this.props = props;
         if (! failed) {
             for (int i = 0; i < props.numWorkers; i++) {
-                EventsProcessor t = new EventsProcessor(props.mainQueue, props.outputQueues, props.namedPipeLine, props.maxSteps, props.repository);
+                EventsProcessor t = new EventsProcessor(props.mainQueue, props.outputQueues, props.namedPipeLine, props.maxSteps, props.drainSize, props.repository);
                 t.start();
                 allep.add(t);
             }
@@ -271,9 +289,11 @@ public class Start {
         }
 
         Runnable shutdown = () -> {
-            props.receivers.forEach( i -> i.stopReceiving());
+            // The configuration might have been reloaded
+            Properties current = this.props;
+            current.receivers.forEach( i -> i.stopReceiving());
             allep.forEach(i -> i.stopProcessing());
-            props.senders.forEach( i -> i.stopSending());
+            current.senders.forEach( i -> i.stopSending());
             JmxService.stop();
         };
         shutdownAction = ThreadBuilder.get()
@@ -305,6 +325,240 @@ public class Start {
                 throw new IllegalStateException("Interrupted while starting dashboard");
             }
         }
+
+        Object reloadInterval = props.get("configReload");
+        if (configFile != null && reloadInterval instanceof Integer && (Integer) reloadInterval > 0) {
+            watchConfiguration(Paths.get(configFile), (Integer) reloadInterval);
+        }
+    }
+
+    /**
+     * Check the modification time of the configuration file, and reload it when it changed.
+     * @param configPath the configuration file
+     * @param interval the check interval, in seconds
+     */
+    private void watchConfiguration(Path configPath, int interval) {
+        AtomicReference<FileTime> lastModified = new AtomicReference<>();
+        try {
+            lastModified.set(Files.getLastModifiedTime(configPath));
+        } catch (IOException e) {
+            logger.error("Can't watch configuration file {}: {}", configPath, Helpers.resolveThrowableException(e));
+            logger.catching(Level.DEBUG, e);
+            return;
+        }
+        // The scheduled tasks of the first configuration are never stopped, so the watcher is registered there
+        props.registerScheduledTask("ConfigurationWatcher", () -> {
+            try {
+                FileTime modified = Files.getLastModifiedTime(configPath);
+                FileTime previous = lastModified.getAndSet(modified);
+                if (! modified.equals(previous)) {
+                    logger.info("Configuration file {} changed, reloading", configPath);
+                    reload();
+                }
+            } catch (IOException e) {
+                logger.warn("Can't check configuration file {}: {}", configPath, Helpers.resolveThrowableException(e));
+                logger.catching(Level.DEBUG, e);
+            }
+        }, TimeUnit.SECONDS.toMillis(interval));
+    }
+
+    /**
+     * Reload the configuration file, without stopping the unchanged receivers and senders and without losing the
+     * waiting events. The new configuration is checked and started before the switch, so an invalid configuration
+     * keeps the current one running.
+     * <p>
+     * Receivers and senders whose description did not change are kept, new ones are started and removed ones are stopped,
+     * the senders only after their queue is empty. Events already in a pipeline finish their processing with it.
+     * The removed receivers are stopped before the new ones are configured, so a changed receiver can listen on the same
+     * port. If anything in the new configuration fails, what it started is stopped and the stopped receivers are
+     * replaced by new ones, built from the same settings.
+     * @return true if the new configuration is running
+     */
+    public synchronized boolean reload() {
+        if (props == null || configFile == null) {
+            logger.error("LogHub not started from a configuration file, can't reload");
+            return false;
+        }
+        Properties previous = props;
+        Properties newProps;
+        try {
+            newProps = Configuration.reload(configFile, previous);
+        } catch (ConfigException e) {
+            logger.error("Error in {}: {}, configuration not reloaded", e.getLocation(), Helpers.resolveThrowableException(e));
+            logger.catching(Level.DEBUG, e);
+            return false;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Can't reload configuration file {}: {}", configFile, Helpers.resolveThrowableException(e));
+            logger.catching(Level.DEBUG, e);
+            return false;
+        }
+        return reload(newProps);
+    }
+
+    synchronized boolean reload(Properties newProps) {
+        Properties previous = props;
+        Set<Receiver> previousReceivers = Collections.newSetFromMap(new IdentityHashMap<>());
+        previousReceivers.addAll(previous.receivers);
+        Set<Sender> previousSenders = Collections.newSetFromMap(new IdentityHashMap<>());
+        previousSenders.addAll(previous.senders);
+        List<Sender> startedSenders = new ArrayList<>();
+        List<Receiver> newReceivers = new ArrayList<>();
+
+        for (Source s: newProps.sources.values()) {
+            if (! s.configure(newProps)) {
+                logger.error("failed to start source {}, configuration not reloaded", s.getName());
+                abortReload(newProps, startedSenders, newReceivers);
+                return false;
+            };
+        }
+        try {
+            Helpers.parallelStartProcessor(newProps);
+        } catch (IllegalStateException e) {
+            logger.error("{}, configuration not reloaded", Helpers.resolveThrowableException(e));
+            abortReload(newProps, startedSenders, newReceivers);
+            return false;
+        }
+
+        // Start the new senders before the switch, so the new output queues are consumed
+        for (Sender s: newProps.senders) {
+            if (previousSenders.remove(s)) {
+                continue;
+            }
+            boolean started;
+            try {
+                started = s.configure(newProps);
+                if (started) {
+                    s.start();
+                    startedSenders.add(s);
+                }
+            } catch (Throwable e) {
+                if (Helpers.isFatal(e)) {
+                    throw e;
+                }
+                started = false;
+            }
+            if (! started) {
+                logger.error("failed to start sender {}, configuration not reloaded", s.getName());
+                abortReload(newProps, startedSenders, newReceivers);
+                return false;
+            }
+        }
+
+        List<Receiver> keptReceivers = new ArrayList<>();
+        for (Receiver r: newProps.receivers) {
+            if (previousReceivers.remove(r)) {
+                keptReceivers.add(r);
+            } else {
+                newReceivers.add(r);
+            }
+        }
+        // The replaced receivers are stopped first, so their replacements can reuse their resources, like a port.
+        // A stopped receiver can't be restarted, they are built again if the reload fails after that.
+        previousReceivers.forEach(Receiver::stopReceiving);
+        for (Receiver r: newReceivers) {
+            boolean configured;
+            try {
+                configured = r.configure(newProps);
+            } catch (Throwable e) {
+                if (Helpers.isFatal(e)) {
+                    throw e;
+                }
+                logger.catching(Level.DEBUG, e);
+                configured = false;
+            }
+            if (! configured) {
+                logger.error("failed to configure receiver {}, configuration not reloaded", r.getName());
+                abortReload(newProps, startedSenders, newReceivers);
+                restoreReceivers(previous, previousReceivers);
+                return false;
+            }
+        }
+
+        allep.forEach(ep -> ep.setPlan(newProps.outputQueues, newProps.namedPipeLine));
+        props = newProps;
+        // The old processors must not be kept by the latency statistics
+        Stats.resetProcessorsLatency();
+
+        // A reused receiver now sends to the pipeline with the same name
+        keptReceivers.forEach(r -> r.setPipeline(newProps.namedPipeLine.get(r.getPipeline().getName())));
+        newReceivers.forEach(Receiver::start);
+
+        if (! previousSenders.isEmpty()) {
+            // The queues that are not used any more, the removed senders must empty them before stopping
+            List<BlockingQueue<Event>> removedQueues = new ArrayList<>();
+            if (previous.outputQueues != null) {
+                Collection<BlockingQueue<Event>> newQueues = newProps.outputQueues != null ? newProps.outputQueues.values() : Collections.emptyList();
+                previous.outputQueues.values().stream().filter(q -> newQueues.stream().noneMatch(nq -> nq == q)).forEach(removedQueues::add);
+            }
+            ThreadBuilder.get()
+                         .setDaemon(true)
+                         .setName("StopRemovedSenders")
+                         .setTask(() -> {
+                             long end = System.currentTimeMillis() + DRAINTIMEOUT;
+                             try {
+                                 while (removedQueues.stream().anyMatch(q -> ! q.isEmpty()) && System.currentTimeMillis() < end) {
+                                     Thread.sleep(100);
+                                 }
+                             } catch (InterruptedException e) {
+                                 Thread.currentThread().interrupt();
+                             }
+                             previousSenders.forEach(Sender::stopSending);
+                         })
+                         .build(true);
+        }
+        // Release what the replaced processors started, like their scheduled tasks
+        previous.runStopActions();
+        // The events still in the old pipelines might use the old caches, so they are destroyed later
+        newProps.timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                previous.cacheManager.release(newProps.cacheManager);
+            }
+        }, DRAINTIMEOUT);
+        logger.warn("Configuration reloaded");
+        return true;
+    }
+
+    /**
+     * Release what a failed reload started. The running configuration is not changed.
+     */
+    private void abortReload(Properties newProps, List<Sender> startedSenders, List<Receiver> configuredReceivers) {
+        // The new receivers were never started, the receiving thread will not close them
+        configuredReceivers.forEach(Receiver::close);
+        startedSenders.forEach(Sender::stopSending);
+        newProps.runStopActions();
+        newProps.timer.cancel();
+        newProps.cacheManager.release(props.cacheManager);
+    }
+
+    /**
+     * Replace the receivers stopped by a failed reload by new ones, built from the same settings.
+     */
+    private void restoreReceivers(Properties previous, Collection<Receiver> stopped) {
+        for (Receiver r: stopped) {
+            boolean restarted;
+            try {
+                // The stopped receiver must release its resources first
+                r.join(1000);
+                Receiver rebuilt = previous.rebuildReceiver(r);
+                restarted = rebuilt != null && rebuilt.configure(previous);
+                if (restarted) {
+                    rebuilt.start();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                restarted = false;
+            } catch (Throwable e) {
+                if (Helpers.isFatal(e)) {
+                    throw e;
+                }
+                logger.catching(Level.DEBUG, e);
+                restarted = false;
+            }
+            if (! restarted) {
+                logger.error("Receiver {} stopped by the reload can't be restarted", r.getName());
+            }
+        }
     }
 
     public static void shutdown() {
@@ -0,0 +1,390 @@
+package loghub;
+
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+import javax.cache.Cache;
+
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+import loghub.configuration.CacheManager;
+import loghub.configuration.Properties;
+import ua_parser.Device;
+import ua_parser.DeviceParser;
+import ua_parser.OS;
+import ua_parser.OSParser;
+import ua_parser.UserAgent;
+import ua_parser.UserAgentParser;
+
+/**
+ * A user agent parser using the ua_parser regexes, that can resolve only some of the parts and skip most of the regexes.
+ * <p>
+ * Each regex is kept as a single entry parser from ua_parser, so the result is exactly the same. But the literal that
+ * any match of the regex must contains is extracted when possible, and the regex is tried only if the user agent contains it. The
+ * regexes are still tried in the same order, each one only once. Many regexes share the same literal, the lookup for each literal
+ * is done only once.
+ * <p>
+ * The complete results are cached, in a single cache. It can be bounded by the total length of the user agents
+ * instead of their count, and given an off heap tier, for very big caches.
+ *
+ * @author Fabrice Bacchella
+ *
+ */
+public class UaParser {
+
+    /**
+     * The immutable result of a parsing, a part that was not resolved is null.
+     */
+    public static class Result implements Serializable {
+        private static final long serialVersionUID = 1L;
+        public final transient UserAgent userAgent;
+        public final transient OS os;
+        public final transient Device device;
+        private Result(UserAgent userAgent, OS os, Device device) {
+            this.userAgent = userAgent;
+            this.os = os;
+            this.device = device;
+        }
+        // The ua_parser classes are not serializable, so the off heap tier stores the values
+        private Object writeReplace() {
+            return new SerializedResult(this);
+        }
+    }
+
+    private static class SerializedResult implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String[] userAgent;
+        private final String[] os;
+        private final String[] device;
+        private SerializedResult(Result r) {
+            userAgent = r.userAgent == null ? null : new String[] {r.userAgent.family, r.userAgent.major, r.userAgent.minor, r.userAgent.patch};
+            os = r.os == null ? null : new String[] {r.os.family, r.os.major, r.os.minor, r.os.patch, r.os.patchMinor};
+            device = r.device == null ? null : new String[] {r.device.family};
+        }
+        private Object readResolve() {
+            return new Result(userAgent == null ? null : new UserAgent(userAgent[0], userAgent[1], userAgent[2], userAgent[3]),
+                              os == null ? null : new OS(os[0], os[1], os[2], os[3], os[4]),
+                              device == null ? null : new Device(device[0]));
+        }
+    }
+
+    /**
+     * The regexes for one of the parts.
+     */
+    private static class Matchers<T> {
+        private final List<Function<String, T>> parsers;
+        // The index of the literal needed by each parser, or -1
+        private final int[] literals;
+        private final T other;
+        Matchers(List<Function<String, T>> parsers, int[] literals, T other) {
+            this.parsers = parsers;
+            this.literals = literals;
+            this.other = other;
+        }
+        T parse(String agentString, String lowerAgentString, String[] literalsValues, byte[] literalsFound) {
+            for (int i = 0; i < literals.length; i++) {
+                int literal = literals[i];
+                if (literal >= 0) {
+                    if (literalsFound[literal] == UNKNOWN) {
+                        literalsFound[literal] = lowerAgentString.contains(literalsValues[literal]) ? FOUND : MISSING;
+                    }
+                    if (literalsFound[literal] == MISSING) {
+                        continue;
+                    }
+                }
+                // A single entry parser returns its fallback when the regex doesn't match, or it doesn't resolve
+                // a family, ua_parser then tries the next regex
+                T found = parsers.get(i).apply(agentString);
+                if (! other.equals(found)) {
+                    return found;
+                }
+            }
+            return other;
+        }
+    }
+
+    private static final byte UNKNOWN = 0;
+    private static final byte FOUND = 1;
+    private static final byte MISSING = 2;
+
+    // The shortest literal used to filter regexes
+    private static final int MINLITERAL = 2;
+
+    private final Matchers<UserAgent> userAgents;
+    private final Matchers<OS> oses;
+    private final Matchers<Device> devices;
+    private final String[] literals;
+    private final Cache<String, Result> cache;
+
+    /**
+     * @param cacheSize the maximum number of cached results
+     * @param cacheWeight if positive, the maximum total length of the cached user agents, used instead of cacheSize
+     * @param offHeapSize if positive, the size in bytes of the off heap tier of the cache
+     * @param props the properties that provides the cache manager
+     * @param regexYaml the ua_parser regexes file
+     * @param userAgent true to resolve the user agent
+     * @param os true to resolve the OS
+     * @param device true to resolve the device
+     */
+    @SuppressWarnings("unchecked")
+    public UaParser(int cacheSize, long cacheWeight, long offHeapSize, Properties props, InputStream regexYaml, boolean userAgent, boolean os, boolean device) {
+        Yaml yaml = new Yaml(new SafeConstructor());
+        Map<String, List<Map<String, String>>> regexConfig = (Map<String, List<Map<String, String>>>) yaml.load(regexYaml);
+        Map<String, Integer> literalsIndex = new HashMap<>();
+        if (userAgent) {
+            userAgents = buildMatchers(regexConfig.get("user_agent_parsers"), literalsIndex, l -> UserAgentParser.fromList(l)::parse,
+                                       new UserAgent("Other", null, null, null));
+        } else {
+            userAgents = null;
+        }
+        if (os) {
+            oses = buildMatchers(regexConfig.get("os_parsers"), literalsIndex, l -> OSParser.fromList(l)::parse,
+                                 new OS("Other", null, null, null, null));
+        } else {
+            oses = null;
+        }
+        if (device) {
+            devices = buildMatchers(regexConfig.get("device_parsers"), literalsIndex, l -> DeviceParser.fromList(l)::parse,
+                                    new Device("Other"));
+        } else {
+            devices = null;
+        }
+        literals = new String[literalsIndex.size()];
+        literalsIndex.forEach((k, v) -> literals[v] = k);
+        CacheManager.Builder<String, Result> cacheBuilder = props.cacheManager.getBuilder(String.class, Result.class)
+                                                                .setName("UA", this)
+                                                                .setOffHeapSize(offHeapSize);
+        if (cacheWeight > 0) {
+            cacheBuilder.setMaximumWeight(cacheWeight, (k, v) -> k.length());
+        } else {
+            cacheBuilder.setCacheSize(cacheSize);
+        }
+        cache = cacheBuilder.build();
+    }
+
+    private <T> Matchers<T> buildMatchers(List<Map<String, String>> configs, Map<String, Integer> literalsIndex,
+                                          Function<List<Map<String, String>>, Function<String, T>> parserBuilder,
+                                          T other) {
+        if (configs == null) {
+            configs = Collections.emptyList();
+        }
+        List<Function<String, T>> parsers = new ArrayList<>(configs.size());
+        int[] configLiterals = new int[configs.size()];
+        int i = 0;
+        for (Map<String, String> config: configs) {
+            parsers.add(parserBuilder.apply(Collections.singletonList(config)));
+            String literal = config.get("regex") == null ? null : requiredLiteral(config.get("regex"));
+            configLiterals[i++] = literal == null ? -1 : literalsIndex.computeIfAbsent(literal, k -> literalsIndex.size());
+        }
+        return new Matchers<>(parsers, configLiterals, other);
+    }
+
+    public Result parse(String agentString) {
+        if (agentString == null) {
+            return null;
+        } else {
+            return cache.invoke(agentString, (e, a) -> {
+                if (e.getValue() == null) {
+                    e.setValue(resolve(e.getKey()));
+                }
+                return e.getValue();
+            });
+        }
+    }
+
+    private Result resolve(String agentString) {
+        String lowerAgentString = agentString.toLowerCase(Locale.ROOT);
+        byte[] literalsFound = new byte[literals.length];
+        UserAgent userAgent = userAgents != null ? userAgents.parse(agentString, lowerAgentString, literals, literalsFound) : null;
+        OS os = oses != null ? oses.parse(agentString, lowerAgentString, literals, literalsFound) : null;
+        Device device = devices != null ? devices.parse(agentString, lowerAgentString, literals, literalsFound) : null;
+        return new Result(userAgent, os, device);
+    }
+
+    /**
+     * Find the longest literal that any match of the regex contains, in lower case. The analysis is conservative, an
+     * alternation, a class, an optional part or anything unusual ends a literal.
+     * @return the literal or null if none was found
+     */
+    static String requiredLiteral(String regex) {
+        int length = regex.length();
+        // Find the groups and if they contain an alternation
+        int[] closing = new int[length];
+        boolean[] alternation = new boolean[length];
+        List<Integer> opened = new ArrayList<>();
+        boolean topAlternation = false;
+        for (int i = 0; i < length; i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                i = classEnd(regex, i);
+                if (i < 0) {
+                    return null;
+                }
+            } else if (c == '(') {
+                if (regex.startsWith("(?", i)) {
+                    // The comments flag changes the meaning of spaces
+                    int j = i + 2;
+                    while (j < length && (Character.isLetter(regex.charAt(j)) || regex.charAt(j) == '-')) {
+                        if (regex.charAt(j++) == 'x') {
+                            return null;
+                        }
+                    }
+                }
+                opened.add(i);
+            } else if (c == ')') {
+                if (opened.isEmpty()) {
+                    return null;
+                }
+                closing[opened.remove(opened.size() - 1)] = i;
+            } else if (c == '|') {
+                if (opened.isEmpty()) {
+                    topAlternation = true;
+                } else {
+                    alternation[opened.get(opened.size() - 1)] = true;
+                }
+            }
+        }
+        if (topAlternation || ! opened.isEmpty()) {
+            return null;
+        }
+        String longest = "";
+        StringBuilder current = new StringBuilder();
+        boolean lastLiteral = false;
+        int i = 0;
+        while (i < length) {
+            char c = regex.charAt(i);
+            boolean literal = false;
+            if (c == '\\') {
+                if (i + 1 >= length) {
+                    break;
+                }
+                char next = regex.charAt(i + 1);
+                if ("QxuX0cpPkN".indexOf(next) >= 0) {
+                    // Quoting and escapes with arguments are not handled
+                    break;
+                } else if (Character.isLetterOrDigit(next) || next > 127) {
+                    longest = flush(current, longest);
+                } else {
+                    current.append(next);
+                    literal = true;
+                }
+                i += 2;
+            } else if (c == '[') {
+                longest = flush(current, longest);
+                i = classEnd(regex, i) + 1;
+            } else if (c == '(') {
+                int end = closing[i];
+                int prefix = groupPrefix(regex, i);
+                boolean optional = end + 1 < length && "?*{".indexOf(regex.charAt(end + 1)) >= 0;
+                if (prefix < 0 || alternation[i] || optional) {
+                    // Can't be used, skip it
+                    longest = flush(current, longest);
+                    i = end + 1;
+                } else {
+                    i += prefix;
+                }
+            } else if (c == ')') {
+                // The end of a group that is scanned, a repetition breaks the literal
+                if (i + 1 < length && regex.charAt(i + 1) == '+') {
+                    longest = flush(current, longest);
+                }
+                i++;
+            } else if (c == '?' || c == '*' || c == '{') {
+                // The previous character is optional
+                if (lastLiteral) {
+                    current.setLength(current.length() - 1);
+                }
+                longest = flush(current, longest);
+                if (c == '{') {
+                    int end = regex.indexOf('}', i);
+                    i = end < 0 ? length : end + 1;
+                } else {
+                    i++;
+                }
+                i = skipQuantifierMode(regex, i);
+            } else if (c == '+') {
+                longest = flush(current, longest);
+                i = skipQuantifierMode(regex, i + 1);
+            } else if (c == '.' || c == '^' || c == '$' || c == '|' || c > 127) {
+                longest = flush(current, longest);
+                i++;
+            } else {
+                current.append(c);
+                literal = true;
+                i++;
+            }
+            lastLiteral = literal;
+        }
+        longest = flush(current, longest);
+        return longest.length() >= MINLITERAL ? longest.toLowerCase(Locale.ROOT) : null;
+    }
+
+    private static String flush(StringBuilder current, String longest) {
+        String found = current.length() > longest.length() ? current.toString() : longest;
+        current.setLength(0);
+        return found;
+    }
+
+    /**
+     * Skip the lazy or possessive mark of a quantifier
+     */
+    private static int skipQuantifierMode(String regex, int i) {
+        return i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+') ? i + 1 : i;
+    }
+
+    /**
+     * Return the length of the opening of a group that can be scanned, or -1 for a special group.
+     */
+    private static int groupPrefix(String regex, int i) {
+        if (regex.startsWith("(?:", i)) {
+            return 3;
+        } else if (regex.startsWith("(?<", i) && i + 3 < regex.length() && Character.isLetter(regex.charAt(i + 3))) {
+            int end = regex.indexOf('>', i);
+            return end - i + 1;
+        } else if (regex.startsWith("(?", i)) {
+            return -1;
+        } else {
+            return 1;
+        }
+    }
+
+    /**
+     * Return the position of the ] that closes a class starting at i, or -1.
+     */
+    private static int classEnd(String regex, int i) {
+        int length = regex.length();
+        int depth = 0;
+        int j = i + 1;
+        if (j < length && regex.charAt(j) == '^') {
+            j++;
+        }
+        if (j < length && regex.charAt(j) == ']') {
+            j++;
+        }
+        for (; j < length; j++) {
+            char c = regex.charAt(j);
+            if (c == '\\') {
+                j++;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                if (depth == 0) {
+                    return j;
+                }
+                depth--;
+            }
+        }
+        return -1;
+    }
+
+}
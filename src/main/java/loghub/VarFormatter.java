@@ -3,10 +3,7 @@ package loghub;
 import java.text.DateFormatSymbols;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
-import java.text.FieldPosition;
-import java.text.Format;
 import java.text.MessageFormat;
-import java.text.ParsePosition;
 import java.time.DateTimeException;
 import java.time.DayOfWeek;
 import java.time.Instant;
@@ -46,27 +43,16 @@ import java.util.regex.Pattern;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+/**
+ * A formatter that uses a syntax close to {@link String#format(String, Object...)}, with named variables
+ * written as <code>${name%format}</code>.
+ * <p>
+ * The template is compiled once in a flat list of segments, either a literal or an appender for a
+ * variable, that are written in a reusable {@link StringBuilder}. The output is the same that the
+ * {@link MessageFormat} it replaces.
+ */
 public class VarFormatter {
 
-    public static final DontCareFieldPosition INSTANCE = new DontCareFieldPosition(); 
-
-    private static final class DontCareFieldPosition extends FieldPosition {
-        private DontCareFieldPosition() {
-            super(Integer.MIN_VALUE);
-        }
-
-        @Override
-        public void setBeginIndex(int i) {
-            // Do nothing
-        }
-
-        @Override
-        public void setEndIndex(int i) {
-            // Do nothing
-        }
-
-    }
-
     private final static class Flags {
         public final boolean leftjustified;
         public final boolean alternateform;
@@ -107,92 +93,143 @@ public class VarFormatter {
         }
     }
 
-    private static final class NonParsingFormat extends Format {
+    /**
+     * Write a non null value in the buffer.
+     */
+    @FunctionalInterface
+    private interface Appender {
+        void append(StringBuilder sb, Object obj);
+    }
+
+    private static final class Segment {
+        // Only one of literal or appender is not null
+        private final String literal;
+        private final Appender appender;
+        private final int argument;
+        private Segment(String literal) {
+            this.literal = literal;
+            this.appender = null;
+            this.argument = -1;
+        }
+        private Segment(Appender appender, int argument) {
+            this.literal = null;
+            this.appender = appender;
+            this.argument = argument;
+        }
+    }
+
+    /**
+     * Write integer values the same way that a {@link DecimalFormat} without grouping does, but without
+     * any intermediate buffer or string.
+     */
+    private static final class DigitsFormat {
+        private final String positivePrefix;
+        private final String positiveSuffix;
+        private final String negativePrefix;
+        private final String negativeSuffix;
+        private final int minDigits;
+        private final char zeroDigit;
+        private DigitsFormat(DecimalFormat df) {
+            this.positivePrefix = df.getPositivePrefix();
+            this.positiveSuffix = df.getPositiveSuffix();
+            this.negativePrefix = df.getNegativePrefix();
+            this.negativeSuffix = df.getNegativeSuffix();
+            this.minDigits = df.getMinimumIntegerDigits();
+            this.zeroDigit = df.getDecimalFormatSymbols().getZeroDigit();
+        }
+        private void append(StringBuilder sb, long value) {
+            sb.append(value < 0 ? negativePrefix : positivePrefix);
+            int start = sb.length();
+            // Work with a negative value, so Long.MIN_VALUE is handled too
+            long remaining = value < 0 ? value : -value;
+            do {
+                sb.append((char) (zeroDigit - (remaining % 10)));
+                remaining /= 10;
+            } while (remaining != 0);
+            while (sb.length() - start < minDigits) {
+                sb.append(zeroDigit);
+            }
+            // Digits were written from the lowest, reverse them
+            for (int i = start, j = sb.length() - 1; i < j; i++, j--) {
+                char c = sb.charAt(i);
+                sb.setCharAt(i, sb.charAt(j));
+                sb.setCharAt(j, c);
+            }
+            sb.append(value < 0 ? negativeSuffix : positiveSuffix);
+        }
+    }
+
+    private static final class StringAppender implements Appender {
         private final Locale l;
         private final boolean toUpper;
         private final Function<Object, String > f;
 
-        private NonParsingFormat(Locale l, boolean toUpper, Function<Object, String > f) {
-            super();
+        private StringAppender(Locale l, boolean toUpper, Function<Object, String > f) {
             this.l = l;
             this.toUpper = toUpper;
             this.f = f;
         }
 
         @Override
-        public final StringBuffer format(Object obj, StringBuffer toAppendTo,
-                                         FieldPosition pos) {
+        public void append(StringBuilder sb, Object obj) {
             String formatted = f.apply(obj);
             if (toUpper) {
                 formatted = formatted.toUpperCase(l);
             }
-            return toAppendTo.append(formatted);
-        }
-        @Override
-        public Object parseObject(String source, ParsePosition pos) {
-            throw new UnsupportedOperationException("Can't parse an object");
-        }
-    };
-
-    private static final class RightJustifyFormat extends Format {
-        private final Format f;
-        private final int size;
-        private RightJustifyFormat(Format f, int size) {
-            this.f = f;
-            this.size = size;
-        }
-        public final StringBuffer format(Object obj, StringBuffer toAppendTo, FieldPosition pos) {
-            String formatted = f.format(obj, new StringBuffer(), pos).toString();
-            if(formatted.length() < size) {
-                char[] prefix = new char[size - formatted.length()];
-                Arrays.fill(prefix, ' ');
-                toAppendTo.append(prefix);
-            }
-            return toAppendTo.append(formatted);
-        }
-        @Override
-        public Object parseObject(String source, ParsePosition pos) {
-            throw new UnsupportedOperationException("Can't parse an object");
+            sb.append(formatted);
         }
     }
 
-    private static final class LeftJustifyFormat extends Format {
-        private final Format f;
+    private static final class NumberAppender implements Appender {
+        private final ThreadLocal<DecimalFormat> df;
+        // Not null if integer values can be written without the DecimalFormat
+        private final DigitsFormat digits;
+        private final boolean leftjustified;
         private final int size;
-        private LeftJustifyFormat(Format f, int size) {
-            this.f = f;
+        private NumberAppender(DecimalFormat df, boolean integer, boolean leftjustified, int size) {
+            this.df = ThreadLocal.withInitial(() -> (DecimalFormat) df.clone());
+            this.digits = integer && (! df.isGroupingUsed() || df.getGroupingSize() == 0) ? new DigitsFormat(df) : null;
+            this.leftjustified = leftjustified;
             this.size = size;
         }
-        public final StringBuffer format(Object obj, StringBuffer toAppendTo, FieldPosition pos) {
-            String formatted = f.format(obj, new StringBuffer(), pos).toString();
-            toAppendTo.append(formatted);
-            if (formatted.length() < size) {
-                char[] prefix = new char[size - formatted.length()];
+
+        @Override
+        public void append(StringBuilder sb, Object obj) {
+            int start = sb.length();
+            if (digits != null && (obj instanceof Long || obj instanceof Integer || obj instanceof Short || obj instanceof Byte)) {
+                digits.append(sb, ((Number) obj).longValue());
+            } else {
+                sb.append(df.get().format(obj));
+            }
+            int padding = size - (sb.length() - start);
+            if (padding > 0 && leftjustified) {
+                for (int i = 0; i < padding; i++) {
+                    sb.append(' ');
+                }
+            } else if (padding > 0) {
+                char[] prefix = new char[padding];
                 Arrays.fill(prefix, ' ');
-                toAppendTo.append(prefix);
+                sb.insert(start, prefix);
             }
-            return toAppendTo;
-        }
-        @Override
-        public Object parseObject(String source, ParsePosition pos) {
-            throw new UnsupportedOperationException("Can't parse an object");
         }
     }
 
-    private static final class NonDecimalFormat extends Format {
+    private static final class NonDecimalAppender implements Appender {
         private final Locale l;
         private final int base;
         private final boolean toUpper;
         private final Flags flags;
         private final int size;
-        private NonDecimalFormat(Locale l, int base, boolean toUpper, Flags flags, int size) {
+        private NonDecimalAppender(Locale l, int base, boolean toUpper, Flags flags, int size) {
             this.l = l;
             this.base = base;
             this.toUpper = toUpper;
             this.flags = flags;
             this.size = size;
         }
-        public final StringBuffer format(Object obj, StringBuffer toAppendTo, FieldPosition pos) {
+
+        @Override
+        public void append(StringBuilder sb, Object obj) {
             Number n = (Number) obj;
             String formatted;
             String prefix;
@@ -212,30 +249,25 @@ public class VarFormatter {
             if (toUpper) {
                 formatted = formatted.toUpperCase(l);
             }
-            if (formatted.length() < size && ! flags.leftjustified) {
-                char[] paddingprefix = new char[size - formatted.length()];
-                Arrays.fill(paddingprefix, '0');
-                toAppendTo.append(paddingprefix);
+            if (! flags.leftjustified) {
+                for (int i = formatted.length(); i < size; i++) {
+                    sb.append('0');
+                }
             }
-
-            return toAppendTo.append(formatted);
-        }
-        @Override
-        public Object parseObject(String source, ParsePosition pos) {
-            throw new UnsupportedOperationException("Can't parse an object");
+            sb.append(formatted);
         }
     }
 
-    private static final class ExtendedDateFormat extends Format {
+    private static final class DateAppender implements Appender {
         private final ZoneId tz;
         private final ZoneId etz;
         private final boolean chronologyCheck;
         private final boolean isUpper;
         private final Locale locale;
-        private final BiConsumer<StringBuffer, TemporalAccessor> taToStr;
+        private final BiConsumer<StringBuilder, TemporalAccessor> taToStr;
         private final boolean zoned;
 
-        private ExtendedDateFormat(Locale l, char timeFormat, ZoneId tz, boolean isUpper) {
+        private DateAppender(Locale l, char timeFormat, ZoneId tz, boolean isUpper) {
             this.tz = tz;
             this.etz = Optional.ofNullable(tz).orElse(ZoneId.systemDefault());
             this.locale = l;
@@ -302,14 +334,14 @@ public class VarFormatter {
                 break;
             }
             case 'z': {
+                DigitsFormat offsetDigits = new DigitsFormat(new DecimalFormat("0000", DecimalFormatSymbols.getInstance(l)));
                 // RFC 822 style numeric time zone offset from GMT, e.g. -0800. This value will be adjusted as necessary for Daylight Saving Time.
                 taToStr = (sb, ta) -> {
                     int offsetS = getTemporalAccessor(ta).get(ChronoField.OFFSET_SECONDS);
                     sb.append(offsetS < 0 ? '-' : '+');
                     int minutes = Math.abs(offsetS) / 60;
                     int offset = (minutes / 60) * 100 + (minutes % 60);
-                    DecimalFormat df = getDecimalFormat("0000", l).get();
-                    df.format(offset, sb, INSTANCE);
+                    offsetDigits.append(sb, offset);
                 };
                 zoned = true;
                 chronologyCheck = false;
@@ -475,18 +507,14 @@ public class VarFormatter {
             }
         }
 
-        private BiConsumer<StringBuffer, TemporalAccessor> formatTemporalAccessor(Locale l, String formatPattern, TemporalField field) {
-            ThreadLocal<DecimalFormat> nf = getDecimalFormat(formatPattern, l);
-            return (sb, ta) -> nf.get().format(ta.get(field), sb, INSTANCE);
-        }
-
-        private BiConsumer<StringBuffer, TemporalAccessor> formatTemporalAccessor(Locale l, String formatPattern, TemporalQuery<Long> transformd) {
-            ThreadLocal<DecimalFormat> nf = getDecimalFormat(formatPattern, l);
-            return (sb, ta) -> nf.get().format(transformd.queryFrom(ta), sb, INSTANCE);
+        private BiConsumer<StringBuilder, TemporalAccessor> formatTemporalAccessor(Locale l, String formatPattern, TemporalField field) {
+            DigitsFormat digits = new DigitsFormat(new DecimalFormat(formatPattern, DecimalFormatSymbols.getInstance(l)));
+            return (sb, ta) -> digits.append(sb, ta.get(field));
         }
 
-        private ThreadLocal<DecimalFormat> getDecimalFormat(String pattern, Locale locale) {
-            return ThreadLocal.withInitial(() -> new DecimalFormat(pattern, DecimalFormatSymbols.getInstance(locale)));
+        private BiConsumer<StringBuilder, TemporalAccessor> formatTemporalAccessor(Locale l, String formatPattern, TemporalQuery<Long> transformd) {
+            DigitsFormat digits = new DigitsFormat(new DecimalFormat(formatPattern, DecimalFormatSymbols.getInstance(l)));
+            return (sb, ta) -> digits.append(sb, transformd.queryFrom(ta));
         }
 
         private TemporalAccessor withCalendarSystem(ZonedDateTime timePoint) {
@@ -513,40 +541,44 @@ public class VarFormatter {
         }
 
         @Override
-        public StringBuffer format(Object obj, StringBuffer toAppendTo,
-                                   FieldPosition pos) {
+        public void append(StringBuilder sb, Object obj) {
             if ( ! (obj instanceof Date) && ! (obj instanceof TemporalAccessor)) {
-                return toAppendTo.append(obj);
+                sb.append(obj);
+                return;
             }
             try {
                 if (isUpper) {
-                    StringBuffer sb = new StringBuffer();
+                    int start = sb.length();
                     taToStr.accept(sb, getTemporalAccessor(obj));
-                    toAppendTo.append(sb.toString().toUpperCase(locale));
+                    String formatted = sb.substring(start).toUpperCase(locale);
+                    sb.setLength(start);
+                    sb.append(formatted);
                 } else {
-                    taToStr.accept(toAppendTo, getTemporalAccessor(obj));
+                    taToStr.accept(sb, getTemporalAccessor(obj));
                 }
-                return toAppendTo;
             } catch (DateTimeException e) {
                 throw new IllegalArgumentException("Can't format the given time data: " + e.getMessage(), e);
             }
         }
-
-        @Override
-        public Object parseObject(String source, ParsePosition pos) {
-            throw new UnsupportedOperationException("Can't parse");
-        }
     }
 
     private static final Pattern varregexp = Pattern.compile("^(?<before>.*?(?=(?:\\$\\{)|\\{|'))(?:\\$\\{(?<varname>#?[\\w\\.-]+)?(?<format>%[^}]+)?\\}|(?:(?<curlybraces>\\{.*\\})|(?<quote>')))(?<after>.*)$", Pattern.DOTALL);
     private static final Pattern formatSpecifier = Pattern.compile("^(?<flag>[-#+ 0,(]*)?(?<length>\\d+)?(?:\\.(?<precision>\\d+))?(?:(?<istime>[tT])(?:\\<(?<tz>.*)\\>)?)?(?<conversion>[a-zA-Z%])(?::(?<locale>.+))?$", Pattern.DOTALL);
     private static final Pattern arrayIndex = Pattern.compile("#(?<index>\\d+)");
     private static final String lineseparator = System.lineSeparator();
+    private static final int MAXBUFFERSIZE = 64 * 1024;
+
+    private static final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(256));
 
     private static final Logger logger = LogManager.getLogger();
 
-    private final Map<Object, Integer> mapper = new LinkedHashMap<>();
-    private final MessageFormat mf;
+    private final Segment[] segments;
+    // If true, variables are taken from a list, listIndexes holds the index in the list of each variable
+    private final boolean listArguments;
+    private final int[] listIndexes;
+    // Variables taken from a map, a null path is the whole argument
+    private final String[] names;
+    private final String[][] paths;
 
     private ZoneId tz = ZoneId.systemDefault();
     private Locale locale;
@@ -565,17 +597,21 @@ public class VarFormatter {
         logger.trace("new format: {}", format);
         this.format = format;
         locale = l;
+        Map<Object, Integer> mapper = new LinkedHashMap<>();
+        List<Object> parts = new ArrayList<>();
         List<String> formats = new ArrayList<>();
-        // Convert the pattern to a MessageFormat which is compiled and be reused
-        String pattern = findVariables(new StringBuilder(), format, 0, formats).toString();
-        try {
-            mf = new MessageFormat(pattern, l);
-        } catch (IllegalArgumentException ex) {
-            throw new IllegalArgumentException(String.format("Can't format %s, locale %s: %s", format, l, ex.getMessage()), ex);
-        }
-        for (int i = 0; i < mf.getFormats().length; i++) {
-            mf.setFormat(i, resolveFormat(formats.get(i)));
+        findVariables(format, l, mapper, parts, formats);
+        // The formats are resolved once the template is parsed, a locale is kept for the following formats
+        List<Segment> compiled = new ArrayList<>(parts.size());
+        int formatIndex = 0;
+        for (Object part: parts) {
+            if (part instanceof String) {
+                compiled.add(new Segment((String) part));
+            } else {
+                compiled.add(new Segment(resolveFormat(formats.get(formatIndex++)), (Integer) part));
+            }
         }
+        segments = compiled.toArray(new Segment[compiled.size()]);
         if (mapper.size() != 0) {
             mapper.keySet().stream().reduce((i,j) ->  {
                 if (i.getClass() != j.getClass()) {
@@ -585,60 +621,80 @@ public class VarFormatter {
                 }
             });
         }
+        listArguments = mapper.keySet().stream().findAny().orElse("") instanceof Number;
+        listIndexes = new int[mapper.size()];
+        names = new String[mapper.size()];
+        paths = new String[mapper.size()][];
+        for (Map.Entry<Object, Integer> mapping: mapper.entrySet()) {
+            if (listArguments) {
+                listIndexes[(Integer) mapping.getKey()] = mapping.getValue();
+            } else {
+                String name = mapping.getKey().toString();
+                names[mapping.getValue()] = name;
+                // Variables written as "a.b.c" are paths in maps
+                paths[mapping.getValue()] = ".".equals(name) ? null : name.split("\\.");
+            }
+        }
     }
 
     @SuppressWarnings("unchecked")
     public String format(Object arg) throws IllegalArgumentException {
         Map<String, Object> variables;
-        Object mapperType = mapper.keySet().stream().findAny().orElse("");
-        if (( mapperType instanceof Number) && ! ( arg instanceof List)) {
+        if (listArguments && ! ( arg instanceof List)) {
             throw new IllegalArgumentException("Given a non-list to a format expecting only a list");
         } else if (arg instanceof Map) {
             variables = (Map<String, Object>) arg;
         } else {
             variables = Collections.emptyMap();
         }
-        Object[] resolved = new Object[mapper.size()];
-        for(Map.Entry<Object, Integer> mapping: mapper.entrySet()) {
-            if (".".equals(mapping.getKey())) {
-                resolved[mapping.getValue()] = checkArgType(arg);
-                continue;
-            }
-            if (mapperType instanceof Number) {
-                int i = ((Number) mapping.getKey()).intValue();
-                int j = ((Number) mapping.getValue()).intValue();
+        Object[] resolved = new Object[listIndexes.length];
+        for (int v = 0; v < resolved.length; v++) {
+            if (listArguments) {
                 List<Object> l = (List<Object>) arg;
-                if (j > l.size()) {
+                if (listIndexes[v] > l.size()) {
                     throw new IllegalArgumentException("index out of range");
                 }
-                resolved[i] = checkArgType(l.get(j - 1));
+                resolved[v] = checkArgType(l.get(listIndexes[v] - 1));
+            } else if (paths[v] == null) {
+                resolved[v] = checkArgType(arg);
+            } else if (paths[v].length == 1) {
+                // Only one element in the key, just use it
+                if (! variables.containsKey(names[v])) {
+                    throw new IllegalArgumentException("invalid values for format key " + names[v]);
+                }
+                resolved[v] = checkArgType(variables.get(names[v]));
             } else {
-                String[] path = mapping.getKey().toString().split("\\.");
-                if (path.length == 1) {
-                    // Only one element in the key, just use it
-                    if (! variables.containsKey(mapping.getKey())) {
-                        throw new IllegalArgumentException("invalid values for format key " + mapping.getKey());
+                String[] path = paths[v];
+                Map<String, Object> current = variables;
+                for (int i = 0; i < path.length - 1; i++) {
+                    current = (Map<String, Object>) current.get(path[i]);
+                    if (current == null) {
+                        throw new IllegalArgumentException("invalid values for format key " + names[v]);
                     }
-                    resolved[mapping.getValue()] = checkArgType(variables.get(mapping.getKey()));
+                }
+                resolved[v] = checkArgType(current.get(path[path.length - 1]));
+            }
+        }
+        // A nested call, from a toString() for example, writes after the current content
+        StringBuilder sb = buffers.get();
+        int start = sb.length();
+        try {
+            for (Segment s: segments) {
+                if (s.appender == null) {
+                    sb.append(s.literal);
+                } else if (resolved[s.argument] == null) {
+                    sb.append("null");
                 } else {
-                    // Recurse, variables written as "a.b.c" are paths in maps
-                    Map<String, Object> current = variables;
-                    String key = path[0];
-                    for (int i = 0; i < path.length - 1; i++) {
-                        Map<String, Object> next = (Map<String, Object>) current.get(key);
-                        if (next == null || ! (next instanceof Map) ) {
-                            throw new IllegalArgumentException("invalid values for format key " + mapping.getKey());
-                        }
-                        current = next;
-                        key = path[i + 1];
-                    }
-                    if (current != null) {
-                        resolved[mapping.getValue()] = checkArgType(current.get(key));
-                    }
+                    s.appender.append(sb, resolved[s.argument]);
                 }
             }
+            return sb.substring(start);
+        } finally {
+            sb.setLength(start);
+            if (start == 0 && sb.capacity() > MAXBUFFERSIZE) {
+                buffers.remove();
+            }
         }
-        return mf.format(resolved, new StringBuffer(), INSTANCE).toString();
     }
 
     private static final Locale LOCALEJAPANESERA = Locale.forLanguageTag("ja-JP-u-ca-japanese-x-lvariant-JP");
@@ -688,25 +744,31 @@ public class VarFormatter {
         }
     }
 
-    private StringBuilder findVariables(StringBuilder buffer, String in, int last, List<String> formats) {
+    /**
+     * Split the template in literals and variables. A literal is a {@link String}, a variable is the {@link Integer} index
+     * of the resolved argument, and its format is added to formats.
+     */
+    private void findVariables(String template, Locale l, Map<Object, Integer> mapper, List<Object> parts, List<String> formats) {
+        StringBuilder literal = new StringBuilder();
+        int last = 0;
+        String in = template;
         Matcher m = varregexp.matcher(in);
-        if (m.find()) {
+        while (m.find()) {
             String before = m.group("before");
             String varname = m.group("varname");
             String format = m.group("format");
             String curlybraces = m.group("curlybraces");
             String quote = m.group("quote");
-            String after = m.group("after");
-            buffer.append(before);
+            literal.append(checkBraces(template, l, before));
             if (curlybraces != null) {
-                // Escape a {} pair
-                buffer.append("'" + curlybraces + "'");
+                // An escaped {} pair
+                literal.append(unquote(template, l, curlybraces));
             } else if (quote != null) {
-                // Escape a lone '
-                buffer.append("''");
+                // A lone '
+                literal.append('\'');
             } else if (varname == null && format == null) {
                 // Not really a find, put back and continue
-                buffer.append("$'{}'");
+                literal.append("${}");
             } else {
                 if (format == null || format.isEmpty()) {
                     format = "%s";
@@ -728,16 +790,47 @@ public class VarFormatter {
                 } else {
                     index = mapper.get(varname);
                 }
-                buffer.append("{" + index + "}");
+                if (literal.length() > 0) {
+                    parts.add(literal.toString());
+                    literal.setLength(0);
+                }
+                parts.add(index);
             }
-            findVariables(buffer, after, last, formats);
+            in = m.group("after");
+            m = varregexp.matcher(in);
+        }
+        literal.append(checkBraces(template, l, in));
+        if (literal.length() > 0) {
+            parts.add(literal.toString());
+        }
+    }
+
+    /**
+     * An unescaped { in a literal was an unmatched brace for the MessageFormat.
+     */
+    private String checkBraces(String template, Locale l, String literal) {
+        if (literal.indexOf('{') >= 0) {
+            throw new IllegalArgumentException(String.format("Can't format %s, locale %s: %s", template, l, "Unmatched braces in the pattern."));
         } else {
-            buffer.append(in);
+            return literal;
+        }
+    }
+
+    /**
+     * The escaped {} pair was quoted in a MessageFormat, so a ' inside it has the same meaning.
+     */
+    private String unquote(String template, Locale l, String curlybraces) {
+        if (curlybraces.indexOf('\'') < 0) {
+            return curlybraces;
+        }
+        try {
+            return new MessageFormat("'" + curlybraces + "'", l).format(new Object[0]);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException(String.format("Can't format %s, locale %s: %s", template, l, ex.getMessage()), ex);
         }
-        return buffer;
     }
 
-    private Format resolveFormat(String format) {
+    private Appender resolveFormat(String format) {
         Matcher m = formatSpecifier.matcher(format);
         if (m.matches()) {
             String localeStr = m.group("locale");
@@ -781,20 +874,27 @@ public class VarFormatter {
 
             final Function<String, String> cut = i -> precision < 0 ? i : i.substring(0, precision);
             switch(conversion) {
-            case 'b': return new NonParsingFormat(Locale.getDefault(), isUpper, i -> cut.apply(i == null ? "false" : (i instanceof Boolean) ? i.toString() : "true"));
-            case 's': return new NonParsingFormat(Locale.getDefault(), isUpper, i -> cut.apply(i.toString()) );
-            case 'h': return new NonParsingFormat(Locale.getDefault(), isUpper, i -> cut.apply(i == null ? "null" : Integer.toHexString(i.hashCode())));
-            case 'c': return new NonParsingFormat(Locale.getDefault(), isUpper, i -> (i instanceof Character) ? i.toString() : "null");
-            case 'd': {Format f = numberFormat(locale, conversion, flags, true, length, precision, isUpper); return new NonParsingFormat(locale, false, i -> f.format(i));}
-            case 'o': return new NonDecimalFormat(locale, 8, isUpper, flags, precision);
-            case 'x': return new NonDecimalFormat(locale, 16, isUpper, flags, precision);
-            case 'e': {Format f = numberFormat(locale, conversion, flags, false, length, precision, isUpper); return new NonParsingFormat(locale, false, i -> f.format(i));}
-            case 'f': {Format f = numberFormat(locale, conversion, flags, false, length, precision, isUpper); return new NonParsingFormat(locale, false, i -> f.format(i));}
-            case 'g': {Format f = numberFormat(locale, conversion, flags, false, length, precision, isUpper); return new NonParsingFormat(locale, false, i -> f.format(i));}
-            case 'a': {Format f = numberFormat(locale, conversion, flags, false, length, precision, isUpper); return new NonParsingFormat(locale, false, i -> f.format(i));}
-            case 't': return new ExtendedDateFormat(locale, timeFormat, tz, isUpper);
-            case '%': return new NonParsingFormat(Locale.getDefault(), false, i -> "%");
-            case 'n': return new NonParsingFormat(Locale.getDefault(), false, i -> lineseparator);
+            case 'b': return new StringAppender(Locale.getDefault(), isUpper, i -> cut.apply(i == null ? "false" : (i instanceof Boolean) ? i.toString() : "true"));
+            case 's': {
+                if (precision < 0 && ! isUpper) {
+                    // The most common case, no transformation
+                    return (sb, i) -> sb.append(i.toString());
+                } else {
+                    return new StringAppender(Locale.getDefault(), isUpper, i -> cut.apply(i.toString()));
+                }
+            }
+            case 'h': return new StringAppender(Locale.getDefault(), isUpper, i -> cut.apply(i == null ? "null" : Integer.toHexString(i.hashCode())));
+            case 'c': return new StringAppender(Locale.getDefault(), isUpper, i -> (i instanceof Character) ? i.toString() : "null");
+            case 'd': return numberFormat(locale, conversion, flags, true, length, precision, isUpper);
+            case 'o': return new NonDecimalAppender(locale, 8, isUpper, flags, precision);
+            case 'x': return new NonDecimalAppender(locale, 16, isUpper, flags, precision);
+            case 'e': return numberFormat(locale, conversion, flags, false, length, precision, isUpper);
+            case 'f': return numberFormat(locale, conversion, flags, false, length, precision, isUpper);
+            case 'g': return numberFormat(locale, conversion, flags, false, length, precision, isUpper);
+            case 'a': return numberFormat(locale, conversion, flags, false, length, precision, isUpper);
+            case 't': return new DateAppender(locale, timeFormat, tz, isUpper);
+            case '%': return new StringAppender(Locale.getDefault(), false, i -> "%");
+            case 'n': return new StringAppender(Locale.getDefault(), false, i -> lineseparator);
             default: throw new IllegalArgumentException("Invalid format specifier: " + format);
             }
         } else {
@@ -802,7 +902,7 @@ public class VarFormatter {
         }
     }
 
-    private Format numberFormat(Locale l, char conversion, Flags flags, boolean integer, int length, int precision, boolean isUpper) {
+    private Appender numberFormat(Locale l, char conversion, Flags flags, boolean integer, int length, int precision, boolean isUpper) {
         precision = (precision == -1 ? 6 : precision);
         DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(l);
         symbols.setExponentSeparator( isUpper ? "E" : "e");
@@ -826,12 +926,7 @@ public class VarFormatter {
         if (symbols.getDigit() == '0') {
             df.setMinimumIntegerDigits(fixed);
         }
-        if (flags.leftjustified) {
-            return new LeftJustifyFormat(df, length);
-        } else {
-            return new RightJustifyFormat(df, length);
-        }
-
+        return new NumberAppender(df, integer, flags.leftjustified, length);
     }
 
     @Override
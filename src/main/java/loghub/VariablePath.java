@@ -0,0 +1,96 @@
+package loghub;
+
+import java.util.Arrays;
+
+/**
+ * An immutable and pre-resolved path to a value in an event.
+ * <p>
+ * It's intended to be built once, when a processor is configured, and used with
+ * {@link Event#applyAtPath(Event.Action, VariablePath, Object, boolean)} for each event, so the
+ * kind of path is not checked again and again.
+ *
+ * @author Fabrice Bacchella
+ *
+ */
+public final class VariablePath {
+
+    enum Kind {
+        TIMESTAMP,
+        META,
+        SIMPLE,
+        NESTED,
+        ROOT,
+    }
+
+    final Kind kind;
+    final String[] segments;
+    // The key to use for meta, or the first segment to walk
+    final String first;
+    private final int hash;
+
+    private VariablePath(String[] path) {
+        if (path.length == 0) {
+            throw new IllegalArgumentException("Empty path");
+        }
+        segments = new String[path.length];
+        for (int i = 0; i < path.length; i++) {
+            segments[i] = path[i] == null ? null : path[i].intern();
+        }
+        String key = segments[0];
+        if (key != null && key.startsWith("#")) {
+            kind = Kind.META;
+            first = key.substring(1).intern();
+        } else if (Event.TIMESTAMPKEY.equals(key)) {
+            kind = Kind.TIMESTAMP;
+            first = key;
+        } else if (".".equals(key) && segments.length > 1) {
+            kind = Kind.ROOT;
+            first = segments[1];
+        } else if (segments.length == 1) {
+            kind = Kind.SIMPLE;
+            first = key;
+        } else {
+            kind = Kind.NESTED;
+            first = key;
+        }
+        hash = Arrays.hashCode(segments);
+    }
+
+    public static VariablePath of(String... path) {
+        return new VariablePath(path);
+    }
+
+    /**
+     * @return a copy of the segments of the path
+     */
+    public String[] toArray() {
+        return Arrays.copyOf(segments, segments.length);
+    }
+
+    public int length() {
+        return segments.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (! (obj instanceof VariablePath)) {
+            return false;
+        } else {
+            VariablePath other = (VariablePath) obj;
+            return hash == other.hash && Arrays.equals(segments, other.segments);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(segments);
+    }
+
+}
@@ -1,19 +1,58 @@
 package loghub.configuration;
 
+import java.io.Serializable;
 import java.time.Duration;
 import java.time.temporal.TemporalUnit;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntBiFunction;
 
 import javax.cache.Cache;
 import javax.cache.Caching;
+import javax.cache.configuration.Factory;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.expiry.AccessedExpiryPolicy;
+import javax.cache.expiry.CreatedExpiryPolicy;
+import javax.cache.expiry.ExpiryPolicy;
+import javax.cache.expiry.TouchedExpiryPolicy;
+import javax.cache.integration.CacheLoader;
 import javax.cache.spi.CachingProvider;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.cache2k.Cache2kBuilder;
+import org.cache2k.event.CacheEntryEvictedListener;
+import org.cache2k.event.CacheEntryExpiredListener;
+import org.cache2k.event.CacheEntryRemovedListener;
 import org.cache2k.extra.jmx.JmxSupport;
 import org.cache2k.jcache.ExtendedMutableConfiguration;
+import org.cache2k.operation.CacheControl;
+import org.cache2k.operation.CacheStatistics;
 
+import loghub.metrics.Stats;
+
+/**
+ * Build the caches used by the components.
+ * <p>
+ * The expiry policies follows the JCache semantic:
+ * <ul>
+ * <li><code>ACCESSED</code>, an entry expires after a duration since it was created or last read.</li>
+ * <li><code>CREATED</code>, an entry expires after a duration since it was created, updates don't change it.</li>
+ * <li><code>ETERNAL</code>, an entry never expires.</li>
+ * <li><code>MODIFIED</code>, an entry expires after a duration since it was created or last updated.</li>
+ * <li><code>TOUCHED</code>, an entry expires after a duration since it was created, updated or read.</li>
+ * </ul>
+ * A cache is bounded by a number of entries, or by a total weight. A never expiring cache can also be given
+ * an off heap tier, that keeps the entries evicted from the heap, for big lookup caches.
+ * <p>
+ * Hits, misses and evictions of each cache are exported through {@link Stats}, until the cache is released.
+ *
+ * @author Fabrice Bacchella
+ *
+ */
 public class CacheManager {
 
     private static final Logger logger = LogManager.getLogger();
@@ -21,47 +60,41 @@ public class CacheManager {
     public enum Policy {
         ACCESSED {
             @Override
-            <K,
-            V> Cache2kBuilder<K, V> configure(Cache2kBuilder<K, V> configuration,
-                                              Duration duration) {
-                return configuration;
+            <K, V> void configure(CacheManager.Builder<K, V> builder, Duration duration) {
+                builder.expiryFactory = AccessedExpiryPolicy.factoryOf(toJCache(duration));
+                builder.builder2k.sharpExpiry(true);
             }
         },
         CREATED {
             @Override
-            <K,
-            V> Cache2kBuilder<K, V> configure(Cache2kBuilder<K, V> configuration,
-                                              Duration duration) {
-                return configuration;
+            <K, V> void configure(CacheManager.Builder<K, V> builder, Duration duration) {
+                builder.expiryFactory = CreatedExpiryPolicy.factoryOf(toJCache(duration));
+                builder.builder2k.sharpExpiry(true);
             }
         },
         ETERNAL {
             @Override
-            <K,
-            V> Cache2kBuilder<K, V> configure(Cache2kBuilder<K, V> configuration,
-                                              Duration duration) {
-                configuration.eternal(true);
-                return configuration;
+            <K, V> void configure(CacheManager.Builder<K, V> builder, Duration duration) {
+                builder.builder2k.eternal(true);
             }
         },
         MODIFIED {
             @Override
-            <K,
-            V> Cache2kBuilder<K, V> configure(Cache2kBuilder<K, V> configuration,
-                                              Duration duration) {
-                configuration.expireAfterWrite(duration.toMillis(), TimeUnit.MILLISECONDS);
-                return configuration;
+            <K, V> void configure(CacheManager.Builder<K, V> builder, Duration duration) {
+                builder.builder2k.expireAfterWrite(duration.toMillis(), TimeUnit.MILLISECONDS);
             }
         },
         TOUCHED {
             @Override
-            <K,
-            V> Cache2kBuilder<K, V> configure(Cache2kBuilder<K, V> configuration,
-                                              Duration duration) {
-                return configuration;
+            <K, V> void configure(CacheManager.Builder<K, V> builder, Duration duration) {
+                builder.expiryFactory = TouchedExpiryPolicy.factoryOf(toJCache(duration));
+                builder.builder2k.sharpExpiry(true);
             }
         };
-        abstract <K,V> Cache2kBuilder<K, V> configure(Cache2kBuilder<K, V> configuration, Duration duration);
+        abstract <K, V> void configure(CacheManager.Builder<K, V> builder, Duration duration);
+        private static javax.cache.expiry.Duration toJCache(Duration duration) {
+            return new javax.cache.expiry.Duration(TimeUnit.MILLISECONDS, duration.toMillis());
+        }
     }
 
     public class Builder<K, V> {
@@ -69,6 +102,9 @@ public class CacheManager {
         private final Cache2kBuilder<K, V> builder2k;
         private final Class<K> keyType;
         private final Class<V> valueType;
+        private Policy policy = null;
+        private Factory<ExpiryPolicy> expiryFactory = null;
+        private long offHeapSize = 0;
         private Builder(Class<K> keyType, Class<V> valueType) {
             builder2k = Cache2kBuilder.of(keyType, valueType)
                             .permitNullValues(false)
@@ -84,44 +120,146 @@ public class CacheManager {
             return this;
         }
         public Builder<K, V> setExpiry(Policy policy) {
-            policy.configure(builder2k, Duration.ZERO);
-            return this;
+            return setExpiry(policy, Duration.ZERO);
         }
         public Builder<K, V> setExpiry(Policy policy, Duration duration) {
-            policy.configure(builder2k, duration);
+            this.policy = policy;
+            policy.configure(this, duration);
             return this;
         }
         public Builder<K, V> setExpiry(Policy policy, long durationAmount, TemporalUnit timeUnit) {
-            policy.configure(builder2k, Duration.of(durationAmount, timeUnit));
-            return this;
+            return setExpiry(policy, Duration.of(durationAmount, timeUnit));
         }
         public Builder<K, V> setCacheSize(int cacheSize) {
             builder2k.entryCapacity(cacheSize);
             return this;
         }
+        /**
+         * Bound the cache by the total weight of the entries, instead of their count.
+         * @param maximumWeight the maximum total weight
+         * @param weigher the weight of an entry
+         * @return the builder
+         */
+        public Builder<K, V> setMaximumWeight(long maximumWeight, ToIntBiFunction<K, V> weigher) {
+            builder2k.weigher(weigher::applyAsInt).maximumWeight(maximumWeight);
+            return this;
+        }
+        /**
+         * Keep the entries evicted from the heap in an off heap memory area. It's only used for a never
+         * expiring cache, whose keys and values are serializable.
+         * @param offHeapSize the size of the off heap area, in bytes
+         * @return the builder
+         */
+        public Builder<K, V> setOffHeapSize(long offHeapSize) {
+            this.offHeapSize = offHeapSize;
+            return this;
+        }
         public Cache<K, V> build() {
             synchronized (cacheManager) {
                 Cache<K, V> cache = cacheManager.getCache(name, keyType, valueType);
                 if (cache != null) {
                     logger.debug("Reusing cache {}", name);
+                    caches.put(name, cache);
                     return cache;
                 } else {
                     logger.debug("creating cache {}", name);
+                    OffHeapTier<K, V> tier = getTier();
+                    if (tier != null) {
+                        builder2k.addListener((CacheEntryEvictedListener<K, V>) (c, e) -> tier.put(e.getKey(), e.getValue()));
+                        builder2k.addListener((CacheEntryRemovedListener<K, V>) (c, e) -> tier.remove(e.getKey()));
+                        builder2k.addListener((CacheEntryExpiredListener<K, V>) (c, e) -> tier.remove(e.getKey()));
+                    }
                     ExtendedMutableConfiguration<K, V> config = ExtendedMutableConfiguration.of(builder2k);
-                    return cacheManager.createCache(name, config);
+                    if (expiryFactory != null) {
+                        config.setExpiryPolicyFactory(expiryFactory);
+                    }
+                    if (tier != null) {
+                        // Evicted entries are read back from the off heap tier on a miss
+                        config.setCacheLoaderFactory(new FactoryBuilder.SingletonFactory<>(new TierLoader<>(tier)));
+                        config.setReadThrough(true);
+                    }
+                    cache = cacheManager.createCache(name, config);
+                    caches.put(name, cache);
+                    CacheControl control = CacheControl.of(cache.unwrap(org.cache2k.Cache.class));
+                    Stats.cacheStatistics(cache,
+                                          () -> {
+                                              CacheStatistics statistics = control.sampleStatistics();
+                                              return statistics.getGetCount() - statistics.getMissCount();
+                                          },
+                                          () -> control.sampleStatistics().getMissCount(),
+                                          () -> control.sampleStatistics().getEvictedCount(),
+                                          () -> control.getSize());
+                    return cache;
+                }
+            }
+        }
+        private OffHeapTier<K, V> getTier() {
+            if (offHeapSize <= 0) {
+                return null;
+            } else if (policy != null && policy != Policy.ETERNAL) {
+                logger.warn("Cache {} expires entries, off heap tier not used", name);
+                return null;
+            } else if (! Serializable.class.isAssignableFrom(keyType) || ! Serializable.class.isAssignableFrom(valueType)) {
+                logger.warn("Cache {} entries are not serializable, off heap tier not used", name);
+                return null;
+            } else {
+                OffHeapTier<K, V> tier = new OffHeapTier<>(offHeapSize, classLoader);
+                tiers.put(name, tier);
+                return tier;
+            }
+        }
+    }
+
+    private static class TierLoader<K, V> implements CacheLoader<K, V>, Serializable {
+        private final transient OffHeapTier<K, V> tier;
+        private TierLoader(OffHeapTier<K, V> tier) {
+            this.tier = tier;
+        }
+        @Override
+        public V load(K key) {
+            return tier.get(key);
+        }
+        @Override
+        public Map<K, V> loadAll(Iterable<? extends K> keys) {
+            Map<K, V> values = new HashMap<>();
+            for (K key: keys) {
+                V value = tier.get(key);
+                if (value != null) {
+                    values.put(key, value);
                 }
             }
+            return values;
         }
     }
 
     private final javax.cache.CacheManager cacheManager;
+    private final ClassLoader classLoader;
+    private final Map<String, OffHeapTier<?, ?>> tiers;
+    // The caches used by the components of this configuration
+    private final Map<String, Cache<?, ?>> caches = new ConcurrentHashMap<>();
 
     public CacheManager(Properties props) {
+        this(props, null);
+    }
+
+    /**
+     * @param props the configuration using this cache manager
+     * @param previous the cache manager of the running configuration when reloading, its caches are left untouched
+     */
+    CacheManager(Properties props, CacheManager previous) {
+        classLoader = props.classloader;
         synchronized (CacheManager.class) {
             CachingProvider provider = Caching.getCachingProvider(props.classloader);
             cacheManager = provider.getCacheManager();
-            //Needed for junit tests that reuse context
-            cacheManager.getCacheNames().forEach(cacheManager::destroyCache);
+            if (previous == null) {
+                //Needed for junit tests that reuse context
+                cacheManager.getCacheNames().forEach(cacheManager::destroyCache);
+            }
+        }
+        if (previous != null && previous.cacheManager == cacheManager) {
+            tiers = previous.tiers;
+        } else {
+            tiers = Collections.synchronizedMap(new HashMap<>());
         }
     }
 
@@ -129,4 +267,34 @@ public class CacheManager {
         return new Builder<K, V>(keyType, ValueType);
     }
 
+    /**
+     * Destroy the caches of this configuration that are not used by another one, when it is replaced or abandoned.
+     * @param kept the cache manager of the configuration that stays, or null
+     */
+    public void release(CacheManager kept) {
+        synchronized (cacheManager) {
+            caches.forEach((name, cache) -> {
+                if (kept == null || kept.cacheManager != cacheManager || ! kept.caches.containsKey(name)) {
+                    logger.debug("Destroying cache {}", name);
+                    Stats.removeCacheStatistics(cache);
+                    cacheManager.destroyCache(name);
+                    OffHeapTier<?, ?> tier = tiers.remove(name);
+                    if (tier != null) {
+                        tier.clear();
+                    }
+                }
+            });
+            caches.clear();
+        }
+    }
+
+    /**
+     * @param name the cache's name
+     * @return the number of entries in the off heap tier of a cache, 0 if it don't have one
+     */
+    int getOffHeapSize(String name) {
+        OffHeapTier<?, ?> tier = tiers.get(name);
+        return tier != null ? tier.size() : 0;
+    }
+
 }
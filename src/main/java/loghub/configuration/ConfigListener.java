@@ -103,9 +103,12 @@ class ConfigListener extends RouteBaseListener {
     static final class Input {
         final List<ObjectWrapped<Receiver>> receiver;
         String piperef;
-        Input(List<ObjectWrapped<Receiver>>receiver, String piperef) {
+        // The text of the input in the configuration, to identify it when the configuration is reloaded
+        final String source;
+        Input(List<ObjectWrapped<Receiver>>receiver, String piperef, String source) {
             this.piperef = piperef;
             this.receiver = receiver;
+            this.source = source;
         }
         @Override
         public String toString() {
@@ -116,9 +119,12 @@ class ConfigListener extends RouteBaseListener {
     static final class Output {
         final List<ObjectWrapped<Sender>> sender;
         final String piperef;
-        Output(List<ObjectWrapped<Sender>>sender, String piperef) {
+        // The text of the output in the configuration, to identify it when the configuration is reloaded
+        final String source;
+        Output(List<ObjectWrapped<Sender>>sender, String piperef, String source) {
             this.piperef = piperef;
             this.sender = sender;
+            this.source = source;
         }
         @Override
         public String toString() {
@@ -196,6 +202,8 @@ class ConfigListener extends RouteBaseListener {
     final Map<String, VarFormatter> formatters = new HashMap<>();
     final Map<String, SourceProvider> sources = new HashMap<>();
     final Set<String> outputPipelines = new HashSet<>();
+    // The builders of the receivers, kept to build them again
+    final Map<Receiver, AbstractBuilder<?>> receiversBuilders = new HashMap<>();
 
     private String currentPipeLineName = null;
     private int expressionDepth = 0;
@@ -339,6 +347,9 @@ class ConfigListener extends RouteBaseListener {
             AbstractBuilder<?> builder = (AbstractBuilder<?>) wobject.wrapped;
             try {
                 Object created = builder.build();
+                if (created instanceof Receiver) {
+                    receiversBuilders.put((Receiver) created, builder);
+                }
                 stack.push(new ObjectWrapped<Object>(created));
             } catch (Exception e) {
                 throw new RecognitionException(Helpers.resolveThrowableException(e), parser, stream, ctx);
@@ -593,7 +604,7 @@ class ConfigListener extends RouteBaseListener {
             throw new RecognitionException("already sent pipeline " + piperef.piperef, parser, stream, ctx);
         }
         outputPipelines.add(piperef.piperef);
-        Output output = new Output(senders, piperef.piperef);
+        Output output = new Output(senders, piperef.piperef, ctx.getText());
         outputs.add(output);
         logger.debug("adding new output {}", output);
     }
@@ -609,7 +620,7 @@ class ConfigListener extends RouteBaseListener {
         }
         @SuppressWarnings("unchecked")
         List<ObjectWrapped<Receiver>> receivers = (List<ObjectWrapped<Receiver>>) stack.pop();
-        Input input = new Input(receivers, piperef.piperef);
+        Input input = new Input(receivers, piperef.piperef, ctx.getText());
         inputs.add(input);
         logger.debug("adding new input {}", input);
     }
@@ -44,6 +44,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.LoggerContext;
 
+import loghub.AbstractBuilder;
 import loghub.Event;
 import loghub.Helpers.ThrowingConsumer;
 import loghub.Helpers.ThrowingPredicate;
@@ -77,10 +78,28 @@ public class Configuration {
     private Map<String, Source> sources = new HashMap<>();
     private List<Sender> senders;
     private ClassLoader classLoader = Configuration.class.getClassLoader();
+    // The running configuration, when reloading
+    private Properties previous = null;
 
     Configuration() {
     }
 
+    /**
+     * Parse again a configuration file, for a running instance. The events queues and the events repository are
+     * kept, and the receivers and senders whose description did not change are reused, instead of creating new ones.
+     * The returned properties must then be started by the caller.
+     * @param fileName the configuration file
+     * @param previous the running configuration
+     * @return the new configuration
+     * @throws IOException
+     * @throws ConfigException
+     */
+    public static Properties reload(String fileName, Properties previous) throws IOException, ConfigException {
+        Configuration conf = new Configuration();
+        conf.previous = previous;
+        return conf.runparsing(CharStreams.fromFileName(fileName));
+    }
+
     public static Properties parse(String fileName) throws IOException, ConfigException {
         Configuration conf = new Configuration();
         return conf.runparsing(CharStreams.fromFileName(fileName));
@@ -357,9 +376,18 @@ public class Configuration {
         // Find the queue weight
         int queueWeight = newProperties.containsKey("queueWeigth") ? (Integer) newProperties.remove("queueWeigth") : DEFAULTQUEUEWEIGHT;
 
-        PriorityBlockingQueue mainQueue = new PriorityBlockingQueue(queuesDepth, queueWeight);
+        PriorityBlockingQueue mainQueue;
         Map<String, BlockingQueue<Event>> outputQueues = new HashMap<>(namedPipeLine.size());
-        conf.outputPipelines.forEach( i-> outputQueues.put(i, new LinkedBlockingQueue<Event>(queuesDepth)));
+        if (previous == null) {
+            mainQueue = new PriorityBlockingQueue(queuesDepth, queueWeight);
+            conf.outputPipelines.forEach( i-> outputQueues.put(i, new LinkedBlockingQueue<Event>(queuesDepth)));
+        } else {
+            // Waiting events are not lost
+            mainQueue = previous.mainQueue;
+            Map<String, BlockingQueue<Event>> previousQueues = previous.outputQueues != null ? previous.outputQueues : Collections.emptyMap();
+            conf.outputPipelines.forEach( i-> outputQueues.put(i, previousQueues.containsKey(i) ? previousQueues.get(i) : new LinkedBlockingQueue<Event>(queuesDepth)));
+            newProperties.put(Properties.PROPSNAMES.PREVIOUS.toString(), previous);
+        }
 
         newProperties.put(Properties.PROPSNAMES.FORMATTERS.toString(), conf.formatters);
         newProperties.put(Properties.PROPSNAMES.MAINQUEUE.toString(), mainQueue);
@@ -367,41 +395,72 @@ public class Configuration {
 
         // Fill the receivers list
         receivers = new ArrayList<>();
+        Map<String, List<Receiver>> inputsSources = new HashMap<>(conf.inputs.size());
+        Map<Receiver, AbstractBuilder<?>> receiversBuilders = new HashMap<>();
         for(Input i: conf.inputs) {
             if(i.piperef == null || ! namedPipeLine.containsKey(i.piperef)) {
                 throw new ConfigException("Invalid input, no destination pipeline: " + i);
             }
-            for(ConfigListener.ObjectWrapped<Receiver> desc: i.receiver) {
-                Pipeline p = namedPipeLine.get(i.piperef);
-                Receiver r = desc.wrapped;
-                r.setOutQueue(mainQueue);
-                r.setPipeline(p);
-                receivers.add(r);
+            String key = uniqueKey(inputsSources, i.source);
+            List<Receiver> inputReceivers = previous != null ? previous.inputsSources.get(key) : null;
+            if (inputReceivers == null) {
+                inputReceivers = new ArrayList<>(i.receiver.size());
+                for(ConfigListener.ObjectWrapped<Receiver> desc: i.receiver) {
+                    Pipeline p = namedPipeLine.get(i.piperef);
+                    Receiver r = desc.wrapped;
+                    r.setOutQueue(mainQueue);
+                    r.setPipeline(p);
+                    inputReceivers.add(r);
+                }
+            }
+            // Reused receivers will be given the new pipeline when the new configuration is started
+            receivers.addAll(inputReceivers);
+            for (Receiver r: inputReceivers) {
+                AbstractBuilder<?> builder = conf.receiversBuilders.get(r);
+                if (builder == null && previous != null) {
+                    builder = previous.receiversBuilders.get(r);
+                }
+                if (builder != null) {
+                    receiversBuilders.put(r, builder);
+                }
             }
+            inputsSources.put(key, inputReceivers);
             inputpipelines.add(i.piperef);
         }
         inputpipelines = Collections.unmodifiableSet(inputpipelines);
         receivers = Collections.unmodifiableList(receivers);
         newProperties.put(Properties.PROPSNAMES.RECEIVERS.toString(), receivers);
+        newProperties.put(Properties.PROPSNAMES.INPUTSOURCES.toString(), inputsSources);
+        newProperties.put(Properties.PROPSNAMES.RECEIVERSBUILDERS.toString(), receiversBuilders);
 
         // Fill the senders list
         senders = new ArrayList<>();
+        Map<String, List<Sender>> outputsSources = new HashMap<>(conf.outputs.size());
         for (Output o: conf.outputs) {
             if (o.piperef == null || ! namedPipeLine.containsKey(o.piperef)) {
                 throw new IllegalArgumentException("Invalid output, no source pipeline: " + o);
             }
-            for (ConfigListener.ObjectWrapped<Sender> desc: o.sender) {
-                BlockingQueue<Event> out = outputQueues.get(o.piperef);
-                Sender s = desc.wrapped;
-                s.setInQueue(out);
-                //logger.debug("sender {} source point will be {}", () -> s, () -> namedPipeLine.get(o.piperef).outQueue);
-                senders.add(s);
+            String key = uniqueKey(outputsSources, o.source);
+            // The output queue is reused too, as the source pipeline is part of the output's description
+            List<Sender> outputSenders = previous != null ? previous.outputsSources.get(key) : null;
+            if (outputSenders == null) {
+                outputSenders = new ArrayList<>(o.sender.size());
+                for (ConfigListener.ObjectWrapped<Sender> desc: o.sender) {
+                    BlockingQueue<Event> out = outputQueues.get(o.piperef);
+                    Sender s = desc.wrapped;
+                    s.setInQueue(out);
+                    //logger.debug("sender {} source point will be {}", () -> s, () -> namedPipeLine.get(o.piperef).outQueue);
+                    outputSenders.add(s);
+                }
             }
+            senders.addAll(outputSenders);
+            outputsSources.put(key, outputSenders);
             outputpipelines.add(o.piperef);
         }
         outputpipelines = Collections.unmodifiableSet(outputpipelines);
         senders = Collections.unmodifiableList(senders);
         newProperties.put(Properties.PROPSNAMES.SENDERS.toString(), senders);
+        newProperties.put(Properties.PROPSNAMES.OUTPUTSOURCES.toString(), outputsSources);
 
         sources = conf.sources.entrySet().stream()
                         .map( e -> new AbstractMap.SimpleEntry<String, Source>(e.getKey(), e.getValue().source))
@@ -417,6 +476,18 @@ public class Configuration {
         return new Properties(newProperties);
     }
 
+    /**
+     * Identical inputs or outputs can be defined many times, so the key is suffixed with the occurrence number.
+     */
+    private static String uniqueKey(Map<String, ?> keys, String source) {
+        String key = source;
+        int occurrence = 1;
+        while (keys.containsKey(key)) {
+            key = source + "#" + occurrence++;
+        }
+        return key;
+    }
+
     private static final class LogHubClassloader extends URLClassLoader {
         public LogHubClassloader(URL[] urls) {
             super(urls);
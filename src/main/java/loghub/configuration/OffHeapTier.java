@@ -0,0 +1,150 @@
+package loghub.configuration;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import loghub.Helpers;
+
+/**
+ * A second level store for a cache, that keeps the values out of the garbage collected heap.
+ * <p>
+ * Values are serialized in a ring of direct buffers, written sequentially. When the ring is full, the oldest
+ * values are overwritten, so it's a FIFO bounded store. Only the keys and their position stay on heap.
+ *
+ * @author Fabrice Bacchella
+ *
+ * @param <K> the keys type
+ * @param <V> the values type
+ */
+final class OffHeapTier<K, V> {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    static final int MAXCHUNKSIZE = 64 * 1024 * 1024;
+
+    private final ByteBuffer[] chunks;
+    private final int chunkSize;
+    private final long capacity;
+    private final ClassLoader classLoader;
+    // The insertion order is the position order, so the oldest entries are at the head
+    private final LinkedHashMap<K, Long> index = new LinkedHashMap<>();
+    // The logical write position, only increasing
+    private long head = 0;
+
+    OffHeapTier(long capacity, ClassLoader classLoader) {
+        this.classLoader = classLoader;
+        this.chunkSize = (int) Math.min(MAXCHUNKSIZE, Math.max(1024, capacity));
+        int chunksCount = (int) ((capacity + chunkSize - 1) / chunkSize);
+        this.chunks = new ByteBuffer[chunksCount];
+        for (int i = 0; i < chunksCount; i++) {
+            chunks[i] = ByteBuffer.allocateDirect(chunkSize);
+        }
+        this.capacity = (long) chunksCount * chunkSize;
+    }
+
+    void put(K key, V value) {
+        byte[] content = serialize(value);
+        if (content == null || content.length + 4 > chunkSize) {
+            return;
+        }
+        synchronized (this) {
+            int recordSize = content.length + 4;
+            int offset = (int) (head % chunkSize);
+            if (offset + recordSize > chunkSize) {
+                // A record never crosses a chunk boundary
+                head += chunkSize - offset;
+                offset = 0;
+            }
+            long position = head;
+            head += recordSize;
+            // Forget the entries that will be overwritten
+            long lowest = head - capacity;
+            Iterator<Map.Entry<K, Long>> i = index.entrySet().iterator();
+            while (i.hasNext() && i.next().getValue() < lowest) {
+                i.remove();
+            }
+            index.remove(key);
+            index.put(key, position);
+            ByteBuffer chunk = chunks[(int) ((position / chunkSize) % chunks.length)].duplicate();
+            ((Buffer) chunk).position(offset);
+            chunk.putInt(content.length);
+            chunk.put(content);
+        }
+    }
+
+    V get(K key) {
+        byte[] content;
+        synchronized (this) {
+            Long position = index.get(key);
+            if (position == null) {
+                return null;
+            }
+            ByteBuffer chunk = chunks[(int) ((position / chunkSize) % chunks.length)].duplicate();
+            ((Buffer) chunk).position((int) (position % chunkSize));
+            content = new byte[chunk.getInt()];
+            chunk.get(content);
+        }
+        return deserialize(content);
+    }
+
+    synchronized void remove(K key) {
+        index.remove(key);
+    }
+
+    synchronized void clear() {
+        index.clear();
+    }
+
+    synchronized int size() {
+        return index.size();
+    }
+
+    long getCapacity() {
+        return capacity;
+    }
+
+    private byte[] serialize(V value) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(buffer)) {
+            oos.writeObject(value);
+        } catch (IOException e) {
+            logger.debug("Value not stored off heap: {}", () -> Helpers.resolveThrowableException(e));
+            return null;
+        }
+        return buffer.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private V deserialize(byte[] content) {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(content)) {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                try {
+                    return Class.forName(desc.getName(), false, classLoader);
+                } catch (ClassNotFoundException e) {
+                    return super.resolveClass(desc);
+                }
+            }
+        }) {
+            return (V) ois.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            logger.warn("Unreadable off heap value: {}", Helpers.resolveThrowableException(e));
+            logger.catching(Level.DEBUG, e);
+            return null;
+        }
+    }
+
+}
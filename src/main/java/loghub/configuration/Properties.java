@@ -1,15 +1,21 @@
 package loghub.configuration;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.NoSuchAlgorithmException;
 import java.security.URIParameter;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -23,10 +29,12 @@ import javax.net.ssl.SSLContext;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.LoggerContext;
 
 import groovy.lang.GroovyClassLoader;
 import io.netty.util.concurrent.Future;
+import loghub.AbstractBuilder;
 import loghub.DashboardHttpServer;
 import loghub.Event;
 import loghub.EventsRepository;
@@ -50,6 +58,8 @@ import loghub.zmq.ZMQSocketFactory;
 
 public class Properties extends HashMap<String, Object> {
 
+    private static final Logger logger = LogManager.getLogger();
+
     enum PROPSNAMES {
         CLASSLOADERNAME,
         NAMEDPIPELINES,
@@ -60,7 +70,11 @@ public class Properties extends HashMap<String, Object> {
         PIPELINES,
         RECEIVERS,
         SENDERS,
-        SOURCES;
+        SOURCES,
+        INPUTSOURCES,
+        RECEIVERSBUILDERS,
+        OUTPUTSOURCES,
+        PREVIOUS;
         @Override
         public String toString() {
             return "__" + super.toString();
@@ -82,6 +96,7 @@ public class Properties extends HashMap<String, Object> {
     public final Map<String, BlockingQueue<Event>> outputQueues;
     public final int queuesDepth;
     public final int maxSteps;
+    public final int drainSize;
     public final EventsRepository<Future<?>> repository;
     public final SSLContext ssl;
     public final javax.security.auth.login.Configuration jaasConfig;
@@ -92,10 +107,23 @@ public class Properties extends HashMap<String, Object> {
 
     public final Timer timer = new Timer("loghubtimer", true);
 
+    private final Queue<Runnable> stopActions = new ConcurrentLinkedQueue<>();
+
+    // The receivers and senders, keyed by their source text, used to find the unchanged ones when the configuration is reloaded
+    final Map<String, List<Receiver>> inputsSources;
+    final Map<String, List<Sender>> outputsSources;
+    // The builders of the receivers, as a stopped receiver can only be replaced by a new one
+    final Map<Receiver, AbstractBuilder<?>> receiversBuilders;
+    private final List<Receiver> receiversList;
+
     @SuppressWarnings("unchecked")
     public Properties(Map<String, Object> properties) {
-        Stats.reset();
-        Expression.clearCache();
+        // A reloaded configuration keeps the metrics, the compiled expressions and the events of the running one
+        Properties previous = (Properties) properties.remove(PROPSNAMES.PREVIOUS.toString());
+        if (previous == null) {
+            Stats.reset();
+            Expression.clearCache();
+        }
 
         ClassLoader cl = (ClassLoader) properties.remove(PROPSNAMES.CLASSLOADERNAME.toString());
         if (cl == null) {
@@ -115,10 +143,17 @@ public class Properties extends HashMap<String, Object> {
 
         pipelines = properties.containsKey(PROPSNAMES.PIPELINES.toString()) ? (Collection<Pipeline>) properties.remove(PROPSNAMES.PIPELINES.toString()) : Collections.emptyList();
 
-        receivers = properties.containsKey(PROPSNAMES.RECEIVERS.toString()) ? (Collection<Receiver>) properties.remove(PROPSNAMES.RECEIVERS.toString()) : Collections.emptyList();
+        receiversList = properties.containsKey(PROPSNAMES.RECEIVERS.toString()) ? new CopyOnWriteArrayList<>((Collection<Receiver>) properties.remove(PROPSNAMES.RECEIVERS.toString())) : new CopyOnWriteArrayList<>();
+        receivers = Collections.unmodifiableList(receiversList);
 
         senders = properties.containsKey(PROPSNAMES.SENDERS.toString()) ? (Collection<Sender>) properties.remove(PROPSNAMES.SENDERS.toString()) : Collections.emptyList();
 
+        inputsSources = properties.containsKey(PROPSNAMES.INPUTSOURCES.toString()) ? (Map<String, List<Receiver>>) properties.remove(PROPSNAMES.INPUTSOURCES.toString()) : Collections.emptyMap();
+
+        outputsSources = properties.containsKey(PROPSNAMES.OUTPUTSOURCES.toString()) ? (Map<String, List<Sender>>) properties.remove(PROPSNAMES.OUTPUTSOURCES.toString()) : Collections.emptyMap();
+
+        receiversBuilders = properties.containsKey(PROPSNAMES.RECEIVERSBUILDERS.toString()) ? (Map<Receiver, AbstractBuilder<?>>) properties.remove(PROPSNAMES.RECEIVERSBUILDERS.toString()) : Collections.emptyMap();
+
         groovyClassLoader = new GroovyClassLoader(cl);
 
         Map<String, Processor> _identifiedProcessors = new HashMap<String, Processor>();
@@ -137,7 +172,7 @@ public class Properties extends HashMap<String, Object> {
             formatters = Collections.emptyMap();
         }
 
-        cacheManager = new CacheManager(this);
+        cacheManager = new CacheManager(this, previous != null ? previous.cacheManager : null);
 
         if (properties.containsKey("numWorkers")) {
             numWorkers = (Integer) properties.remove("numWorkers");
@@ -151,6 +186,20 @@ public class Properties extends HashMap<String, Object> {
             maxSteps = 128;
         }
 
+        // The maximum number of events taken at once from a queue by the processing and sending threads
+        if (properties.containsKey("drainSize")) {
+            drainSize = (Integer) properties.remove("drainSize");
+            if (drainSize < 1) {
+                throw new ConfigException("drainSize must be positive");
+            }
+        } else {
+            drainSize = 32;
+        }
+
+        if (properties.containsKey("latencySampling")) {
+            Stats.setLatencySampling((Integer) properties.remove("latencySampling"));
+        }
+
         Map<String, Object> sslprops = properties.entrySet().stream().filter(i -> i.getKey().startsWith("ssl.")).collect(Collectors.toMap( i -> i.getKey().substring(4), j -> j.getValue()));
         if (! sslprops.isEmpty()) {
             ssl = ContextLoader.build(classloader, sslprops);
@@ -177,6 +226,13 @@ public class Properties extends HashMap<String, Object> {
         }
         jaasConfig = jc;
 
+        Path expressionsCache = properties.containsKey("expressionsCache") ? Paths.get((String) properties.remove("expressionsCache")) : null;
+        try {
+            Expression.setCacheDirectory(expressionsCache);
+        } catch (IOException e) {
+            throw new ConfigException("Unusable expressions cache " + expressionsCache + ": " + Helpers.resolveThrowableException(e), e);
+        }
+
         try {
             jmxServiceConfiguration = JmxService.configuration()
                             .setProperties(filterPrefix(properties, "jmx"))
@@ -206,10 +262,13 @@ public class Properties extends HashMap<String, Object> {
         mainQueue = properties.containsKey(PROPSNAMES.MAINQUEUE.toString()) ? (PriorityBlockingQueue) properties.remove(PROPSNAMES.MAINQUEUE.toString()) : new PriorityBlockingQueue();
         outputQueues = properties.containsKey(PROPSNAMES.OUTPUTQUEUE.toString()) ? (Map<String, BlockingQueue<Event>>) properties.remove(PROPSNAMES.OUTPUTQUEUE.toString()) : null;
 
-        Stats.waitingQueue(mainQueue::size);
-
-        // The keys are future
-        repository = new EventsRepository<Future<?>>(this);
+        if (previous == null) {
+            Stats.waitingQueue(mainQueue::size);
+            // The keys are future
+            repository = new EventsRepository<Future<?>>(this);
+        } else {
+            repository = previous.repository;
+        }
 
         super.putAll(properties);
     }
@@ -242,8 +301,9 @@ public class Properties extends HashMap<String, Object> {
      * @param name the name that will be given to the thread when running
      * @param task the task to execute in it's dedicated thread
      * @param period time in milliseconds between successive task executions.
+     * @return the timer task, that can be cancelled by its owner
      */
-    public void registerScheduledTask(String name, Runnable task, long period) {
+    public TimerTask registerScheduledTask(String name, Runnable task, long period) {
         TimerTask collector = new TimerTask () {
             public void run() {
                 ThreadBuilder.get()
@@ -254,6 +314,54 @@ public class Properties extends HashMap<String, Object> {
             }
         };
         timer.scheduleAtFixedRate(collector, period, period);
+        return collector;
+    }
+
+    /**
+     * Used by object to register actions that release what they started in their configuration, like
+     * scheduled tasks or shutdown hooks. They are run when this configuration is replaced by a reload
+     * or when it failed to start.
+     *
+     * @param action the action to run
+     */
+    public void registerStopAction(Runnable action) {
+        stopActions.add(action);
+    }
+
+    /**
+     * Build again a receiver of this configuration, using the same settings, and put it in place of the previous one.
+     * It's used to restart a stopped receiver, as a thread can't be started twice.
+     * @param stopped the stopped receiver
+     * @return the new receiver, not yet configured, or null if it can't be built again
+     */
+    public Receiver rebuildReceiver(Receiver stopped) {
+        AbstractBuilder<?> builder = receiversBuilders.get(stopped);
+        if (builder == null) {
+            return null;
+        }
+        Receiver rebuilt = (Receiver) builder.build();
+        rebuilt.setOutQueue(mainQueue);
+        rebuilt.setPipeline(stopped.getPipeline());
+        receiversBuilders.remove(stopped);
+        receiversBuilders.put(rebuilt, builder);
+        receiversList.replaceAll(r -> r == stopped ? rebuilt : r);
+        inputsSources.values().forEach(l -> l.replaceAll(r -> r == stopped ? rebuilt : r));
+        return rebuilt;
+    }
+
+    /**
+     * Run the registered stop actions, once.
+     */
+    public void runStopActions() {
+        Runnable action;
+        while ((action = stopActions.poll()) != null) {
+            try {
+                action.run();
+            } catch (RuntimeException ex) {
+                logger.error("Failed stop action: {}", Helpers.resolveThrowableException(ex));
+                logger.catching(Level.DEBUG, ex);
+            }
+        }
     }
 
     @Override
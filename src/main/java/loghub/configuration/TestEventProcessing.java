@@ -114,7 +114,7 @@ public class TestEventProcessing {
 
             Helpers.parallelStartProcessor(props);
 
-            Thread t = new EventsProcessor(props.mainQueue, props.outputQueues, props.namedPipeLine, props.maxSteps, props.repository);
+            Thread t = new EventsProcessor(props.mainQueue, props.outputQueues, props.namedPipeLine, props.maxSteps, props.drainSize, props.repository);
             t.start();
 
             ObjectMapper mapper = new ObjectMapper(factory);
@@ -32,7 +32,7 @@ public abstract class Encoder {
     }
 
     public boolean configure(Properties properties, Sender sender) {
-        if (getClass().getAnnotation(CanBatch.class) == null && sender.isWithBatch()) {
+        if (getClass().getAnnotation(CanBatch.class) == null && sender.isBatchEncoded()) {
             logger.error("This encoder don't handle batches");
             return false;
         } else {
@@ -1,20 +1,22 @@
 package loghub.encoders;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
-import java.util.zip.GZIPOutputStream;
 
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
 import loghub.BuilderClass;
+import loghub.DeflateCodec;
 import loghub.Event;
 import lombok.Setter;
 
@@ -76,38 +78,51 @@ public class Gelf extends Encoder {
 
     @Override
     public byte[] encode(Event event) throws EncodeException {
+        ByteBuf jsonBuffer = PooledByteBufAllocator.DEFAULT.heapBuffer();
+        ByteBuf compressedBuffer = null;
         try {
-            Map<String, Object> gelfcontent = new HashMap<>(event.size() + 5);
-            gelfcontent.put("version", "1.1");
-            gelfcontent.put("host", hostname);
-            if (event.containsKey(shortmessagefield)) {
-                gelfcontent.put("short_message", event.remove(shortmessagefield));
-            }
-            if (fullmessagefield != null && event.containsKey(fullmessagefield)) {
-                gelfcontent.put("full_message", event.remove(fullmessagefield));
+            // The GELF message is directly written, without an intermediate map
+            try (JsonGenerator gen = factory.createGenerator((OutputStream) new ByteBufOutputStream(jsonBuffer))) {
+                gen.setCodec(json.get());
+                gen.writeStartObject();
+                gen.writeStringField("version", "1.1");
+                gen.writeStringField("host", hostname);
+                if (event.containsKey(shortmessagefield)) {
+                    gen.writeObjectField("short_message", event.get(shortmessagefield));
+                }
+                if (fullmessagefield != null && event.containsKey(fullmessagefield)) {
+                    gen.writeObjectField("full_message", event.get(fullmessagefield));
+                }
+                gen.writeNumberField("timestamp", event.getTimestamp().getTime() / 1000.0);
+                for (Map.Entry<String, Object> e: event.entrySet()) {
+                    String key = e.getKey();
+                    if (! "id".equals(key) && ! key.equals(shortmessagefield) && ! key.equals(fullmessagefield) && fieldpredicate.test(key)) {
+                        gen.writeObjectField("_" + key, e.getValue());
+                    }
+                }
+                gen.writeEndObject();
             }
-            gelfcontent.put("timestamp", event.getTimestamp().getTime() / 1000.0);
-            event.entrySet().stream()
-            .filter( i ->  ! "id".equals(i.getKey()))
-            .filter( i -> fieldpredicate.test(i.getKey()))
-            .forEach( i -> gelfcontent.put( "_" + i.getKey(), i.getValue()));
-            byte[] buffer1 = json.get().writeValueAsBytes(gelfcontent);
-            byte[] buffer2;
+            ByteBuf content;
             if (compressed) {
-                try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                     GZIPOutputStream stream = new GZIPOutputStream(bos)) {
-                    stream.write(buffer1);
-                    stream.finish();
-                    buffer2 = bos.toByteArray();
-                }
-            } else if (stream) {
-                buffer2 = Arrays.copyOf(buffer1, buffer1.length+1);
+                compressedBuffer = PooledByteBufAllocator.DEFAULT.heapBuffer(jsonBuffer.readableBytes());
+                DeflateCodec.gzip(jsonBuffer, compressedBuffer);
+                content = compressedBuffer;
             } else {
-                buffer2 = buffer1;
+                if (stream) {
+                    jsonBuffer.writeByte(0);
+                }
+                content = jsonBuffer;
             }
-            return buffer2;
+            byte[] buffer = new byte[content.readableBytes()];
+            content.readBytes(buffer);
+            return buffer;
         } catch (IOException e) {
             throw new EncodeException("Failed to encode to GELF", e);
+        } finally {
+            jsonBuffer.release();
+            if (compressedBuffer != null) {
+                compressedBuffer.release();
+            }
         }
     }
 
@@ -0,0 +1,110 @@
+package loghub.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of durations, in nanoseconds, with a fixed memory usage.
+ * <p>
+ * Values are stored in log-linear buckets, like HdrHistogram does: each power of two is split in 8 linear
+ * sub-buckets, so any value is known with a relative error less than 12.5%, from 1 ns to many years.
+ *
+ * @author Fabrice Bacchella
+ *
+ */
+public final class LatencyHistogram {
+
+    // Values below LINEAR are stored exactly
+    private static final int LINEAR = 16;
+    private static final int SUBBITS = 3;
+    private static final int SUBBUCKETS = 1 << SUBBITS;
+    private static final int FIRSTEXPONENT = 4;
+    private static final int BUCKETS = LINEAR + (63 - FIRSTEXPONENT) * SUBBUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long duration) {
+        long value = Math.max(0, duration);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    static int bucket(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        } else {
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUBBITS)) & (SUBBUCKETS - 1);
+            return LINEAR + (exponent - FIRSTEXPONENT) * SUBBUCKETS + sub;
+        }
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        } else {
+            int exponent = (bucket - LINEAR) / SUBBUCKETS + FIRSTEXPONENT;
+            int sub = (bucket - LINEAR) % SUBBUCKETS;
+            return (long) (SUBBUCKETS + sub) << (exponent - SUBBITS);
+        }
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the sum of all the recorded values
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+
+    /**
+     * Return an estimation of the value at the given percentile, the middle of the bucket that
+     * holds it.
+     * @param percentile the percentile, between 0 and 100
+     * @return the estimated value
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100.0, Math.max(0, percentile)) / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                long lower = lowerBound(i);
+                long upper = i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+                return Math.min(lower + (upper - lower) / 2, getMax());
+            }
+        }
+        return getMax();
+    }
+
+}
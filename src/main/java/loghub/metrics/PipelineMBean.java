@@ -1,6 +1,8 @@
 package loghub.metrics;
 
 import java.util.Hashtable;
+import java.util.Locale;
+import java.util.Optional;
 
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.MBeanRegistrationException;
@@ -23,6 +25,7 @@ public interface PipelineMBean {
     public long getCount();
     public double getMedian();
     public double get95per();
+    public String[] getHotProcessors();
 
     public class Implementation extends StandardMBean implements PipelineMBean {
 
@@ -95,5 +98,15 @@ public interface PipelineMBean {
         public double get95per() {
             return timer.getSnapshot().get95thPercentile() / 1000_000_000;
         }
+
+        @Override
+        public String[] getHotProcessors() {
+            return Stats.getHotProcessors(name, 10).stream().map(e -> {
+                LatencyHistogram latency = e.getValue().getLatency();
+                return String.format(Locale.US, "%s/%s: %d samples, mean %.3fms, median %.3fms, 99%% %.3fms",
+                                     e.getKey(), Optional.ofNullable(e.getValue().getId()).orElse(e.getValue().getName()), latency.getCount(), latency.getMean() / 1e6,
+                                     latency.getPercentile(50) / 1e6, latency.getPercentile(99) / 1e6);
+            }).toArray(String[]::new);
+        }
     }
 }
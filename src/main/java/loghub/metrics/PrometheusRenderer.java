@@ -0,0 +1,326 @@
+package loghub.metrics;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.cache.Cache;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import io.netty.buffer.ByteBuf;
+import loghub.receivers.Receiver;
+import loghub.senders.Sender;
+
+/**
+ * Render all the metrics in the Prometheus text exposition format.
+ * <p>
+ * The metrics families and the labels are resolved once, when the set of metrics change, and kept as
+ * bytes. So a scrape only read the values and write them directly in the given buffer.
+ * <p>
+ * Metrics for a receiver, a sender, a pipeline or a cache are labeled with its name, the aggregated metrics
+ * have no label. Meters are counters, named with a <code>_total</code> suffix, counters are gauges, timers
+ * and histograms are summaries. Durations are in seconds.
+ *
+ * @author Fabrice Bacchella
+ *
+ */
+public final class PrometheusRenderer {
+
+    private static final byte[] QUANTILELABEL = ",quantile=\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[][] QUANTILES = {
+            "0.5\"}".getBytes(StandardCharsets.US_ASCII),
+            "0.75\"}".getBytes(StandardCharsets.US_ASCII),
+            "0.95\"}".getBytes(StandardCharsets.US_ASCII),
+            "0.99\"}".getBytes(StandardCharsets.US_ASCII),
+    };
+    private static final byte[] COUNTSUFFIX = "_count".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NAN = "NaN".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] POSINF = "+Inf".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NEGINF = "-Inf".getBytes(StandardCharsets.US_ASCII);
+    private static final long[] POWERS = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L};
+    private static final int DECIMALS = 9;
+
+    private static class Sample {
+        private final byte[] labels;
+        private final Metric metric;
+        private Sample(byte[] labels, Metric metric) {
+            this.labels = labels;
+            this.metric = metric;
+        }
+    }
+
+    private static class Family {
+        private final byte[] name;
+        private final byte[] header;
+        // Timers values are in nanoseconds
+        private final double scale;
+        private final List<Sample> samples = new ArrayList<>();
+        private Family(String name, String type, double scale) {
+            this.name = name.getBytes(StandardCharsets.US_ASCII);
+            this.header = String.format("# TYPE %s %s\n", name, type).getBytes(StandardCharsets.US_ASCII);
+            this.scale = scale;
+        }
+    }
+
+    private static final ThreadLocal<byte[]> digits = ThreadLocal.withInitial(() -> new byte[20]);
+
+    private static int generation = -1;
+    private static Family[] families = new Family[0];
+
+    private PrometheusRenderer() {
+    }
+
+    /**
+     * Write the current values of all the metrics in the buffer
+     * @param out the destination buffer
+     */
+    public static void render(ByteBuf out) {
+        for (Family f: getFamilies()) {
+            out.writeBytes(f.header);
+            for (Sample s: f.samples) {
+                if (s.metric instanceof Sampling) {
+                    Snapshot snap = ((Sampling) s.metric).getSnapshot();
+                    writeQuantile(out, f, s, 0, snap.getMedian());
+                    writeQuantile(out, f, s, 1, snap.get75thPercentile());
+                    writeQuantile(out, f, s, 2, snap.get95thPercentile());
+                    writeQuantile(out, f, s, 3, snap.get99thPercentile());
+                    out.writeBytes(f.name).writeBytes(COUNTSUFFIX);
+                    writeLabels(out, s);
+                    writeLong(out, ((Sampling) s.metric).getCount());
+                } else {
+                    out.writeBytes(f.name);
+                    writeLabels(out, s);
+                    writeValue(out, s.metric);
+                }
+                out.writeByte('\n');
+            }
+        }
+    }
+
+    /**
+     * A common view of timers and histograms
+     */
+    private interface Sampling extends Metric {
+        Snapshot getSnapshot();
+        long getCount();
+    }
+
+    private static Family[] getFamilies() {
+        synchronized (PrometheusRenderer.class) {
+            int current = Stats.generation.get();
+            if (current != generation) {
+                families = index();
+                generation = current;
+            }
+            return families;
+        }
+    }
+
+    private static Family[] index() {
+        Map<String, Family> found = new TreeMap<>();
+        for (Map.Entry<Object, Map<String, Metric>> e: Stats.metricsCache.entrySet()) {
+            Object key = e.getKey();
+            String kind = getKind(key);
+            if (kind == null) {
+                continue;
+            }
+            byte[] labels = getLabels(key);
+            for (Map.Entry<String, Metric> m: e.getValue().entrySet()) {
+                Metric metric = m.getValue();
+                String name = sanitize("loghub_" + kind + m.getKey());
+                String type;
+                double scale = 1.0;
+                if (metric instanceof Meter) {
+                    name = name + "_total";
+                    type = "counter";
+                } else if (metric instanceof Timer) {
+                    Timer t = (Timer) metric;
+                    metric = new Sampling() {
+                        @Override
+                        public Snapshot getSnapshot() {
+                            return t.getSnapshot();
+                        }
+                        @Override
+                        public long getCount() {
+                            return t.getCount();
+                        }
+                    };
+                    name = name + "_seconds";
+                    type = "summary";
+                    scale = 1e-9;
+                } else if (metric instanceof Histogram) {
+                    Histogram h = (Histogram) metric;
+                    metric = new Sampling() {
+                        @Override
+                        public Snapshot getSnapshot() {
+                            return h.getSnapshot();
+                        }
+                        @Override
+                        public long getCount() {
+                            return h.getCount();
+                        }
+                    };
+                    type = "summary";
+                } else if (metric instanceof Counter || metric instanceof Gauge) {
+                    type = "gauge";
+                } else {
+                    continue;
+                }
+                double familyScale = scale;
+                found.computeIfAbsent(name, k -> new Family(k, type, familyScale)).samples.add(new Sample(labels, metric));
+            }
+        }
+        return found.values().toArray(new Family[found.size()]);
+    }
+
+    private static String getKind(Object key) {
+        if (key instanceof Receiver || key == Receiver.class) {
+            return "receivers_";
+        } else if (key instanceof Sender || key == Sender.class) {
+            return "senders_";
+        } else if (key instanceof String || key == String.class) {
+            return "pipelines_";
+        } else if (key instanceof Cache) {
+            return "caches_";
+        } else if (key == Stats.class) {
+            return "global_";
+        } else if (key == Object.class) {
+            return "";
+        } else {
+            return null;
+        }
+    }
+
+    private static byte[] getLabels(Object key) {
+        String label;
+        if (key instanceof Receiver) {
+            label = "receiver=\"" + escape(((Receiver) key).getReceiverName()) + "\"";
+        } else if (key instanceof Sender) {
+            label = "sender=\"" + escape(((Sender) key).getSenderName()) + "\"";
+        } else if (key instanceof String) {
+            label = "pipeline=\"" + escape((String) key) + "\"";
+        } else if (key instanceof Cache) {
+            label = "cache=\"" + escape(((Cache<?, ?>) key).getName()) + "\"";
+        } else {
+            label = "";
+        }
+        return label.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String sanitize(String name) {
+        StringBuilder buffer = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == ':') {
+                buffer.append(c);
+            } else {
+                buffer.append('_');
+            }
+        }
+        return buffer.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static void writeLabels(ByteBuf out, Sample s) {
+        if (s.labels.length > 0) {
+            out.writeByte('{').writeBytes(s.labels).writeByte('}');
+        }
+        out.writeByte(' ');
+    }
+
+    private static void writeQuantile(ByteBuf out, Family f, Sample s, int quantile, double value) {
+        out.writeBytes(f.name).writeByte('{');
+        if (s.labels.length > 0) {
+            out.writeBytes(s.labels).writeBytes(QUANTILELABEL);
+        } else {
+            // Skip the comma
+            out.writeBytes(QUANTILELABEL, 1, QUANTILELABEL.length - 1);
+        }
+        out.writeBytes(QUANTILES[quantile]).writeByte(' ');
+        writeDouble(out, value * f.scale);
+        out.writeByte('\n');
+    }
+
+    private static void writeValue(ByteBuf out, Metric metric) {
+        if (metric instanceof Meter) {
+            writeLong(out, ((Meter) metric).getCount());
+        } else if (metric instanceof Counter) {
+            writeLong(out, ((Counter) metric).getCount());
+        } else {
+            Object value = ((Gauge<?>) metric).getValue();
+            if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                writeLong(out, ((Number) value).longValue());
+            } else if (value instanceof Number) {
+                writeDouble(out, ((Number) value).doubleValue());
+            } else {
+                out.writeBytes(NAN);
+            }
+        }
+    }
+
+    static void writeLong(ByteBuf out, long value) {
+        if (value == Long.MIN_VALUE) {
+            out.writeCharSequence(Long.toString(value), StandardCharsets.US_ASCII);
+            return;
+        }
+        byte[] buffer = digits.get();
+        long v = Math.abs(value);
+        int pos = buffer.length;
+        do {
+            buffer[--pos] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        if (value < 0) {
+            buffer[--pos] = '-';
+        }
+        out.writeBytes(buffer, pos, buffer.length - pos);
+    }
+
+    /**
+     * Write a double with at most 9 decimals, without allocation for usual values
+     */
+    static void writeDouble(ByteBuf out, double value) {
+        if (Double.isNaN(value)) {
+            out.writeBytes(NAN);
+        } else if (Double.isInfinite(value)) {
+            out.writeBytes(value > 0 ? POSINF : NEGINF);
+        } else if (Math.abs(value) >= 1e9) {
+            // Too big for the fixed point notation, not a common case
+            out.writeCharSequence(Double.toString(value), StandardCharsets.US_ASCII);
+        } else {
+            long fixed = Math.round(Math.abs(value) * POWERS[DECIMALS]);
+            long integer = fixed / POWERS[DECIMALS];
+            long fraction = fixed % POWERS[DECIMALS];
+            if (value < 0 && fixed != 0) {
+                out.writeByte('-');
+            }
+            writeLong(out, integer);
+            if (fraction != 0) {
+                out.writeByte('.');
+                int decimals = DECIMALS;
+                // Remove trailing zeros
+                while (fraction % 10 == 0) {
+                    fraction /= 10;
+                    decimals--;
+                }
+                for (int i = decimals - 1; i > 0 && fraction < POWERS[i]; i--) {
+                    out.writeByte('0');
+                }
+                writeLong(out, fraction);
+            }
+        }
+    }
+
+}
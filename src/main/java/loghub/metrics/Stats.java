@@ -1,25 +1,37 @@
 package loghub.metrics;
 
+import java.util.AbstractMap;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import javax.cache.Cache;
+
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
 import com.codahale.metrics.Timer;
 import com.codahale.metrics.Timer.Context;
 
 import loghub.ProcessingException;
+import loghub.Processor;
 import loghub.receivers.Receiver;
 import loghub.senders.Sender;
 
@@ -57,8 +69,15 @@ public final class Stats {
     static final String METRIC_PIPELINE_PAUSED = "paused";
     static final String METRIC_PIPELINE_PAUSED_COUNT = "pausedCount";
 
+    static final String METRIC_CACHE_HITS = "hits";
+    static final String METRIC_CACHE_MISSES = "misses";
+    static final String METRIC_CACHE_EVICTIONS = "evictions";
+    static final String METRIC_CACHE_SIZE = "size";
+
     // A metrics cache, as calculating a metric name can be costly.
-    private final static Map<Object, Map<String, Metric>> metricsCache = new ConcurrentHashMap<>(3);
+    final static Map<Object, Map<String, Metric>> metricsCache = new ConcurrentHashMap<>(3);
+    // Incremented each time a metric is added or removed
+    final static AtomicInteger generation = new AtomicInteger();
 
     private final static Queue<ProcessingException> processorExceptions = new LinkedBlockingQueue<>(100);
     private final static Queue<Throwable> exceptions = new LinkedBlockingQueue<>(100);
@@ -66,6 +85,10 @@ public final class Stats {
     private final static Queue<String> senderMessages = new LinkedBlockingQueue<>(100);
     private final static Queue<String> receiverMessages = new LinkedBlockingQueue<>(100);
 
+    // The processors with a sampled latency, for each pipeline
+    private final static Map<String, Set<Processor>> processorsLatency = new ConcurrentHashMap<>();
+    private static volatile int latencySampling = 64;
+
     static MetricRegistry metricsRegistry = new MetricRegistry();
 
     public enum PipelineStat {
@@ -85,6 +108,8 @@ public final class Stats {
         JmxService.stopMetrics();
 
         metricsCache.clear();
+        processorsLatency.clear();
+        generation.incrementAndGet();
 
         Stream<Queue<?>> qs = Stream.of(processorExceptions, exceptions, decodeMessage, senderMessages, receiverMessages);
         qs.forEach(q -> {
@@ -104,8 +129,13 @@ public final class Stats {
 
     @SuppressWarnings("unchecked")
     public static <T extends Metric> T register(Object key, String name, T newMetric) {
-        metricsRegistry.register(getMetricName(key, name), newMetric);
-        return (T) metricsCache.computeIfAbsent(key, k -> new ConcurrentHashMap<>()).put(name, newMetric);
+        String metricName = getMetricName(key, name);
+        // When the configuration is reloaded, a new component might use the name of a previous one
+        metricsRegistry.remove(metricName);
+        metricsRegistry.register(metricName, newMetric);
+        T previous = (T) metricsCache.computeIfAbsent(key, k -> new ConcurrentHashMap<>()).put(name, newMetric);
+        generation.incrementAndGet();
+        return previous;
     }
 
     public static <T extends Metric> T getMetric(Class<T> metricClass, String name) {
@@ -114,7 +144,13 @@ public final class Stats {
 
     @SuppressWarnings("unchecked")
     public static <T extends Metric> T getMetric(Class<T> metricClass, Object key, String name) {
-        return (T) metricsCache.computeIfAbsent(key, k -> new ConcurrentHashMap<>()).computeIfAbsent(name, k -> Stats.createMetric(metricClass, key, name));
+        Map<String, Metric> metrics = metricsCache.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+        Metric metric = metrics.get(name);
+        if (metric == null) {
+            metric = metrics.computeIfAbsent(name, k -> Stats.createMetric(metricClass, key, name));
+            generation.incrementAndGet();
+        }
+        return (T) metric;
     }
 
     @SuppressWarnings("unchecked")
@@ -149,6 +185,10 @@ public final class Stats {
             buffer.append("Pipelines.");
             buffer.append(key);
             buffer.append(".");
+        } else if (key instanceof Cache) {
+            buffer.append("Caches.");
+            buffer.append(((Cache<?, ?>) key).getName());
+            buffer.append(".");
         } else if (key == Receiver.class) {
             buffer.append("Receivers.");
         } else if (key == Sender.class) {
@@ -273,6 +313,58 @@ public final class Stats {
         getMetric(Timer.class, name, METRIC_PIPELINE_TIMER).update(duration, tu);
     }
 
+    /**
+     * Set the sampling rate of the processors latency, one event every <code>rate</code> events is timed.
+     * @param rate the sampling rate, 0 disable sampling
+     */
+    public static void setLatencySampling(int rate) {
+        latencySampling = Math.max(0, rate);
+    }
+
+    /**
+     * @return true if the processing duration of the current event should be measured
+     */
+    public static boolean sampleLatency() {
+        int rate = latencySampling;
+        return rate == 1 || (rate > 1 && ThreadLocalRandom.current().nextInt(rate) == 0);
+    }
+
+    /**
+     * Record a sampled processing duration. It's charged to the configured processor that owns <code>p</code>, so the
+     * processors created for each event are not retained.
+     * @param pipeline the pipeline of the event
+     * @param p the processor that was executed
+     * @param duration the duration, in nanoseconds
+     */
+    public static void processorLatency(String pipeline, Processor p, long duration) {
+        Processor owner = p.getLatencyOwner();
+        owner.getLatency().record(duration);
+        processorsLatency.computeIfAbsent(pipeline != null ? pipeline : "", k -> ConcurrentHashMap.newKeySet()).add(owner);
+    }
+
+    /**
+     * Forget the sampled processors, used when the pipelines are replaced.
+     */
+    public static void resetProcessorsLatency() {
+        processorsLatency.clear();
+    }
+
+    /**
+     * Return the processors that used the most time, as pairs of pipeline name and processor
+     * @param pipeline the pipeline to look at, null for all the pipelines
+     * @param count the maximum number of processors to return
+     * @return the processors, the most expensive first
+     */
+    public static List<Map.Entry<String, Processor>> getHotProcessors(String pipeline, int count) {
+        return processorsLatency.entrySet()
+                                .stream()
+                                .filter(e -> pipeline == null || pipeline.equals(e.getKey()))
+                                .flatMap(e -> e.getValue().stream().map(p -> new AbstractMap.SimpleImmutableEntry<>(e.getKey(), p)))
+                                .sorted(Comparator.comparingLong((Map.Entry<String, Processor> e) -> e.getValue().getLatency().getTotal()).reversed())
+                                .limit(count)
+                                .collect(Collectors.toList());
+    }
+
     public static void pauseEvent(String name) {
         getMetric(Counter.class, String.class, METRIC_PIPELINE_PAUSED_COUNT).inc();
         getMetric(Counter.class, name, METRIC_PIPELINE_PAUSED_COUNT).inc();
@@ -339,6 +431,42 @@ public final class Stats {
         Stats.register(s, Stats.METRIC_SENDER_QUEUESIZE, queueGauge);
     }
 
+    /******************\
+     * Caches metrics *
+    \******************/
+
+    public static void cacheStatistics(Cache<?, ?> cache, LongSupplier hits, LongSupplier misses, LongSupplier evictions, LongSupplier size) {
+        Stats.register(cache, METRIC_CACHE_HITS, (Gauge<Long>) hits::getAsLong);
+        Stats.register(cache, METRIC_CACHE_MISSES, (Gauge<Long>) misses::getAsLong);
+        Stats.register(cache, METRIC_CACHE_EVICTIONS, (Gauge<Long>) evictions::getAsLong);
+        Stats.register(cache, METRIC_CACHE_SIZE, (Gauge<Long>) size::getAsLong);
+    }
+
+    /**
+     * Remove the metrics of a cache, when it's destroyed.
+     * @param cache the cache
+     */
+    public static void removeCacheStatistics(Cache<?, ?> cache) {
+        Map<String, Metric> metrics = metricsCache.remove(cache);
+        if (metrics != null) {
+            metrics.keySet().forEach(name -> metricsRegistry.remove(getMetricName(cache, name)));
+            generation.incrementAndGet();
+        }
+    }
+
+    public static long getCacheHits(Cache<?, ?> cache) {
+        return getCacheMetric(cache, METRIC_CACHE_HITS);
+    }
+
+    public static long getCacheMisses(Cache<?, ?> cache) {
+        return getCacheMetric(cache, METRIC_CACHE_MISSES);
+    }
+
+    private static long getCacheMetric(Cache<?, ?> cache, String name) {
+        Metric metric = metricsCache.getOrDefault(cache, Collections.emptyMap()).get(name);
+        return metric != null ? (Long) ((Gauge<?>) metric).getValue() : 0;
+    }
+
     /******************\
      * Getting queues *
     \******************/
@@ -396,6 +524,13 @@ public final class Stats {
         return getMetric(Timer.class, Stats.class, Stats.METRIC_ALL_TIMER).getCount();
     }
 
+    /**
+     * @return the distribution of the events life time, from creation to end, in nanoseconds
+     */
+    public static Snapshot getLifeTime() {
+        return getMetric(Timer.class, Stats.class, Stats.METRIC_ALL_TIMER).getSnapshot();
+    }
+
     public static long getDropped() {
         return getMetric(Meter.class, Stats.class, Stats.METRIC_PIPELINE_DROPPED).getCount();
     }
@@ -0,0 +1,105 @@
+package loghub.netty.http;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.CharsetUtil;
+import loghub.Helpers;
+import loghub.Processor;
+import loghub.metrics.LatencyHistogram;
+import loghub.metrics.Stats;
+import lombok.Data;
+
+/**
+ * List the processors that used the most time, from the sampled latencies. Durations are in seconds.
+ * <ul>
+ * <li><code>/hotprocessors</code> for all the pipelines</li>
+ * <li><code>/hotprocessors/<i>pipeline</i></code> for a single pipeline</li>
+ * </ul>
+ * @author Fabrice Bacchella
+ *
+ */
+@ContentType("application/json; charset=utf-8")
+@NoCache
+public class HotProcessors extends HttpRequestProcessing implements ChannelHandler {
+
+    private static final JsonFactory factory = new JsonFactory();
+    private static final ThreadLocal<ObjectMapper> json = ThreadLocal.withInitial(() -> new ObjectMapper(factory));
+
+    private static final Pattern partsExtractor = Pattern.compile("/hotprocessors(/(?<pipeline>[^/?]+))?/?");
+
+    private static final int MAXPROCESSORS = 20;
+
+    @Data
+    private static class ProcessorEntry {
+        private final String pipeline;
+        private final String processor;
+        private final long samples;
+        private final double total;
+        private final double mean;
+        private final double median;
+        private final double p99;
+        private final double max;
+    }
+
+    @Override
+    public boolean acceptRequest(HttpRequest request) {
+        String uri = request.uri();
+        return uri.startsWith("/hotprocessors");
+    }
+
+    @Override
+    protected void processRequest(FullHttpRequest request,
+                                  ChannelHandlerContext ctx)
+                                                  throws HttpRequestFailure {
+        try {
+            Matcher m = partsExtractor.matcher(URLDecoder.decode(request.uri(), "UTF-8"));
+            if (! m.matches()) {
+                throw new HttpRequestFailure(HttpResponseStatus.BAD_REQUEST, String.format("Unsupported path: %s", request.uri()));
+            }
+            List<ProcessorEntry> entries = Stats.getHotProcessors(m.group("pipeline"), MAXPROCESSORS)
+                                                .stream()
+                                                .map(this::toEntry)
+                                                .collect(Collectors.toList());
+            String serialized = json.get().writeValueAsString(entries);
+            ByteBuf content = Unpooled.copiedBuffer(serialized + "\r\n", CharsetUtil.UTF_8);
+            writeResponse(ctx, request, content, content.readableBytes());
+        } catch (UnsupportedEncodingException ex) {
+            throw new HttpRequestFailure(HttpResponseStatus.BAD_REQUEST, String.format("malformed path %s: %s", request.uri(), ex.getMessage()));
+        } catch (JsonProcessingException e) {
+            logger.error("Unable to handle json response", e);
+            throw new HttpRequestFailure(HttpResponseStatus.INTERNAL_SERVER_ERROR, String.format("Unable to handle json response: %s", Helpers.resolveThrowableException(e)));
+        }
+    }
+
+    private ProcessorEntry toEntry(Map.Entry<String, Processor> e) {
+        Processor p = e.getValue();
+        LatencyHistogram latency = p.getLatency();
+        return new ProcessorEntry(e.getKey(),
+                                  Optional.ofNullable(p.getId()).orElse(p.getName()),
+                                  latency.getCount(),
+                                  latency.getTotal() / 1e9,
+                                  latency.getMean() / 1e9,
+                                  latency.getPercentile(50) / 1e9,
+                                  latency.getPercentile(99) / 1e9,
+                                  latency.getMax() / 1e9);
+    }
+
+}
@@ -0,0 +1,45 @@
+package loghub.netty.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpRequest;
+import loghub.metrics.PrometheusRenderer;
+
+/**
+ * Expose all the metrics in the Prometheus text format, on <code>/metrics</code>.
+ * <p>
+ * The response is rendered in a pooled buffer, sized from the previous scrape.
+ *
+ * @author Fabrice Bacchella
+ *
+ */
+@ContentType("text/plain; version=0.0.4; charset=utf-8")
+@NoCache
+public class PrometheusMetrics extends HttpRequestProcessing implements ChannelHandler {
+
+    private volatile int lastSize = 16 * 1024;
+
+    @Override
+    public boolean acceptRequest(HttpRequest request) {
+        String uri = request.uri();
+        return "/metrics".equals(uri) || uri.startsWith("/metrics?");
+    }
+
+    @Override
+    protected void processRequest(FullHttpRequest request,
+                                  ChannelHandlerContext ctx)
+                                                  throws HttpRequestFailure {
+        ByteBuf content = ctx.alloc().buffer(lastSize);
+        try {
+            PrometheusRenderer.render(content);
+        } catch (RuntimeException e) {
+            content.release();
+            throw e;
+        }
+        lastSize = content.readableBytes();
+        writeResponse(ctx, request, content, content.readableBytes());
+    }
+
+}
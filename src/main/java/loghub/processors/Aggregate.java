@@ -0,0 +1,355 @@
+package loghub.processors;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+
+import loghub.ConnectionContext;
+import loghub.Event;
+import loghub.Expression;
+import loghub.Expression.ExpressionException;
+import loghub.Helpers;
+import loghub.Pipeline;
+import loghub.PriorityBlockingQueue;
+import loghub.Processor;
+import loghub.ProcessorException;
+import loghub.ThreadBuilder;
+import loghub.configuration.Properties;
+import loghub.processors.AggregationStore.Accumulator;
+
+/**
+ * Aggregate numerical fields of events sharing the same key over time windows.
+ * <p>
+ * Unlike {@link Merge}, the events are not kept. Only primitive accumulators are stored, in a
+ * {@link AggregationStore} sharded by key. When a window closes, a new event is sent to the
+ * destination pipeline with the aggregated values, the key in the field <code>keyField</code>
+ * and the window start as the timestamp.
+ * <p>
+ * If <code>slide</code> is smaller than <code>window</code>, windows are sliding and a new
+ * one is emitted every <code>slide</code> seconds. If a <code>checkpoint</code> file is given, the state
+ * is saved at regular interval and reloaded on start.
+ *
+ * @author Fabrice Bacchella
+ *
+ */
+public class Aggregate extends Processor {
+
+    private String indexSource;
+    private Expression index;
+    private Map<String, Object> aggregations = Collections.emptyMap();
+    private int window = 60;
+    private int slide = -1;
+    private int shards = -1;
+    private String destination;
+    private String keyField = "key";
+    private boolean forward = false;
+    private String checkpoint = null;
+    private int checkpointInterval = 60;
+
+    private long slideMillis;
+    private Pipeline pipeDestination;
+    private PriorityBlockingQueue mainQueue;
+    private AggregationStore store;
+    private Path checkpointPath = null;
+    private TimerTask flushTask = null;
+    private TimerTask checkpointTask = null;
+    private Thread checkpointHook = null;
+
+    @Override
+    public boolean configure(Properties properties) {
+        if (indexSource == null) {
+            logger.error("No index defined");
+            return false;
+        }
+        try {
+            index = new Expression(indexSource, properties.groovyClassLoader, properties.formatters);
+        } catch (ExpressionException ex) {
+            Expression.logError(ex, indexSource, logger);
+            return false;
+        }
+        if (! properties.namedPipeLine.containsKey(destination)) {
+            logger.error("invalid destination for aggregated events: {}", destination);
+            return false;
+        }
+        pipeDestination = properties.namedPipeLine.get(destination);
+        mainQueue = properties.mainQueue;
+        Map<String, Accumulator> accumulators = new LinkedHashMap<>(aggregations.size());
+        for (Map.Entry<String, Object> e: aggregations.entrySet()) {
+            try {
+                accumulators.put(e.getKey(), Accumulator.valueOf(e.getValue().toString().toUpperCase(Locale.ENGLISH)));
+            } catch (IllegalArgumentException | NullPointerException ex) {
+                logger.error("Unknown aggregation {} for field {}", e.getValue(), e.getKey());
+                return false;
+            }
+        }
+        if (slide <= 0) {
+            slide = window;
+        }
+        if (window <= 0 || window % slide != 0) {
+            logger.error("The window must be a multiple of the slide");
+            return false;
+        }
+        slideMillis = TimeUnit.SECONDS.toMillis(slide);
+        store = new AggregationStore(accumulators, window / slide, shards > 0 ? shards : properties.numWorkers, this::emit);
+        if (checkpoint != null) {
+            checkpointPath = Paths.get(checkpoint);
+            if (Files.exists(checkpointPath)) {
+                try {
+                    int restored = store.restore(checkpointPath);
+                    if (restored < 0) {
+                        logger.warn("Checkpoint {} doesn't match the aggregation settings, ignored", checkpointPath);
+                    } else {
+                        logger.debug("Restored {} aggregation states from {}", restored, checkpointPath);
+                    }
+                } catch (IOException ex) {
+                    logger.error("Unable to read checkpoint {}: {}", checkpointPath, Helpers.resolveThrowableException(ex));
+                    logger.catching(Level.DEBUG, ex);
+                }
+            }
+        }
+        // A new configuration replaces the tasks of the previous one
+        cancelTasks();
+        if (checkpointPath != null) {
+            checkpointTask = properties.registerScheduledTask("Aggregate/checkpoint/" + indexSource, this::checkpoint, TimeUnit.SECONDS.toMillis(checkpointInterval));
+            if (checkpointHook == null) {
+                checkpointHook = ThreadBuilder.get()
+                                              .setTask(this::checkpoint)
+                                              .setName("Aggregate/checkpoint/" + indexSource)
+                                              .setShutdownHook(true)
+                                              .build();
+            }
+        }
+        flushTask = properties.registerScheduledTask("Aggregate/flush/" + indexSource, () -> flush(System.currentTimeMillis()), slideMillis);
+        properties.registerStopAction(this::close);
+        return super.configure(properties);
+    }
+
+    /**
+     * Stop the scheduled flush and checkpoint and remove the shutdown hook. The events still received are aggregated
+     * but not emitted any more.
+     */
+    public synchronized void close() {
+        cancelTasks();
+        if (checkpointHook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(checkpointHook);
+            } catch (IllegalStateException ex) {
+                // Already shutting down, the hook will run
+            }
+            checkpointHook = null;
+        }
+    }
+
+    private synchronized void cancelTasks() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        if (checkpointTask != null) {
+            checkpointTask.cancel();
+            checkpointTask = null;
+        }
+    }
+
+    @Override
+    public boolean process(Event event) throws ProcessorException {
+        Object eventKey;
+        try {
+            eventKey = index.eval(event);
+        } catch (IllegalArgumentException | ProcessorException e) {
+            // index key not found or expression failed, not to be aggregated
+            return false;
+        }
+        if (eventKey == null) {
+            return false;
+        }
+        if (! store.update(eventKey, Math.floorDiv(System.currentTimeMillis(), slideMillis), event)) {
+            logger.debug("Late event for key {}", eventKey);
+            return false;
+        }
+        if (! forward) {
+            throw new ProcessorException.DroppedEventException(event);
+        } else {
+            return true;
+        }
+    }
+
+    void flush(long now) {
+        store.flush(Math.floorDiv(now, slideMillis));
+    }
+
+    private void emit(Object key, long windowEnd, Map<String, Object> values) {
+        Event newEvent = Event.emptyEvent(ConnectionContext.EMPTY);
+        newEvent.setTimestamp(new Date((windowEnd - window / slide) * slideMillis));
+        newEvent.putMeta("windowEnd", new Date(windowEnd * slideMillis));
+        newEvent.putAll(values);
+        newEvent.put(keyField, key);
+        if (! newEvent.inject(pipeDestination, mainQueue)) {
+            logger.warn("Aggregated event for key {} lost, queue full", key);
+            newEvent.end();
+        }
+    }
+
+    void checkpoint() {
+        try {
+            store.checkpoint(checkpointPath);
+        } catch (IOException ex) {
+            logger.error("Unable to write checkpoint {}: {}", checkpointPath, Helpers.resolveThrowableException(ex));
+            logger.catching(Level.DEBUG, ex);
+        }
+    }
+
+    int waiting() {
+        return store.size();
+    }
+
+    @Override
+    public String getName() {
+        return "Aggregate/" + indexSource;
+    }
+
+    public String getIndex() {
+        return indexSource;
+    }
+
+    public void setIndex(String index) {
+        this.indexSource = index;
+    }
+
+    /**
+     * @return the aggregations, field name to aggregation type (count, sum, min, max, avg, first or last)
+     */
+    public Map<String, Object> getAggregations() {
+        return aggregations;
+    }
+
+    /**
+     * @param aggregations the aggregations, field name to aggregation type (count, sum, min, max, avg, first or last)
+     */
+    public void setAggregations(Map<String, Object> aggregations) {
+        this.aggregations = aggregations;
+    }
+
+    /**
+     * @return the window duration, in seconds
+     */
+    public Integer getWindow() {
+        return window;
+    }
+
+    /**
+     * @param window the window duration, in seconds
+     */
+    public void setWindow(Integer window) {
+        this.window = window;
+    }
+
+    /**
+     * @return the slide duration, in seconds
+     */
+    public Integer getSlide() {
+        return slide;
+    }
+
+    /**
+     * @param slide the slide duration, in seconds
+     */
+    public void setSlide(Integer slide) {
+        this.slide = slide;
+    }
+
+    /**
+     * @return the number of shards
+     */
+    public Integer getShards() {
+        return shards;
+    }
+
+    /**
+     * @param shards the number of shards, default to the number of workers
+     */
+    public void setShards(Integer shards) {
+        this.shards = shards;
+    }
+
+    /**
+     * @return the destination pipeline
+     */
+    public String getDestination() {
+        return destination;
+    }
+
+    /**
+     * @param destination the destination pipeline
+     */
+    public void setDestination(String destination) {
+        this.destination = destination;
+    }
+
+    /**
+     * @return the keyField
+     */
+    public String getKeyField() {
+        return keyField;
+    }
+
+    /**
+     * @param keyField the field that will hold the key in aggregated events
+     */
+    public void setKeyField(String keyField) {
+        this.keyField = keyField;
+    }
+
+    /**
+     * @return the forward
+     */
+    public Boolean isForward() {
+        return forward;
+    }
+
+    /**
+     * @param forward the forward to set
+     */
+    public void setForward(Boolean forward) {
+        this.forward = forward;
+    }
+
+    /**
+     * @return the checkpoint file
+     */
+    public String getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * @param checkpoint the checkpoint file
+     */
+    public void setCheckpoint(String checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * @return the checkpoint interval, in seconds
+     */
+    public Integer getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * @param checkpointInterval the checkpoint interval, in seconds
+     */
+    public void setCheckpointInterval(Integer checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+}
@@ -0,0 +1,435 @@
+package loghub.processors;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import loghub.Event;
+
+/**
+ * The state storage for {@link Aggregate}.
+ * <p>
+ * States are spread by key hash over a set of independent shards, each with its own lock, so
+ * concurrent workers rarely contend. A key state only holds primitive arrays: one pane per slide
+ * step, each pane holding a running value and a count for every aggregated field.
+ * <p>
+ * Windows are identified by the pane index that ends them (exclusive). A window covers
+ * {@code windowPanes} consecutive panes, so a tumbling window is just a window of one pane.
+ *
+ * @author Fabrice Bacchella
+ *
+ */
+class AggregationStore {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final int CHECKPOINTVERSION = 1;
+
+    enum Accumulator {
+        COUNT {
+            @Override
+            double fold(double acc, double value) {
+                return acc + 1;
+            }
+            @Override
+            double combine(double older, double newer) {
+                return older + newer;
+            }
+            @Override
+            Object result(double acc, long count) {
+                return count;
+            }
+        },
+        SUM {
+            @Override
+            double fold(double acc, double value) {
+                return acc + value;
+            }
+            @Override
+            double combine(double older, double newer) {
+                return older + newer;
+            }
+        },
+        MIN {
+            @Override
+            double fold(double acc, double value) {
+                return Math.min(acc, value);
+            }
+            @Override
+            double combine(double older, double newer) {
+                return Math.min(older, newer);
+            }
+        },
+        MAX {
+            @Override
+            double fold(double acc, double value) {
+                return Math.max(acc, value);
+            }
+            @Override
+            double combine(double older, double newer) {
+                return Math.max(older, newer);
+            }
+        },
+        AVG {
+            @Override
+            double fold(double acc, double value) {
+                return acc + value;
+            }
+            @Override
+            double combine(double older, double newer) {
+                return older + newer;
+            }
+            @Override
+            Object result(double acc, long count) {
+                return acc / count;
+            }
+        },
+        FIRST {
+            @Override
+            double fold(double acc, double value) {
+                return acc;
+            }
+            @Override
+            double combine(double older, double newer) {
+                return older;
+            }
+        },
+        LAST {
+            @Override
+            double fold(double acc, double value) {
+                return value;
+            }
+            @Override
+            double combine(double older, double newer) {
+                return newer;
+            }
+        };
+
+        /**
+         * Fold a new value in a running value. Only called once the first value was stored.
+         */
+        abstract double fold(double acc, double value);
+
+        /**
+         * Merge two non empty panes, in chronological order.
+         */
+        abstract double combine(double older, double newer);
+
+        Object result(double acc, long count) {
+            return acc;
+        }
+
+        boolean needValue() {
+            return this != COUNT;
+        }
+    }
+
+    @FunctionalInterface
+    interface Emitter {
+        void emit(Object key, long windowEnd, Map<String, Object> values);
+    }
+
+    private static final class Pane {
+        private long index = Long.MIN_VALUE;
+        private final double[] values;
+        private final long[] counts;
+
+        private Pane(int size) {
+            values = new double[size];
+            counts = new long[size];
+        }
+
+        private void reset(long index) {
+            this.index = index;
+            Arrays.fill(values, 0);
+            Arrays.fill(counts, 0);
+        }
+    }
+
+    private static final class WindowState {
+        private final Pane[] ring;
+        // The last window end pane index already emitted
+        private long emitted = Long.MIN_VALUE;
+        private long newest = Long.MIN_VALUE;
+
+        private WindowState(int panes, int fields) {
+            ring = new Pane[panes];
+            for (int i = 0; i < panes; i++) {
+                ring[i] = new Pane(fields);
+            }
+        }
+    }
+
+    private static final class Shard {
+        private final Map<Object, WindowState> states = new HashMap<>();
+    }
+
+    private final String[] fields;
+    private final Accumulator[] accumulators;
+    private final int windowPanes;
+    private final Shard[] shards;
+    private final Emitter emitter;
+
+    AggregationStore(Map<String, Accumulator> aggregations, int windowPanes, int shardsCount, Emitter emitter) {
+        this.fields = aggregations.keySet().toArray(new String[aggregations.size()]);
+        this.accumulators = aggregations.values().toArray(new Accumulator[aggregations.size()]);
+        this.windowPanes = windowPanes;
+        this.shards = new Shard[Math.max(1, shardsCount)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard();
+        }
+        this.emitter = emitter;
+    }
+
+    private Shard shardFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return shards[(h & 0x7fffffff) % shards.length];
+    }
+
+    /**
+     * Fold the fields of an event in the state of the given key.
+     * @param key the aggregation key
+     * @param pane the pane index for the event
+     * @param event the event to fold
+     * @return false if the event was too late to be used.
+     */
+    boolean update(Object key, long pane, Event event) {
+        Shard shard = shardFor(key);
+        synchronized (shard) {
+            WindowState state = shard.states.computeIfAbsent(key, k -> new WindowState(windowPanes + 1, fields.length));
+            // All the windows using this pane must still be waiting
+            if (state.emitted != Long.MIN_VALUE && pane < state.emitted) {
+                return false;
+            }
+            Pane current = state.ring[(int) Math.floorMod(pane, (long) state.ring.length)];
+            if (current.index != pane) {
+                if (current.index > pane) {
+                    return false;
+                } else if (current.index != Long.MIN_VALUE && current.index + windowPanes > state.emitted) {
+                    // The slot is still needed, flush what can be before reusing it
+                    flushState(key, state, pane);
+                }
+                current.reset(pane);
+            }
+            state.newest = Math.max(state.newest, pane);
+            for (int i = 0; i < fields.length; i++) {
+                Accumulator acc = accumulators[i];
+                double value = 0;
+                if (acc.needValue()) {
+                    Object o = event.get(fields[i]);
+                    if (o instanceof Number) {
+                        value = ((Number) o).doubleValue();
+                    } else if (o instanceof Boolean) {
+                        value = ((Boolean) o) ? 1 : 0;
+                    } else if (o instanceof String) {
+                        try {
+                            value = Double.parseDouble((String) o);
+                        } catch (NumberFormatException e) {
+                            continue;
+                        }
+                    } else {
+                        continue;
+                    }
+                }
+                if (current.counts[i] == 0) {
+                    current.values[i] = acc == Accumulator.COUNT ? 1 : value;
+                } else {
+                    current.values[i] = acc.fold(current.values[i], value);
+                }
+                current.counts[i]++;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Emit all the windows that end at or before the given pane index and release the states
+     * that will not be used any more.
+     * @param pane the current pane index, all the previous panes are complete.
+     */
+    void flush(long pane) {
+        for (Shard shard: shards) {
+            synchronized (shard) {
+                Iterator<Map.Entry<Object, WindowState>> i = shard.states.entrySet().iterator();
+                while (i.hasNext()) {
+                    Map.Entry<Object, WindowState> e = i.next();
+                    WindowState state = e.getValue();
+                    flushState(e.getKey(), state, pane);
+                    if (state.newest + windowPanes <= pane) {
+                        i.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    private void flushState(Object key, WindowState state, long pane) {
+        long oldest = Long.MAX_VALUE;
+        for (Pane p: state.ring) {
+            if (p.index != Long.MIN_VALUE) {
+                oldest = Math.min(oldest, p.index);
+            }
+        }
+        if (oldest == Long.MAX_VALUE) {
+            return;
+        }
+        long first = Math.max(state.emitted == Long.MIN_VALUE ? Long.MIN_VALUE : state.emitted + 1, oldest + 1);
+        long last = Math.min(pane, state.newest + windowPanes);
+        for (long end = first; end <= last; end++) {
+            Map<String, Object> values = aggregate(state, end);
+            if (values != null) {
+                emitter.emit(key, end, values);
+            }
+        }
+        state.emitted = Math.max(state.emitted, last);
+    }
+
+    private Map<String, Object> aggregate(WindowState state, long end) {
+        double[] values = new double[fields.length];
+        long[] counts = new long[fields.length];
+        boolean found = false;
+        for (long index = end - windowPanes; index < end; index++) {
+            Pane p = state.ring[(int) Math.floorMod(index, (long) state.ring.length)];
+            if (p.index != index) {
+                continue;
+            }
+            for (int i = 0; i < fields.length; i++) {
+                if (p.counts[i] == 0) {
+                    continue;
+                }
+                found = true;
+                values[i] = counts[i] == 0 ? p.values[i] : accumulators[i].combine(values[i], p.values[i]);
+                counts[i] += p.counts[i];
+            }
+        }
+        if (! found) {
+            return null;
+        }
+        Map<String, Object> result = new LinkedHashMap<>(fields.length);
+        for (int i = 0; i < fields.length; i++) {
+            if (counts[i] > 0) {
+                result.put(fields[i], accumulators[i].result(values[i], counts[i]));
+            }
+        }
+        return result;
+    }
+
+    int size() {
+        int size = 0;
+        for (Shard shard: shards) {
+            synchronized (shard) {
+                size += shard.states.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Write the current states to a file. The file is written in a temporary file and then
+     * moved atomically, so an interrupted checkpoint keeps the previous one. Checkpoints of a store are
+     * serialized, and each one uses its own temporary file, so the stores of a reloaded configuration
+     * can share the destination.
+     * @param destination the checkpoint file
+     * @throws IOException
+     */
+    synchronized void checkpoint(Path destination) throws IOException {
+        Path parent = destination.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, destination.getFileName().toString(), ".tmp");
+        try {
+            writeCheckpoint(temp);
+            Files.move(temp, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void writeCheckpoint(Path temp) throws IOException {
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(temp));
+             ObjectOutputStream oos = new ObjectOutputStream(os)) {
+            oos.writeInt(CHECKPOINTVERSION);
+            oos.writeObject(fields);
+            oos.writeObject(accumulators);
+            oos.writeInt(windowPanes);
+            for (Shard shard: shards) {
+                synchronized (shard) {
+                    for (Map.Entry<Object, WindowState> e: shard.states.entrySet()) {
+                        if (! (e.getKey() instanceof Serializable)) {
+                            logger.debug("Key {} not serializable, not saved", e.getKey());
+                            continue;
+                        }
+                        WindowState state = e.getValue();
+                        oos.writeBoolean(true);
+                        oos.writeObject(e.getKey());
+                        oos.writeLong(state.emitted);
+                        oos.writeLong(state.newest);
+                        for (Pane p: state.ring) {
+                            oos.writeLong(p.index);
+                            oos.writeObject(p.values);
+                            oos.writeObject(p.counts);
+                        }
+                    }
+                }
+            }
+            oos.writeBoolean(false);
+        }
+    }
+
+    /**
+     * Reload states from a checkpoint file. It's ignored if it was written with another
+     * aggregation setup.
+     * @param source the checkpoint file
+     * @return the number of states restored, or -1 if the checkpoint was not usable.
+     * @throws IOException
+     */
+    int restore(Path source) throws IOException {
+        int restored = 0;
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(source));
+             ObjectInputStream ois = new ObjectInputStream(is)) {
+            if (ois.readInt() != CHECKPOINTVERSION
+                            || ! Arrays.equals(fields, (String[]) ois.readObject())
+                            || ! Arrays.equals(accumulators, (Accumulator[]) ois.readObject())
+                            || ois.readInt() != windowPanes) {
+                return -1;
+            }
+            while (ois.readBoolean()) {
+                Object key = ois.readObject();
+                WindowState state = new WindowState(windowPanes + 1, fields.length);
+                state.emitted = ois.readLong();
+                state.newest = ois.readLong();
+                for (Pane p: state.ring) {
+                    p.index = ois.readLong();
+                    double[] values = (double[]) ois.readObject();
+                    long[] counts = (long[]) ois.readObject();
+                    System.arraycopy(values, 0, p.values, 0, p.values.length);
+                    System.arraycopy(counts, 0, p.counts, 0, p.counts.length);
+                }
+                Shard shard = shardFor(key);
+                synchronized (shard) {
+                    shard.states.put(key, state);
+                }
+                restored++;
+            }
+        } catch (ClassNotFoundException | ClassCastException ex) {
+            throw new IOException("Invalid checkpoint content", ex);
+        }
+        return restored;
+    }
+
+}
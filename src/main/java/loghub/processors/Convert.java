@@ -1,72 +1,306 @@
 package loghub.processors;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.text.ParsePosition;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 
+import io.netty.util.NetUtil;
 import loghub.Event;
 import loghub.ProcessorException;
-import loghub.configuration.BeansManager;
 import loghub.configuration.Properties;
 
 /**
  * A processor that take a String field and transform it to any object that can
  * take a String as a constructor.
- * 
+ * <p>
+ * The conversion is resolved once, when the processor is configured. Numbers, booleans, characters, enums,
+ * IP addresses, {@link Instant} and {@link Duration} have a dedicated parser that don't use exceptions to detect invalid
+ * values, and IP addresses are never resolved. Other classes are build using their constructor taking a String.
+ * A <code>byte[]</code> value is read as an UTF-8 string.
+ *
  * It uses the custom class loader.
- * 
+ *
  * @author Fabrice Bacchella
  *
  */
 @FieldsProcessor.ProcessNullField
 public class Convert extends FieldsProcessor {
 
+    // Returned by parseLong for an invalid value
+    private static final long INVALID = Long.MIN_VALUE;
+    private static final String LONGMINVALUE = Long.toString(Long.MIN_VALUE);
+    // The pattern used by Duration.parse
+    private static final Pattern DURATION = Pattern.compile("([-+]?)P(?:([-+]?[0-9]+)D)?(T(?:([-+]?[0-9]+)H)?(?:([-+]?[0-9]+)M)?(?:([-+]?[0-9]+)(?:[.,]([0-9]{0,9}))?S)?)?",
+                                                           Pattern.CASE_INSENSITIVE);
+
     private String className = "java.lang.String";
-    private Class<?> clazz;
+    // A null value means an invalid input
+    private Function<CharSequence, Object> converter;
+    // Used if there is no dedicated converter
+    private Constructor<?> constructor;
 
     @Override
     public Object fieldFunction(Event event, Object value) throws ProcessorException {
         if (value == null) {
             return null;
+        }
+        CharSequence valueStr;
+        if (value instanceof CharSequence) {
+            valueStr = (CharSequence) value;
+        } else if (value instanceof byte[]) {
+            valueStr = new String((byte[]) value, StandardCharsets.UTF_8);
         } else {
-            String valueStr = value.toString();
-            try {
-                Object o;
-                switch(className) {
-                case "java.lang.Integer":
-                    o = Integer.valueOf(valueStr);
-                    break;
-                case "java.lang.Byte" :
-                    o = Byte.valueOf(valueStr);
-                    break;
-                case "java.lang.Short":
-                    o = Short.valueOf(valueStr);
-                    break;
-                case "java.lang.Long":
-                    o = Long.valueOf(valueStr);
-                    break;
-                default:
-                    o = BeansManager.ConstructFromString(clazz, valueStr);
-                    break;
-                }
-                return o;
-            } catch (NumberFormatException e) {
+            valueStr = value.toString();
+        }
+        if (converter != null) {
+            Object o = converter.apply(valueStr);
+            if (o == null) {
                 throw event.buildException("Unable to parse \""+ valueStr +"\" as a " + className);
+            }
+            return o;
+        } else {
+            try {
+                return constructor.newInstance(valueStr.toString());
             } catch (InvocationTargetException e) {
                 throw event.buildException("Unable to parse \""+ valueStr +"\" as a " + className, (Exception)e.getCause());
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw event.buildException("Unable to parse \""+ valueStr +"\" as a " + className, e);
             }
         }
     }
 
     @Override
     public boolean configure(Properties properties) {
+        Class<?> clazz;
         try {
             clazz = properties.classloader.loadClass(className);
         } catch (ClassNotFoundException e) {
             logger.error("class not found: {}", className);
             return false;
         }
+        converter = resolveConverter(clazz);
+        if (converter == null) {
+            try {
+                constructor = clazz.getConstructor(String.class);
+            } catch (NoSuchMethodException | SecurityException e) {
+                logger.error("No conversion from a string to {}", className);
+                return false;
+            }
+        }
         return super.configure(properties);
     }
 
+    @SuppressWarnings("rawtypes")
+    private Function<CharSequence, Object> resolveConverter(Class<?> clazz) {
+        if (clazz == String.class) {
+            return CharSequence::toString;
+        } else if (clazz == Integer.class) {
+            return cs -> {
+                long l = parseLong(cs, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                return l == INVALID ? null : Integer.valueOf((int) l);
+            };
+        } else if (clazz == Byte.class) {
+            return cs -> {
+                long l = parseLong(cs, Byte.MIN_VALUE, Byte.MAX_VALUE);
+                return l == INVALID ? null : Byte.valueOf((byte) l);
+            };
+        } else if (clazz == Short.class) {
+            return cs -> {
+                long l = parseLong(cs, Short.MIN_VALUE, Short.MAX_VALUE);
+                return l == INVALID ? null : Short.valueOf((short) l);
+            };
+        } else if (clazz == Long.class) {
+            return cs -> {
+                long l = parseLong(cs, Long.MIN_VALUE, Long.MAX_VALUE);
+                return l == INVALID && ! LONGMINVALUE.contentEquals(cs) ? null : Long.valueOf(l);
+            };
+        } else if (clazz == BigInteger.class) {
+            return cs -> isInteger(cs, 0, cs.length()) ? new BigInteger(cs.toString()) : null;
+        } else if (clazz == Double.class) {
+            return cs -> {
+                String s = parseFloating(cs);
+                return s == null ? null : Double.valueOf(s);
+            };
+        } else if (clazz == Float.class) {
+            return cs -> {
+                String s = parseFloating(cs);
+                return s == null ? null : Float.valueOf(s);
+            };
+        } else if (clazz == BigDecimal.class) {
+            return cs -> isDecimal(cs) ? new BigDecimal(cs.toString()) : null;
+        } else if (clazz == Boolean.class) {
+            // Same as Boolean.valueOf(String), never fails
+            return cs -> "true".equalsIgnoreCase(cs.toString()) ? Boolean.TRUE : Boolean.FALSE;
+        } else if (clazz == Character.class) {
+            return cs -> cs.length() == 1 ? Character.valueOf(cs.charAt(0)) : null;
+        } else if (clazz == InetAddress.class) {
+            return cs -> NetUtil.createInetAddressFromIpAddressString(cs.toString());
+        } else if (clazz == Instant.class) {
+            return Convert::parseInstant;
+        } else if (clazz == Duration.class) {
+            return Convert::parseDuration;
+        } else if (Enum.class.isAssignableFrom(clazz)) {
+            Map<String, Object> constants = new HashMap<>();
+            for (Object o: clazz.getEnumConstants()) {
+                constants.put(((Enum) o).name(), o);
+            }
+            return cs -> constants.get(cs.toString());
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Parse a decimal integer, like {@link Long#parseLong(String)}, but return {@link #INVALID} if it's not a
+     * number or out of the range.
+     */
+    private static long parseLong(CharSequence cs, long min, long max) {
+        int length = cs.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (cs.charAt(0) == '-' || cs.charAt(0) == '+')) {
+            negative = cs.charAt(0) == '-';
+            i++;
+        }
+        if (i == length) {
+            return INVALID;
+        }
+        // Accumulating negatively can reach Long.MIN_VALUE
+        long limit = negative ? min : -max;
+        long multmin = limit / 10;
+        long result = 0;
+        for (; i < length; i++) {
+            int digit = Character.digit(cs.charAt(i), 10);
+            if (digit < 0 || result < multmin) {
+                return INVALID;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return INVALID;
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Check for [+-]?[0-9]+ in a part of a value
+     */
+    private static boolean isInteger(CharSequence cs, int start, int end) {
+        if (start < end && (cs.charAt(start) == '-' || cs.charAt(start) == '+')) {
+            start++;
+        }
+        if (start == end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = cs.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check for [+-]?[0-9]*(\.[0-9]*)?([eE][+-]?[0-9]+)?, with at least one digit before the exponent.
+     */
+    private static boolean isDecimal(CharSequence cs) {
+        int length = cs.length();
+        int i = 0;
+        if (i < length && (cs.charAt(i) == '-' || cs.charAt(i) == '+')) {
+            i++;
+        }
+        int digits = 0;
+        boolean dot = false;
+        for (; i < length; i++) {
+            char c = cs.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (c == '.' && ! dot) {
+                dot = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        } else if (i == length) {
+            return true;
+        } else if (cs.charAt(i) == 'e' || cs.charAt(i) == 'E') {
+            return isInteger(cs, i + 1, length);
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Return the value as a string if it can be parsed by {@link Double#valueOf(String)}, or null
+     */
+    private static String parseFloating(CharSequence cs) {
+        String s = cs.toString();
+        if (isDecimal(cs)) {
+            return s;
+        }
+        switch (s) {
+        case "NaN":
+        case "Infinity":
+        case "+Infinity":
+        case "-Infinity":
+            return s;
+        default:
+            break;
+        }
+        // The other syntaxes, with spaces, type suffix or hexadecimal, are rare enough to be handled by Double itself
+        int length = s.length();
+        if (length > 0 && (Character.isWhitespace(s.charAt(0)) || Character.isWhitespace(s.charAt(length - 1)) || s.indexOf('x') >= 0 || s.indexOf('X') >= 0 || "dDfF".indexOf(s.charAt(length - 1)) >= 0)) {
+            try {
+                Double.parseDouble(s);
+                return s;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+    }
+
+    private static Instant parseInstant(CharSequence cs) {
+        ParsePosition pos = new ParsePosition(0);
+        TemporalAccessor ta = DateTimeFormatter.ISO_INSTANT.parseUnresolved(cs, pos);
+        if (ta == null || pos.getErrorIndex() >= 0 || pos.getIndex() != cs.length()) {
+            return null;
+        } else {
+            return Instant.ofEpochSecond(ta.getLong(ChronoField.INSTANT_SECONDS), ta.getLong(ChronoField.NANO_OF_SECOND));
+        }
+    }
+
+    private static Duration parseDuration(CharSequence cs) {
+        if (! DURATION.matcher(cs).matches()) {
+            return null;
+        }
+        try {
+            // Still needed for overflows and an empty duration
+            return Duration.parse(cs);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
     /**
      * @return the field
      */
@@ -9,19 +9,22 @@ import loghub.Expression;
 import loghub.Expression.ExpressionException;
 import loghub.Processor;
 import loghub.ProcessorException;
+import loghub.VariablePath;
 import loghub.configuration.Properties;
 
 public abstract class Etl extends Processor {
 
     protected String[] lvalue;
+    protected VariablePath lvaluePath;
 
     public static class Rename extends Etl{
-        private String[] sourcePath;
+        private String[] source;
+        private VariablePath sourcePath;
         @Override
         public boolean process(Event event) throws ProcessorException {
             if (Boolean.TRUE.equals(event.applyAtPath(Action.CONTAINS, sourcePath, null, false))) {
                 Object old = event.applyAtPath(Action.REMOVE, sourcePath, null);
-                event.applyAtPath(Action.PUT, lvalue, old, true);
+                event.applyAtPath(Action.PUT, lvaluePath, old, true);
                 return true;
             } else {
                 return false;
@@ -32,10 +35,11 @@ public abstract class Etl extends Processor {
             return super.configure(properties);
         }
         public String[] getSource() {
-            return sourcePath;
+            return source;
         }
         public void setSource(String[] source) {
-            this.sourcePath = source;
+            this.source = source;
+            this.sourcePath = VariablePath.of(source);
         }
     }
 
@@ -45,7 +49,7 @@ public abstract class Etl extends Processor {
         @Override
         public boolean process(Event event) throws ProcessorException {
             Object o = script.eval(event);
-            event.applyAtPath(Action.PUT, lvalue, o, true);
+            event.applyAtPath(Action.PUT, lvaluePath, o, true);
             return true;
         }
         @Override
@@ -78,9 +82,9 @@ public abstract class Etl extends Processor {
         private loghub.processors.Convert convert;
         @Override
         public boolean process(Event event) throws ProcessorException {
-            if (Boolean.TRUE.equals(event.applyAtPath(Action.CONTAINS, lvalue, null, false))) {
-                Object val = event.applyAtPath(Action.GET, lvalue, null, false);
-                event.applyAtPath(Action.PUT, lvalue, convert.fieldFunction(event, val));
+            if (Boolean.TRUE.equals(event.applyAtPath(Action.CONTAINS, lvaluePath, null, false))) {
+                Object val = event.applyAtPath(Action.GET, lvaluePath, null, false);
+                event.applyAtPath(Action.PUT, lvaluePath, convert.fieldFunction(event, val));
                 return true;
             } else {
                 return false;
@@ -104,7 +108,7 @@ public abstract class Etl extends Processor {
     public static class Remove extends Etl {
         @Override
         public boolean process(Event event) throws ProcessorException {
-            event.applyAtPath(Action.REMOVE, lvalue, null);
+            event.applyAtPath(Action.REMOVE, lvaluePath, null);
             return true;
         }
     }
@@ -117,6 +121,7 @@ public abstract class Etl extends Processor {
 
     public void setLvalue(String[] lvalue) {
         this.lvalue = lvalue;
+        this.lvaluePath = VariablePath.of(lvalue);
     }
 
 }
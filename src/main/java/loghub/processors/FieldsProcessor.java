@@ -7,11 +7,16 @@ import java.lang.annotation.Documented;
 import java.lang.annotation.Inherited;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
@@ -41,10 +46,15 @@ public abstract class FieldsProcessor extends Processor {
         REMOVE
     }
 
+    // The maximum number of different key sets whose matching fields are remembered
+    private static final int SHAPESCACHESIZE = 256;
+
     private String[] field = new String[] {"message"};
     private VarFormatter destinationFormat = null;
-    private Pattern[] patterns = new Pattern[]{};
+    private Pattern patterns = null;
     private String[] globs = new String[] {};
+    // Fields to process, cached by event key set
+    private final Map<Set<String>, List<String[]>> shapes = new ConcurrentHashMap<>();
 
     protected class FieldSubProcessor extends Processor {
 
@@ -82,11 +92,16 @@ public abstract class FieldsProcessor extends Processor {
             return FieldsProcessor.this.getPathArray();
         }
 
+        @Override
+        public Processor getLatencyOwner() {
+            return FieldsProcessor.this;
+        }
+
     }
 
     @Override
     public boolean configure(Properties properties) {
-        if ( (getFailure() != null || getSuccess() != null || getException() != null) && patterns.length > 0) {
+        if ( (getFailure() != null || getSuccess() != null || getException() != null) && patterns != null) {
             logger.error("Will not run conditionnal processors when multiple fields are defined");
             return false;
         }
@@ -95,18 +110,8 @@ public abstract class FieldsProcessor extends Processor {
 
     @Override
     public boolean process(Event event) throws ProcessorException {
-        if (patterns.length != 0) {
-            Set<String[]> nextfields = new HashSet<>();
-            //Build a set of fields that needs to be processed
-            for (String eventField: new HashSet<>(event.keySet())) {
-                for (Pattern p: patterns) {
-                    if (p.matcher(eventField).matches()) {
-                        nextfields.add(new String[] {eventField});
-                        break;
-                    }
-                }
-            }
-
+        if (patterns != null) {
+            List<String[]> nextfields = resolveFields(event.keySet());
             // Add a sub processor that will loop on itself until fields are exhausted
             if (nextfields.size() > 0) {
                 delegate(nextfields, event);
@@ -124,6 +129,29 @@ public abstract class FieldsProcessor extends Processor {
         }
     }
 
+    /**
+     * Find the fields matching the globs. Events often share the same set of keys, so
+     * the result is kept for each set of keys already seen.
+     */
+    private List<String[]> resolveFields(Set<String> keys) {
+        List<String[]> resolved = shapes.get(keys);
+        if (resolved == null) {
+            List<String[]> found = new ArrayList<>();
+            Set<String> shape = new HashSet<>(keys);
+            for (String eventField: shape) {
+                if (patterns.matcher(eventField).matches()) {
+                    found.add(new String[] {eventField});
+                }
+            }
+            resolved = Collections.unmodifiableList(found);
+            if (shapes.size() >= SHAPESCACHESIZE) {
+                shapes.clear();
+            }
+            shapes.put(shape, resolved);
+        }
+        return resolved;
+    }
+
     boolean doExecution(Event event, String[] currentField) throws ProcessorException {
         return filterField(event, currentField);
     }
@@ -172,7 +200,7 @@ public abstract class FieldsProcessor extends Processor {
 
     public abstract Object fieldFunction(Event event, Object value) throws ProcessorException;
 
-    void delegate(Set<String[]> nextfields, Event event) {
+    void delegate(Collection<String[]> nextfields, Event event) {
         Iterator<String[]> processing = nextfields.iterator();
         Processor fieldProcessor = getSubProcessor(processing);
         if (processing.hasNext()) {
@@ -199,11 +227,14 @@ public abstract class FieldsProcessor extends Processor {
 
     public void setFields(Object[] fields) {
         this.globs = new String[fields.length];
-        this.patterns = new Pattern[fields.length];
+        // All the globs are merged in a single pattern, so each field name is matched only once
+        StringBuilder merged = new StringBuilder();
         for (int i = 0 ; i < fields.length ; i++) {
             this.globs[i] = fields[i].toString();
-            this.patterns[i] = Helpers.convertGlobToRegex(this.globs[i]);
+            merged.append(i == 0 ? "" : "|").append("(?:").append(Helpers.convertGlobToRegex(this.globs[i]).pattern()).append(")");
         }
+        this.patterns = fields.length > 0 ? Pattern.compile(merged.toString()) : null;
+        shapes.clear();
     }
 
     public String[] getField() {
@@ -61,4 +61,13 @@ public class FutureProcessor<FI, F extends Future<FI>> extends Processor {
         }
     }
 
+    @Override
+    public Processor getLatencyOwner() {
+        if (callback instanceof Processor) {
+            return ((Processor) callback).getLatencyOwner();
+        } else {
+            return this;
+        }
+    }
+
 }
@@ -53,7 +53,7 @@ public class Mapper extends Etl {
             return false;
         }
         Object value =  map.get(key);
-        event.applyAtPath(Action.PUT, lvalue, value, true);
+        event.applyAtPath(Action.PUT, lvaluePath, value, true);
         return true;
     }
 
@@ -41,6 +41,7 @@ import loghub.Event;
 import loghub.Helpers;
 import loghub.ProcessorException;
 import loghub.VarFormatter;
+import loghub.configuration.CacheManager;
 import loghub.configuration.Properties;
 import loghub.netty.POLLER;
 import lombok.EqualsAndHashCode;
@@ -110,6 +111,9 @@ public class NettyNameResolver extends AsyncFieldsProcessor<AddressedEnvelope<Dn
     private String resolver = null;
     @Getter @Setter
     private int cacheSize = 10000;
+    // If positive, the cache is bounded by the total length of the names, instead of cacheSize
+    @Getter @Setter
+    private long cacheWeight = 0;
     @Getter @Setter
     private String poller = POLLER.NIO.name();
 
@@ -146,10 +150,14 @@ public class NettyNameResolver extends AsyncFieldsProcessor<AddressedEnvelope<Dn
             }
         }
         dnsResolver = builder.build();
-        hostCache = properties.cacheManager.getBuilder(DnsCacheKey.class, DnsCacheEntry.class)
-                        .setName("NameResolver", resolverAddr != null ? resolverAddr : "default")
-                        .setCacheSize(cacheSize)
-                        .build();
+        CacheManager.Builder<DnsCacheKey, DnsCacheEntry> cacheBuilder = properties.cacheManager.getBuilder(DnsCacheKey.class, DnsCacheEntry.class)
+                        .setName("NameResolver", resolverAddr != null ? resolverAddr : "default");
+        if (cacheWeight > 0) {
+            cacheBuilder.setMaximumWeight(cacheWeight, (k, v) -> k.query.length());
+        } else {
+            cacheBuilder.setCacheSize(cacheSize);
+        }
+        hostCache = cacheBuilder.build();
 
         return super.configure(properties);
     }
@@ -1,6 +1,5 @@
 package loghub.processors;
 
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
 import org.apache.logging.log4j.Level;
@@ -28,35 +27,69 @@ public class OnigurumaRegex extends FieldsProcessor {
     private String patternSrc;
     private Regex patternAscii;
     private Regex patternUtf8;
+    // The named groups, resolved once
+    private String[] names;
+    private int[] groups;
 
     private static final int BUFFERSIZE = 4096;
-    private static final ThreadLocal<char[]> holder_ascii = ThreadLocal.withInitial(() -> new char[BUFFERSIZE]);
-    private static byte[] getBytesAscii(String searched) {
+    // Reused to encode lines, a UTF-8 character needs at most 3 bytes per char
+    private static final ThreadLocal<byte[]> holder_bytes = ThreadLocal.withInitial(() -> new byte[BUFFERSIZE * 3]);
+
+    /**
+     * Copy an ASCII string in a byte array, that must be big enough.
+     * @return the number of bytes, or -1 if the string is not pure ASCII
+     */
+    private static int getBytesAscii(String searched, byte[] buffer) {
         int length = searched.length();
-        char[] buffer;
-        if (length > BUFFERSIZE) {
-            buffer = searched.toCharArray();
-        } else {
-            buffer = holder_ascii.get();
-            searched.getChars(0, length, buffer, 0);
+        for (int j = 0; j < length; j++) {
+            char c = searched.charAt(j);
+            if (c > 127) {
+                return -1;
+            }
+            buffer[j] = (byte) c;
         }
-        byte b[] = new byte[length];
+        return length;
+    }
+
+    /**
+     * Encode a string in UTF-8 in a byte array, that must be big enough. Invalid surrogates are replaced with '?',
+     * like {@link String#getBytes(java.nio.charset.Charset)}.
+     * @return the number of bytes
+     */
+    private static int getBytesUtf8(String searched, byte[] buffer) {
+        int length = searched.length();
+        int pos = 0;
         for (int j = 0; j < length; j++) {
-            if (buffer[j] > 127) {
-                return null;
+            char c = searched.charAt(j);
+            if (c < 0x80) {
+                buffer[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[pos++] = (byte) (0xc0 | (c >> 6));
+                buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && j + 1 < length && Character.isLowSurrogate(searched.charAt(j + 1))) {
+                int cp = Character.toCodePoint(c, searched.charAt(++j));
+                buffer[pos++] = (byte) (0xf0 | (cp >> 18));
+                buffer[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                buffer[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                buffer[pos++] = (byte) (0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                buffer[pos++] = '?';
+            } else {
+                buffer[pos++] = (byte) (0xe0 | (c >> 12));
+                buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[pos++] = (byte) (0x80 | (c & 0x3f));
             }
-            b[j] = (byte) (buffer[j] & 0x7F);
         }
-        return b;
+        return pos;
     }
 
     @Override
     public boolean configure(Properties properties) {
         try {
             // Generate pattern using both ASCII and UTF-8
-            byte[] patternSrcBytesAscii = getBytesAscii(patternSrc);
+            byte[] patternSrcBytesAscii = new byte[patternSrc.length()];
             // the ascii pattern is generated only if the source pattern is pure ASCII
-            if (patternSrcBytesAscii != null) {
+            if (getBytesAscii(patternSrc, patternSrcBytesAscii) >= 0) {
                 patternAscii = new Regex(patternSrcBytesAscii, 0, patternSrcBytesAscii.length, Option.NONE, USASCIIEncoding.INSTANCE);
             } else {
                 patternAscii = null;
@@ -66,9 +99,18 @@ public class OnigurumaRegex extends FieldsProcessor {
             if (patternUtf8.numberOfCaptures() != patternUtf8.numberOfNames()) {
                 logger.error("Can't have two captures with same name");
                 return false;
+            }
+            // Test needed because regex.namedBackrefIterator() fails if there is no named patterns.
+            // See https://github.com/jruby/joni/issues/35
+            // Both patterns have the same groups
+            if (patternUtf8.numberOfNames() > 0) {
+                names = Helpers.iteratorToStream(patternUtf8.namedBackrefIterator()).map(e -> new String(e.name, e.nameP, e.nameEnd - e.nameP, StandardCharsets.UTF_8)).toArray(String[]::new);
+                groups = Helpers.iteratorToStream(patternUtf8.namedBackrefIterator()).mapToInt(e -> e.getBackRefs()[0]).toArray();
             } else {
-                return super.configure(properties);
+                names = new String[0];
+                groups = new int[0];
             }
+            return super.configure(properties);
         } catch (SyntaxException e) {
             logger.error("Error parsing regex:" + Helpers.resolveThrowableException(e));
             logger.catching(Level.DEBUG, e);
@@ -78,51 +120,42 @@ public class OnigurumaRegex extends FieldsProcessor {
 
     @Override
     public Object fieldFunction(Event event, Object value) throws ProcessorException {
+        if (value instanceof byte[]) {
+            // Already some bytes, no need to encode them
+            byte[] lineBytes = (byte[]) value;
+            return match(event, patternUtf8, null, lineBytes, lineBytes.length);
+        }
         String line = value.toString();
-        int length;
-        Matcher matcher;
-        Regex regex;
-        Charset cs;
-        byte[] lineBytes;
-        byte[] lineAscii;
+        byte[] buffer = line.length() > BUFFERSIZE ? new byte[line.length() * 3] : holder_bytes.get();
         // First check if it worth trying to generate ASCII line, only if a ASCII version of the pattern exists
-        if (patternAscii != null) {
-            lineAscii = getBytesAscii(line);
-        } else {
-            lineAscii = null;
-        }
-        if (lineAscii != null) {
-            // Both ASCII line and pattern so try ASCII
-            regex = patternAscii;
-            matcher = patternAscii.matcher(lineAscii);
-            length = line.length();
-            cs = StandardCharsets.US_ASCII;
-            lineBytes = lineAscii;
+        int length = patternAscii != null ? getBytesAscii(line, buffer) : -1;
+        if (length >= 0) {
+            // Both ASCII line and pattern so try ASCII, the bytes offsets are the String offsets
+            return match(event, patternAscii, line, buffer, length);
         } else {
             // Either ASCII pattern or line is missing, fall back to UTF-8
-            regex = patternUtf8;
-            byte[] lineBytesUtf8 = line.getBytes(StandardCharsets.UTF_8);
-            matcher = patternUtf8.matcher(lineBytesUtf8);
-            length = lineBytesUtf8.length;
-            cs = StandardCharsets.UTF_8;
-            lineBytes = lineBytesUtf8;
+            length = getBytesUtf8(line, buffer);
+            return match(event, patternUtf8, null, buffer, length);
         }
+    }
+
+    /**
+     * Search the pattern in the bytes and store the named groups found.
+     * @param line the line if it's pure ASCII, to extract the groups directly, or null if the groups are decoded from the bytes.
+     */
+    private Object match(Event event, Regex regex, String line, byte[] lineBytes, int length) {
+        Matcher matcher = regex.matcher(lineBytes, 0, length);
         int result = matcher.search(0, length, Option.DEFAULT);
         if (result != -1) {
             Region region = matcher.getEagerRegion();
-            // Test needed because regex.namedBackrefIterator() fails if there is no named patterns.
-            // See https://github.com/jruby/joni/issues/35
-            if (regex.numberOfNames() > 0) {
-                Helpers.iteratorToStream(regex.namedBackrefIterator()).forEach( e -> {
-                    int number = e.getBackRefs()[0];
-                    int begin = region.beg[number];
-                    int end = region.end[number];
-                    String name = new String(e.name, e.nameP, e.nameEnd - e.nameP, cs);
-                    if (begin >= 0) {
-                        String content = new String(lineBytes, begin, end - begin, cs);
-                        event.put(name, content);
-                    }
-                });
+            for (int i = 0; i < groups.length; i++) {
+                int begin = region.beg[groups[i]];
+                int end = region.end[groups[i]];
+                // Only the groups that matched are extracted
+                if (begin >= 0) {
+                    String content = line != null ? line.substring(begin, end) : new String(lineBytes, begin, end - begin, StandardCharsets.UTF_8);
+                    event.put(names[i], content);
+                }
             }
             return FieldsProcessor.RUNSTATUS.NOSTORE;
         } else {
@@ -2,8 +2,6 @@ package loghub.processors;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import loghub.Event;
 import loghub.Processor;
@@ -16,68 +14,311 @@ import lombok.Setter;
  * Implementations of the CEF specifications, see https://kc.mcafee.com/resources/sites/MCAFEE/content/live/CORP_KNOWLEDGEBASE/78000/KB78712/en_US/CEF_White_Paper_20100722.pdf.
  * <p>
  * They are totally brain dead, many corner case and missing escape missing: single | or &lt;space&gt; are allowed in extensions.
- * 
+ * <p>
+ * LEEF 1.0 and 2.0 messages are also parsed, see https://www.ibm.com/docs/en/dsm?topic=leef-overview. The header goes in
+ * <code>leef_fields</code>, using the same names than CEF, and the attributes in <code>leef_attributes</code>.
+ * <p>
+ * The message is read in a single pass, without regex, and the well known keys are not allocated again for each event.
+ *
  * @author Fabrice Bacchella
  *
  */
 public class ParseCef extends Processor {
 
     private static final String[] COLUMNS = new String[]{"version", "device_vendor", "device_product", "device_version", "device_event_class_id", "name", "severity"};
-    private static final Pattern fieldPattern = Pattern.compile("(?:[^\\|]|(?<=\\\\)\\|)+");
-    private static final Pattern extensionPattern = Pattern.compile("(?<key>[a-zA-Z0-9_]+)=(?<value>(?:[^ ]| (?! *[a-zA-Z0-9_]+=))+)");
+
+    // The keys from the CEF and LEEF dictionaries
+    private static final String[] WELLKNOWNKEYS = new String[] {
+        "act", "app", "c6a1", "c6a1Label", "c6a2", "c6a2Label", "c6a3", "c6a3Label", "c6a4", "c6a4Label", "cat", "cfp1", "cfp1Label",
+        "cfp2", "cfp2Label", "cfp3", "cfp3Label", "cfp4", "cfp4Label", "cn1", "cn1Label", "cn2", "cn2Label", "cn3", "cn3Label", "cnt",
+        "cs1", "cs1Label", "cs2", "cs2Label", "cs3", "cs3Label", "cs4", "cs4Label", "cs5", "cs5Label", "cs6", "cs6Label", "destinationDnsDomain",
+        "destinationServiceName", "destinationTranslatedAddress", "destinationTranslatedPort", "deviceCustomDate1", "deviceCustomDate1Label",
+        "deviceCustomDate2", "deviceCustomDate2Label", "deviceDirection", "deviceDnsDomain", "deviceExternalId", "deviceFacility",
+        "deviceInboundInterface", "deviceNtDomain", "deviceOutboundInterface", "devicePayloadId", "deviceProcessName", "deviceTranslatedAddress",
+        "dhost", "dlat", "dlong", "dmac", "dntdom", "dpid", "dpriv", "dproc", "dpt", "dst", "dtz", "duid", "duser", "dvc", "dvchost",
+        "dvcmac", "dvcpid", "end", "externalId", "fileCreateTime", "fileHash", "fileId", "fileModificationTime", "filePath",
+        "filePermission", "fileType", "flexDate1", "flexDate1Label", "flexString1", "flexString1Label", "flexString2", "flexString2Label",
+        "fname", "fsize", "in", "msg", "oldFileCreateTime", "oldFileHash", "oldFileId", "oldFileModificationTime", "oldFileName",
+        "oldFilePath", "oldFilePermission", "oldFileSize", "oldFileType", "out", "outcome", "proto", "reason", "request",
+        "requestClientApplication", "requestContext", "requestCookies", "requestMethod", "rt", "shost", "slat", "slong", "smac",
+        "sntdom", "sourceDnsDomain", "sourceServiceName", "sourceTranslatedAddress", "sourceTranslatedPort", "spid", "spriv", "sproc",
+        "spt", "src", "start", "suid", "suser", "type",
+        // LEEF only
+        "accountName", "devTime", "devTimeFormat", "dstBytes", "dstMAC", "dstPackets", "dstPort", "dstPostNAT", "dstPostNATPort",
+        "dstPreNAT", "dstPreNATPort", "groupID", "identGrpName", "identHostName", "identMAC", "identNetBios", "identSecondlp", "identSrc",
+        "isLoginEvent", "isLogoutEvent", "policy", "realm", "resource", "role", "sev", "srcBytes", "srcMAC", "srcPackets", "srcPort",
+        "srcPostNAT", "srcPostNATPort", "srcPreNAT", "srcPreNATPort", "totalPackets", "url", "usrName", "vSrc", "vSrcName",
+    };
+    // An open addressing hash table of the well known keys, size must be a power of two
+    private static final String[] KEYSTABLE = new String[1024];
+    static {
+        for (String key: WELLKNOWNKEYS) {
+            int slot = hash(key, 0, key.length()) & (KEYSTABLE.length - 1);
+            while (KEYSTABLE[slot] != null) {
+                slot = (slot + 1) & (KEYSTABLE.length - 1);
+            }
+            KEYSTABLE[slot] = key;
+        }
+    }
 
     @Getter @Setter
     private String[] field = new String[] {"message"};
-    private ThreadLocal<Matcher> fieldMatcherSource = ThreadLocal.withInitial(() -> fieldPattern.matcher(""));
-    private ThreadLocal<Matcher> extensionMatcherSource = ThreadLocal.withInitial(() -> extensionPattern.matcher(""));
+
+    /**
+     * The state of the parsing of a message
+     */
+    private static class Cursor {
+        private final String message;
+        private final int length;
+        private int pos;
+        Cursor(String message, int pos) {
+            this.message = message;
+            this.length = message.length();
+            this.pos = pos;
+        }
+    }
 
     @Override
     public boolean process(Event event) throws ProcessorException {
         String message = event.applyAtPath(Action.GET, field, null).toString();
-        if (! message.startsWith("CEF:")) {
-            throw event.buildException("not a CEF message: \"" + message + "\"");
-        }
-        message = message.substring(4);
-        try {
-            Map<String, Object> cefContent = new HashMap<>(COLUMNS.length);
-            // The CEF specifications are totally brain-dead, so nothing is easy, needs to be parsed with care
-            Matcher m = fieldMatcherSource.get();
-            m.reset(message);
-
-            // First resolution of the CEF fields
-            int i = -1;
-            while (++i < 7 && m.find()) {
-                String column = COLUMNS[i];
-                switch (column) {
-                case "version":
-                case "severity":
-                    try {
-                        cefContent.put(column, Integer.valueOf(m.group()));
-                    } catch (Exception e) {
-                        cefContent.put(column + "_failed", m.group());
-                    }
+        if (message.startsWith("CEF:")) {
+            parseCef(event, new Cursor(message, 4));
+        } else if (message.startsWith("LEEF:")) {
+            parseLeef(event, new Cursor(message, 5));
+        } else {
+            throw event.buildException("not a CEF or LEEF message: \"" + message + "\"");
+        }
+        return true;
+    }
+
+    private void parseCef(Event event, Cursor cursor) throws ProcessorException {
+        Map<String, Object> cefContent = new HashMap<>(COLUMNS.length);
+        for (int i = 0; i < COLUMNS.length; i++) {
+            // The extension can be missing, even without a final |
+            String value = headerField(cursor, i == COLUMNS.length - 1);
+            if (value == null) {
+                throw event.buildException("failed to parse CEF, truncated header: \"" + cursor.message + "\"");
+            }
+            String column = COLUMNS[i];
+            switch (column) {
+            case "version":
+            case "severity":
+                try {
+                    cefContent.put(column, Integer.valueOf(value));
+                } catch (NumberFormatException e) {
+                    cefContent.put(column + "_failed", value);
+                }
+                break;
+            default:
+                cefContent.put(column, value);
+            }
+        }
+        event.put("cef_fields", cefContent);
+        event.put("cef_extensions", cefExtensions(cursor));
+    }
+
+    private void parseLeef(Event event, Cursor cursor) throws ProcessorException {
+        Map<String, Object> leefContent = new HashMap<>(5);
+        String version = headerField(cursor, false);
+        if (! "1.0".equals(version) && ! "2.0".equals(version)) {
+            throw event.buildException("failed to parse LEEF, unknown version: \"" + cursor.message + "\"");
+        }
+        leefContent.put("version", version);
+        for (int i = 1; i < 5; i++) {
+            String value = headerField(cursor, i == 4);
+            if (value == null) {
+                throw event.buildException("failed to parse LEEF, truncated header: \"" + cursor.message + "\"");
+            }
+            leefContent.put(COLUMNS[i], value);
+        }
+        char delimiter = '\t';
+        if ("2.0".equals(version) && cursor.pos < cursor.length) {
+            int attributesStart = cursor.pos;
+            String delimiterField = headerField(cursor, true);
+            if (delimiterField.length() == 1) {
+                delimiter = delimiterField.charAt(0);
+            } else if (delimiterField.indexOf('=') >= 0) {
+                // The delimiter is missing, it's already the attributes
+                cursor.pos = attributesStart;
+            } else if (! delimiterField.isEmpty()) {
+                // An hexadecimal value, like x09 or 0x09
+                int start = delimiterField.startsWith("0x") ? 2 : (delimiterField.startsWith("x") ? 1 : -1);
+                try {
+                    delimiter = (char) Integer.parseInt(delimiterField.substring(start), 16);
+                } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                    throw event.buildException("failed to parse LEEF, invalid delimiter: \"" + delimiterField + "\"");
+                }
+            }
+        }
+        event.put("leef_fields", leefContent);
+        event.put("leef_attributes", leefAttributes(cursor, delimiter));
+    }
+
+    /**
+     * Read a header field, up to the next unescaped | that is consumed, with \| and \\ unescaped.
+     * @param last true if this field can end the message
+     * @return the value, or null if the message ended before the field ended
+     */
+    private String headerField(Cursor cursor, boolean last) {
+        String message = cursor.message;
+        int start = cursor.pos;
+        StringBuilder unescaped = null;
+        while (cursor.pos < cursor.length) {
+            char c = message.charAt(cursor.pos);
+            if (c == '|') {
+                String value = unescaped == null ? message.substring(start, cursor.pos) : unescaped.toString();
+                cursor.pos++;
+                return value;
+            } else if (c == '\\' && cursor.pos + 1 < cursor.length && (message.charAt(cursor.pos + 1) == '|' || message.charAt(cursor.pos + 1) == '\\')) {
+                if (unescaped == null) {
+                    unescaped = new StringBuilder().append(message, start, cursor.pos);
+                }
+                unescaped.append(message.charAt(cursor.pos + 1));
+                cursor.pos += 2;
+            } else {
+                if (unescaped != null) {
+                    unescaped.append(c);
+                }
+                cursor.pos++;
+            }
+        }
+        if (last) {
+            return unescaped == null ? message.substring(start) : unescaped.toString();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Read CEF extensions. A value ends at the last space before the next key, as the only unescaped
+     * = are the key separators.
+     */
+    private Map<String, Object> cefExtensions(Cursor cursor) {
+        String message = cursor.message;
+        Map<String, Object> cefExtensions = new HashMap<>();
+        // Skip anything before the first key
+        int keyStart = cursor.pos;
+        int keyEnd;
+        while ((keyEnd = keyEnd(message, keyStart)) < 0) {
+            int space = message.indexOf(' ', keyStart);
+            if (space < 0) {
+                return cefExtensions;
+            }
+            keyStart = space + 1;
+        }
+        while (keyEnd >= 0) {
+            String key = key(message, keyStart, keyEnd);
+            int i = keyEnd + 1;
+            int valueStart = i;
+            StringBuilder unescaped = null;
+            keyStart = -1;
+            while (i < cursor.length) {
+                char c = message.charAt(i);
+                if (c == ' ' && (keyStart = nextKey(message, i)) >= 0) {
                     break;
-                default:
-                    cefContent.put(column, m.group().replace("\\\\", "\\").replace("\\|", "|"));
+                } else if (c == '\\' && i + 1 < cursor.length) {
+                    char next = message.charAt(i + 1);
+                    if (unescaped == null) {
+                        unescaped = new StringBuilder().append(message, valueStart, i);
+                    }
+                    switch (next) {
+                    case '\\':
+                    case '=':
+                        unescaped.append(next);
+                        break;
+                    case 'n':
+                        unescaped.append('\n');
+                        break;
+                    case 'r':
+                        unescaped.append('\r');
+                        break;
+                    default:
+                        unescaped.append(c).append(next);
+                    }
+                    i += 2;
+                } else {
+                    if (unescaped != null) {
+                        unescaped.append(c);
+                    }
+                    i++;
                 }
             }
-            String extension = message.substring(m.end() + 1);
-
-            //Resolution of extensions
-            Map<String, Object> cefExtensions = new HashMap<>();
-            Matcher m2 = extensionMatcherSource.get();
-            m2.reset(extension);
-            while (m2.find()) {
-                cefExtensions.put(m2.group("key"), m2.group("value").replace("\\\\", "\\").replace("\\=", "=").replace("\\n", "\n").replace("\\r", "\r"));
+            cefExtensions.put(key, unescaped == null ? message.substring(valueStart, i) : unescaped.toString());
+            keyEnd = keyStart < 0 ? -1 : keyEnd(message, keyStart);
+        }
+        return cefExtensions;
+    }
+
+    /**
+     * If a key followed by = starts after the spaces at position i, return the start of the key, otherwise return -1.
+     */
+    private int nextKey(String message, int i) {
+        if (i < 0) {
+            return -1;
+        }
+        while (i < message.length() && message.charAt(i) == ' ') {
+            i++;
+        }
+        return keyEnd(message, i) >= 0 ? i : -1;
+    }
+
+    /**
+     * Return the position of the = that ends a key starting at start, or -1 if there is no key.
+     */
+    private int keyEnd(String message, int start) {
+        int i = start;
+        while (i < message.length() && isKeyChar(message.charAt(i))) {
+            i++;
+        }
+        return i > start && i < message.length() && message.charAt(i) == '=' ? i : -1;
+    }
+
+    private boolean isKeyChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * LEEF attributes are not escaped, a value ends at the delimiter.
+     */
+    private Map<String, Object> leefAttributes(Cursor cursor, char delimiter) {
+        String message = cursor.message;
+        Map<String, Object> leefAttributes = new HashMap<>();
+        int i = cursor.pos;
+        while (i < cursor.length) {
+            int end = message.indexOf(delimiter, i);
+            if (end < 0) {
+                end = cursor.length;
+            }
+            int equal = message.indexOf('=', i);
+            if (equal > i && equal < end) {
+                leefAttributes.put(key(message, i, equal), message.substring(equal + 1, end));
             }
+            i = end + 1;
+        }
+        return leefAttributes;
+    }
 
-            event.put("cef_fields", cefContent);
-            event.put("cef_extensions", cefExtensions);
+    /**
+     * Return the well known key if it matches, or a new string.
+     */
+    private static String key(String message, int start, int end) {
+        int slot = hash(message, start, end) & (KEYSTABLE.length - 1);
+        String key;
+        while ((key = KEYSTABLE[slot]) != null) {
+            if (key.length() == end - start && message.regionMatches(start, key, 0, end - start)) {
+                return key;
+            }
+            slot = (slot + 1) & (KEYSTABLE.length - 1);
+        }
+        return message.substring(start, end);
+    }
 
-            return true;
-        } catch (Exception e) {
-            throw event.buildException("failed to parse CEF: " + message, e);
+    private static int hash(String s, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + s.charAt(i);
         }
+        return hash ^ (hash >>> 16);
     }
 
 }
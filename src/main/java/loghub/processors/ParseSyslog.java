@@ -0,0 +1,501 @@
+package loghub.processors;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import loghub.Event;
+import loghub.Event.Action;
+import loghub.Processor;
+import loghub.ProcessorException;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Parse a syslog message, as described in RFC 3164 or RFC 5424, in a single pass and without regex.
+ * <p>
+ * The priority is resolved in <code>facility</code> and <code>severity</code>, like {@link SyslogPriority}. The header
+ * is stored in <code>version</code>, <code>hostname</code>, <code>appname</code>, <code>procid</code> and <code>msgid</code>,
+ * the structured data in <code>structured_data</code>, as a map of maps, and the date is used as the timestamp of the event.
+ * The parsed field is replaced by the message content. Missing or nil values are not stored.
+ * <p>
+ * Common deviations from RFC 3164 are tolerated: a missing priority, timestamp or hostname, the milliseconds, a year or a
+ * leading <code>*</code> or <code>.</code> in the date, or a RFC 3339 date instead of the BSD one. A BSD date has no year, it's
+ * taken from the current date, in the configured <code>timezone</code>, except if the result is in the future, when the
+ * message was sent during the previous year.
+ *
+ * @author Fabrice Bacchella
+ *
+ */
+public class ParseSyslog extends Processor {
+
+    private static final String[] MONTHS = new String[] {"jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct", "nov", "dec"};
+
+    @Getter @Setter
+    private String[] field = new String[] {"message"};
+    @Getter @Setter
+    private boolean resolve = true;
+    private ZoneId zone = ZoneId.systemDefault();
+
+    /**
+     * The state of the parsing of a message, with the values found, given to the event once the parsing succeeded
+     */
+    private static class Cursor {
+        private final String message;
+        private final int length;
+        private int pos = 0;
+        private final Map<String, Object> values = new HashMap<>();
+        private Instant timestamp = null;
+        Cursor(String message) {
+            this.message = message;
+            this.length = message.length();
+        }
+        /**
+         * Keep a value, a null one is not stored.
+         */
+        void put(String key, Object value) {
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        boolean more() {
+            return pos < length;
+        }
+        char peek() {
+            return message.charAt(pos);
+        }
+        boolean isDigit(int i) {
+            return i < length && message.charAt(i) >= '0' && message.charAt(i) <= '9';
+        }
+        /**
+         * Read exactly count digits, or return -1 and don't move.
+         */
+        int digits(int count) {
+            int value = 0;
+            for (int i = 0; i < count; i++) {
+                if (! isDigit(pos + i)) {
+                    return -1;
+                }
+                value = value * 10 + message.charAt(pos + i) - '0';
+            }
+            pos += count;
+            return value;
+        }
+        boolean expect(char c) {
+            if (pos < length && message.charAt(pos) == c) {
+                pos++;
+                return true;
+            } else {
+                return false;
+            }
+        }
+        void skipSpaces() {
+            while (pos < length && message.charAt(pos) == ' ') {
+                pos++;
+            }
+        }
+        /**
+         * Return the next space delimited token, or null if it's the nil value.
+         */
+        String token() {
+            int start = pos;
+            while (pos < length && message.charAt(pos) != ' ') {
+                pos++;
+            }
+            String token = message.substring(start, pos);
+            skipSpaces();
+            return token.isEmpty() || "-".equals(token) ? null : token;
+        }
+        String remaining() {
+            int start = pos;
+            // A RFC 5424 message can start with an UTF-8 BOM
+            if (start < length && message.charAt(start) == '\uFEFF') {
+                start++;
+            }
+            pos = length;
+            return message.substring(start);
+        }
+    }
+
+    @Override
+    public boolean process(Event event) throws ProcessorException {
+        Object value = event.applyAtPath(Action.GET, field, null);
+        if (value == null) {
+            throw event.buildException("no syslog message in field " + String.join(".", field));
+        }
+        String message = value.toString();
+        Cursor cursor = new Cursor(message);
+        boolean parsed = false;
+        try {
+            int priority = parsePriority(cursor);
+            if (priority >= 0) {
+                parsed = true;
+                int facility = priority >> 3;
+                int severity = priority & 7;
+                if (resolve) {
+                    cursor.put("facility", facility < 24 ? SyslogPriority.FACILITIES[facility] : Integer.toString(facility));
+                    cursor.put("severity", SyslogPriority.SEVERITIES[severity]);
+                } else {
+                    cursor.put("facility", facility);
+                    cursor.put("severity", severity);
+                }
+            }
+            // A version is a number followed by a space, a RFC 3164 header never starts like that
+            int version = -1;
+            int versionStart = cursor.pos;
+            while (cursor.isDigit(cursor.pos) && cursor.pos - versionStart < 2) {
+                cursor.pos++;
+            }
+            if (cursor.pos > versionStart && cursor.expect(' ')) {
+                version = Integer.parseInt(message.substring(versionStart, cursor.pos - 1));
+            } else {
+                cursor.pos = versionStart;
+            }
+            if (version > 0 && parse5424(cursor, event, version)) {
+                parsed = true;
+            } else {
+                // Not a RFC 5424 header, like in "<13>2 disks failed"
+                cursor.pos = versionStart;
+                parsed |= parse3164(cursor);
+            }
+        } catch (DateTimeException | IndexOutOfBoundsException | NumberFormatException e) {
+            throw event.buildException("failed to parse syslog message: \"" + message + "\"", e);
+        }
+        if (! parsed) {
+            throw event.buildException("not a syslog message: \"" + message + "\"");
+        }
+        // The event is only modified once the message is parsed
+        event.putAll(cursor.values);
+        if (cursor.timestamp != null) {
+            event.setTimestamp(cursor.timestamp);
+        }
+        event.applyAtPath(Action.PUT, field, cursor.remaining(), true);
+        return true;
+    }
+
+    /**
+     * Parse the &lt;PRI&gt; part, return -1 and don't move if it's missing or invalid.
+     */
+    private int parsePriority(Cursor cursor) {
+        int start = cursor.pos;
+        if (cursor.expect('<')) {
+            int priority = 0;
+            int digits = 0;
+            while (cursor.isDigit(cursor.pos) && digits < 3) {
+                priority = priority * 10 + cursor.peek() - '0';
+                cursor.pos++;
+                digits++;
+            }
+            if (digits > 0 && priority <= 191 && cursor.expect('>')) {
+                return priority;
+            }
+        }
+        cursor.pos = start;
+        return -1;
+    }
+
+    /**
+     * Parse a RFC 5424 header, after the version. Return false and don't keep any value if the timestamp is
+     * missing, it's not a RFC 5424 message.
+     */
+    private boolean parse5424(Cursor cursor, Event event, int version) throws ProcessorException {
+        if (cursor.expect('-')) {
+            cursor.skipSpaces();
+        } else {
+            Instant timestamp = parseRfc3339(cursor);
+            if (timestamp == null) {
+                return false;
+            }
+            cursor.timestamp = timestamp;
+            cursor.skipSpaces();
+        }
+        cursor.put("version", version);
+        cursor.put("hostname", cursor.token());
+        cursor.put("appname", cursor.token());
+        cursor.put("procid", cursor.token());
+        cursor.put("msgid", cursor.token());
+        if (cursor.more() && cursor.peek() == '-') {
+            cursor.pos++;
+            cursor.skipSpaces();
+        } else if (cursor.more() && cursor.peek() == '[') {
+            cursor.put("structured_data", parseStructuredData(cursor, event));
+            cursor.expect(' ');
+        }
+        // Else no structured data at all, it's directly the message
+        return true;
+    }
+
+    private Map<String, Map<String, Object>> parseStructuredData(Cursor cursor, Event event) throws ProcessorException {
+        Map<String, Map<String, Object>> sd = new HashMap<>();
+        String message = cursor.message;
+        while (cursor.expect('[')) {
+            int start = cursor.pos;
+            while (cursor.more() && cursor.peek() != ' ' && cursor.peek() != ']') {
+                cursor.pos++;
+            }
+            String sdId = message.substring(start, cursor.pos);
+            Map<String, Object> params = new HashMap<>();
+            while (true) {
+                cursor.skipSpaces();
+                if (! cursor.more()) {
+                    throw event.buildException("unterminated structured data in \"" + message + "\"");
+                } else if (cursor.expect(']')) {
+                    break;
+                }
+                start = cursor.pos;
+                while (cursor.more() && cursor.peek() != '=' && cursor.peek() != ']' && cursor.peek() != ' ') {
+                    cursor.pos++;
+                }
+                String name = message.substring(start, cursor.pos);
+                if (! cursor.expect('=') || ! cursor.expect('"')) {
+                    throw event.buildException("invalid structured data parameter \"" + name + "\" in \"" + message + "\"");
+                }
+                params.put(name, parseParamValue(cursor, event));
+            }
+            sd.put(sdId, params);
+        }
+        return sd;
+    }
+
+    /**
+     * Read a parameter value, after the opening quote, and resolve the escaped <code>"</code>, <code>\</code> and <code>]</code>.
+     */
+    private String parseParamValue(Cursor cursor, Event event) throws ProcessorException {
+        String message = cursor.message;
+        int start = cursor.pos;
+        StringBuilder unescaped = null;
+        while (cursor.more()) {
+            char c = cursor.peek();
+            if (c == '"') {
+                cursor.pos++;
+                return unescaped == null ? message.substring(start, cursor.pos - 1) : unescaped.toString();
+            } else if (c == '\\' && cursor.pos + 1 < cursor.length && "\"\\]".indexOf(message.charAt(cursor.pos + 1)) >= 0) {
+                if (unescaped == null) {
+                    unescaped = new StringBuilder().append(message, start, cursor.pos);
+                }
+                unescaped.append(message.charAt(cursor.pos + 1));
+                cursor.pos += 2;
+            } else {
+                if (unescaped != null) {
+                    unescaped.append(c);
+                }
+                cursor.pos++;
+            }
+        }
+        throw event.buildException("unterminated structured data value in \"" + message + "\"");
+    }
+
+    private boolean parse3164(Cursor cursor) {
+        boolean parsed = false;
+        cursor.skipSpaces();
+        // Some devices flag an unsynchronized clock with a leading * or .
+        int start = cursor.pos;
+        if (cursor.expect('*') || cursor.expect('.')) {
+            start = cursor.pos;
+        }
+        Instant timestamp = cursor.isDigit(cursor.pos) ? parseRfc3339(cursor) : parseBsdDate(cursor);
+        if (timestamp != null) {
+            cursor.timestamp = timestamp;
+            parsed = true;
+            cursor.expect(':');
+            cursor.skipSpaces();
+        } else {
+            cursor.pos = start;
+        }
+        // The hostname is optional, it can't be a tag
+        int tokenStart = cursor.pos;
+        boolean tag = false;
+        while (cursor.more() && cursor.peek() != ' ') {
+            if (cursor.peek() == '[' || cursor.peek() == ':') {
+                tag = true;
+            }
+            cursor.pos++;
+        }
+        if (! tag && cursor.pos > tokenStart && cursor.more() && parsed) {
+            cursor.put("hostname", cursor.message.substring(tokenStart, cursor.pos));
+            cursor.skipSpaces();
+            tokenStart = cursor.pos;
+        }
+        cursor.pos = tokenStart;
+        // The tag, APPNAME[PROCID]: or APPNAME:
+        while (cursor.more()) {
+            char c = cursor.peek();
+            if (c == ':' || c == '[' || c == ' ') {
+                break;
+            }
+            cursor.pos++;
+        }
+        int appnameEnd = cursor.pos;
+        String procid = null;
+        if (cursor.expect('[')) {
+            int procidStart = cursor.pos;
+            while (cursor.more() && cursor.peek() != ']' && cursor.peek() != ' ') {
+                cursor.pos++;
+            }
+            procid = cursor.message.substring(procidStart, cursor.pos);
+            if (! cursor.expect(']')) {
+                procid = null;
+            }
+        }
+        if (appnameEnd > tokenStart && cursor.expect(':')) {
+            cursor.put("appname", cursor.message.substring(tokenStart, appnameEnd));
+            cursor.put("procid", procid);
+            cursor.skipSpaces();
+            parsed = true;
+        } else if (appnameEnd > tokenStart && procid != null) {
+            // No colon after the process id
+            cursor.put("appname", cursor.message.substring(tokenStart, appnameEnd));
+            cursor.put("procid", procid);
+            cursor.skipSpaces();
+            parsed = true;
+        } else {
+            cursor.pos = tokenStart;
+        }
+        return parsed;
+    }
+
+    /**
+     * Parse a <code>Mmm dd hh:mm:ss</code> date, with optional fractional seconds and year.
+     */
+    private Instant parseBsdDate(Cursor cursor) {
+        int start = cursor.pos;
+        if (cursor.pos + 3 > cursor.length) {
+            return null;
+        }
+        int month = -1;
+        for (int i = 0; i < MONTHS.length; i++) {
+            if (cursor.message.regionMatches(true, cursor.pos, MONTHS[i], 0, 3)) {
+                month = i + 1;
+                break;
+            }
+        }
+        if (month < 0) {
+            return null;
+        }
+        cursor.pos += 3;
+        cursor.skipSpaces();
+        int day = cursor.digits(2);
+        if (day < 0) {
+            day = cursor.digits(1);
+        }
+        if (day < 0 || ! cursor.expect(' ')) {
+            cursor.pos = start;
+            return null;
+        }
+        cursor.skipSpaces();
+        // A year can be placed before the time
+        int year = -1;
+        if (cursor.isDigit(cursor.pos + 3) && cursor.pos + 4 < cursor.length && cursor.message.charAt(cursor.pos + 4) == ' ') {
+            year = cursor.digits(4);
+            cursor.skipSpaces();
+        }
+        int hour = cursor.digits(2);
+        int minute = cursor.expect(':') ? cursor.digits(2) : -1;
+        int second = cursor.expect(':') ? cursor.digits(2) : -1;
+        if (hour < 0 || minute < 0 || second < 0) {
+            cursor.pos = start;
+            return null;
+        }
+        int nanos = parseFraction(cursor);
+        // Or after it
+        if (year < 0 && cursor.isDigit(cursor.pos + 4) && cursor.message.charAt(cursor.pos) == ' '
+                && (cursor.pos + 5 == cursor.length || cursor.message.charAt(cursor.pos + 5) == ' ')) {
+            cursor.pos++;
+            year = cursor.digits(4);
+        }
+        if (year >= 0) {
+            return LocalDateTime.of(year, month, day, hour, minute, second, nanos).atZone(zone).toInstant();
+        } else {
+            return resolveYear(ZonedDateTime.now(zone), month, day, hour, minute, second, nanos).toInstant();
+        }
+    }
+
+    /**
+     * A date without a year is in the last twelve months, allowing for clocks a little in advance. A Feb 29 is in the
+     * last leap year.
+     */
+    static ZonedDateTime resolveYear(ZonedDateTime now, int month, int day, int hour, int minute, int second, int nanos) {
+        int year = lastYearWith(now.getYear(), month, day);
+        ZonedDateTime date = ZonedDateTime.of(year, month, day, hour, minute, second, nanos, now.getZone());
+        if (date.isAfter(now.plusDays(1))) {
+            year = lastYearWith(year - 1, month, day);
+            date = ZonedDateTime.of(year, month, day, hour, minute, second, nanos, now.getZone());
+        }
+        return date;
+    }
+
+    private static int lastYearWith(int year, int month, int day) {
+        while (month == 2 && day == 29 && ! Year.isLeap(year)) {
+            year--;
+        }
+        return year;
+    }
+
+    /**
+     * Parse a RFC 3339 date, a date without offset use the configured time zone.
+     */
+    private Instant parseRfc3339(Cursor cursor) {
+        int start = cursor.pos;
+        int year = cursor.digits(4);
+        int month = cursor.expect('-') ? cursor.digits(2) : -1;
+        int day = cursor.expect('-') ? cursor.digits(2) : -1;
+        boolean separator = cursor.expect('T') || cursor.expect('t');
+        int hour = separator ? cursor.digits(2) : -1;
+        int minute = cursor.expect(':') ? cursor.digits(2) : -1;
+        int second = cursor.expect(':') ? cursor.digits(2) : -1;
+        if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0) {
+            cursor.pos = start;
+            return null;
+        }
+        int nanos = parseFraction(cursor);
+        LocalDateTime date = LocalDateTime.of(year, month, day, hour, minute, second, nanos);
+        if (cursor.expect('Z') || cursor.expect('z')) {
+            return date.toInstant(ZoneOffset.UTC);
+        } else if (cursor.more() && (cursor.peek() == '+' || cursor.peek() == '-')) {
+            int sign = cursor.peek() == '-' ? -1 : 1;
+            cursor.pos++;
+            int offsetHour = cursor.digits(2);
+            cursor.expect(':');
+            int offsetMinute = cursor.digits(2);
+            if (offsetHour < 0 || offsetMinute < 0) {
+                cursor.pos = start;
+                return null;
+            }
+            return date.toInstant(ZoneOffset.ofTotalSeconds(sign * (offsetHour * 3600 + offsetMinute * 60)));
+        } else {
+            return date.atZone(zone).toInstant();
+        }
+    }
+
+    /**
+     * Parse an optional fraction of second, return it as nanoseconds.
+     */
+    private int parseFraction(Cursor cursor) {
+        int nanos = 0;
+        if (cursor.message.startsWith(".", cursor.pos) && cursor.isDigit(cursor.pos + 1)) {
+            cursor.pos++;
+            int scale = 100_000_000;
+            while (cursor.isDigit(cursor.pos)) {
+                nanos += (cursor.peek() - '0') * scale;
+                scale /= 10;
+                cursor.pos++;
+            }
+        }
+        return nanos;
+    }
+
+    public String getTimezone() {
+        return zone.getId();
+    }
+
+    public void setTimezone(String zone) {
+        this.zone = ZoneId.of(zone);
+    }
+
+}
@@ -3,6 +3,7 @@ package loghub.processors;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -14,12 +15,44 @@ import loghub.Event;
 import loghub.ProcessorException;
 import loghub.configuration.Properties;
 
+/**
+ * Decode a bit field. Each bit, or group of bits if <code>fieldsLength</code> is given, is named using <code>bitsNames</code>.
+ * <p>
+ * Without <code>fieldsLength</code>, the value is replaced by the immutable list of the names of the bits set. The names are
+ * resolved with one table lookup for each byte of the value, and the lists are cached and shared between events.
+ *
+ * @author Fabrice Bacchella
+ *
+ */
 public class ScanBinary extends FieldsProcessor {
 
+    /**
+     * A decoded value, the list is immutable
+     */
+    private static class Decoded {
+        private final long value;
+        private final List<String> flags;
+        Decoded(long value, List<String> flags) {
+            this.value = value;
+            this.flags = flags;
+        }
+    }
+
+    // The size of the decoded values cache, must be a power of two
+    private static final int CACHESIZE = 1024;
+
     private Object[] bitsNames = new Object[0];
     private int[] fieldsLength = null;
     private boolean asMap = false;
 
+    // For each byte of the value and each byte value, the names of the bits set
+    private String[][][] bytesTables;
+    // The names of the fields and their masks, when fieldsLength is used
+    private String[] fieldsNames;
+    private long[] fieldsMasks;
+    // Identical values are frequent, and a race between threads can only lose a cached value
+    private final Decoded[] cache = new Decoded[CACHESIZE];
+
     @Override
     public boolean configure(Properties properties) {
         if (bitsNames == null || bitsNames.length == 0) {
@@ -30,6 +63,30 @@ public class ScanBinary extends FieldsProcessor {
             fieldsLength = new int[bitsNames.length];
             Arrays.fill(fieldsLength, 1);
         }
+        if (fieldsLength == null) {
+            // Only 63 bits can be set in a positive long
+            int bits = Math.min(bitsNames.length, 63);
+            bytesTables = new String[(bits + 7) / 8][256][];
+            for (int i = 0; i < bytesTables.length; i++) {
+                for (int b = 0; b < 256; b++) {
+                    List<String> names = new ArrayList<>(8);
+                    for (int bit = 0; bit < 8 && i * 8 + bit < bits; bit++) {
+                        if ((b & (1 << bit)) != 0) {
+                            names.add(bitsNames[i * 8 + bit].toString());
+                        }
+                    }
+                    bytesTables[i][b] = names.toArray(new String[names.size()]);
+                }
+            }
+        } else {
+            int count = Math.min(fieldsLength.length, bitsNames.length);
+            fieldsNames = new String[count];
+            fieldsMasks = new long[count];
+            for (int i = 0; i < count; i++) {
+                fieldsNames[i] = bitsNames[i].toString();
+                fieldsMasks[i] = fieldsLength[i] >= 64 ? -1L : (1L << fieldsLength[i]) - 1;
+            }
+        }
         return super.configure(properties);
     }
 
@@ -56,24 +113,42 @@ public class ScanBinary extends FieldsProcessor {
             return false;
         }
         if (fieldsLength == null) {
-            List<String> parsed = new ArrayList<>(bitsNames.length);
-            for (int i = 0 ; nvalue > 0 && i < bitsNames.length ; nvalue = nvalue >> 1 , i++) {
-                if ((nvalue & 1) == 1) {
-                    parsed.add(bitsNames[i].toString());
-                }
-            }
-            return parsed.toArray(new String[parsed.size()]);
+            return decodeFlags(nvalue);
         } else {
-            Map<String, Number> values = new HashMap<>(fieldsLength.length);
-            for (int i = 0 ; i < fieldsLength.length  ; i++) {
-                int mask = (1 << fieldsLength[i]) - 1;
-                values.put(bitsNames[i].toString(), nvalue & mask);
-                nvalue = nvalue >> fieldsLength[i];
+            Map<String, Number> values = new HashMap<>(fieldsNames.length);
+            for (int i = 0 ; i < fieldsNames.length  ; i++) {
+                values.put(fieldsNames[i], nvalue & fieldsMasks[i]);
+                nvalue = fieldsLength[i] >= 64 ? 0 : nvalue >> fieldsLength[i];
             }
             return values;
         }
     }
 
+    private List<String> decodeFlags(long nvalue) {
+        int slot = (int) (nvalue ^ (nvalue >>> 32)) & (CACHESIZE - 1);
+        Decoded decoded = cache[slot];
+        if (decoded != null && decoded.value == nvalue) {
+            return decoded.flags;
+        }
+        // Count the names, to fill an array of the exact size
+        int count = 0;
+        long remaining = nvalue;
+        for (int i = 0; remaining != 0 && i < bytesTables.length; i++, remaining >>>= 8) {
+            count += bytesTables[i][(int) (remaining & 0xff)].length;
+        }
+        String[] names = new String[count];
+        int pos = 0;
+        remaining = nvalue;
+        for (int i = 0; remaining != 0 && i < bytesTables.length; i++, remaining >>>= 8) {
+            String[] byteNames = bytesTables[i][(int) (remaining & 0xff)];
+            System.arraycopy(byteNames, 0, names, pos, byteNames.length);
+            pos += byteNames.length;
+        }
+        List<String> flags = Collections.unmodifiableList(Arrays.asList(names));
+        cache[slot] = new Decoded(nvalue, flags);
+        return flags;
+    }
+
     /**
      * @return the matching
      */
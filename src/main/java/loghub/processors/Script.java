@@ -9,11 +9,14 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Collections;
 import java.util.Map;
 
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.Invocable;
+import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 
@@ -25,18 +28,64 @@ import loghub.Processor;
 import loghub.ProcessorException;
 import loghub.configuration.Properties;
 
+/**
+ * Run a JSR-223 script. The script must return a map of settings, or define a variable <code>settings</code>. The
+ * <code>transform</code> setting is the function called for each event, and the <code>configure</code> one is called when an engine
+ * is created.
+ * <p>
+ * If the script engine is not thread-safe, as given by its <code>THREADING</code> parameter, each thread gets its own engine.
+ * If the engine is {@link Compilable}, the script is compiled once for each engine.
+ *
+ * @author Fabrice Bacchella
+ *
+ */
 public class Script extends Processor {
 
+    /**
+     * A script loaded in an engine
+     */
+    private static class Instance {
+        private final Invocable inv;
+        private final String transform;
+        Instance(Invocable inv, String transform) {
+            this.inv = inv;
+            this.transform = transform;
+        }
+    }
+
     private static ScriptEngineManager factory = null;
 
     private String script;
-    private Invocable inv;
-    private Map<String, String> settings = Collections.emptyMap();
+    private ScriptEngineFactory engineFactory;
+    private String source;
+    private Properties properties;
+    // Used if the engine is thread safe
+    private Instance shared = null;
+    private final ThreadLocal<Instance> perThread = new ThreadLocal<>();
 
     @Override
     public boolean process(Event event) throws ProcessorException {
         try {
-            Object result = inv.invokeFunction(settings.get("transform"), event);
+            Instance instance = shared;
+            if (instance == null) {
+                instance = perThread.get();
+                if (instance == null) {
+                    ScriptEngine engine = engineFactory.getScriptEngine();
+                    // As done by the ScriptEngineManager
+                    engine.setBindings(factory.getBindings(), ScriptContext.GLOBAL_SCOPE);
+                    // Checked like in configure, but now for this thread's engine
+                    try {
+                        instance = loadScript(engine);
+                    } catch (ClassCastException e) {
+                        instance = null;
+                    }
+                    if (instance == null) {
+                        throw event.buildException("script " + script + " didn't return a configuration map");
+                    }
+                    perThread.set(instance);
+                }
+            }
+            Object result = instance.inv.invokeFunction(instance.transform, event);
             return Boolean.TRUE.equals(result);
         } catch (NoSuchMethodException | ScriptException e) {
             throw event.buildException("unable to execute script " + script, e);
@@ -48,7 +97,6 @@ public class Script extends Processor {
         return "Script";
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public boolean configure(Properties properties) {
         synchronized (Script.class) {
@@ -82,14 +130,28 @@ public class Script extends Processor {
                 return false;
             }
             try (Reader r = getScriptReader()) {
-                inv = (Invocable) engine;
-                settings = (Map<String, String>) engine.eval(r);
+                StringBuilder buffer = new StringBuilder();
+                char[] chars = new char[4096];
+                int read;
+                while ((read = r.read(chars)) > 0) {
+                    buffer.append(chars, 0, read);
+                }
+                source = buffer.toString();
             }
-            if(settings == null) {
-                settings = (Map<String, String>) engine.get("settings");
+            this.properties = properties;
+            engineFactory = engine.getFactory();
+            // The first engine checks the script
+            Instance instance = loadScript(engine);
+            if (instance == null) {
+                logger.error("script {} didn't return a configuration map", script);
+                return false;
             }
-            if(settings.containsKey("configure")) {
-                inv.invokeFunction(settings.get("configure"), properties );
+            Object threading = engineFactory.getParameter("THREADING");
+            if (threading != null) {
+                // MULTITHREADED, THREAD-ISOLATED or STATELESS, the engine can be shared
+                shared = instance;
+            } else {
+                logger.debug("script engine {} is not thread-safe, one engine by thread will be used", () -> logengine.getFactory().getEngineName());
             }
             return super.configure(properties);
         } catch (IOException e) {
@@ -107,6 +169,32 @@ public class Script extends Processor {
         }
     }
 
+    /**
+     * Evaluate the script in an engine, compiling it if possible, and run the configure function.
+     * @return the loaded script, or null if the script didn't provide settings
+     */
+    @SuppressWarnings("unchecked")
+    private Instance loadScript(ScriptEngine engine) throws ScriptException, NoSuchMethodException {
+        Map<String, String> settings;
+        if (engine instanceof Compilable) {
+            CompiledScript compiled = ((Compilable) engine).compile(source);
+            settings = (Map<String, String>) compiled.eval();
+        } else {
+            settings = (Map<String, String>) engine.eval(source);
+        }
+        if(settings == null) {
+            settings = (Map<String, String>) engine.get("settings");
+        }
+        if(settings == null) {
+            return null;
+        }
+        Invocable inv = (Invocable) engine;
+        if(settings.containsKey("configure")) {
+            inv.invokeFunction(settings.get("configure"), properties);
+        }
+        return new Instance(inv, settings.get("transform"));
+    }
+
     private Reader getScriptReader() throws IOException {
         Path scriptp = Paths.get(script);
         Reader r;
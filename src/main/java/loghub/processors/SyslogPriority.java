@@ -8,43 +8,45 @@ import java.util.Optional;
 import loghub.Event;
 import loghub.Event.Action;
 import loghub.ProcessorException;
+import loghub.VariablePath;
 import lombok.Getter;
 import lombok.Setter;
 
 public class SyslogPriority extends FieldsProcessor {
     
-    private static final String[] ECSPATHFACILITY = new String[] {".", "log", "syslog", "facility"};
-    private static final String[] ECSPATHSEVERITY = new String[] {".", "log", "syslog", "severity"};
-    private static final String[] ECSPATHPRIORITY = new String[] {".", "log", "syslog", "priority"};
+    private static final VariablePath ECSPATHFACILITY = VariablePath.of(".", "log", "syslog", "facility");
+    private static final VariablePath ECSPATHSEVERITY = VariablePath.of(".", "log", "syslog", "severity");
+    private static final VariablePath ECSPATHPRIORITY = VariablePath.of(".", "log", "syslog", "priority");
 
-    private String[] facilitiesNames = new String[]{"kernel",
-                                                    "user-level",
-                                                    "mail",
-                                                    "daemon",
-                                                    "security/authorization",
-                                                    "syslogd",
-                                                    "line printer",
-                                                    "network news",
-                                                    "uucp",
-                                                    "clock",
-                                                    "security/authorization",
-                                                    "ftp",
-                                                    "ntp",
-                                                    "log audit",
-                                                    "log alert",
-                                                    "clock",
-                                                    "local0",
-                                                    "local1",
-                                                    "local2",
-                                                    "local3",
-                                                    "local4",
-                                                    "local5",
-                                                    "local6",
-                                                    "local7",
-                                                    "invalid facility",
+    // Also used by ParseSyslog
+    static final String[] FACILITIES = new String[]{"kernel",
+                                                     "user-level",
+                                                     "mail",
+                                                     "daemon",
+                                                     "security/authorization",
+                                                     "syslogd",
+                                                     "line printer",
+                                                     "network news",
+                                                     "uucp",
+                                                     "clock",
+                                                     "security/authorization",
+                                                     "ftp",
+                                                     "ntp",
+                                                     "log audit",
+                                                     "log alert",
+                                                     "clock",
+                                                     "local0",
+                                                     "local1",
+                                                     "local2",
+                                                     "local3",
+                                                     "local4",
+                                                     "local5",
+                                                     "local6",
+                                                     "local7",
+                                                     "invalid facility",
     };
 
-    private String[] severitiesNames = new String[] {"emergency",
+    static final String[] SEVERITIES = new String[] {"emergency",
                                                      "alert",
                                                      "critical",
                                                      "error",
@@ -54,6 +56,9 @@ public class SyslogPriority extends FieldsProcessor {
                                                      "debug",
     };
 
+    private String[] facilitiesNames = Arrays.copyOf(FACILITIES, FACILITIES.length);
+    private String[] severitiesNames = Arrays.copyOf(SEVERITIES, SEVERITIES.length);
+
     @Getter @Setter
     private boolean resolve = true;
     @Getter @Setter
@@ -7,47 +7,65 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
-import loghub.CachingParser;
 import loghub.Event;
 import loghub.Helpers;
+import loghub.UaParser;
 import loghub.configuration.Properties;
-import ua_parser.Client;
-import ua_parser.Parser;
 
+/**
+ * Parse a user agent string using the ua_parser regexes. The resolved parts can be restricted using <code>parts</code>,
+ * that can contains <code>device</code>, <code>os</code> and <code>userAgent</code>, the other regexes are not used.
+ *
+ * @author Fabrice Bacchella
+ *
+ */
 public class UserAgent extends FieldsProcessor {
 
-    private Parser uaParser;
+    private static final List<String> PARTS = Arrays.asList("device", "os", "userAgent");
+
+    private UaParser uaParser;
     private int cacheSize = 1000;
+    private long cacheWeight = 0;
+    private long offHeapSize = 0;
+    private String[] parts = PARTS.toArray(new String[0]);
     private String agentsFile = null;
     private URL agentsUrl = null;
 
     @Override
     public Object fieldFunction(Event event, Object value) {
-        Client c = uaParser.parse(value.toString());
+        UaParser.Result c = uaParser.parse(value.toString());
 
         Map<String, Object> ua = new HashMap<>(3);
-        Helpers.putNotEmpty(ua, "device", c.device.family);
-
-        Map<String, Object> os =  new HashMap<>(5);
-        Helpers.putNotEmpty(os, "family", c.os.family);
-        Helpers.putNotEmpty(os, "major", c.os.major);
-        Helpers.putNotEmpty(os, "minor", c.os.minor);
-        Helpers.putNotEmpty(os, "patch", c.os.patch);
-        Helpers.putNotEmpty(os, "patchMinor", c.os.patchMinor);
-        if(os.size() > 0) {
-            ua.put("os", os);
+        if (c.device != null) {
+            Helpers.putNotEmpty(ua, "device", c.device.family);
+        }
+
+        if (c.os != null) {
+            Map<String, Object> os =  new HashMap<>(5);
+            Helpers.putNotEmpty(os, "family", c.os.family);
+            Helpers.putNotEmpty(os, "major", c.os.major);
+            Helpers.putNotEmpty(os, "minor", c.os.minor);
+            Helpers.putNotEmpty(os, "patch", c.os.patch);
+            Helpers.putNotEmpty(os, "patchMinor", c.os.patchMinor);
+            if(os.size() > 0) {
+                ua.put("os", os);
+            }
         }
 
-        Map<String, Object> agent =  new HashMap<>(4);
-        Helpers.putNotEmpty(agent, "family", c.userAgent.family);
-        Helpers.putNotEmpty(agent, "major", c.userAgent.major);
-        Helpers.putNotEmpty(agent, "minor", c.userAgent.minor);
-        Helpers.putNotEmpty(agent, "patch", c.userAgent.patch);
-        if(agent.size() > 0) {
-            ua.put("userAgent", agent);
+        if (c.userAgent != null) {
+            Map<String, Object> agent =  new HashMap<>(4);
+            Helpers.putNotEmpty(agent, "family", c.userAgent.family);
+            Helpers.putNotEmpty(agent, "major", c.userAgent.major);
+            Helpers.putNotEmpty(agent, "minor", c.userAgent.minor);
+            Helpers.putNotEmpty(agent, "patch", c.userAgent.patch);
+            if(agent.size() > 0) {
+                ua.put("userAgent", agent);
+            }
         }
 
         return ua;
@@ -60,6 +78,13 @@ public class UserAgent extends FieldsProcessor {
 
     @Override
     public boolean configure(Properties properties) {
+        List<String> wanted = Arrays.asList(parts);
+        for (String part: wanted) {
+            if (! PARTS.contains(part)) {
+                logger.error("Unknown user agent part: {}", part);
+                return false;
+            }
+        }
         InputStream is;
         if (agentsUrl != null) {
             try {
@@ -83,7 +108,7 @@ public class UserAgent extends FieldsProcessor {
             }
         }
         is = new BufferedInputStream(is);
-        uaParser = new CachingParser(cacheSize, properties, is);
+        uaParser = new UaParser(cacheSize, cacheWeight, offHeapSize, properties, is, wanted.contains("userAgent"), wanted.contains("os"), wanted.contains("device"));
         try {
             is.close();
         } catch (IOException e) {
@@ -107,6 +132,48 @@ public class UserAgent extends FieldsProcessor {
         this.cacheSize = cacheSize;
     }
 
+    /**
+     * @return the maximum total length of the cached user agents, 0 if the cache is bounded by cacheSize
+     */
+    public long getCacheWeight() {
+        return cacheWeight;
+    }
+
+    /**
+     * @param cacheWeight if positive, the cache is bounded by the total length of the user agents instead of cacheSize
+     */
+    public void setCacheWeight(long cacheWeight) {
+        this.cacheWeight = cacheWeight;
+    }
+
+    /**
+     * @return the size in bytes of the off heap tier of the cache
+     */
+    public long getOffHeapSize() {
+        return offHeapSize;
+    }
+
+    /**
+     * @param offHeapSize if positive, the results evicted from the cache are kept in an off heap area of this size, in bytes
+     */
+    public void setOffHeapSize(long offHeapSize) {
+        this.offHeapSize = offHeapSize;
+    }
+
+    /**
+     * @return the parts of the user agent that are resolved
+     */
+    public String[] getParts() {
+        return Arrays.copyOf(parts, parts.length);
+    }
+
+    /**
+     * @param parts the parts of the user agent that are resolved, some of <code>device</code>, <code>os</code> and <code>userAgent</code>
+     */
+    public void setParts(String[] parts) {
+        this.parts = Arrays.copyOf(parts, parts.length);
+    }
+
     /**
      * @return the agentsFile
      */
@@ -1,5 +1,10 @@
 package loghub.processors;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -11,23 +16,63 @@ import loghub.Event;
  * unless everything match, in this case, the field is removed.
  * <p>
  * The default parser is "(?&lt;name&gt;\p{Alnum}+)\p{Space}?[=:]\p{Space}?(?&lt;value&gt;[^;,:]+)[;,:]?" and should match most common case
+ * <p>
+ * With the mode <code>tokenizer</code>, the field is instead read in a single pass, without regex. Pairs are separated by one of the
+ * <code>separators</code>, the key and the value by one of the <code>keyValueSeparators</code>. Spaces before a key/value separator are ignored,
+ * and after it only if the space is not a separator. In that case, a value can contains spaces. A value can be enclosed in one of the
+ * <code>quotes</code>, and the <code>escape</code> character protects the next one. Words that are not followed by a key/value separator
+ * stay in the field, separated by a space. When a key is found again in the field, <code>duplicateKeys</code> tells if the first value
+ * is kept (<code>first</code>), if it's replaced (<code>last</code>), or if the values are collected in a list (<code>list</code>).
+ * A value already in the event is always replaced.
+ *
  * @author Fabrice Bacchella
  *
  */
 public class VarExtractor extends FieldsProcessor {
 
+    private enum Mode {
+        REGEX,
+        TOKENIZER,
+    }
+
+    private enum DuplicateKeys {
+        FIRST,
+        LAST,
+        LIST,
+    }
+
+    // The size of the keys cache, must be a power of two
+    private static final int KEYSCACHESIZE = 256;
+
     private Pattern parser = Pattern.compile("(?<name>\\p{Alnum}+)\\p{Space}?[=:]\\p{Space}?(?<value>[^;,:]+)[;,:]?");
     ThreadLocal<Matcher> matchersGenerator = ThreadLocal.withInitial( () -> parser.matcher(""));
 
+    private Mode mode = Mode.REGEX;
+    private String separators = " ,;";
+    private String keyValueSeparators = "=:";
+    private String quotes = "\"'";
+    private int escape = '\\';
+    private DuplicateKeys duplicateKeys = DuplicateKeys.LAST;
+    // The same keys are found again and again, they are reused instead of allocated for each event.
+    // A race between threads can only lose a cached key.
+    private final String[] keysCache = new String[KEYSCACHESIZE];
+
     @Override
     public Object fieldFunction(Event event, Object fieldValue) {
+        if (mode == Mode.TOKENIZER) {
+            return tokenize(event, fieldValue.toString());
+        } else {
+            return regexParse(event, fieldValue.toString());
+        }
+    }
+
+    private Object regexParse(Event event, String message) {
         boolean parsed = false;
-        String message = fieldValue.toString();
-        String after = message;
+        int after = 0;
         Matcher m = matchersGenerator.get().reset(message);
-        StringBuffer skipped = new StringBuffer(message.length());
+        StringBuilder skipped = new StringBuilder(message.length());
         while(m.find()) {
-            skipped.append(message.substring(m.regionStart(), m.start()));
+            skipped.append(message, m.regionStart(), m.start());
             String key = m.group("name");
             String value = m.group("value");
             if (key != null && ! key.isEmpty()) {
@@ -36,19 +81,177 @@ public class VarExtractor extends FieldsProcessor {
                     event.put(key, value);
                 }
             }
-            after = message.substring(m.end());
+            after = m.end();
             m.region(m.end(), m.regionEnd());
         }
-        skipped.append(after);
+        skipped.append(message, after, message.length());
+        return resolve(parsed, skipped);
+    }
+
+    private Object tokenize(Event event, String message) {
+        boolean parsed = false;
+        // The values found in this message, to detect the duplicated keys
+        Map<String, Object> found = duplicateKeys == DuplicateKeys.LAST ? null : new HashMap<>();
+        StringBuilder skipped = null;
+        int length = message.length();
+        boolean spaceSeparated = separators.indexOf(' ') >= 0;
+        int i = 0;
+        while (i < length) {
+            char c = message.charAt(i);
+            if (Character.isWhitespace(c) || separators.indexOf(c) >= 0) {
+                i++;
+                continue;
+            }
+            int keyStart = i;
+            while (i < length && ! isKeyDelimiter(message.charAt(i))) {
+                i++;
+            }
+            int keyEnd = i;
+            // Spaces are allowed before the key/value separator, and after it if they don't separate pairs
+            int next = skipSpaces(message, i);
+            if (keyEnd > keyStart && next < length && keyValueSeparators.indexOf(message.charAt(next)) >= 0) {
+                i = spaceSeparated ? next + 1 : skipSpaces(message, next + 1);
+                String value;
+                StringBuilder unescaped = null;
+                if (i < length && quotes.indexOf(message.charAt(i)) >= 0) {
+                    char quote = message.charAt(i++);
+                    int valueStart = i;
+                    while (i < length && message.charAt(i) != quote) {
+                        c = message.charAt(i);
+                        if (c == escape && i + 1 < length) {
+                            if (unescaped == null) {
+                                unescaped = new StringBuilder().append(message, valueStart, i);
+                            }
+                            unescaped.append(message.charAt(i + 1));
+                            i += 2;
+                        } else {
+                            if (unescaped != null) {
+                                unescaped.append(c);
+                            }
+                            i++;
+                        }
+                    }
+                    value = unescaped == null ? message.substring(valueStart, i) : unescaped.toString();
+                    // Skip the closing quote, an unterminated value goes to the end of the field
+                    i++;
+                } else {
+                    int valueStart = i;
+                    // The end of the value without trailing spaces, in the message or in the unescaped value
+                    int valueEnd = i;
+                    int kept = 0;
+                    while (i < length && separators.indexOf(message.charAt(i)) < 0) {
+                        c = message.charAt(i);
+                        if (c == escape && i + 1 < length) {
+                            if (unescaped == null) {
+                                unescaped = new StringBuilder().append(message, valueStart, i);
+                            }
+                            unescaped.append(message.charAt(i + 1));
+                            i += 2;
+                            kept = unescaped.length();
+                        } else if (spaceSeparated && Character.isWhitespace(c)) {
+                            break;
+                        } else {
+                            if (unescaped != null) {
+                                unescaped.append(c);
+                            }
+                            i++;
+                            if (! Character.isWhitespace(c)) {
+                                valueEnd = i;
+                                kept = unescaped != null ? unescaped.length() : 0;
+                            }
+                        }
+                    }
+                    if (unescaped != null) {
+                        unescaped.setLength(kept);
+                        value = unescaped.toString();
+                    } else {
+                        value = message.substring(valueStart, valueEnd);
+                    }
+                }
+                store(event, found, key(message, keyStart, keyEnd), value);
+                parsed = true;
+            } else {
+                // Not a key, kept in the unparsed content
+                if (keyEnd == keyStart) {
+                    // A lone key/value separator
+                    keyEnd = ++i;
+                }
+                if (skipped == null) {
+                    skipped = new StringBuilder(length);
+                } else {
+                    skipped.append(' ');
+                }
+                skipped.append(message, keyStart, keyEnd);
+            }
+        }
+        return resolve(parsed, skipped);
+    }
+
+    private Object resolve(boolean parsed, StringBuilder skipped) {
         if (! parsed) {
             return FieldsProcessor.RUNSTATUS.FAILED;
-        } else if (skipped.length() != 0) {
+        } else if (skipped != null && skipped.length() != 0) {
             return skipped.toString();
         } else {
             return FieldsProcessor.RUNSTATUS.REMOVE;
         }
     }
 
+    private boolean isKeyDelimiter(char c) {
+        return Character.isWhitespace(c) || keyValueSeparators.indexOf(c) >= 0 || separators.indexOf(c) >= 0;
+    }
+
+    private int skipSpaces(String message, int i) {
+        while (i < message.length() && Character.isWhitespace(message.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private String key(String message, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + message.charAt(i);
+        }
+        int slot = (hash ^ (hash >>> 16)) & (KEYSCACHESIZE - 1);
+        String key = keysCache[slot];
+        if (key == null || key.length() != end - start || ! message.regionMatches(start, key, 0, end - start)) {
+            key = message.substring(start, end);
+            keysCache[slot] = key;
+        }
+        return key;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void store(Event event, Map<String, Object> found, String key, String value) {
+        switch (duplicateKeys) {
+        case FIRST:
+            if (found.putIfAbsent(key, value) == null) {
+                event.put(key, value);
+            }
+            break;
+        case LAST:
+            event.put(key, value);
+            break;
+        case LIST:
+            Object previous = found.get(key);
+            if (previous == null) {
+                found.put(key, value);
+                event.put(key, value);
+            } else if (previous instanceof List) {
+                // The list was built for this message
+                ((List<Object>) previous).add(value);
+            } else {
+                List<Object> values = new ArrayList<>(2);
+                values.add(previous);
+                values.add(value);
+                found.put(key, values);
+                event.put(key, values);
+            }
+            break;
+        }
+    }
+
     @Override
     public String getName() {
         return "VarExtractor";
@@ -68,4 +271,88 @@ public class VarExtractor extends FieldsProcessor {
         this.parser = Pattern.compile(parser);
     }
 
+    /**
+     * @return the mode, <code>regex</code> or <code>tokenizer</code>
+     */
+    public String getMode() {
+        return mode.name().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * @param mode the mode to set, <code>regex</code> or <code>tokenizer</code>
+     */
+    public void setMode(String mode) {
+        this.mode = Mode.valueOf(mode.toUpperCase(Locale.ENGLISH));
+    }
+
+    /**
+     * @return the characters that separates pairs in the tokenizer mode
+     */
+    public String getSeparators() {
+        return separators;
+    }
+
+    /**
+     * @param separators the characters that separates pairs in the tokenizer mode, spaces always separate words
+     */
+    public void setSeparators(String separators) {
+        this.separators = separators;
+    }
+
+    /**
+     * @return the characters that separates a key and a value in the tokenizer mode
+     */
+    public String getKeyValueSeparators() {
+        return keyValueSeparators;
+    }
+
+    /**
+     * @param keyValueSeparators the characters that separates a key and a value in the tokenizer mode
+     */
+    public void setKeyValueSeparators(String keyValueSeparators) {
+        this.keyValueSeparators = keyValueSeparators;
+    }
+
+    /**
+     * @return the quotes characters in the tokenizer mode
+     */
+    public String getQuotes() {
+        return quotes;
+    }
+
+    /**
+     * @param quotes the quotes characters in the tokenizer mode
+     */
+    public void setQuotes(String quotes) {
+        this.quotes = quotes;
+    }
+
+    /**
+     * @return the escape character in the tokenizer mode, an empty string if there is none
+     */
+    public String getEscape() {
+        return escape < 0 ? "" : String.valueOf((char) escape);
+    }
+
+    /**
+     * @param escape the escape character in the tokenizer mode, an empty string if there is none
+     */
+    public void setEscape(String escape) {
+        this.escape = escape == null || escape.isEmpty() ? -1 : escape.charAt(0);
+    }
+
+    /**
+     * @return what to do with a key already present, <code>first</code>, <code>last</code> or <code>list</code>
+     */
+    public String getDuplicateKeys() {
+        return duplicateKeys.name().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * @param duplicateKeys what to do with a key already present, <code>first</code>, <code>last</code> or <code>list</code>
+     */
+    public void setDuplicateKeys(String duplicateKeys) {
+        this.duplicateKeys = DuplicateKeys.valueOf(duplicateKeys.toUpperCase(Locale.ENGLISH));
+    }
+
 }
@@ -0,0 +1,317 @@
+package loghub.receivers;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.Level;
+
+import com.codahale.metrics.Snapshot;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import loghub.BuilderClass;
+import loghub.ConnectionContext;
+import loghub.Event;
+import loghub.Helpers;
+import loghub.ThreadBuilder;
+import loghub.VarFormatter;
+import loghub.configuration.Properties;
+import loghub.metrics.Stats;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A receiver that generates events, to test the capacity of a configuration.
+ * <p>
+ * The events can have many shapes:
+ * <ul>
+ * <li><code>COUNTER</code>, the message is a counter.</li>
+ * <li><code>SYSLOG</code>, the message is a syslog line, from the template.</li>
+ * <li><code>JSON</code>, the message is a JSON document, with the fields <code>seq</code>, <code>host</code>,
+ * <code>thread</code>, <code>date</code> and a <code>message</code> from the template.</li>
+ * <li><code>FILE</code>, the messages are the lines of <code>sampleFile</code>, replayed in a loop.</li>
+ * </ul>
+ * The templates are {@link VarFormatter} patterns, with the variables <code>seq</code>, <code>date</code>,
+ * <code>host</code> and <code>thread</code>. If a decoder is given, messages are decoded, as a network receiver
+ * would do, otherwise the message is stored in the <code>message</code> field.
+ * <p>
+ * Events are generated by <code>threads</code> threads at a total rate of <code>rate</code> events/s, or as fast
+ * as possible if the rate is 0. Generation stops after <code>count</code> events if it's positive. Every
+ * <code>reportInterval</code> seconds, the achieved throughput and the end to end latency of events are logged.
+ *
+ * @author Fabrice Bacchella
+ *
+ */
+@SelfDecoder
+@Blocking
+@BuilderClass(Generator.Builder.class)
+public class Generator extends Receiver {
+
+    public enum Shape {
+        COUNTER,
+        SYSLOG,
+        JSON,
+        FILE,
+    }
+
+    private static final String SYSLOGTEMPLATE = "<14>1 ${date%t<UTC>Y}-${date%t<UTC>m}-${date%t<UTC>d}T${date%t<UTC>H}:${date%t<UTC>M}:${date%t<UTC>S}.${date%t<UTC>L}Z ${host%s} loghub ${thread%d} - - generated event ${seq%d}";
+    private static final String JSONTEMPLATE = "generated event ${seq%d}";
+    private static final ObjectWriter JSONWRITER = new ObjectMapper(new JsonFactory()).writer();
+    // How long to wait for the generating threads when closing, in ms
+    private static final long CLOSETIMEOUT = 5000;
+
+    public static class Builder extends Receiver.Builder<Generator> {
+        @Setter
+        private Shape shape = Shape.COUNTER;
+        @Setter
+        private String template = null;
+        @Setter
+        private String sampleFile = null;
+        @Setter
+        private double rate = 1000;
+        @Setter
+        private int threads = 1;
+        @Setter
+        private long count = -1;
+        @Setter
+        private int reportInterval = 10;
+        @Override
+        public Generator build() {
+            return new Generator(this);
+        }
+    };
+    public static Builder getBuilder() {
+        return new Builder();
+    }
+
+    @Getter
+    private final Shape shape;
+    private final VarFormatter template;
+    @Getter
+    private final String sampleFile;
+    @Getter
+    private final double rate;
+    @Getter
+    private final int threads;
+    @Getter
+    private final long count;
+    @Getter
+    private final int reportInterval;
+
+    private final AtomicLong sequence = new AtomicLong(0);
+    private final LongAdder emitted = new LongAdder();
+    private String hostname;
+    private byte[][] samples;
+    private Thread[] generators;
+    private long lastReport;
+    private long lastEmitted;
+    // The scheduled report, cancelled when closing
+    private volatile TimerTask reporter = null;
+
+    protected Generator(Builder builder) {
+        super(builder);
+        this.shape = builder.shape;
+        this.sampleFile = builder.sampleFile;
+        this.rate = builder.rate;
+        this.threads = Math.max(1, builder.threads);
+        this.count = builder.count;
+        this.reportInterval = builder.reportInterval;
+        switch (shape) {
+        case SYSLOG:
+            template = new VarFormatter(builder.template != null ? builder.template : SYSLOGTEMPLATE, Locale.ENGLISH);
+            break;
+        case JSON:
+            template = new VarFormatter(builder.template != null ? builder.template : JSONTEMPLATE, Locale.ENGLISH);
+            break;
+        default:
+            template = null;
+        }
+    }
+
+    @Override
+    public boolean configure(Properties properties) {
+        try {
+            hostname = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            hostname = "localhost";
+        }
+        if (shape == Shape.FILE) {
+            if (sampleFile == null) {
+                logger.error("No sample file given");
+                return false;
+            }
+            try {
+                List<String> lines = Files.readAllLines(Paths.get(sampleFile), StandardCharsets.UTF_8);
+                samples = lines.stream().filter(l -> ! l.isEmpty()).map(l -> l.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+            } catch (IOException e) {
+                logger.error("Can't read sample file {}: {}", sampleFile, Helpers.resolveThrowableException(e));
+                logger.catching(Level.DEBUG, e);
+                return false;
+            }
+            if (samples.length == 0) {
+                logger.error("Empty sample file {}", sampleFile);
+                return false;
+            }
+        }
+        if (reportInterval > 0) {
+            lastReport = System.nanoTime();
+            reporter = properties.registerScheduledTask(getReceiverName() + "Reporter", this::report, TimeUnit.SECONDS.toMillis(reportInterval));
+        }
+        return super.configure(properties);
+    }
+
+    @Override
+    public void run() {
+        generators = new Thread[threads - 1];
+        for (int i = 0; i < generators.length; i++) {
+            int threadId = i + 1;
+            generators[i] = ThreadBuilder.get()
+                                         .setDaemon(true)
+                                         .setName(getName() + "." + threadId)
+                                         .setTask(() -> generate(threadId))
+                                         .build(true);
+        }
+        generate(0);
+        close();
+    }
+
+    /**
+     * Generate events at the rate of this thread, and catch up if it's late, so
+     * the mean rate is accurate even if the sleep time is not.
+     * @param threadId
+     */
+    private void generate(int threadId) {
+        double threadRate = rate / threads;
+        long start = System.nanoTime();
+        long done = 0;
+        while (! isInterrupted()) {
+            long seq = sequence.getAndIncrement();
+            if (count > 0 && seq >= count) {
+                break;
+            }
+            emit(seq, threadId);
+            done++;
+            if (threadRate > 0) {
+                long next = start + (long) (done * 1e9 / threadRate);
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+        }
+    }
+
+    private void emit(long seq, int threadId) {
+        byte[] message;
+        switch (shape) {
+        case COUNTER:
+            message = null;
+            break;
+        case FILE:
+            message = samples[(int) (seq % samples.length)];
+            break;
+        default:
+            Map<String, Object> values = new HashMap<>(4);
+            values.put("seq", seq);
+            values.put("date", new Date());
+            values.put("host", hostname);
+            values.put("thread", threadId);
+            message = format(values);
+        }
+        if (message == null) {
+            Event event = Event.emptyEvent(ConnectionContext.EMPTY);
+            event.put("message", Long.toString(seq));
+            send(event);
+        } else if (decoder != null) {
+            send(decodeStream(ConnectionContext.EMPTY, message));
+        } else {
+            Stats.newReceivedMessage(this, message.length);
+            Event event = Event.emptyEvent(ConnectionContext.EMPTY);
+            event.put("message", new String(message, StandardCharsets.UTF_8));
+            send(event);
+        }
+        emitted.increment();
+    }
+
+    private byte[] format(Map<String, Object> values) {
+        if (shape == Shape.JSON) {
+            Map<String, Object> document = new HashMap<>(values);
+            document.put("date", ((Date) values.get("date")).getTime());
+            document.put("message", template.format(values));
+            try {
+                return JSONWRITER.writeValueAsBytes(document);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Unreachable JSON failure", e);
+            }
+        } else {
+            return template.format(values).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    synchronized void report() {
+        long now = System.nanoTime();
+        long total = emitted.sum();
+        double achieved = (total - lastEmitted) * 1e9 / Math.max(1, now - lastReport);
+        lastReport = now;
+        lastEmitted = total;
+        Snapshot latency = Stats.getLifeTime();
+        logger.info("{} events generated, {} events/s, end to end latency: median {} ms, 95% {} ms, 99% {} ms",
+                    total, String.format(Locale.US, "%.1f", achieved),
+                    String.format(Locale.US, "%.3f", latency.getMedian() / 1e6),
+                    String.format(Locale.US, "%.3f", latency.get95thPercentile() / 1e6),
+                    String.format(Locale.US, "%.3f", latency.get99thPercentile() / 1e6));
+    }
+
+    /**
+     * @return the number of events generated
+     */
+    public long getEmitted() {
+        return emitted.sum();
+    }
+
+    @Override
+    public void close() {
+        if (reporter != null) {
+            reporter.cancel();
+        }
+        if (generators != null) {
+            long end = System.currentTimeMillis() + CLOSETIMEOUT;
+            for (Thread t: generators) {
+                try {
+                    t.join(Math.max(1, end - System.currentTimeMillis()));
+                    if (t.isAlive()) {
+                        // A stuck generator must not block the shutdown or a reload
+                        logger.warn("Generator thread {} still running", t.getName());
+                        t.interrupt();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        super.close();
+    }
+
+    @Override
+    public String getReceiverName() {
+        return "Generator/" + shape.name().toLowerCase(Locale.ENGLISH);
+    }
+
+}
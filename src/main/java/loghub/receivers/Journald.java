@@ -315,7 +315,7 @@ public class Journald extends AbstractHttp {
             if (Boolean.FALSE.equals(ctx.channel().attr(VALIDJOURNALD).get())) {
                 throw new HttpRequestFailure(HttpResponseStatus.BAD_REQUEST, "Not a valid journald request");
             } else {
-                ctx.channel().attr(EVENTS).get().forEach(Journald.this::send);
+                Journald.this.send(ctx.channel().attr(EVENTS).get().stream());
                 ByteBuf okbuf = OkResponse.get().readerIndex(0).retain();
                 writeResponse(ctx, request, HttpResponseStatus.ACCEPTED, okbuf, 4);
             }
@@ -131,11 +131,11 @@ public class Kafka extends Receiver {
                     }
                 });
                 byte[] content = record.value();
-                decodeStream(ctxt, content).forEach( e -> {
+                send(decodeStream(ctxt, content).map( e -> {
                     timestamp.ifPresent(e::setTimestamp);
                     headers.ifPresent( h -> e.put("headers", h));
-                    send(e);
-                });
+                    return e;
+                }));
                 if (isInterrupted()) {
                     consumer.commitSync(Collections.singletonMap(new TopicPartition(record.topic(), record.partition()), new OffsetAndMetadata(record.offset())));
                     broke = true;
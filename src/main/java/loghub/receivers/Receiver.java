@@ -2,8 +2,10 @@ package loghub.receivers;
 
 import java.io.Closeable;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -87,7 +89,8 @@ public abstract class Receiver extends Thread implements Iterator<Event>, Closea
     private final Filter filter;
 
     private PriorityBlockingQueue outQueue;
-    private Pipeline pipeline;
+    // Can be changed when the configuration is reloaded
+    private volatile Pipeline pipeline;
     private final boolean blocking;
     protected final Decoder decoder;
 
@@ -346,6 +349,42 @@ public abstract class Receiver extends Thread implements Iterator<Event>, Closea
         }
     }
 
+    /**
+     * Send many events at once, like those decoded from a single message or a poll.
+     * They are added to the main queue together, so the queue is locked only once.
+     * @param events
+     * @return the number of events sent
+     */
+    protected final int send(Stream<Event> events) {
+        List<Event> valids = new ArrayList<>();
+        events.forEach(event -> {
+            if (event == null) {
+                manageDecodeException(new DecodeException("Received null event"));
+                Event.emptyEvent(ConnectionContext.EMPTY).end();
+            } else if (event.getConnectionContext() == null) {
+                Stats.newReceivedError(this, "Received an event without context");
+                event.end();
+            } else {
+                logger.trace("new event: {}", event);
+                // Same preparation than Event.inject, but without queuing
+                event.refill(pipeline);
+                valids.add(event);
+            }
+        });
+        int sent = blocking ? outQueue.putAllBlocking(valids) : outQueue.offerAll(valids);
+        for (int i = 0; i < sent; i++) {
+            Stats.newReceivedEvent(this);
+        }
+        for (int i = sent; i < valids.size(); i++) {
+            valids.get(i).end();
+            Stats.newBlockedError(this);
+        }
+        if (sent < valids.size()) {
+            logger.debug("Send failed from {}, pipeline destination {} blocked", () -> getName(), () -> pipeline.getName());
+        }
+        return sent;
+    }
+
     public abstract String getReceiverName();
 
     protected boolean withJaas() {
@@ -360,4 +399,8 @@ public abstract class Receiver extends Thread implements Iterator<Event>, Closea
         this.pipeline = pipeline;
     }
 
+    public Pipeline getPipeline() {
+        return pipeline;
+    }
+
 }
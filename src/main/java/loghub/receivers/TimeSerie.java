@@ -12,6 +12,12 @@ import loghub.Event;
 import lombok.Getter;
 import lombok.Setter;
 
+/**
+ * Emit a counter at a given frequency.
+ *
+ * @deprecated it can't generate a significant load, {@link Generator} should be used instead.
+ */
+@Deprecated
 @SelfDecoder
 @BuilderClass(TimeSerie.Builder.class)
 public class TimeSerie extends Receiver {
@@ -2,6 +2,8 @@ package loghub.receivers;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
 import org.apache.logging.log4j.Level;
@@ -38,6 +40,9 @@ public class ZMQ extends Receiver {
         String security = null;
         @Setter
         String topic = "";
+        // Frames are read ahead without waiting, and each one is a message, from a single or a multipart message
+        @Setter
+        int maxFrames = 64;
         @Override
         public ZMQ build() {
             return new ZMQ(this);
@@ -47,13 +52,18 @@ public class ZMQ extends Receiver {
         return new Builder();
     }
 
-    private ZMQHandler.Builder<byte[]> hbuilder;
-    private ZMQHandler<byte[]> handler;
+    private ZMQHandler.Builder<List<byte[]>> hbuilder;
+    private ZMQHandler<List<byte[]>> handler;
     private final String listen;
+    private final int maxFrames;
+    // Only used by the receiving thread
+    private final List<byte[]> frames;
 
     protected ZMQ(Builder builder) {
         super(builder);
         this.listen = builder.listen;
+        this.maxFrames = Math.max(1, builder.maxFrames);
+        this.frames = new ArrayList<>(maxFrames);
         hbuilder = new ZMQHandler.Builder<>();
         hbuilder.setHwm(builder.hwm)
                 .setSocketUrl(builder.listen)
@@ -65,7 +75,7 @@ public class ZMQ extends Receiver {
                 .setLogger(logger)
                 .setSelfLogEvents(true)
                 .setName("zmqhandler/" + listen.replaceFirst("://", "/").replace(':', '/').replaceFirst("\\*", "0.0.0.0"))
-                .setReceive(Socket::recv)
+                .setReceive(this::receiveFrames)
                 .setMask(ZPoller.IN)
                 ;
     }
@@ -83,14 +93,31 @@ public class ZMQ extends Receiver {
         }
     }
 
+    /**
+     * Read all the frames already waiting, up to maxFrames, so many messages are handled for each poll.
+     * @param socket
+     * @return the frames read, or null if the first one failed
+     */
+    private List<byte[]> receiveFrames(Socket socket) {
+        frames.clear();
+        byte[] frame = socket.recv();
+        if (frame == null) {
+            return null;
+        }
+        do {
+            frames.add(frame);
+        } while (frames.size() < maxFrames && (frame = socket.recv(org.zeromq.ZMQ.DONTWAIT)) != null);
+        return frames;
+    }
+
     @Override
     public void run() {
         try {
             handler.start();
             while (handler.isRunning()) {
-                byte[] message = handler.dispatch(null);
-                if (message != null) {
-                    decodeStream(ConnectionContext.EMPTY, message).forEach(this::send);
+                List<byte[]> messages = handler.dispatch(null);
+                if (messages != null) {
+                    send(messages.stream().flatMap(m -> decodeStream(ConnectionContext.EMPTY, m)));
                 }
             }
         } catch (IllegalArgumentException ex) {
@@ -1,30 +1,65 @@
 package loghub.senders;
 
 import java.io.IOException;
-import java.nio.channels.AsynchronousFileChannel;
-import java.nio.channels.CompletionHandler;
-import java.nio.channels.NonWritableChannelException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
 import org.apache.logging.log4j.Level;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.PooledByteBufAllocator;
 import loghub.BuilderClass;
+import loghub.CanBatch;
 import loghub.Event;
 import loghub.Helpers;
+import loghub.ThreadBuilder;
+import loghub.VarFormatter;
 import loghub.configuration.Properties;
 import loghub.encoders.EncodeException;
 import lombok.Getter;
 import lombok.Setter;
 
+/**
+ * Write events to a local file.
+ * <p>
+ * Events are encoded in pooled buffers and written in large chunks. When used with batches,
+ * a whole batch is written at once and synchronized on disk once, as a group commit.
+ * <p>
+ * The file name is a {@link VarFormatter} pattern, resolved with the variables <code>date</code>, the
+ * date of the file creation, and <code>seq</code>, a sequence number incremented at each rotation. The file can
+ * be rotated when it reach a given size (<code>maxSize</code>, in bytes) or a given age (<code>rotationInterval</code>,
+ * in seconds). Rolled files can be compressed, using any compressor known by commons-compress.
+ *
+ * @author Fabrice Bacchella
+ *
+ */
 @AsyncSender
+@CanBatch
 @BuilderClass(File.Builder.class)
 public class File extends Sender {
 
+    public enum SyncPolicy {
+        NEVER,
+        INTERVAL,
+        BATCH,
+    }
+
     public static class Builder extends Sender.Builder<File> {
         @Setter
         private String fileName;
@@ -32,6 +67,18 @@ public class File extends Sender {
         private String separator = "";
         @Setter
         private boolean truncate = false;
+        @Setter
+        private long maxSize = -1;
+        @Setter
+        private int rotationInterval = -1;
+        @Setter
+        private SyncPolicy syncPolicy = SyncPolicy.NEVER;
+        @Setter
+        private int syncInterval = 1;
+        @Setter
+        private String compression = null;
+        @Setter
+        private int bufferSize = 64 * 1024;
         @Override
         public File build() {
             return new File(this);
@@ -40,99 +87,277 @@ public class File extends Sender {
     public static Builder getBuilder() {
         return new Builder();
     }
-  
-    private final CompletionHandler<Integer, Event> handler = new CompletionHandler<Integer, Event>() {
-
-        @Override
-        public void completed(Integer result, Event event) {
-            File.this.processStatus(event, true);
-        }
-
-        @Override
-        public void failed(Throwable ex, Event event) {
-            File.this.handleException(ex);
-            File.this.processStatus(event, false);
-        }
 
-    };
-
-    @Getter
-    private final String fileName;
+    private final VarFormatter fileNameFormat;
     private final byte[] separatorBytes;
     private final boolean truncate;
+    private final long maxSize;
+    private final long rotationInterval;
+    private final SyncPolicy syncPolicy;
+    private final int syncInterval;
+    private final String compression;
+    private final int bufferSize;
+    // The scheduled sync, cancelled when stopping
+    private volatile TimerTask syncer = null;
 
-    private AsynchronousFileChannel destination;
-    private AtomicLong position;
+    // All the fields below are protected by the lock
+    private final Object lock = new Object();
+    @Getter
+    private String fileName;
+    private FileChannel destination;
+    private long size;
+    private long openedAt;
+    private int sequence = 0;
+    private boolean dirty = false;
+    private boolean stopped = false;
+    // Reused by the single event sending
+    private ByteBuf sendBuffer = null;
 
     public File(Builder builder) {
         super(builder);
         if (builder.separator.length() > 0) {
             separatorBytes = builder.separator.getBytes(StandardCharsets.UTF_8);
         } else {
-            separatorBytes = new byte[] {};;
+            separatorBytes = new byte[] {};
         }
-        fileName = builder.fileName;
+        fileNameFormat = new VarFormatter(builder.fileName);
         truncate = builder.truncate;
+        maxSize = builder.maxSize;
+        rotationInterval = TimeUnit.SECONDS.toMillis(builder.rotationInterval);
+        syncPolicy = builder.syncPolicy;
+        syncInterval = builder.syncInterval;
+        compression = builder.compression != null ? builder.compression.toLowerCase(Locale.ENGLISH) : null;
+        bufferSize = Math.max(1024, builder.bufferSize);
     }
 
     @Override
     public boolean configure(Properties properties) {
-        try {
-            destination = AsynchronousFileChannel.open(Paths.get(fileName), StandardOpenOption.WRITE, StandardOpenOption.CREATE);
-            // Failed to used StandardOpenOption.(APPEND vs CREATE), so truncate if need after creation
-            if (truncate) {
-                destination.truncate(0);
-            }
-            position = new AtomicLong(destination.size());
-        } catch (IOException | UnsupportedOperationException e) {
-            logger.error("error openening output file {}: {}", fileName, Helpers.resolveThrowableException(e));
-            logger.catching(Level.DEBUG, e);
+        if (compression != null && ! CompressorStreamFactory.getSingleton().getOutputStreamCompressorNames().contains(compression)) {
+            logger.error("Unknown compression {}", compression);
             return false;
         }
+        synchronized (lock) {
+            try {
+                open(truncate);
+                if (sendBuffer == null) {
+                    sendBuffer = PooledByteBufAllocator.DEFAULT.directBuffer(bufferSize);
+                }
+            } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+                logger.error("error openening output file {}: {}", fileNameFormat, Helpers.resolveThrowableException(e));
+                logger.catching(Level.DEBUG, e);
+                return false;
+            }
+        }
+        if (syncPolicy == SyncPolicy.INTERVAL) {
+            syncer = properties.registerScheduledTask(getName() + "Syncer", this::sync, TimeUnit.SECONDS.toMillis(syncInterval));
+        }
         return super.configure(properties);
     }
 
+    private void open(boolean truncateFile) throws IOException {
+        openedAt = System.currentTimeMillis();
+        Map<String, Object> values = new HashMap<>(2);
+        values.put("date", new Date(openedAt));
+        values.put("seq", sequence);
+        fileName = fileNameFormat.format(values);
+        if (truncateFile) {
+            destination = FileChannel.open(Paths.get(fileName), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        } else {
+            destination = FileChannel.open(Paths.get(fileName), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        size = destination.size();
+        dirty = false;
+    }
+
+    private void rotate() throws IOException {
+        String rolled = fileName;
+        destination.force(true);
+        destination.close();
+        sequence++;
+        open(false);
+        if (rolled.equals(fileName)) {
+            logger.warn("File name {} doesn't change on rotation", fileName);
+        } else if (compression != null) {
+            ThreadBuilder.get()
+                         .setDaemon(false)
+                         .setName(getName() + "Compressor")
+                         .setTask(() -> compress(Paths.get(rolled)))
+                         .build(true);
+        }
+    }
+
+    private void compress(Path rolled) {
+        Path compressed = rolled.resolveSibling(rolled.getFileName() + "." + compression);
+        try (InputStream is = Files.newInputStream(rolled);
+             OutputStream os = CompressorStreamFactory.getSingleton().createCompressorOutputStream(compression, Files.newOutputStream(compressed))) {
+            byte[] buffer = new byte[bufferSize];
+            int read;
+            while ((read = is.read(buffer)) >= 0) {
+                os.write(buffer, 0, read);
+            }
+        } catch (IOException | CompressorException e) {
+            logger.error("Failed to compress {}: {}", rolled, Helpers.resolveThrowableException(e));
+            logger.catching(Level.DEBUG, e);
+            return;
+        }
+        try {
+            Files.delete(rolled);
+        } catch (IOException e) {
+            logger.error("Failed to remove {}: {}", rolled, Helpers.resolveThrowableException(e));
+            logger.catching(Level.DEBUG, e);
+        }
+    }
+
+    /**
+     * Write the buffer content and empty it, rotating the file if needed.
+     * <p>
+     * An interruption closes a {@link FileChannel}, so if the file was closed by an interruption, it's
+     * opened again and the write is finished. The interrupt status is kept.
+     * @param buffer
+     * @throws IOException
+     */
+    private void write(ByteBuf buffer) throws IOException {
+        boolean interrupted = false;
+        try {
+            synchronized (lock) {
+                if (stopped) {
+                    throw new ClosedChannelException();
+                }
+                if (! destination.isOpen()) {
+                    interrupted = Thread.interrupted();
+                    open(false);
+                }
+                if ((maxSize > 0 && size > 0 && size + buffer.readableBytes() > maxSize)
+                    || (rotationInterval > 0 && System.currentTimeMillis() - openedAt >= rotationInterval)) {
+                    rotate();
+                }
+                while (buffer.isReadable()) {
+                    try {
+                        size += buffer.readBytes(destination, buffer.readableBytes());
+                    } catch (AsynchronousCloseException e) {
+                        // Closed by an interruption of this thread or of a syncing thread
+                        interrupted |= Thread.interrupted();
+                        open(false);
+                    }
+                }
+                dirty = true;
+                buffer.clear();
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void sync() {
+        synchronized (lock) {
+            try {
+                if (dirty && destination.isOpen()) {
+                    destination.force(false);
+                    dirty = false;
+                }
+            } catch (IOException e) {
+                logger.error("Failed to sync {}: {}", fileName, Helpers.resolveThrowableException(e));
+                logger.catching(Level.DEBUG, e);
+            }
+        }
+    }
+
     @Override
     public boolean send(Event event) throws SendException, EncodeException {
+        byte[] encoded = encode(event);
         try {
-            byte[] msg = getEncoder().encode(event);
-            ByteBuf buffer = Unpooled.buffer(msg.length
-                                             + separatorBytes.length);
-            buffer.writeBytes(msg);
-            buffer.writeBytes(separatorBytes);
-            long writepose = position.getAndAdd(msg.length
-                                                + separatorBytes.length);
-            destination.write(buffer.nioBuffer(), writepose, event,
-                              handler);
+            synchronized (lock) {
+                if (stopped) {
+                    throw new ClosedChannelException();
+                }
+                try {
+                    sendBuffer.writeBytes(encoded);
+                    sendBuffer.writeBytes(separatorBytes);
+                    write(sendBuffer);
+                } finally {
+                    sendBuffer.clear();
+                }
+            }
+            if (syncPolicy == SyncPolicy.BATCH) {
+                sync();
+            }
+            processStatus(event, true);
             return true;
-        } catch (IllegalArgumentException | NonWritableChannelException e) {
+        } catch (IOException e) {
             logger.error("error writing event to {}: {}", fileName,
                          Helpers.resolveThrowableException(e));
             logger.catching(Level.DEBUG, e);
+            processStatus(event, false);
             return false;
-        } 
+        }
+    }
+
+    @Override
+    protected void flush(Batch documents) throws SendException, EncodeException {
+        ByteBuf buffer = PooledByteBufAllocator.DEFAULT.directBuffer(bufferSize);
+        try {
+            for (EventFuture fe: documents) {
+                try {
+                    buffer.writeBytes(encode(fe.getEvent()));
+                    buffer.writeBytes(separatorBytes);
+                } catch (EncodeException e) {
+                    fe.failure(Helpers.resolveThrowableException(e));
+                    continue;
+                }
+                if (buffer.readableBytes() >= bufferSize) {
+                    write(buffer);
+                }
+            }
+            if (buffer.isReadable()) {
+                write(buffer);
+            }
+            if (syncPolicy == SyncPolicy.BATCH) {
+                sync();
+            }
+        } catch (IOException e) {
+            throw new SendException(e);
+        } finally {
+            buffer.release();
+        }
     }
 
+    /**
+     * Even with batches, events are encoded one by one
+     */
+    @Override
+    public boolean isBatchEncoded() {
+        return false;
+    }
 
     @Override
     public void customStopSending() {
-        if (destination.isOpen()) {
-            try {
-                // The lock will not be released, as you don't release a closed file
-                destination.lock();
-                destination.force(true);
-                destination.close();
-            } catch (IOException e) {
-                logger.error("Failed to close {}: {}", fileName,
-                             Helpers.resolveThrowableException(e));
-                logger.catching(Level.DEBUG, e);
-            } 
+        if (syncer != null) {
+            syncer.cancel();
+        }
+        synchronized (lock) {
+            stopped = true;
+            if (sendBuffer != null) {
+                sendBuffer.release();
+                sendBuffer = null;
+            }
+            if (destination != null && destination.isOpen()) {
+                try {
+                    destination.force(true);
+                    destination.close();
+                } catch (IOException e) {
+                    logger.error("Failed to close {}: {}", fileName,
+                                 Helpers.resolveThrowableException(e));
+                    logger.catching(Level.DEBUG, e);
+                }
+            }
         }
     }
 
     @Override
     public String getSenderName() {
-        return "File_" + fileName;
+        return "File_" + fileNameFormat;
     }
 
 }
@@ -0,0 +1,217 @@
+package loghub.senders;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.logging.log4j.Level;
+
+import loghub.BuilderClass;
+import loghub.CanBatch;
+import loghub.Event;
+import loghub.Helpers;
+import loghub.VarFormatter;
+import loghub.configuration.Properties;
+import loghub.encoders.EncodeException;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Send events to a Kafka topic.
+ * <p>
+ * The topic and the key of each record are {@link VarFormatter} patterns, resolved with the event. The producer
+ * itself batches and compresses records, using <code>linger</code> (in ms), <code>maxBatchBytes</code> and
+ * <code>compression</code>. The status of each event is given by the producer callback, once the record is
+ * acknowledged by the brokers.
+ *
+ * @author Fabrice Bacchella
+ *
+ */
+@AsyncSender
+@CanBatch
+@BuilderClass(Kafka.Builder.class)
+public class Kafka extends Sender {
+
+    public static class Builder extends Sender.Builder<Kafka> {
+        @Setter
+        private String[] brokers = new String[] { "localhost"};
+        @Setter
+        private int port = 9092;
+        @Setter
+        private String topic;
+        @Setter
+        private String key = null;
+        @Setter
+        private String acks = "1";
+        @Setter
+        private int linger = 5;
+        @Setter
+        private int maxBatchBytes = 64 * 1024;
+        @Setter
+        private String compression = "none";
+        @Override
+        public Kafka build() {
+            return new Kafka(this);
+        }
+    };
+    public static Builder getBuilder() {
+        return new Builder();
+    }
+
+    private final String[] brokers;
+    @Getter
+    private final int port;
+    @Getter
+    private final String topic;
+    private final VarFormatter topicFormat;
+    private final VarFormatter keyFormat;
+    @Getter
+    private final String acks;
+    @Getter
+    private final int linger;
+    @Getter
+    private final int maxBatchBytes;
+    @Getter
+    private final String compression;
+
+    private Producer<byte[], byte[]> producer;
+
+    protected Kafka(Builder builder) {
+        super(builder);
+        this.brokers = Arrays.copyOf(builder.brokers, builder.brokers.length);
+        this.port = builder.port;
+        this.topic = builder.topic;
+        this.topicFormat = builder.topic != null ? new VarFormatter(builder.topic) : null;
+        this.keyFormat = builder.key != null ? new VarFormatter(builder.key) : null;
+        this.acks = builder.acks;
+        this.linger = builder.linger;
+        this.maxBatchBytes = builder.maxBatchBytes;
+        this.compression = builder.compression.toLowerCase(Locale.ENGLISH);
+    }
+
+    @Override
+    public boolean configure(Properties properties) {
+        if (topicFormat == null) {
+            logger.error("No topic defined");
+            return false;
+        }
+        URL[] brokersUrl = Helpers.stringsToUrl(brokers, port, "http", logger);
+        String resolvedBrokers = Arrays.stream(brokersUrl)
+                                       .map( i -> i.getHost() + ":" + i.getPort())
+                                       .collect(Collectors.joining(","))
+                                       ;
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, resolvedBrokers);
+        props.put(ProducerConfig.CLIENT_ID_CONFIG, getName());
+        props.put(ProducerConfig.ACKS_CONFIG, acks);
+        props.put(ProducerConfig.LINGER_MS_CONFIG, linger);
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, maxBatchBytes);
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compression);
+        try {
+            producer = getProducer(props);
+        } catch (KafkaException e) {
+            logger.error("Can't create Kafka producer: {}", Helpers.resolveThrowableException(e));
+            logger.catching(Level.DEBUG, e);
+            return false;
+        }
+        return super.configure(properties);
+    }
+
+    /**
+     * Build the producer, can be overridden for tests.
+     * @param props the producer configuration
+     * @return a new producer
+     */
+    Producer<byte[], byte[]> getProducer(Map<String, Object> props) {
+        return new KafkaProducer<>(props, new ByteArraySerializer(), new ByteArraySerializer());
+    }
+
+    private ProducerRecord<byte[], byte[]> getRecord(Event event) throws EncodeException {
+        String recordTopic;
+        byte[] recordKey;
+        try {
+            recordTopic = topicFormat.format(event);
+            recordKey = keyFormat != null ? keyFormat.format(event).getBytes(StandardCharsets.UTF_8) : null;
+        } catch (IllegalArgumentException e) {
+            throw new EncodeException("Unable to resolve topic or key", e);
+        }
+        return new ProducerRecord<>(recordTopic, recordKey, encode(event));
+    }
+
+    private Callback getCallback(EventFuture fe) {
+        return (metadata, exception) -> {
+            if (exception == null) {
+                fe.complete(true);
+            } else {
+                fe.failure(Helpers.resolveThrowableException(exception));
+                logger.catching(Level.DEBUG, exception);
+            }
+        };
+    }
+
+    @Override
+    public boolean send(Event event) throws SendException, EncodeException {
+        EventFuture fe = new EventFuture(event);
+        try {
+            producer.send(getRecord(event), getCallback(fe));
+        } catch (KafkaException e) {
+            throw new SendException(e);
+        }
+        // The status will be processed once the record is acknowledged
+        fe.whenComplete((s, ex) -> processStatus(fe));
+        return true;
+    }
+
+    @Override
+    protected void flush(Batch documents) throws SendException, EncodeException {
+        for (EventFuture fe: documents) {
+            try {
+                producer.send(getRecord(fe.getEvent()), getCallback(fe));
+            } catch (EncodeException | KafkaException e) {
+                fe.failure(Helpers.resolveThrowableException(e));
+            }
+        }
+        try {
+            // Wait for all the records of the batch to be acknowledged, so all the callbacks are done
+            producer.flush();
+        } catch (KafkaException e) {
+            throw new SendException(e);
+        }
+    }
+
+    /**
+     * Even with batches, events are encoded one by one
+     */
+    @Override
+    public boolean isBatchEncoded() {
+        return false;
+    }
+
+    @Override
+    public void customStopSending() {
+        if (producer != null) {
+            producer.close();
+        }
+    }
+
+    @Override
+    public String getSenderName() {
+        return "Kafka/" + topic;
+    }
+
+    public String[] getBrokers() {
+        return Arrays.copyOf(brokers, brokers.length);
+    }
+
+}
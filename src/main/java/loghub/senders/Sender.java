@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.TimerTask;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
@@ -123,6 +124,10 @@ public abstract class Sender extends Thread implements Closeable {
     private final AtomicReference<Batch> batch = new AtomicReference<>();
     private final int flushInterval;
     private volatile boolean closed = false;
+    // The scheduled flush of the batches, cancelled when stopping
+    private volatile TimerTask flusher = null;
+    // The maximum number of events taken from the queue at once
+    private int drainSize = 32;
 
     public Sender(Builder<?  extends  Sender> builder) {
         filter = builder.filter;
@@ -159,6 +164,7 @@ public abstract class Sender extends Thread implements Closeable {
     public boolean configure(Properties properties) {
         // Stats is reset before configure
         Stats.sendInQueueSize(this, inQueue::size);
+        drainSize = properties.drainSize;
         if (threads != null) {
             buildSyncer(properties);
         }
@@ -228,7 +234,7 @@ public abstract class Sender extends Thread implements Closeable {
                 logger.catching(Level.DEBUG, e);
             }
         };
-        properties.registerScheduledTask(getName() + "Flusher" , flush, 5000);
+        flusher = properties.registerScheduledTask(getName() + "Flusher" , flush, 5000);
         Helpers.waitAllThreads(Arrays.stream(threads));
     }
 
@@ -238,6 +244,9 @@ public abstract class Sender extends Thread implements Closeable {
             interrupt();
             customStopSending();
             if (isWithBatch()) {
+                if (flusher != null) {
+                    flusher.cancel();
+                }
                 List<Batch> missedBatches = new ArrayList<>();
                 // Empty the waiting batches list and put the end-of-processing mark instead
                 batches.drainTo(missedBatches);
@@ -328,28 +337,33 @@ public abstract class Sender extends Thread implements Closeable {
     }
 
     public void run() {
+        // The events taken from the queue at each wake-up
+        List<Event> events = new ArrayList<>(drainSize);
         while (isRunning()) {
-            Event event = null;
             try {
-                event = inQueue.take();
+                events.add(inQueue.take());
+                inQueue.drainTo(events, drainSize - 1);
             } catch (InterruptedException e) {
                 interrupt();
                 break;
             }
-            try {
-                logger.trace("New event to send: {}", event);
-                boolean status = isWithBatch() ? queue(event): send(event);
-                if (! isAsync) {
-                    processStatus(event, status);
-                } else if (isWithBatch() && ! status) {
-                    // queue return false if this event was not batched
-                    processStatus(event, status);
+            // All the drained events are handled, even if closed, a failed send is accounted for each of them
+            for (Event event: events) {
+                try {
+                    logger.trace("New event to send: {}", event);
+                    boolean status = isWithBatch() ? queue(event): send(event);
+                    if (! isAsync) {
+                        processStatus(event, status);
+                    } else if (isWithBatch() && ! status) {
+                        // queue return false if this event was not batched
+                        processStatus(event, status);
+                    }
+                } catch (Throwable t) {
+                    handleException(t);
+                    processStatus(event, false);
                 }
-                event = null;
-            } catch (Throwable t) {
-                handleException(t);
-                processStatus(event, false);
             }
+            events.clear();
         }
     }
 
@@ -361,6 +375,13 @@ public abstract class Sender extends Thread implements Closeable {
         return threads != null;
     }
 
+    /**
+     * @return true if a batch is given as a whole to the encoder
+     */
+    public boolean isBatchEncoded() {
+        return isWithBatch();
+    }
+
     public int getWorkers() {
         return threads != null ? threads.length : 0;
     }
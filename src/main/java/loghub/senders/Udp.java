@@ -1,17 +1,42 @@
 package loghub.senders;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.logging.log4j.Level;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import loghub.BuilderClass;
+import loghub.CanBatch;
 import loghub.Event;
+import loghub.Helpers;
 import loghub.configuration.Properties;
 import loghub.encoders.EncodeException;
 import lombok.Setter;
 
+/**
+ * Send events as UDP datagrams.
+ * <p>
+ * It uses non blocking {@link DatagramChannel}s. A single event is sent directly from its encoded bytes, the channel
+ * reuses its own direct buffer. When used with batches, many events
+ * can be packed in a single datagram, up to <code>mtu</code> bytes, separated by <code>separator</code>, in a pooled direct buffer. Datagrams
+ * can also be spread over many sockets, using <code>sockets</code>, so the receiving host can spread the load
+ * too.
+ *
+ * @author Fabrice Bacchella
+ *
+ */
+@CanBatch
+@BuilderClass(Udp.Builder.class)
 public class Udp extends Sender {
 
     public static class Builder extends Sender.Builder<Udp> {
@@ -19,55 +44,175 @@ public class Udp extends Sender {
         private int port = -1;
         @Setter
         private String destination = "127.0.0.1";
+        @Setter
+        private int mtu = 1472;
+        @Setter
+        private boolean pack = false;
+        @Setter
+        private String separator = "\n";
+        @Setter
+        private int sockets = 1;
         @Override
         public Udp build() {
             return new Udp(this);
         }
     }
+    public static Builder getBuilder() {
+        return new Builder();
+    }
+
+    private static class Socket {
+        private final DatagramChannel channel;
+        private final Selector selector;
+        private final InetSocketAddress destination;
+        private Socket(InetSocketAddress destination) throws IOException {
+            this.destination = destination;
+            channel = DatagramChannel.open();
+            channel.configureBlocking(false);
+            selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_WRITE);
+        }
+        private synchronized void send(ByteBuffer buffer) throws IOException {
+            // If the socket buffer is full, wait for it to be writable again
+            while (channel.send(buffer, destination) == 0) {
+                selector.select(100);
+                selector.selectedKeys().clear();
+            }
+        }
+        private void close() {
+            try {
+                selector.close();
+                channel.close();
+            } catch (IOException e) {
+                // Don't care
+            }
+        }
+    }
 
     private final int port;
-    private final DatagramSocket socket;
     private final InetAddress IPAddress;
+    private final int mtu;
+    private final boolean pack;
+    private final byte[] separatorBytes;
+    private final Socket[] sockets;
+    private final AtomicInteger nextSocket = new AtomicInteger(0);
 
     public Udp(Builder builder) {
         super(builder);
         port = builder.port;
-        DatagramSocket tempSocket = null;
+        mtu = builder.mtu;
+        pack = builder.pack;
+        separatorBytes = builder.separator.getBytes(StandardCharsets.UTF_8);
+        sockets = new Socket[Math.max(1, builder.sockets)];
         InetAddress tempIPAddress = null;
         try {
             tempIPAddress = InetAddress.getByName(builder.destination);
-            tempSocket = new DatagramSocket();
         } catch (UnknownHostException e) {
             logger.error("Can't resolve destination address '{}': {}", builder.destination, e.getMessage());
-        } catch (SocketException e) {
-            logger.error("Can't start socket: {}", e.getMessage());
         } finally {
-            socket = tempSocket;
             IPAddress = tempIPAddress;
         }
     }
 
     @Override
     public boolean configure(Properties properties) {
-        if (socket != null && IPAddress != null) {
-            return super.configure(properties);
-        } else {
+        if (IPAddress == null) {
             return false;
         }
+        InetSocketAddress destination = new InetSocketAddress(IPAddress, port);
+        try {
+            for (int i = 0; i < sockets.length; i++) {
+                sockets[i] = new Socket(destination);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Can't start socket: {}", Helpers.resolveThrowableException(e));
+            logger.catching(Level.DEBUG, e);
+            return false;
+        }
+        return super.configure(properties);
+    }
+
+    private Socket getSocket() {
+        return sockets[Math.floorMod(nextSocket.getAndIncrement(), sockets.length)];
     }
 
     @Override
     public boolean send(Event event) throws EncodeException, SendException {
-        byte[] msg = encode(event);
-        DatagramPacket packet = new DatagramPacket(msg, msg.length, IPAddress, port);
         try {
-            socket.send(packet);
+            getSocket().send(ByteBuffer.wrap(encode(event)));
         } catch (IOException e) {
             throw new SendException(e);
         }
         return true;
     }
 
+    @Override
+    protected void flush(Batch documents) throws SendException, EncodeException {
+        if (! pack) {
+            flushUnpacked(documents);
+            return;
+        }
+        ByteBuf buffer = PooledByteBufAllocator.DEFAULT.directBuffer(mtu);
+        try {
+            for (EventFuture fe: documents) {
+                byte[] msg;
+                try {
+                    msg = encode(fe.getEvent());
+                } catch (EncodeException e) {
+                    fe.failure(Helpers.resolveThrowableException(e));
+                    continue;
+                }
+                if (buffer.isReadable() && buffer.readableBytes() + separatorBytes.length + msg.length > mtu) {
+                    transmit(buffer);
+                }
+                if (buffer.isReadable()) {
+                    buffer.writeBytes(separatorBytes);
+                }
+                buffer.writeBytes(msg);
+            }
+            if (buffer.isReadable()) {
+                transmit(buffer);
+            }
+        } catch (IOException e) {
+            throw new SendException(e);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * One datagram for each event, sent directly from the encoded bytes
+     */
+    private void flushUnpacked(Batch documents) throws SendException {
+        try {
+            for (EventFuture fe: documents) {
+                byte[] msg;
+                try {
+                    msg = encode(fe.getEvent());
+                } catch (EncodeException e) {
+                    fe.failure(Helpers.resolveThrowableException(e));
+                    continue;
+                }
+                getSocket().send(ByteBuffer.wrap(msg));
+            }
+        } catch (IOException e) {
+            throw new SendException(e);
+        }
+    }
+
+    private void transmit(ByteBuf buffer) throws IOException {
+        getSocket().send(buffer.nioBuffer());
+        buffer.clear();
+    }
+
+    /**
+     * Even with batches, events are encoded one by one
+     */
+    @Override
+    public boolean isBatchEncoded() {
+        return false;
+    }
+
     @Override
     public String getSenderName() {
         return "UDP";
@@ -76,7 +221,11 @@ public class Udp extends Sender {
     @Override
     public void close() {
         super.close();
-        socket.close();
+        for (Socket s: sockets) {
+            if (s != null) {
+                s.close();
+            }
+        }
     }
 
 }
@@ -1,9 +1,14 @@
 package loghub.senders;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.logging.log4j.Level;
 import org.zeromq.SocketType;
@@ -25,10 +30,37 @@ import lombok.Getter;
 import lombok.Setter;
 import zmq.socket.Sockets;
 
+/**
+ * Send events using a ZMQ socket.
+ * <p>
+ * When used with batches, an encoded batch is sent by a dedicated socket thread. The batches waiting for this thread,
+ * up to <code>maxFrames</code> (16 by default), are sent together as a single multipart message, one batch in each
+ * frame. The loghub ZMQ receiver handles each frame as a message, but a receiver that expect a single frame
+ * will lose the other ones, and a SUB socket filters the topic only with the first frame. For those, <code>maxFrames</code>
+ * must be set to 1.
+ * <p>
+ * A batch is acknowledged only once its message was given to the socket, so the publishing worker that flushed it waits
+ * for the socket thread. That's the cost of not losing a batch when the socket stops. The batches are coalesced only if
+ * many of them are waiting, so the number of <code>workers</code> is the number of batches that can be sent in a single
+ * message.
+ *
+ * @author Fabrice Bacchella
+ *
+ */
 @BuilderClass(ZMQ.Builder.class)
 @CanBatch
 public class ZMQ extends Sender {
 
+    /**
+     * An encoded batch, waiting for the socket thread
+     */
+    private static class Pending extends CompletableFuture<Boolean> {
+        private final byte[] message;
+        Pending(byte[] message) {
+            this.message = message;
+        }
+    }
+
     public static class Builder extends Sender.Builder<ZMQ> {
         @Setter @Getter
         private String destination = "tcp://localhost:2120";
@@ -42,6 +74,8 @@ public class ZMQ extends Sender {
         private String serverKey = null;
         @Setter  @Getter
         private String security = null;
+        @Setter  @Getter
+        private int maxFrames = 16;
 
         public ZMQ build() {
             return new ZMQ(this);
@@ -51,20 +85,25 @@ public class ZMQ extends Sender {
         return new Builder();
     }
 
-    private final SynchronousQueue<byte[]> exchanger;
-    private final ZMQHandler<byte[]> handler;
+    private final BlockingQueue<Pending> exchanger;
+    // Set to false before the exchanger is emptied when the socket thread stops
+    private volatile boolean publishing = true;
+    private final ZMQHandler<byte[][]> handler;
     private final Thread publisher;
     private final CountDownLatch latch;
+    private final int maxFrames;
 
     public ZMQ(Builder builder) {
         super(builder);
+        maxFrames = Math.max(1, builder.maxFrames);
         if (! isWithBatch()) {
             latch = null;
             exchanger = null;
             publisher = null;
         } else {
             latch = new CountDownLatch(1);
-            exchanger = new SynchronousQueue<>();
+            // Encoded batches wait there for the socket thread, that send them many at once
+            exchanger = new LinkedBlockingQueue<>(maxFrames * 2);
             publisher = ThreadBuilder.get()
                     .setTask(this::publisherRun)
                     .setDaemon(true)
@@ -72,7 +111,7 @@ public class ZMQ extends Sender {
                     .build();
         }
         Method m = Method.valueOf(builder.getMethod().toUpperCase(Locale.ENGLISH));
-        handler = new ZMQHandler.Builder<byte[]>()
+        handler = new ZMQHandler.Builder<byte[][]>()
                                 .setHwm(builder.hwm)
                                 .setSocketUrl(builder.destination)
                                 .setMethod(m)
@@ -82,27 +121,60 @@ public class ZMQ extends Sender {
                                 .setLogger(logger)
                                 .setSelfLogEvents(true)
                                 .setName(getName())
-                                .setSend(Socket::send)
+                                .setSend(ZMQ::sendFrames)
                                 .setMask(ZPoller.OUT)
                                 .setLatch(latch)
                                 .build();
     }
 
+    /**
+     * Send many frames as a single multipart message. Each frame is a complete message, so a receiver can
+     * handle them one by one.
+     */
+    private static boolean sendFrames(Socket socket, byte[][] frames) {
+        for (int i = 0; i < frames.length - 1; i++) {
+            if (! socket.sendMore(frames[i])) {
+                return false;
+            }
+        }
+        return socket.send(frames[frames.length - 1]);
+    }
+
     private void publisherRun() {
         try {
             handler.start();
             latch.await();
-            while (isRunning()) {
-                byte[] msg = exchanger.take();
+            List<Pending> pending = new ArrayList<>(maxFrames);
+            while (isRunning() && handler.isRunning()) {
+                pending.add(exchanger.take());
+                // Take all the waiting batches, to send them in one step
+                exchanger.drainTo(pending, maxFrames - 1);
+                byte[][] frames = new byte[pending.size()][];
+                for (int i = 0; i < frames.length; i++) {
+                    frames[i] = pending.get(i).message;
+                }
                 try {
-                    handler.dispatch(msg);
+                    handler.dispatch(frames);
+                    // dispatch returns without sending only when the handler is stopped
+                    boolean sent = handler.isRunning();
+                    pending.forEach(p -> p.complete(sent));
                 } catch (ZMQCheckedException t) {
+                    pending.forEach(p -> p.completeExceptionally(t));
                     handleException(t);
+                } finally {
+                    pending.clear();
                 }
             }
+        } catch (InterruptedException e) {
+            // Stopped
         } catch (Throwable t) {
             handleException(t);
         } finally {
+            publishing = false;
+            // The batches that will never be sent are failed
+            List<Pending> lost = new ArrayList<>();
+            exchanger.drainTo(lost);
+            lost.forEach(p -> p.complete(false));
             handler.close();
         }
     }
@@ -146,6 +218,11 @@ public class ZMQ extends Sender {
         } catch (IOException | ZMQCheckedException ex) {
             logger.error("Failed to stop ZMQ handler: {}", Helpers.resolveThrowableException(ex));
             logger.catching(Level.DEBUG, ex);
+        } finally {
+            // The socket thread might be waiting for a batch, it must fail the pending ones
+            if (publisher != null) {
+                publisher.interrupt();
+            }
         }
     }
 
@@ -153,7 +230,7 @@ public class ZMQ extends Sender {
     public boolean send(Event event) throws SendException, EncodeException{
         try {
             byte[] msg = encode(event);
-            handler.dispatch(msg);
+            handler.dispatch(new byte[][] {msg});
             return true;
         } catch (ZMQCheckedException ex) {
             throw new SendException(ex);
@@ -167,13 +244,25 @@ public class ZMQ extends Sender {
 
     @Override
     protected void flush(Batch batch) throws SendException, EncodeException {
-        byte[] msg = encode(batch);
+        Pending pending = new Pending(encode(batch));
         try {
-            if (isRunning()) {
-                exchanger.put(msg);
+            if (! isRunning() || ! publishing) {
+                throw new SendException(new IllegalStateException("Sender stopped"));
+            }
+            exchanger.put(pending);
+            // The socket thread might have stopped during the put, and will not see it
+            if (! publishing && exchanger.remove(pending)) {
+                pending.complete(false);
+            }
+            // Only a batch really sent is acknowledged
+            if (! pending.get()) {
+                throw new SendException(new IllegalStateException("Batch not sent"));
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            throw new SendException(e);
+        } catch (ExecutionException e) {
+            throw new SendException(e.getCause());
         }
     }
 
@@ -1,9 +1,17 @@
 package loghub;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.compress.MemoryLimitException;
 import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -49,6 +57,41 @@ public class TestAbstractCompDecomp {
         }
     }
 
+    @Test
+    public void testFormats() throws FilterException, IOException {
+        byte[] input = "Compressed message".getBytes(StandardCharsets.UTF_8);
+        Decompressor dcomp = Decompressor.getBuilder().build();
+        for (String format: new String[] {CompressorStreamFactory.GZIP, CompressorStreamFactory.DEFLATE, CompressorStreamFactory.LZ4_FRAMED, CompressorStreamFactory.ZSTANDARD, CompressorStreamFactory.BZIP2}) {
+            Compressor.Builder cbuilder = Compressor.getBuilder();
+            cbuilder.setFormat(format);
+            Compressor comp = cbuilder.build();
+            // Run twice to check that reused contexts are properly reset
+            for (int i = 0; i < 2; i++) {
+                Assert.assertArrayEquals(format, input, dcomp.filter(comp.filter(input)));
+            }
+        }
+    }
+
+    @Test
+    public void testGzipCompatibility() throws FilterException, IOException {
+        byte[] input = "Compressed message".getBytes(StandardCharsets.UTF_8);
+        Compressor.Builder cbuilder = Compressor.getBuilder();
+        cbuilder.setFormat(CompressorStreamFactory.GZIP);
+        byte[] compressed = cbuilder.build().filter(input);
+        // Compressed by the fast path, read by the JDK
+        try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[input.length + 1];
+            Assert.assertEquals(input.length, is.read(buffer));
+            Assert.assertEquals("Compressed message", new String(buffer, 0, input.length, StandardCharsets.UTF_8));
+        }
+        // Compressed by commons-compress, with a file name, read by the fast path
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream os = new GzipCompressorOutputStream(bos, new GzipParameters() {{ setFilename("message.txt"); }})) {
+            os.write(input);
+        }
+        Assert.assertArrayEquals(input, Decompressor.getBuilder().build().filter(bos.toByteArray()));
+    }
+
     @Test(expected=MemoryLimitException.class)
     public void testTooBig() throws Throwable {
         byte[] input = "Compressed message".getBytes(StandardCharsets.UTF_8);
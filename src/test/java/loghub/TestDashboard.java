@@ -36,6 +36,7 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 
 import loghub.configuration.Properties;
 import loghub.metrics.JmxService;
+import loghub.metrics.Stats;
 
 public class TestDashboard {
 
@@ -121,6 +122,37 @@ public class TestDashboard {
         cnx.disconnect();
     }
 
+    @Test
+    public void getHotProcessors() throws IOException {
+        Processor p = new Processor() {
+            @Override
+            public boolean process(Event event) {
+                return true;
+            }
+        };
+        p.setId("slowone");
+        Stats.processorLatency("hotpipeline", p, 2_000_000_000L);
+        URL theurl = new URL(String.format("http://localhost:%d/hotprocessors/hotpipeline", port));
+        TypeReference<List<Map<String, Object>>> tr = new TypeReference<List<Map<String, Object>>>() { };
+        List<Map<String, Object>> data = json.get().readValue(theurl, tr);
+        Assert.assertEquals(1, data.size());
+        Assert.assertEquals("slowone", data.get(0).get("processor"));
+        Assert.assertEquals(1, data.get(0).get("samples"));
+        Assert.assertEquals(2.0, (Double) data.get(0).get("total"), 1e-5);
+    }
+
+    @Test
+    public void getPrometheus() throws IOException {
+        Stats.pipelineHanding("prometheus", Stats.PipelineStat.FAILURE);
+        URL theurl = new URL(String.format("http://localhost:%d/metrics", port));
+        HttpURLConnection cnx = (HttpURLConnection) theurl.openConnection();
+        Assert.assertEquals(200, cnx.getResponseCode());
+        Assert.assertTrue(cnx.getContentType().startsWith("text/plain; version=0.0.4"));
+        String content = readContent(cnx);
+        Assert.assertTrue(content, content.contains("loghub_pipelines_failed_total{pipeline=\"prometheus\"} 1"));
+        cnx.disconnect();
+    }
+
     private String readContent(HttpURLConnection cnx) throws IOException {
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(cnx.getInputStream(), StandardCharsets.UTF_8))) {
             StringBuilder buf = new StringBuilder();
@@ -44,6 +44,22 @@ public class TestEvent {
         LogUtils.setLevel(logger, Level.TRACE, "loghub");
     }
 
+    @Test
+    public void TestVariablePath() throws ProcessorException {
+        Event e = Tools.getEvent();
+        e.applyAtPath(Action.PUT, VariablePath.of("a", "b", "c"), 1, true);
+        e.applyAtPath(Action.PUT, VariablePath.of("d"), 2, true);
+        e.applyAtPath(Action.PUT, VariablePath.of("#f"), 3, true);
+        e.applyAtPath(Action.PUT, VariablePath.of(Event.TIMESTAMPKEY), new Date(0), true);
+        Assert.assertEquals(1, e.applyAtPath(Action.GET, VariablePath.of("a", "b", "c"), null));
+        Assert.assertEquals(1, e.applyAtPath(Action.GET, VariablePath.of(".", "a", "b", "c"), null));
+        Assert.assertEquals(2, e.get("d"));
+        Assert.assertEquals(3, e.getMeta("f"));
+        Assert.assertEquals(new Date(0), e.getTimestamp());
+        Assert.assertEquals(false, e.applyAtPath(Action.CONTAINS, VariablePath.of("a", "c", "d"), null));
+        Assert.assertEquals(VariablePath.of("a", "b"), VariablePath.of(new String[] {"a", "b"}));
+    }
+
     @Test
     public void TestPath() throws ProcessorException {
         Event e = Tools.getEvent();
@@ -81,7 +97,7 @@ public class TestEvent {
         Properties props = new Properties(conf);
         Event e = Event.emptyTestEvent(ConnectionContext.EMPTY);
         e.appendProcessor(new Looper());
-        EventsProcessor ep = new EventsProcessor(props.mainQueue, props.outputQueues, props.namedPipeLine, props.maxSteps, props.repository);
+        EventsProcessor ep = new EventsProcessor(props.mainQueue, props.outputQueues, props.namedPipeLine, props.maxSteps, props.drainSize, props.repository);
         Processor processor;
         int numsteps = 0;
         int loop = 0;
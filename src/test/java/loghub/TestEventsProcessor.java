@@ -0,0 +1,96 @@
+package loghub;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import loghub.metrics.Stats;
+
+public class TestEventsProcessor {
+
+    private static Logger logger;
+
+    @BeforeClass
+    static public void configure() throws IOException {
+        Tools.configure();
+        logger = LogManager.getLogger();
+        LogUtils.setLevel(logger, Level.TRACE, "loghub.EventsProcessor");
+    }
+
+    @Before
+    public void reset() {
+        Stats.reset();
+    }
+
+    private final Pipeline pipeline = new Pipeline(Collections.emptyList(), "main", null);
+
+    private void fill(PriorityBlockingQueue mainQueue, int count) {
+        for (int i = 0; i < count; i++) {
+            Event ev = Tools.getEvent();
+            ev.put("message", i);
+            ev.refill(pipeline);
+            mainQueue.add(ev);
+        }
+    }
+
+    private EventsProcessor getProcessor(PriorityBlockingQueue mainQueue, BlockingQueue<Event> outQueue, int drainSize) {
+        Map<String, BlockingQueue<Event>> outQueues = Collections.singletonMap("main", outQueue);
+        Map<String, Pipeline> pipelines = Collections.singletonMap("main", pipeline);
+        return new EventsProcessor(mainQueue, outQueues, pipelines, 128, drainSize, null);
+    }
+
+    @Test(timeout = 5000)
+    public void testBatches() throws InterruptedException {
+        PriorityBlockingQueue mainQueue = new PriorityBlockingQueue();
+        BlockingQueue<Event> outQueue = new LinkedBlockingQueue<>();
+        fill(mainQueue, 100);
+        EventsProcessor ep = getProcessor(mainQueue, outQueue, 8);
+        ep.start();
+        try {
+            // Processed in order, even when taken in batches
+            for (int i = 0; i < 100; i++) {
+                Assert.assertEquals(i, outQueue.take().get("message"));
+            }
+        } finally {
+            ep.stopProcessing();
+            ep.join();
+        }
+        Assert.assertTrue(mainQueue.isEmpty());
+    }
+
+    @Test(timeout = 5000)
+    public void testInterruptedBatch() throws InterruptedException {
+        PriorityBlockingQueue mainQueue = new PriorityBlockingQueue();
+        // The output queue is full, so the processor blocks on the first event
+        BlockingQueue<Event> outQueue = new ArrayBlockingQueue<>(1);
+        Event blocking = Tools.getEvent();
+        outQueue.add(blocking);
+        fill(mainQueue, 5);
+        EventsProcessor ep = getProcessor(mainQueue, outQueue, 32);
+        ep.start();
+        while (! mainQueue.isEmpty() || ep.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+        ep.stopProcessing();
+        ep.join();
+        // The blocked event is lost, but the rest of the batch is back in the main queue
+        Assert.assertEquals(1, Stats.getReceived());
+        Assert.assertEquals(4, mainQueue.size());
+        for (int i = 1; i < 5; i++) {
+            Assert.assertEquals(i, mainQueue.poll().get("message"));
+        }
+        Assert.assertSame(blocking, outQueue.poll());
+    }
+
+}
@@ -0,0 +1,108 @@
+package loghub;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import loghub.configuration.Properties;
+
+public class TestEventsRepository {
+
+    private static Logger logger;
+
+    @BeforeClass
+    static public void configure() throws IOException {
+        Tools.configure();
+        logger = LogManager.getLogger();
+        LogUtils.setLevel(logger, Level.TRACE, "loghub.EventsRepository");
+    }
+
+    private Properties getProperties(PriorityBlockingQueue mainQueue) {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("MAINQUEUE", mainQueue);
+        return new Properties(settings);
+    }
+
+    @Test(timeout = 5000)
+    public void testInterruptedWakeup() throws InterruptedException {
+        PriorityBlockingQueue mainQueue = new PriorityBlockingQueue(1, 0);
+        EventsRepository<Integer> repository = new EventsRepository<>(getProperties(mainQueue));
+        // The main queue is full
+        Event blocker = Tools.getEvent();
+        mainQueue.put(blocker);
+        Event paused = Tools.getEvent();
+        repository.pause(PausedEvent.builder(paused, 1).build());
+        CountDownLatch started = new CountDownLatch(1);
+        Thread waker = ThreadBuilder.get().setTask(() -> {
+            started.countDown();
+            try {
+                repository.succed(1);
+            } catch (InterruptedException e) {
+                // Expected
+            }
+        }).build(true);
+        started.await();
+        // Let the waker block on the full queue
+        Thread.sleep(100);
+        waker.interrupt();
+        waker.join();
+        // A worker pausing an event is not blocked by the full queue
+        repository.pause(PausedEvent.builder(Tools.getEvent(), 2).build());
+        Assert.assertEquals(1, repository.waiting());
+        Assert.assertSame(blocker, mainQueue.take());
+        // The awaken event was kept, and a worker retry moves it
+        repository.retryWakeups();
+        Assert.assertSame(paused, mainQueue.poll(1, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Wake up an event from another thread, and interrupt it once blocked on the full main queue
+     */
+    private void interruptedWakeup(EventsRepository<Integer> repository, int key) throws InterruptedException {
+        Thread waker = ThreadBuilder.get().setTask(() -> {
+            try {
+                repository.succed(key);
+            } catch (InterruptedException e) {
+                // Expected
+            }
+        }).build(true);
+        while (waker.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+        waker.interrupt();
+        waker.join();
+    }
+
+    @Test(timeout = 5000)
+    public void testWakeupOrder() throws InterruptedException {
+        PriorityBlockingQueue mainQueue = new PriorityBlockingQueue(1, 0);
+        EventsRepository<Integer> repository = new EventsRepository<>(getProperties(mainQueue));
+        // The main queue is full
+        Event blocker = Tools.getEvent();
+        mainQueue.put(blocker);
+        Event[] paused = new Event[3];
+        for (int i = 0; i < paused.length; i++) {
+            paused[i] = Tools.getEvent();
+            repository.pause(PausedEvent.builder(paused[i], i).build());
+        }
+        for (int i = 0; i < paused.length; i++) {
+            interruptedWakeup(repository, i);
+        }
+        Assert.assertSame(blocker, mainQueue.take());
+        // The awaken events are moved in the wake up order
+        for (Event e: paused) {
+            repository.retryWakeups();
+            Assert.assertSame(e, mainQueue.poll(1, TimeUnit.SECONDS));
+        }
+    }
+
+}
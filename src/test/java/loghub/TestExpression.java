@@ -1,8 +1,16 @@
 package loghub;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
@@ -10,7 +18,9 @@ import org.apache.logging.log4j.Logger;
 import org.codehaus.groovy.control.MultipleCompilationErrorsException;
 import org.junit.Assert;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import loghub.Expression.ExpressionException;
 import loghub.configuration.Properties;
@@ -19,6 +29,9 @@ public class TestExpression {
 
     private static Logger logger ;
 
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
     @BeforeClass
     static public void configure() throws IOException {
         Tools.configure();
@@ -69,4 +82,36 @@ public class TestExpression {
         Assert.assertEquals(MultipleCompilationErrorsException.class, ex.getCause().getClass());
     }
 
+    @Test
+    public void testDiskCache() throws ExpressionException, ProcessorException, IOException, ClassNotFoundException {
+        Path cacheDir = testFolder.getRoot().toPath().resolve("expressions");
+        // A closure generates many classes
+        String expressionScript = "event.a.collect { it * 2 }";
+        Event ev = Tools.getEvent();
+        ev.put("a", Arrays.asList(1, 2));
+
+        Properties props = new Properties(new HashMap<>(Collections.singletonMap("expressionsCache", cacheDir.toString())));
+        Expression expression = new Expression(expressionScript, props.groovyClassLoader, Collections.emptyMap());
+        Assert.assertEquals(Arrays.asList(2, 4), expression.eval(ev));
+        List<Path> saved;
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            saved = files.collect(Collectors.toList());
+        }
+        Assert.assertEquals(1, saved.size());
+
+        // A new start, the classes are loaded from the cache
+        props = new Properties(new HashMap<>(Collections.singletonMap("expressionsCache", cacheDir.toString())));
+        expression = new Expression(expressionScript, props.groovyClassLoader, Collections.emptyMap());
+        Assert.assertEquals(Arrays.asList(2, 4), expression.eval(ev));
+        String className = new ExpressionDiskCache(cacheDir).className(expressionScript);
+        Assert.assertNotNull(Class.forName(className, false, props.groovyClassLoader));
+
+        // A broken cache entry is ignored
+        Files.write(saved.get(0), "garbage".getBytes(StandardCharsets.UTF_8));
+        props = new Properties(new HashMap<>(Collections.singletonMap("expressionsCache", cacheDir.toString())));
+        expression = new Expression(expressionScript, props.groovyClassLoader, Collections.emptyMap());
+        Assert.assertEquals(Arrays.asList(2, 4), expression.eval(ev));
+        Expression.setCacheDirectory(null);
+    }
+
 }
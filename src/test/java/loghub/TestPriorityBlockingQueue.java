@@ -1,5 +1,7 @@
 package loghub;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.stream.Collectors;
 
@@ -72,4 +74,70 @@ public class TestPriorityBlockingQueue {
         }
     }
 
+    @Test(timeout=2000)
+    public void testDrain() throws InterruptedException {
+        for (int weight: new int[] {0, 2}) {
+            PriorityBlockingQueue queue = new PriorityBlockingQueue(10, weight);
+            List<Event> events = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                Event ev = Tools.getEvent();
+                ev.put("i", i);
+                events.add(ev);
+            }
+            Assert.assertEquals(5, queue.putAll(events.subList(0, 5)));
+            Assert.assertEquals(3, queue.putAllBlocking(events.subList(5, 8)));
+            List<Event> drained = new ArrayList<>();
+            Assert.assertEquals(6, queue.drainTo(drained, 6));
+            Assert.assertEquals(2, queue.size());
+            Assert.assertEquals(2, queue.drainTo(drained));
+            Assert.assertEquals(0, queue.size());
+            Assert.assertEquals(8, drained.size());
+            Assert.assertTrue(drained.containsAll(events));
+            Assert.assertEquals(0, queue.drainTo(drained, 6));
+        }
+    }
+
+    @Test(timeout=2000)
+    public void testDrainPriority() throws InterruptedException {
+        PriorityBlockingQueue queue = new PriorityBlockingQueue(10, 2);
+        Event sync = Tools.getEvent();
+        queue.putBlocking(sync);
+        Thread.sleep(50);
+        Event async = Tools.getEvent();
+        queue.put(async);
+        // The blocking event is older, even with the weight, so it's drained first
+        List<Event> drained = new ArrayList<>();
+        Assert.assertEquals(2, queue.drainTo(drained, 2));
+        Assert.assertSame(sync, drained.get(0));
+        Assert.assertSame(async, drained.get(1));
+    }
+
+    @Test(timeout=2000)
+    public void testOfferAll() {
+        PriorityBlockingQueue queue = new PriorityBlockingQueue(3, 0);
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            events.add(Tools.getEvent());
+        }
+        Assert.assertEquals(3, queue.offerAll(events));
+        Assert.assertEquals(3, queue.size());
+        Assert.assertEquals(0, queue.offerAll(events.subList(3, 5)));
+    }
+
+    @Test(timeout=2000)
+    public void testInterruptedPutAll() {
+        PriorityBlockingQueue queue = new PriorityBlockingQueue(2, 2);
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            events.add(Tools.getEvent());
+        }
+        Thread.currentThread().interrupt();
+        try {
+            Assert.assertTrue(queue.putAllBlocking(events) < 4);
+            Assert.assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
 }
@@ -0,0 +1,162 @@
+package loghub;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import loghub.configuration.ConfigException;
+import loghub.configuration.Configuration;
+import loghub.configuration.Properties;
+import loghub.metrics.JmxService;
+import loghub.receivers.Receiver;
+import loghub.senders.InMemorySender;
+
+public class TestReload {
+
+    private static Logger logger;
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    @BeforeClass
+    static public void configure() throws IOException {
+        Tools.configure();
+        logger = LogManager.getLogger();
+        LogUtils.setLevel(logger, Level.TRACE, "loghub.Start");
+    }
+
+    private static final String OUTPUT = "output $main | { loghub.senders.InMemorySender }\n";
+    private static final String PIPELINE = "pipeline[main] { loghub.processors.Identity }\n";
+
+    private final int port = Tools.tryGetPort();
+    private Path confFile;
+    private Start start;
+
+    @After
+    public void stop() {
+        Start.shutdown();
+        JmxService.stop();
+    }
+
+    private String input(int port, int maxLength) {
+        return String.format("input { loghub.receivers.TcpLinesStream { port: %d, maxLength: %d, decoder: loghub.decoders.StringCodec } } | $main\n", port, maxLength);
+    }
+
+    private Properties launch(String conf) throws IOException, ConfigException {
+        confFile = testFolder.newFile("reload.conf").toPath();
+        Files.write(confFile, conf.getBytes(StandardCharsets.UTF_8));
+        Properties props = Configuration.parse(confFile.toString());
+        start = new Start();
+        start.configFile = confFile.toString();
+        start.launch(props);
+        return props;
+    }
+
+    private boolean reload(String conf) throws IOException {
+        Files.write(confFile, conf.getBytes(StandardCharsets.UTF_8));
+        return start.reload();
+    }
+
+    private void checkReceived(InMemorySender sender, String message) throws IOException, InterruptedException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream os = socket.getOutputStream();
+            os.write((message + "\n").getBytes(StandardCharsets.UTF_8));
+            os.flush();
+        }
+        long end = System.currentTimeMillis() + 2000;
+        while (sender.getSendedEvents().size() == 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(1, sender.getSendedEvents().size());
+        Assert.assertEquals(message, sender.getSendedEvents().get(0).get("message"));
+    }
+
+    @Test(timeout=10000)
+    public void testChangedReceiver() throws IOException, ConfigException, InterruptedException {
+        Properties first = launch(input(port, 256) + OUTPUT + PIPELINE);
+        Receiver firstReceiver = first.receivers.iterator().next();
+        InMemorySender sender = (InMemorySender) first.senders.iterator().next();
+
+        // Same port, other settings
+        Assert.assertTrue(reload(input(port, 512) + OUTPUT + PIPELINE));
+        firstReceiver.join(1000);
+        Assert.assertFalse(firstReceiver.isAlive());
+        checkReceived(sender, "LogHub");
+    }
+
+    @Test(timeout=10000)
+    public void testFailedSender() throws IOException, ConfigException, InterruptedException {
+        Properties first = launch(input(port, 256) + OUTPUT + PIPELINE);
+        Receiver firstReceiver = first.receivers.iterator().next();
+        InMemorySender sender = (InMemorySender) first.senders.iterator().next();
+
+        String failingOutput = String.format("output $other | { loghub.senders.File { fileName: \"%s\", compression: \"nosuch\", encoder: loghub.encoders.ToJson } }\n", testFolder.getRoot().toPath().resolve("out"));
+        Assert.assertFalse(reload(input(port, 512) + OUTPUT + failingOutput + PIPELINE + "pipeline[other] { }\n"));
+        // The running configuration is unchanged
+        Assert.assertTrue(firstReceiver.isAlive());
+        checkReceived(sender, "LogHub");
+    }
+
+    @Test(timeout=10000)
+    public void testFailedReceiver() throws IOException, ConfigException, InterruptedException {
+        Properties first = launch(input(port, 256) + OUTPUT + PIPELINE);
+        Receiver firstReceiver = first.receivers.iterator().next();
+        InMemorySender sender = (InMemorySender) first.senders.iterator().next();
+
+        try (ServerSocket busy = new ServerSocket(0)) {
+            String otherOutput = "output $other | { loghub.senders.InMemorySender }\n";
+            Assert.assertFalse(reload(input(port, 256) + input(busy.getLocalPort(), 256) + OUTPUT + otherOutput + PIPELINE + "pipeline[other] { }\n"));
+        }
+        // The kept receiver is still running
+        Assert.assertTrue(firstReceiver.isAlive());
+        checkReceived(sender, "LogHub");
+    }
+
+    @Test(timeout=10000)
+    public void testFailedChangedReceiver() throws IOException, ConfigException, InterruptedException {
+        Properties first = launch(input(port, 256) + OUTPUT + PIPELINE);
+        Receiver firstReceiver = first.receivers.iterator().next();
+        InMemorySender sender = (InMemorySender) first.senders.iterator().next();
+
+        try (ServerSocket busy = new ServerSocket(0)) {
+            String otherOutput = "output $other | { loghub.senders.InMemorySender }\n";
+            Assert.assertFalse(reload(input(port, 512) + input(busy.getLocalPort(), 256) + OUTPUT + otherOutput + PIPELINE + "pipeline[other] { }\n"));
+        }
+        // The changed receiver was stopped, a new one with the same settings replaced it
+        firstReceiver.join(1000);
+        Assert.assertFalse(firstReceiver.isAlive());
+        Receiver restored = first.receivers.iterator().next();
+        Assert.assertNotSame(firstReceiver, restored);
+        Assert.assertTrue(restored.isAlive());
+        checkReceived(sender, "LogHub");
+    }
+
+    @Test(timeout=10000)
+    public void testFailedReloadCache() throws IOException, ConfigException, InterruptedException {
+        String pipeline = "pipeline[main] { loghub.processors.UserAgent { field: \"message\", destination: \"agent\", cacheSize: 10 } }\n";
+        Properties first = launch(input(port, 256) + OUTPUT + pipeline);
+        InMemorySender sender = (InMemorySender) first.senders.iterator().next();
+
+        String failingOutput = String.format("output $other | { loghub.senders.File { fileName: \"%s\", compression: \"nosuch\", encoder: loghub.encoders.ToJson } }\n", testFolder.getRoot().toPath().resolve("out"));
+        Assert.assertFalse(reload(input(port, 256) + OUTPUT + failingOutput + pipeline + "pipeline[other] { }\n"));
+        // The running processor still uses its cache
+        checkReceived(sender, "LogHub");
+        Assert.assertEquals("Other", sender.getSendedEvents().get(0).applyAtPath(Event.Action.GET, new String[] {"agent", "userAgent", "family"}, null, false));
+    }
+
+}
@@ -0,0 +1,97 @@
+package loghub;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import loghub.configuration.Properties;
+import ua_parser.Client;
+import ua_parser.Device;
+import ua_parser.OS;
+import ua_parser.Parser;
+import ua_parser.UserAgent;
+
+public class TestUaParser {
+
+    @Test
+    public void testLiterals() {
+        Assert.assertEquals("firefox/", UaParser.requiredLiteral("Firefox/(\\d+)"));
+        // Optional groups are skipped
+        Assert.assertEquals("safari/", UaParser.requiredLiteral("(?:Mobile )?Safari/(\\d+)"));
+        Assert.assertEquals("ab", UaParser.requiredLiteral("ab(cd){1,3}"));
+        // A repetition after a group
+        Assert.assertEquals("cd", UaParser.requiredLiteral("(ab){2}cd"));
+        Assert.assertEquals("ab", UaParser.requiredLiteral("(ab)+cd"));
+        Assert.assertEquals("abcxy", UaParser.requiredLiteral("(abc)xy"));
+        // Optional characters
+        Assert.assertEquals("mobile", UaParser.requiredLiteral("Mobile ?Safari"));
+        Assert.assertEquals("cd", UaParser.requiredLiteral("ab*cd"));
+        Assert.assertEquals("abc", UaParser.requiredLiteral("abc+de"));
+        Assert.assertEquals("yz", UaParser.requiredLiteral("x{2,}yz"));
+        // Flags
+        Assert.assertEquals("android", UaParser.requiredLiteral("(?i)android"));
+        Assert.assertEquals(" mini", UaParser.requiredLiteral("(?i:Opera) Mini"));
+        Assert.assertNull(UaParser.requiredLiteral("(?x)a b c"));
+        // Escapes
+        Assert.assertEquals("opera/", UaParser.requiredLiteral("Opera\\/(\\d+)"));
+        Assert.assertEquals(".net clr", UaParser.requiredLiteral("\\.NET CLR"));
+        Assert.assertEquals("msie", UaParser.requiredLiteral("\\bMSIE\\b"));
+        Assert.assertNull(UaParser.requiredLiteral("\\QFoo\\E"));
+        // Classes
+        Assert.assertEquals("irefox", UaParser.requiredLiteral("[Ff]irefox"));
+        Assert.assertEquals("xyz", UaParser.requiredLiteral("[a\\]b]xyz"));
+        Assert.assertNull(UaParser.requiredLiteral("a.b"));
+        // Alternations
+        Assert.assertNull(UaParser.requiredLiteral("Chrome|Chromium"));
+        Assert.assertNull(UaParser.requiredLiteral("(?:Chrome|Chromium)/(\\d+)"));
+        Assert.assertEquals("mozilla/", UaParser.requiredLiteral("Mozilla/(?:a|b) Firefox"));
+        // Special groups
+        Assert.assertEquals("defg", UaParser.requiredLiteral("(?!abc)defg"));
+        Assert.assertEquals("edge/", UaParser.requiredLiteral("(?<name>Edge)/(\\d+)"));
+    }
+
+    @Test
+    public void testSameAsUaParser() throws IOException {
+        Parser reference;
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream("ua_parser/regexes.yaml")) {
+            reference = new Parser(is);
+        }
+        UaParser parser;
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream("ua_parser/regexes.yaml")) {
+            parser = new UaParser(100, 0, 0, new Properties(Collections.emptyMap()), is, true, true, true);
+        }
+        List<String> agents;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getClassLoader().getResourceAsStream("useragents.txt"), StandardCharsets.UTF_8))) {
+            agents = reader.lines().collect(Collectors.toList());
+        }
+        for (String agent: agents) {
+            Client expected = reference.parse(agent);
+            UaParser.Result found = parser.parse(agent);
+            Assert.assertEquals(agent, toList(expected.userAgent), toList(found.userAgent));
+            Assert.assertEquals(agent, toList(expected.os), toList(found.os));
+            Assert.assertEquals(agent, toList(expected.device), toList(found.device));
+        }
+    }
+
+    private List<String> toList(UserAgent ua) {
+        return Arrays.asList(ua.family, ua.major, ua.minor, ua.patch);
+    }
+
+    private List<String> toList(OS os) {
+        return Arrays.asList(os.family, os.major, os.minor, os.patch, os.patchMinor);
+    }
+
+    private List<String> toList(Device device) {
+        return Arrays.asList(device.family);
+    }
+
+}
@@ -57,7 +57,7 @@ public class Tools {
     }
 
     public static void runProcessing(Event sent, Pipeline pipe, Properties props) throws ProcessorException {
-        EventsProcessor ep = new EventsProcessor(props.mainQueue, props.outputQueues, props.namedPipeLine, props.maxSteps, props.repository);
+        EventsProcessor ep = new EventsProcessor(props.mainQueue, props.outputQueues, props.namedPipeLine, props.maxSteps, props.drainSize, props.repository);
         sent.inject(pipe, props.mainQueue);
         Processor processor;
         while ((processor = sent.next()) != null) {
@@ -92,7 +92,7 @@ public class Tools {
         Pipeline pipe = new Pipeline(steps, pipename, null);
 
         Map<String, Pipeline> namedPipeLine = Collections.singletonMap(pipename, pipe);
-        EventsProcessor ep = new EventsProcessor(props.mainQueue, props.outputQueues, namedPipeLine, 100, props.repository);
+        EventsProcessor ep = new EventsProcessor(props.mainQueue, props.outputQueues, namedPipeLine, 100, props.drainSize, props.repository);
         steps.forEach( i -> Assert.assertTrue(i.configure(props)));
         prepare.accept(props, steps);
         sent.inject(pipe, props.mainQueue);
@@ -0,0 +1,163 @@
+package loghub.configuration;
+
+import java.io.IOException;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+
+import javax.cache.Cache;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import loghub.LogUtils;
+import loghub.Tools;
+import loghub.configuration.CacheManager.Policy;
+import loghub.metrics.Stats;
+
+public class TestCacheManager {
+
+    private static Logger logger;
+
+    @BeforeClass
+    static public void configure() throws IOException {
+        Tools.configure();
+        logger = LogManager.getLogger();
+        LogUtils.setLevel(logger, Level.TRACE, "loghub.configuration.CacheManager");
+    }
+
+    private Cache<String, String> getCache(CacheManager manager, String name, Policy policy, long durationMs) {
+        return manager.getBuilder(String.class, String.class)
+                        .setName(name, this)
+                        .setExpiry(policy, durationMs, ChronoUnit.MILLIS)
+                        .build();
+    }
+
+    @Test(timeout = 10000)
+    public void testCreated() throws InterruptedException {
+        CacheManager manager = new Properties(Collections.emptyMap()).cacheManager;
+        Cache<String, String> cache = getCache(manager, "created", Policy.CREATED, 1000);
+        cache.put("a", "1");
+        Thread.sleep(600);
+        // An update don't change the expiry
+        cache.put("a", "2");
+        Assert.assertEquals("2", cache.get("a"));
+        Thread.sleep(600);
+        Assert.assertNull(cache.get("a"));
+    }
+
+    @Test(timeout = 10000)
+    public void testAccessed() throws InterruptedException {
+        CacheManager manager = new Properties(Collections.emptyMap()).cacheManager;
+        Cache<String, String> cache = getCache(manager, "accessed", Policy.ACCESSED, 1000);
+        cache.put("a", "1");
+        cache.put("b", "1");
+        Thread.sleep(600);
+        // A read extends the life time, an update don't
+        Assert.assertEquals("1", cache.get("a"));
+        cache.put("b", "2");
+        Thread.sleep(600);
+        Assert.assertEquals("1", cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+    }
+
+    @Test(timeout = 10000)
+    public void testTouched() throws InterruptedException {
+        CacheManager manager = new Properties(Collections.emptyMap()).cacheManager;
+        Cache<String, String> cache = getCache(manager, "touched", Policy.TOUCHED, 1000);
+        cache.put("a", "1");
+        cache.put("b", "1");
+        cache.put("c", "1");
+        Thread.sleep(600);
+        // Both reads and updates extend the life time
+        Assert.assertEquals("1", cache.get("a"));
+        cache.put("b", "2");
+        Thread.sleep(600);
+        Assert.assertEquals("1", cache.get("a"));
+        Assert.assertEquals("2", cache.get("b"));
+        Assert.assertNull(cache.get("c"));
+    }
+
+    @Test
+    public void testWeight() {
+        CacheManager manager = new Properties(Collections.emptyMap()).cacheManager;
+        Cache<String, String> cache = manager.getBuilder(String.class, String.class)
+                        .setName("weight", this)
+                        .setMaximumWeight(100, (k, v) -> v.length())
+                        .build();
+        for (int i = 0; i < 100; i++) {
+            cache.put(Integer.toString(i), "0123456789");
+        }
+        int count = 0;
+        for (Cache.Entry<String, String> e: cache) {
+            count++;
+        }
+        Assert.assertTrue(count <= 10);
+    }
+
+    @Test
+    public void testOffHeap() {
+        CacheManager manager = new Properties(Collections.emptyMap()).cacheManager;
+        Cache<String, String> cache = manager.getBuilder(String.class, String.class)
+                        .setName("offheap", this)
+                        .setCacheSize(10)
+                        .setOffHeapSize(1024 * 1024)
+                        .build();
+        for (int i = 0; i < 1000; i++) {
+            cache.put(Integer.toString(i), "value" + i);
+        }
+        Assert.assertTrue(manager.getOffHeapSize(cache.getName()) > 0);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals("value" + i, cache.get(Integer.toString(i)));
+        }
+        // A removed entry is not read back from the off heap tier
+        cache.remove("0");
+        Assert.assertNull(cache.get("0"));
+    }
+
+    @Test
+    public void testOffHeapRing() {
+        OffHeapTier<Integer, String> tier = new OffHeapTier<>(2048, getClass().getClassLoader());
+        for (int i = 0; i < 1000; i++) {
+            tier.put(i, "value" + i);
+        }
+        // Oldest values were overwritten
+        Assert.assertNull(tier.get(0));
+        Assert.assertEquals("value999", tier.get(999));
+        Assert.assertTrue(tier.size() < 1000);
+        tier.put(999, "new");
+        Assert.assertEquals("new", tier.get(999));
+    }
+
+    @Test
+    public void testStats() {
+        CacheManager manager = new Properties(Collections.emptyMap()).cacheManager;
+        Cache<String, String> cache = getCache(manager, "stats", Policy.ETERNAL, 0);
+        cache.put("a", "1");
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        Assert.assertEquals(2, Stats.getCacheHits(cache));
+        Assert.assertEquals(1, Stats.getCacheMisses(cache));
+    }
+
+    @Test
+    public void testRelease() {
+        Properties props = new Properties(Collections.emptyMap());
+        CacheManager manager = props.cacheManager;
+        Cache<String, String> cache = getCache(manager, "released", Policy.ETERNAL, 0);
+        cache.get("a");
+        Assert.assertEquals(1, Stats.getCacheMisses(cache));
+        // A reloaded configuration don't destroy the running caches
+        CacheManager reloaded = new CacheManager(props, manager);
+        Assert.assertFalse(cache.isClosed());
+        manager.release(reloaded);
+        Assert.assertTrue(cache.isClosed());
+        // The metrics of the destroyed cache are removed
+        Assert.assertEquals(0, Stats.getCacheMisses(cache));
+    }
+
+}
@@ -2,6 +2,9 @@ package loghub.configuration;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
@@ -13,6 +16,7 @@ import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 
 import loghub.ZMQFactory;
 import loghub.Event;
@@ -34,6 +38,9 @@ public class TestConfigurations {
     @Rule
     public ExpectedException thrown = ExpectedException.none();
 
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
     @BeforeClass
     static public void configure() throws IOException {
         Tools.configure();
@@ -67,7 +74,7 @@ public class TestConfigurations {
     @Test
     public void testTwoPipe() throws InterruptedException, ConfigException, IOException {
         Properties conf = Tools.loadConf("twopipe.conf");
-        Thread t = new EventsProcessor(conf.mainQueue, conf.outputQueues, conf.namedPipeLine, conf.maxSteps, conf.repository);
+        Thread t = new EventsProcessor(conf.mainQueue, conf.outputQueues, conf.namedPipeLine, conf.maxSteps, conf.drainSize, conf.repository);
         t.start();
 
         Event sent = Tools.getEvent();
@@ -86,7 +93,7 @@ public class TestConfigurations {
     @Test
     public void testFork() throws InterruptedException, ProcessorException, ConfigException, IOException {
         Properties conf = Tools.loadConf("forkforward.conf");
-        EventsProcessor ep = new EventsProcessor(conf.mainQueue, conf.outputQueues, conf.namedPipeLine, conf.maxSteps, conf.repository);
+        EventsProcessor ep = new EventsProcessor(conf.mainQueue, conf.outputQueues, conf.namedPipeLine, conf.maxSteps, conf.drainSize, conf.repository);
         ep.start();
 
         try {
@@ -106,7 +113,7 @@ public class TestConfigurations {
     @Test
     public void testForward() throws InterruptedException, ProcessorException, ConfigException, IOException {
         Properties conf = Tools.loadConf("forkforward.conf");
-        EventsProcessor ep = new EventsProcessor(conf.mainQueue, conf.outputQueues, conf.namedPipeLine, conf.maxSteps, conf.repository);
+        EventsProcessor ep = new EventsProcessor(conf.mainQueue, conf.outputQueues, conf.namedPipeLine, conf.maxSteps, conf.drainSize, conf.repository);
         ep.start();
 
         try {
@@ -219,7 +226,7 @@ public class TestConfigurations {
         thrown.expect(ConfigException.class);
         thrown.expectMessage("Invalid input, no destination pipeline");
 
-        String confile = "input { loghub.receivers.TimeSerie } | $pipe";
+        String confile = "input { loghub.receivers.Generator } | $pipe";
         Configuration.parse(new StringReader(confile));
     }
 
@@ -244,7 +251,7 @@ public class TestConfigurations {
                         "output $pattern | { loghub.senders.InMemorySender }";
 
         Properties conf = Tools.loadConf(new StringReader(confile));
-        EventsProcessor ep = new EventsProcessor(conf.mainQueue, conf.outputQueues, conf.namedPipeLine, conf.maxSteps, conf.repository);
+        EventsProcessor ep = new EventsProcessor(conf.mainQueue, conf.outputQueues, conf.namedPipeLine, conf.maxSteps, conf.drainSize, conf.repository);
         ep.start();
 
         Event sent = Tools.getEvent();
@@ -286,7 +293,7 @@ public class TestConfigurations {
     public void testBadCharset() throws ConfigException, IOException {
         try {
             String confile = "input {\n" + 
-                            "    loghub.receivers.TimeSerie { decoder: loghub.decoders.StringCodec { charset: \"NONE\"}, frequency: 10 }\n" + 
+                            "    loghub.receivers.Generator { decoder: loghub.decoders.StringCodec { charset: \"NONE\"} }\n" + 
                             "} | $main\n" + 
                             "";
             Configuration.parse(new StringReader(confile));
@@ -297,4 +304,33 @@ public class TestConfigurations {
         }
     }
 
+    @Test
+    public void testReload() throws IOException, ConfigException {
+        String input = "input { loghub.receivers.Generator { count: 0 } } | $main\n";
+        String output = "output $main | { loghub.senders.InMemorySender }\n";
+        Path confFile = testFolder.newFile("reload.conf").toPath();
+        Files.write(confFile, (input + output + "pipeline[main] { loghub.processors.Identity }\n").getBytes(StandardCharsets.UTF_8));
+        Properties first = Configuration.parse(confFile.toString());
+
+        // Whitespaces are not significant
+        Files.write(confFile, (input.replace(" ", "  ") + output + "output $other | { loghub.senders.InMemorySender }\npipeline[main] { loghub.processors.Identity | loghub.processors.Identity }\npipeline[other] { }\n").getBytes(StandardCharsets.UTF_8));
+        Properties second = Configuration.reload(confFile.toString(), first);
+        Assert.assertSame(first.mainQueue, second.mainQueue);
+        Assert.assertSame(first.repository, second.repository);
+        Assert.assertSame(first.outputQueues.get("main"), second.outputQueues.get("main"));
+        Assert.assertEquals(2, second.outputQueues.size());
+        Assert.assertSame(first.receivers.iterator().next(), second.receivers.iterator().next());
+        Assert.assertEquals(2, second.senders.size());
+        Assert.assertTrue(second.senders.contains(first.senders.iterator().next()));
+        Assert.assertEquals(2, second.namedPipeLine.get("main").processors.size());
+        Assert.assertNotSame(first.namedPipeLine.get("main"), second.namedPipeLine.get("main"));
+
+        // A changed input is a new receiver
+        Files.write(confFile, ("input { loghub.receivers.Generator { count: 1 } } | $main\n" + output + "pipeline[main] { }\n").getBytes(StandardCharsets.UTF_8));
+        Properties third = Configuration.reload(confFile.toString(), second);
+        Assert.assertNotSame(second.receivers.iterator().next(), third.receivers.iterator().next());
+        Assert.assertSame(first.senders.iterator().next(), third.senders.iterator().next());
+        Assert.assertEquals(1, third.outputQueues.size());
+    }
+
 }
@@ -35,7 +35,7 @@ public class TestWrapping {
         Properties conf = Tools.loadConf("wrap.conf");
         Event ev = Event.emptyEvent(null);
         ev.put("a", new HashMap<Object, Object>());
-        EventsProcessor ep = new EventsProcessor(conf.mainQueue, conf.outputQueues, conf.namedPipeLine, conf.maxSteps, conf.repository);
+        EventsProcessor ep = new EventsProcessor(conf.mainQueue, conf.outputQueues, conf.namedPipeLine, conf.maxSteps, conf.drainSize, conf.repository);
         ev.inject(conf.namedPipeLine.get("main"), conf.mainQueue);
         ep.start();
         Event processed = conf.outputQueues.get("main").poll(1, TimeUnit.SECONDS);
@@ -0,0 +1,77 @@
+package loghub.encoders;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import loghub.Event;
+import loghub.LogUtils;
+import loghub.Tools;
+import loghub.configuration.Properties;
+import loghub.senders.InMemorySender;
+
+public class TestGelf {
+
+    private static Logger logger;
+
+    @BeforeClass
+    static public void configure() throws IOException {
+        Tools.configure();
+        logger = LogManager.getLogger();
+        LogUtils.setLevel(logger, Level.TRACE, "loghub.encoders.Gelf");
+    }
+
+    private Map<String, Object> encode(boolean compressed) throws EncodeException, IOException {
+        Gelf.Builder builder = Gelf.getBuilder();
+        builder.setCompressed(compressed);
+        builder.setShortmessagefield("message");
+        Gelf encoder = builder.build();
+        Assert.assertTrue(encoder.configure(new Properties(Collections.emptyMap()), InMemorySender.getBuilder().build()));
+        Event e = Tools.getEvent();
+        e.setTimestamp(new Date(1500));
+        e.put("message", "a message");
+        e.put("value", 1);
+        e.put("bad key", 2);
+        byte[] content = encoder.encode(e);
+        InputStream is = new ByteArrayInputStream(content);
+        if (compressed) {
+            is = new GZIPInputStream(is);
+        }
+        return new ObjectMapper().readValue(is, new TypeReference<Map<String, Object>>() { });
+    }
+
+    @Test
+    public void testPlain() throws EncodeException, IOException {
+        Map<String, Object> gelf = encode(false);
+        Assert.assertEquals("1.1", gelf.get("version"));
+        Assert.assertEquals("a message", gelf.get("short_message"));
+        Assert.assertEquals(1.5, (double) gelf.get("timestamp"), 1e-5);
+        Assert.assertEquals(1, gelf.get("_value"));
+        Assert.assertFalse(gelf.containsKey("_message"));
+        Assert.assertFalse(gelf.containsKey("_bad key"));
+    }
+
+    @Test
+    public void testCompressed() throws EncodeException, IOException {
+        for (int i = 0; i < 2; i++) {
+            Map<String, Object> gelf = encode(true);
+            Assert.assertEquals("a message", gelf.get("short_message"));
+            Assert.assertEquals(1, gelf.get("_value"));
+        }
+    }
+
+}
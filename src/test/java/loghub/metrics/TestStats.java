@@ -1,6 +1,12 @@
 package loghub.metrics;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.MBeanRegistrationException;
@@ -9,6 +15,14 @@ import javax.management.NotCompliantMBeanException;
 
 import org.junit.Test;
 
+import com.codahale.metrics.Gauge;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import loghub.Event;
+import loghub.Processor;
+
 public class TestStats {
 
     @Test
@@ -31,4 +45,122 @@ public class TestStats {
         assertEquals(1, Stats.getExceptionsCount());
     }
 
+    @Test
+    public void testHistogram() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            h.record(i * 1000);
+        }
+        assertEquals(1000, h.getCount());
+        assertEquals(1_000_000, h.getMax());
+        assertEquals(500_500.0, h.getMean(), 1e-5);
+        // Less than 12.5% of error
+        assertEquals(500_000, h.getPercentile(50), 500_000 * 0.125);
+        assertEquals(990_000, h.getPercentile(99), 990_000 * 0.125);
+        assertEquals(1_000_000, h.getPercentile(100));
+        for (long v: new long[] {0, 15, 16, 17, 1023, 1024, 1_000_000_007}) {
+            int b = LatencyHistogram.bucket(v);
+            assertTrue(LatencyHistogram.lowerBound(b) <= v);
+            assertTrue(LatencyHistogram.lowerBound(b + 1) > v);
+        }
+        assertEquals(15L << 59, LatencyHistogram.lowerBound(LatencyHistogram.bucket(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testHotProcessors() throws NotCompliantMBeanException, MalformedObjectNameException, InstanceAlreadyExistsException, MBeanRegistrationException {
+        Stats.reset();
+        Processor fast = getProcessor("fast");
+        Processor slow = getProcessor("slow");
+        Processor other = getProcessor("other");
+        for (int i = 0; i < 10; i++) {
+            Stats.processorLatency("main", fast, 1_000);
+            Stats.processorLatency("main", slow, 1_000_000);
+            Stats.processorLatency("second", other, 10_000_000);
+        }
+        List<Map.Entry<String, Processor>> hot = Stats.getHotProcessors("main", 10);
+        assertEquals(2, hot.size());
+        assertEquals(slow, hot.get(0).getValue());
+        assertEquals(fast, hot.get(1).getValue());
+        hot = Stats.getHotProcessors(null, 1);
+        assertEquals(1, hot.size());
+        assertEquals("second", hot.get(0).getKey());
+        PipelineMBean pmbean = new PipelineMBean.Implementation("main");
+        String[] hotProcessors = pmbean.getHotProcessors();
+        assertEquals(2, hotProcessors.length);
+        assertTrue(hotProcessors[0], hotProcessors[0].startsWith("main/slow: 10 samples, mean 1.000ms"));
+    }
+
+    @Test
+    public void testPrometheus() {
+        Stats.reset();
+        Stats.pipelineHanding("main", Stats.PipelineStat.DROP);
+        Stats.pipelineHanding("main", Stats.PipelineStat.DROP);
+        Stats.timerUpdate("main", 1500, TimeUnit.MILLISECONDS);
+        Gauge<Integer> waiting = () -> 3;
+        Stats.register(Stats.class, Stats.METRIC_ALL_WAITINGPROCESSING, waiting);
+        ByteBuf buffer = Unpooled.buffer();
+        PrometheusRenderer.render(buffer);
+        String rendered = buffer.toString(StandardCharsets.UTF_8);
+        assertTrue(rendered, rendered.contains("# TYPE loghub_pipelines_dropped_total counter\n"));
+        assertTrue(rendered, rendered.contains("loghub_pipelines_dropped_total{pipeline=\"main\"} 2\n"));
+        assertTrue(rendered, rendered.contains("loghub_pipelines_dropped_total 2\n"));
+        assertTrue(rendered, rendered.contains("loghub_pipelines_timer_seconds{pipeline=\"main\",quantile=\"0.5\"} 1.5\n"));
+        assertTrue(rendered, rendered.contains("loghub_pipelines_timer_seconds_count{pipeline=\"main\"} 1\n"));
+        assertTrue(rendered, rendered.contains("loghub_global_waitingProcessing 3\n"));
+        // A second rendering with the same metrics gives the same output
+        buffer.clear();
+        PrometheusRenderer.render(buffer);
+        assertEquals(rendered, buffer.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testPrometheusNumbers() {
+        ByteBuf buffer = Unpooled.buffer();
+        for (double d: new double[] {0, 1, -1, 0.5, 0.05, 1.000000001, -2.25, 123456.789, 1e12, Double.NaN, Double.POSITIVE_INFINITY}) {
+            buffer.clear();
+            PrometheusRenderer.writeDouble(buffer, d);
+            assertEquals(d, Double.parseDouble(buffer.toString(StandardCharsets.US_ASCII).replace("+Inf", "Infinity")), 1e-9);
+        }
+        buffer.clear();
+        PrometheusRenderer.writeLong(buffer, Long.MIN_VALUE);
+        assertEquals(Long.toString(Long.MIN_VALUE), buffer.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testLatencyOwner() {
+        Stats.reset();
+        Processor owner = getProcessor("owner");
+        for (int i = 0; i < 10; i++) {
+            // A processor created for each event, like a field sub-processor
+            Processor sub = new Processor() {
+                @Override
+                public boolean process(Event event) {
+                    return true;
+                }
+                @Override
+                public Processor getLatencyOwner() {
+                    return owner;
+                }
+            };
+            Stats.processorLatency("main", sub, 1_000);
+        }
+        List<Map.Entry<String, Processor>> hot = Stats.getHotProcessors(null, 10);
+        assertEquals(1, hot.size());
+        assertEquals(owner, hot.get(0).getValue());
+        assertEquals(10, owner.getLatency().getCount());
+        Stats.resetProcessorsLatency();
+        assertTrue(Stats.getHotProcessors(null, 10).isEmpty());
+    }
+
+    private Processor getProcessor(String id) {
+        Processor p = new Processor() {
+            @Override
+            public boolean process(Event event) {
+                return true;
+            }
+        };
+        p.setId(id);
+        return p;
+    }
+
 }
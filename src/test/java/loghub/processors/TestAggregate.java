@@ -0,0 +1,154 @@
+package loghub.processors;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Date;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import loghub.ConnectionContext;
+import loghub.Event;
+import loghub.Helpers;
+import loghub.LogUtils;
+import loghub.ProcessorException;
+import loghub.Tools;
+import loghub.configuration.Configuration;
+import loghub.configuration.Properties;
+
+public class TestAggregate {
+
+    private static Logger logger;
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    @BeforeClass
+    static public void configure() throws IOException {
+        Tools.configure();
+        logger = LogManager.getLogger();
+        LogUtils.setLevel(logger, Level.TRACE, "loghub.processors.Aggregate", "loghub.processors.AggregationStore");
+    }
+
+    private Properties getProperties(String settings) throws IOException {
+        String conf = "pipeline[main] { loghub.processors.Aggregate {index: [host], aggregations: {\"bytes\": \"sum\", \"hits\": \"count\", \"latency\": \"max\", \"avg\": \"avg\"}, destination: \"out\"" + settings + "}} pipeline[out] {}";
+        Properties p = Configuration.parse(new StringReader(conf));
+        Helpers.parallelStartProcessor(p);
+        return p;
+    }
+
+    private Event getEvent(String host, long bytes, double latency) {
+        Event e = Event.emptyEvent(ConnectionContext.EMPTY);
+        e.put("host", host);
+        e.put("bytes", bytes);
+        e.put("latency", latency);
+        e.put("avg", latency);
+        return e;
+    }
+
+    @Test
+    public void testTumbling() throws IOException, ProcessorException {
+        Properties p = getProperties(", window: 10");
+        Aggregate a = (Aggregate) p.namedPipeLine.get("main").processors.get(0);
+        Assert.assertFalse(a.process(Event.emptyEvent(ConnectionContext.EMPTY)));
+        Assert.assertThrows(ProcessorException.DroppedEventException.class, () -> a.process(getEvent("a", 10, 1.0)));
+        Assert.assertThrows(ProcessorException.DroppedEventException.class, () -> a.process(getEvent("a", 20, 3.0)));
+        Assert.assertThrows(ProcessorException.DroppedEventException.class, () -> a.process(getEvent("b", 5, 2.0)));
+        Assert.assertEquals(2, a.waiting());
+        Assert.assertTrue(p.mainQueue.isEmpty());
+        a.flush(System.currentTimeMillis() + 10_000);
+        Assert.assertEquals(0, a.waiting());
+        Event ea = p.mainQueue.remove();
+        Event eb = p.mainQueue.remove();
+        if ("b".equals(ea.get("key"))) {
+            Event temp = ea;
+            ea = eb;
+            eb = temp;
+        }
+        Assert.assertEquals("a", ea.get("key"));
+        Assert.assertEquals(30.0, (double) ea.get("bytes"), 1e-5);
+        Assert.assertEquals(2L, ea.get("hits"));
+        Assert.assertEquals(3.0, (double) ea.get("latency"), 1e-5);
+        Assert.assertEquals(2.0, (double) ea.get("avg"), 1e-5);
+        Assert.assertEquals(10_000, ((Date) ea.getMeta("windowEnd")).getTime() - ea.getTimestamp().getTime());
+        Assert.assertEquals("b", eb.get("key"));
+        Assert.assertEquals(1L, eb.get("hits"));
+        Assert.assertEquals("out", ea.getCurrentPipeline());
+        Assert.assertTrue(p.mainQueue.isEmpty());
+    }
+
+    @Test
+    public void testSliding() throws IOException, ProcessorException {
+        Properties p = getProperties(", window: 3, slide: 1, forward: true");
+        Aggregate a = (Aggregate) p.namedPipeLine.get("main").processors.get(0);
+        Assert.assertTrue(a.process(getEvent("a", 10, 1.0)));
+        // The event is counted in the 3 windows that contains its slide
+        a.flush(System.currentTimeMillis() + 5_000);
+        Assert.assertEquals(3, p.mainQueue.size());
+        while (! p.mainQueue.isEmpty()) {
+            Event e = p.mainQueue.remove();
+            Assert.assertEquals(10.0, (double) e.get("bytes"), 1e-5);
+            Assert.assertEquals(1L, e.get("hits"));
+        }
+        Assert.assertEquals(0, a.waiting());
+    }
+
+    @Test
+    public void testCheckpoint() throws IOException, ProcessorException {
+        Path checkpoint = testFolder.getRoot().toPath().resolve("aggregate.state");
+        String settings = ", window: 60, checkpoint: \"" + checkpoint.toString() + "\"";
+        Properties p1 = getProperties(settings);
+        Aggregate a1 = (Aggregate) p1.namedPipeLine.get("main").processors.get(0);
+        Assert.assertThrows(ProcessorException.DroppedEventException.class, () -> a1.process(getEvent("a", 10, 1.0)));
+        Assert.assertThrows(ProcessorException.DroppedEventException.class, () -> a1.process(getEvent("a", 20, 1.0)));
+        a1.checkpoint();
+        Properties p2 = getProperties(settings);
+        Aggregate a2 = (Aggregate) p2.namedPipeLine.get("main").processors.get(0);
+        Assert.assertEquals(1, a2.waiting());
+        a2.flush(System.currentTimeMillis() + 60_000);
+        Event e = p2.mainQueue.remove();
+        Assert.assertEquals(30.0, (double) e.get("bytes"), 1e-5);
+        Assert.assertEquals(2L, e.get("hits"));
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentCheckpoints() throws IOException, ProcessorException, InterruptedException {
+        Path checkpoint = testFolder.getRoot().toPath().resolve("aggregate.state");
+        String settings = ", window: 60, checkpoint: \"" + checkpoint.toString() + "\"";
+        Properties p1 = getProperties(settings);
+        Aggregate a1 = (Aggregate) p1.namedPipeLine.get("main").processors.get(0);
+        // Configured again, like a reload, the tasks are replaced
+        Assert.assertTrue(a1.configure(p1));
+        Assert.assertThrows(ProcessorException.DroppedEventException.class, () -> a1.process(getEvent("a", 10, 1.0)));
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(a1::checkpoint);
+            threads[i].start();
+        }
+        for (Thread t: threads) {
+            t.join();
+        }
+        p1.runStopActions();
+        // Can be closed many times
+        a1.close();
+        try (Stream<Path> files = Files.list(testFolder.getRoot().toPath())) {
+            Assert.assertEquals(Collections.singletonList(checkpoint), files.collect(Collectors.toList()));
+        }
+        Properties p2 = getProperties(settings);
+        Aggregate a2 = (Aggregate) p2.namedPipeLine.get("main").processors.get(0);
+        Assert.assertEquals(1, a2.waiting());
+        p2.runStopActions();
+    }
+
+}
@@ -1,8 +1,13 @@
 package loghub.processors;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Collections;
 
 import org.apache.logging.log4j.Level;
@@ -53,11 +58,32 @@ public class TestConvert {
         check("java.lang.Short", Short.class, "38", Short.valueOf((short) 38));
         check("java.lang.Long", Long.class, "38", Long.valueOf((long) 38));
         check("java.lang.Float", Float.class, "38", Float.valueOf((float) 38));
+        check("java.lang.Double", Double.class, "-3.8e1", Double.valueOf(-38));
+        check("java.math.BigDecimal", BigDecimal.class, "38.01", new BigDecimal("38.01"));
+        check("java.lang.Boolean", Boolean.class, "TRUE", Boolean.TRUE);
+        check("java.net.InetAddress", Inet4Address.class, "127.0.0.1", InetAddress.getByName("127.0.0.1"));
+        check("java.net.InetAddress", Inet6Address.class, "::1", InetAddress.getByName("::1"));
+        check("java.time.Instant", Instant.class, "2021-01-02T03:04:05.678Z", Instant.parse("2021-01-02T03:04:05.678Z"));
+        check("java.time.Duration", Duration.class, "PT1H30M", Duration.ofMinutes(90));
+        check("java.lang.Long", Long.class, Long.toString(Long.MIN_VALUE), Long.MIN_VALUE);
+    }
+
+    @Test
+    public void TestInvalid() {
+        Convert cv = new Convert();
+        cv.setField(new String[] {"message"});
+        cv.setClassName("java.lang.Object");
+        Assert.assertFalse(cv.configure(new Properties(Collections.emptyMap())));
+    }
+
+    @Test(expected=loghub.ProcessorException.class)
+    public void TestInvalidAddress() throws ProcessorException, UnknownHostException {
+        check("java.net.InetAddress", java.net.InetAddress.class, "localhost", InetAddress.getByName("127.0.0.1"));
     }
 
     @Test(expected=loghub.ProcessorException.class)
-    public void TestInvalid() throws ProcessorException, UnknownHostException {
-        check("java.net.InetAddress", java.net.InetAddress.class, "127.0.0.1", InetAddress.getByName("127.0.0.1"));
+    public void TestOverflow() throws ProcessorException, UnknownHostException {
+        check("java.lang.Byte", java.lang.Byte.class, "128", "");
     }
 
     @Test(expected=loghub.ProcessorException.class)
@@ -124,4 +124,41 @@ public class TestFieldsProcessor {
         Assert.assertEquals(1, found);
     }
 
+    @Test
+    public void testGlobs() throws ProcessorException {
+        FieldsProcessor p = new FieldsProcessor() {
+
+            @Override
+            public Object fieldFunction(Event event, Object valuedestination) throws ProcessorException {
+                return valuedestination;
+            }
+
+            @Override
+            public String getName() {
+                return null;
+            }
+
+        };
+
+        p.setDestination("${field}_done");
+        p.setFields(new String[] {"a*", "{b,c}"});
+        // Two events with the same keys, and one with different keys
+        for (int i = 0; i < 2; i++) {
+            Event e = Tools.getEvent();
+            e.put("a1", 1);
+            e.put("b", 2);
+            e.put("d", 3);
+            Tools.runProcessing(e, "main", Collections.singletonList(p));
+            Assert.assertEquals(1, e.get("a1_done"));
+            Assert.assertEquals(2, e.get("b_done"));
+            Assert.assertFalse(e.containsKey("d_done"));
+        }
+        Event e = Tools.getEvent();
+        e.put("a2", 1);
+        e.put("c", 2);
+        Tools.runProcessing(e, "main", Collections.singletonList(p));
+        Assert.assertEquals(1, e.get("a2_done"));
+        Assert.assertEquals(2, e.get("c_done"));
+    }
+
 }
@@ -228,6 +228,7 @@ public class TestNettyNameResolver {
         BeanChecks.beansCheck(logger, "loghub.processors.NettyNameResolver"
                               , BeanInfo.build("resolver", String.class)
                               , BeanInfo.build("cacheSize", Integer.TYPE)
+                              , BeanInfo.build("cacheWeight", Long.TYPE)
                               , BeanInfo.build("timeout", Integer.TYPE)
                               , BeanInfo.build("poller", String.class)
                               , BeanInfo.build("destination", String.class)
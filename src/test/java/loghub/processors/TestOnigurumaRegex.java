@@ -1,5 +1,6 @@
 package loghub.processors;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 
 import org.junit.Assert;
@@ -96,6 +97,45 @@ public class TestOnigurumaRegex {
         Assert.assertEquals("Didn't find the good syslog message", "éa text", e.get("message"));
     }
 
+    @Test
+    public void testBytes() throws ProcessorException {
+        OnigurumaRegex grok = new OnigurumaRegex();
+        grok.setField(new String[] {"message"});
+        grok.setPattern("<(?<syslog_pri>\\d+)>(?<message>.*)");
+
+        Properties props = new Properties(Collections.emptyMap());
+
+        Assert.assertTrue("Failed to configure grok", grok.configure(props));
+
+        Event e = Tools.getEvent();
+        e.put("message", "<15>a text\uD83D\uDE00é".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(e.process(grok));
+
+        Assert.assertEquals("Didn't find the good syslog priority", "15", e.get("syslog_pri"));
+        Assert.assertEquals("Didn't find the good syslog message", "a text\uD83D\uDE00é", e.get("message"));
+    }
+
+    @Test
+    public void testLongLine() throws ProcessorException {
+        OnigurumaRegex grok = new OnigurumaRegex();
+        grok.setField(new String[] {"message"});
+        grok.setPattern("<(?<syslog_pri>\\d+)>(?<message>.*)");
+
+        Properties props = new Properties(Collections.emptyMap());
+
+        Assert.assertTrue("Failed to configure grok", grok.configure(props));
+
+        StringBuilder buffer = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            buffer.append("é");
+        }
+        Event e = Tools.getEvent();
+        e.put("message", "<15>" + buffer);
+        Assert.assertTrue(e.process(grok));
+
+        Assert.assertEquals("Didn't find the good syslog message", buffer.toString(), e.get("message"));
+    }
+
     @Test
     public void testNoNamedPattern() throws ProcessorException {
         OnigurumaRegex grok = new OnigurumaRegex();
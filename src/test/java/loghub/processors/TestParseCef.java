@@ -54,6 +54,69 @@ public class TestParseCef {
         }
     }
 
+    @Test
+    public void testKnownKeys() throws ProcessorException {
+        ParseCef parse = new ParseCef();
+        Assert.assertTrue(parse.configure(new Properties(Collections.emptyMap())));
+        Event event = Tools.getEvent();
+        event.put("message", new String("CEF:0|a|b|c|d|e|3|src=10.0.0.1 customKey=value with spaces  dpt=80"));
+        Assert.assertTrue(parse.process(event));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> extensions= (Map<String, Object>) event.get("cef_extensions");
+        Assert.assertEquals("value with spaces", extensions.get("customKey"));
+        Assert.assertEquals("80", extensions.get("dpt"));
+        for (String key: extensions.keySet()) {
+            if ("src".equals(key)) {
+                Assert.assertSame("src", key);
+            }
+        }
+    }
+
+    @Test(expected = ProcessorException.class)
+    public void testTruncated() throws ProcessorException {
+        ParseCef parse = new ParseCef();
+        Assert.assertTrue(parse.configure(new Properties(Collections.emptyMap())));
+        Event event = Tools.getEvent();
+        event.put("message", "CEF:0|security|threatmanager");
+        parse.process(event);
+    }
+
+    @Test
+    public void testLeef1() throws ProcessorException {
+        ParseCef parse = new ParseCef();
+        Assert.assertTrue(parse.configure(new Properties(Collections.emptyMap())));
+        Event event = Tools.getEvent();
+        event.put("message", "LEEF:1.0|Microsoft|MSExchange|4.0 SP1|15345|src=192.0.2.0\tdst=172.50.123.1\tsev=5\tcat=anomaly\tmsg=there are spaces");
+        Assert.assertTrue(parse.process(event));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> fields= (Map<String, Object>) event.get("leef_fields");
+        Assert.assertEquals("1.0", fields.get("version"));
+        Assert.assertEquals("Microsoft", fields.get("device_vendor"));
+        Assert.assertEquals("MSExchange", fields.get("device_product"));
+        Assert.assertEquals("4.0 SP1", fields.get("device_version"));
+        Assert.assertEquals("15345", fields.get("device_event_class_id"));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> attributes= (Map<String, Object>) event.get("leef_attributes");
+        Assert.assertEquals(5, attributes.size());
+        Assert.assertEquals("192.0.2.0", attributes.get("src"));
+        Assert.assertEquals("there are spaces", attributes.get("msg"));
+    }
+
+    @Test
+    public void testLeef2() throws ProcessorException {
+        ParseCef parse = new ParseCef();
+        Assert.assertTrue(parse.configure(new Properties(Collections.emptyMap())));
+        for (String delimiter: new String[] {"^", "x5E", "0x5e"}) {
+            Event event = Tools.getEvent();
+            event.put("message", "LEEF:2.0|Lancope|StealthWatch|1.0|41|" + delimiter + "|src=192.0.2.0^dst=172.50.123.1^sev=5");
+            Assert.assertTrue(parse.process(event));
+            @SuppressWarnings("unchecked")
+            Map<String, Object> attributes= (Map<String, Object>) event.get("leef_attributes");
+            Assert.assertEquals(3, attributes.size());
+            Assert.assertEquals("172.50.123.1", attributes.get("dst"));
+        }
+    }
+
     @Test
     public void test_loghub_processors_ParseCsv() throws ClassNotFoundException, IntrospectionException {
         BeanChecks.beansCheck(logger, "loghub.processors.ParseCef"
@@ -0,0 +1,191 @@
+package loghub.processors;
+
+import java.beans.IntrospectionException;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import loghub.BeanChecks;
+import loghub.Event;
+import loghub.LogUtils;
+import loghub.ProcessorException;
+import loghub.Tools;
+import loghub.configuration.Properties;
+
+public class TestParseSyslog {
+
+    private static Logger logger;
+
+    @BeforeClass
+    static public void configure() throws IOException {
+        Tools.configure();
+        logger = LogManager.getLogger();
+        LogUtils.setLevel(logger, Level.TRACE, "loghub.processors.ParseSyslog");
+    }
+
+    private Event parse(String message, boolean resolve) throws ProcessorException {
+        ParseSyslog parse = new ParseSyslog();
+        parse.setTimezone("UTC");
+        parse.setResolve(resolve);
+        Assert.assertTrue(parse.configure(new Properties(Collections.emptyMap())));
+        Event event = Tools.getEvent();
+        event.put("message", message);
+        Assert.assertTrue(parse.process(event));
+        return event;
+    }
+
+    @Test
+    public void test5424() throws ProcessorException {
+        Event event = parse("<165>1 2003-10-11T22:14:15.003Z mymachine.example.com evntslog - ID47 [exampleSDID@32473 iut=\"3\" eventSource=\"Application\" eventID=\"1011\"][examplePriority@32473 class=\"high \\\"quoted\\\" \\] \\\\\"] \uFEFFAn application event log entry...", true);
+        Assert.assertEquals("local4", event.get("facility"));
+        Assert.assertEquals("notice", event.get("severity"));
+        Assert.assertEquals(1, event.get("version"));
+        Assert.assertEquals(Instant.parse("2003-10-11T22:14:15.003Z"), event.getTimestamp().toInstant());
+        Assert.assertEquals("mymachine.example.com", event.get("hostname"));
+        Assert.assertEquals("evntslog", event.get("appname"));
+        Assert.assertFalse(event.containsKey("procid"));
+        Assert.assertEquals("ID47", event.get("msgid"));
+        @SuppressWarnings("unchecked")
+        Map<String, Map<String, Object>> sd = (Map<String, Map<String, Object>>) event.get("structured_data");
+        Assert.assertEquals("3", sd.get("exampleSDID@32473").get("iut"));
+        Assert.assertEquals("Application", sd.get("exampleSDID@32473").get("eventSource"));
+        Assert.assertEquals("1011", sd.get("exampleSDID@32473").get("eventID"));
+        Assert.assertEquals("high \"quoted\" ] \\", sd.get("examplePriority@32473").get("class"));
+        Assert.assertEquals("An application event log entry...", event.get("message"));
+    }
+
+    @Test
+    public void test5424Nil() throws ProcessorException {
+        Event event = parse("<34>1 2003-10-11T22:14:15.003-07:00 - su 1234 - - 'su root' failed for lonvick on /dev/pts/8", false);
+        Assert.assertEquals(4, event.get("facility"));
+        Assert.assertEquals(2, event.get("severity"));
+        Assert.assertEquals(Instant.parse("2003-10-12T05:14:15.003Z"), event.getTimestamp().toInstant());
+        Assert.assertFalse(event.containsKey("hostname"));
+        Assert.assertEquals("su", event.get("appname"));
+        Assert.assertEquals("1234", event.get("procid"));
+        Assert.assertFalse(event.containsKey("msgid"));
+        Assert.assertFalse(event.containsKey("structured_data"));
+        Assert.assertEquals("'su root' failed for lonvick on /dev/pts/8", event.get("message"));
+    }
+
+    @Test
+    public void test3164() throws ProcessorException {
+        Event event = parse("<34>Oct 11 22:14:15 mymachine su: 'su root' failed for lonvick on /dev/pts/8", true);
+        Assert.assertEquals("security/authorization", event.get("facility"));
+        Assert.assertEquals("critical", event.get("severity"));
+        ZonedDateTime date = event.getTimestamp().toInstant().atZone(ZoneId.of("UTC"));
+        Assert.assertEquals(10, date.getMonthValue());
+        Assert.assertEquals(11, date.getDayOfMonth());
+        Assert.assertEquals(22, date.getHour());
+        Assert.assertFalse(date.isAfter(ZonedDateTime.now(ZoneId.of("UTC")).plusDays(1)));
+        Assert.assertEquals("mymachine", event.get("hostname"));
+        Assert.assertEquals("su", event.get("appname"));
+        Assert.assertFalse(event.containsKey("version"));
+        Assert.assertEquals("'su root' failed for lonvick on /dev/pts/8", event.get("message"));
+    }
+
+    @Test
+    public void test3164Deviations() throws ProcessorException {
+        // No hostname, a year and milliseconds
+        Event event = parse("<13>Feb  5 2021 17:32:18.125 sshd[4523]: Accepted publickey", true);
+        Assert.assertEquals(Instant.parse("2021-02-05T17:32:18.125Z"), event.getTimestamp().toInstant());
+        Assert.assertFalse(event.containsKey("hostname"));
+        Assert.assertEquals("sshd", event.get("appname"));
+        Assert.assertEquals("4523", event.get("procid"));
+        Assert.assertEquals("Accepted publickey", event.get("message"));
+
+        // Cisco style
+        event = parse("<189>*Mar  1 2019 18:48:50.483: %LINK-3-UPDOWN: Interface Ethernet0, changed state to up", true);
+        Assert.assertEquals(Instant.parse("2019-03-01T18:48:50.483Z"), event.getTimestamp().toInstant());
+        Assert.assertFalse(event.containsKey("hostname"));
+        Assert.assertEquals("%LINK-3-UPDOWN", event.get("appname"));
+        Assert.assertEquals("Interface Ethernet0, changed state to up", event.get("message"));
+
+        // A RFC 3339 date
+        event = parse("<13>2021-02-05T17:32:18+01:00 host app: message", true);
+        Assert.assertEquals(Instant.parse("2021-02-05T16:32:18Z"), event.getTimestamp().toInstant());
+        Assert.assertEquals("host", event.get("hostname"));
+        Assert.assertEquals("app", event.get("appname"));
+        Assert.assertEquals("message", event.get("message"));
+
+        // Only a priority
+        event = parse("<13>just a message", true);
+        Assert.assertEquals("user-level", event.get("facility"));
+        Assert.assertEquals("just a message", event.get("message"));
+    }
+
+    @Test
+    public void testNumberMessage() throws ProcessorException {
+        // Looks like a RFC 5424 version, but there is no timestamp
+        Event event = parse("<13>2 disks failed", true);
+        Assert.assertEquals("user-level", event.get("facility"));
+        Assert.assertFalse(event.containsKey("version"));
+        Assert.assertEquals("2 disks failed", event.get("message"));
+    }
+
+    @Test
+    public void testLeapDay() {
+        ZoneId utc = ZoneId.of("UTC");
+        // Not a leap year, go back to the last one
+        ZonedDateTime date = ParseSyslog.resolveYear(ZonedDateTime.of(2026, 3, 10, 0, 0, 0, 0, utc), 2, 29, 12, 0, 0, 0);
+        Assert.assertEquals(2024, date.getYear());
+        Assert.assertEquals(29, date.getDayOfMonth());
+        // In a leap year, but in the future
+        date = ParseSyslog.resolveYear(ZonedDateTime.of(2024, 2, 1, 0, 0, 0, 0, utc), 2, 29, 12, 0, 0, 0);
+        Assert.assertEquals(2020, date.getYear());
+        // A clock a little in advance
+        date = ParseSyslog.resolveYear(ZonedDateTime.of(2024, 2, 29, 0, 0, 0, 0, utc), 2, 29, 12, 0, 0, 0);
+        Assert.assertEquals(2024, date.getYear());
+        date = ParseSyslog.resolveYear(ZonedDateTime.of(2026, 1, 1, 0, 0, 0, 0, utc), 12, 31, 12, 0, 0, 0);
+        Assert.assertEquals(2025, date.getYear());
+    }
+
+    @Test(expected = ProcessorException.class)
+    public void testInvalidDate() throws ProcessorException {
+        parse("<13>1 2021-02-30T17:32:18Z host app - - - message", true);
+    }
+
+    @Test(expected = ProcessorException.class)
+    public void testNotSyslog() throws ProcessorException {
+        parse("just a message", true);
+    }
+
+    @Test
+    public void testFailedUnchanged() throws ProcessorException {
+        ParseSyslog parse = new ParseSyslog();
+        Assert.assertTrue(parse.configure(new Properties(Collections.emptyMap())));
+        Event event = Tools.getEvent();
+        String message = "<13>1 2021-02-03T17:32:18Z host app - - [id a=\"unterminated";
+        event.put("message", message);
+        Date timestamp = event.getTimestamp();
+        try {
+            parse.process(event);
+            Assert.fail("An invalid message was parsed");
+        } catch (ProcessorException e) {
+            // The values found before the failure are not stored
+            Assert.assertEquals(Collections.singletonMap("message", message), event);
+            Assert.assertEquals(timestamp, event.getTimestamp());
+        }
+    }
+
+    @Test
+    public void test_loghub_processors_ParseSyslog() throws ClassNotFoundException, IntrospectionException {
+        BeanChecks.beansCheck(logger, "loghub.processors.ParseSyslog"
+                              ,BeanChecks.BeanInfo.build("field", BeanChecks.LSTRING)
+                              ,BeanChecks.BeanInfo.build("resolve", Boolean.TYPE)
+                              ,BeanChecks.BeanInfo.build("timezone", String.class)
+                        );
+    }
+
+}
@@ -1,7 +1,9 @@
 package loghub.processors;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Assert;
@@ -28,8 +30,40 @@ public class TestScanBinary {
         Event e = Event.emptyEvent(ConnectionContext.EMPTY);
         e.put("binary", "13");
         Assert.assertTrue(fs.process(e));
-        String[] processed = (String[]) e.get("binary");
-        Assert.assertArrayEquals("Bad decoding of bitfield", new String[] {"PF_PROT", "PF_USER", "PF_RSVD"}, processed);
+        @SuppressWarnings("unchecked")
+        List<String> processed = (List<String>) e.get("binary");
+        Assert.assertEquals("Bad decoding of bitfield", Arrays.asList("PF_PROT", "PF_USER", "PF_RSVD"), processed);
+    }
+
+    @Test
+    public void testManyBits() throws ProcessorException {
+        String[] names = new String[20];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "b" + i;
+        }
+        ScanBinary fs = new ScanBinary();
+        fs.setBitsNames(names);
+        fs.configure(new Properties(Collections.emptyMap()));
+        fs.setField(new String[] {"binary"});
+
+        Event e = Event.emptyEvent(ConnectionContext.EMPTY);
+        // Bits 0, 9 and 19 are named, bit 21 is not
+        long value = 1L | (1L << 9) | (1L << 19) | (1L << 21);
+        Object first = fs.fieldFunction(e, value);
+        Assert.assertEquals(Arrays.asList("b0", "b9", "b19"), first);
+        // Cached and shared
+        Assert.assertSame(first, fs.fieldFunction(e, Long.toString(value)));
+        Assert.assertEquals(Collections.emptyList(), fs.fieldFunction(e, 0));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() throws ProcessorException {
+        ScanBinary fs = new ScanBinary();
+        fs.setBitsNames(new String[] {"a", "b", "c"});
+        fs.configure(new Properties(Collections.emptyMap()));
+        @SuppressWarnings("unchecked")
+        List<String> flags = (List<String>) fs.fieldFunction(Event.emptyEvent(ConnectionContext.EMPTY), 0b11);
+        flags.add("d");
     }
 
     @Test
@@ -0,0 +1,299 @@
+package loghub.processors;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.SimpleBindings;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import loghub.ConnectionContext;
+import loghub.Event;
+import loghub.LogUtils;
+import loghub.ProcessorException;
+import loghub.Tools;
+import loghub.configuration.Properties;
+
+public class TestScript {
+
+    private static Logger logger;
+
+    /**
+     * What the stub engines return when evaluating a script
+     */
+    private enum Result {
+        SETTINGS,
+        NULL,
+        NOTAMAP,
+    }
+
+    private static volatile Result evalResult = Result.SETTINGS;
+    // The created engines, with the number of configure calls for each one
+    private static final Map<StubEngine, AtomicInteger> engines = new ConcurrentHashMap<>();
+
+    public static class StubEngine extends AbstractScriptEngine implements Invocable {
+        private final ScriptEngineFactory factory;
+        private StubEngine(ScriptEngineFactory factory) {
+            this.factory = factory;
+            engines.put(this, new AtomicInteger());
+        }
+        @Override
+        public Object eval(String script, ScriptContext context) {
+            switch (evalResult) {
+            case SETTINGS:
+                Map<String, String> settings = new HashMap<>();
+                settings.put("configure", "configure");
+                settings.put("transform", "transform");
+                return settings;
+            case NOTAMAP:
+                return "settings";
+            default:
+                return null;
+            }
+        }
+        @Override
+        public Object eval(Reader reader, ScriptContext context) {
+            return eval("", context);
+        }
+        @Override
+        public Bindings createBindings() {
+            return new SimpleBindings();
+        }
+        @Override
+        public ScriptEngineFactory getFactory() {
+            return factory;
+        }
+        @Override
+        public Object invokeFunction(String name, Object... args) throws NoSuchMethodException {
+            switch (name) {
+            case "configure":
+                engines.get(this).incrementAndGet();
+                return null;
+            case "transform":
+                ((Event) args[0]).put("engine", System.identityHashCode(this));
+                return true;
+            default:
+                throw new NoSuchMethodException(name);
+            }
+        }
+        @Override
+        public Object invokeMethod(Object thiz, String name, Object... args) throws NoSuchMethodException {
+            throw new NoSuchMethodException(name);
+        }
+        @Override
+        public <T> T getInterface(Class<T> clasz) {
+            return null;
+        }
+        @Override
+        public <T> T getInterface(Object thiz, Class<T> clasz) {
+            return null;
+        }
+    }
+
+    private abstract static class StubFactory implements ScriptEngineFactory {
+        private final String extension;
+        private final String threading;
+        private StubFactory(String extension, String threading) {
+            this.extension = extension;
+            this.threading = threading;
+        }
+        @Override
+        public String getEngineName() {
+            return extension;
+        }
+        @Override
+        public String getEngineVersion() {
+            return "1.0";
+        }
+        @Override
+        public List<String> getExtensions() {
+            return Collections.singletonList(extension);
+        }
+        @Override
+        public List<String> getMimeTypes() {
+            return Collections.emptyList();
+        }
+        @Override
+        public List<String> getNames() {
+            return Collections.singletonList(extension);
+        }
+        @Override
+        public String getLanguageName() {
+            return extension;
+        }
+        @Override
+        public String getLanguageVersion() {
+            return "1.0";
+        }
+        @Override
+        public Object getParameter(String key) {
+            switch (key) {
+            case ScriptEngine.ENGINE:
+            case ScriptEngine.NAME:
+            case ScriptEngine.LANGUAGE:
+                return extension;
+            case ScriptEngine.ENGINE_VERSION:
+            case ScriptEngine.LANGUAGE_VERSION:
+                return "1.0";
+            case "THREADING":
+                return threading;
+            default:
+                return null;
+            }
+        }
+        @Override
+        public String getMethodCallSyntax(String obj, String m, String... args) {
+            return null;
+        }
+        @Override
+        public String getOutputStatement(String toDisplay) {
+            return null;
+        }
+        @Override
+        public String getProgram(String... statements) {
+            return null;
+        }
+        @Override
+        public ScriptEngine getScriptEngine() {
+            return new StubEngine(this);
+        }
+    }
+
+    /**
+     * Registered in META-INF/services/javax.script.ScriptEngineFactory
+     */
+    public static class SharedStubFactory extends StubFactory {
+        public SharedStubFactory() {
+            super("sharedstub", "MULTITHREADED");
+        }
+    }
+
+    /**
+     * Registered in META-INF/services/javax.script.ScriptEngineFactory
+     */
+    public static class ThreadStubFactory extends StubFactory {
+        public ThreadStubFactory() {
+            super("threadstub", null);
+        }
+    }
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    @BeforeClass
+    static public void configure() throws IOException {
+        Tools.configure();
+        logger = LogManager.getLogger();
+        LogUtils.setLevel(logger, Level.TRACE, "loghub.processors.Script");
+    }
+
+    @Before
+    public void reset() {
+        evalResult = Result.SETTINGS;
+        engines.clear();
+    }
+
+    private Script getScript(String extension) throws IOException {
+        Path scriptFile = testFolder.newFile("script." + extension).toPath();
+        Script script = new Script();
+        script.setScript(scriptFile.toString());
+        Assert.assertTrue(script.configure(new Properties(Collections.emptyMap())));
+        return script;
+    }
+
+    /**
+     * Process an event in each of some new threads
+     * @return the engines used, and the failures
+     */
+    private List<Object> runThreads(Script script, int count) throws InterruptedException {
+        List<Object> results = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Thread t = new Thread(() -> {
+                Event ev = Event.emptyEvent(ConnectionContext.EMPTY);
+                try {
+                    Assert.assertTrue(script.process(ev));
+                    // Again, the thread's engine is reused
+                    Assert.assertTrue(script.process(ev));
+                    results.add(ev.get("engine"));
+                } catch (ProcessorException | RuntimeException ex) {
+                    results.add(ex);
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t: threads) {
+            t.join();
+        }
+        return results;
+    }
+
+    @Test(timeout=5000)
+    public void testPerThread() throws IOException, InterruptedException {
+        Script script = getScript("threadstub");
+        Assert.assertEquals(1, engines.size());
+        List<Object> results = runThreads(script, 4);
+        Set<Object> used = ConcurrentHashMap.newKeySet();
+        used.addAll(results);
+        Assert.assertEquals(4, used.size());
+        Assert.assertTrue(used.stream().allMatch(Integer.class::isInstance));
+        // The engine from configure and one for each thread
+        Assert.assertEquals(5, engines.size());
+        engines.values().forEach(i -> Assert.assertEquals(1, i.get()));
+    }
+
+    @Test(timeout=5000)
+    public void testShared() throws IOException, InterruptedException {
+        Script script = getScript("sharedstub");
+        List<Object> results = runThreads(script, 4);
+        Assert.assertEquals(4, results.size());
+        Assert.assertEquals(1, results.stream().distinct().count());
+        Assert.assertTrue(results.get(0) instanceof Integer);
+        Assert.assertEquals(1, engines.size());
+        engines.values().forEach(i -> Assert.assertEquals(1, i.get()));
+    }
+
+    @Test(timeout=5000)
+    public void testFailedPerThread() throws IOException, InterruptedException {
+        Script script = getScript("threadstub");
+        evalResult = Result.NULL;
+        List<Object> results = runThreads(script, 1);
+        Assert.assertTrue(results.get(0) instanceof ProcessorException);
+        evalResult = Result.NOTAMAP;
+        results = runThreads(script, 1);
+        Assert.assertTrue(results.get(0) instanceof ProcessorException);
+    }
+
+    @Test
+    public void testFailedConfigure() throws IOException {
+        evalResult = Result.NOTAMAP;
+        Script script = new Script();
+        script.setScript(testFolder.newFile("script.threadstub").toPath().toString());
+        Assert.assertFalse(script.configure(new Properties(Collections.emptyMap())));
+    }
+
+}
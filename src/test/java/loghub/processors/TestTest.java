@@ -62,7 +62,7 @@ public class TestTest {
 
         conf.mainQueue.add(sent);
 
-        EventsProcessor ep = new EventsProcessor(conf.mainQueue, conf.outputQueues, conf.namedPipeLine, conf.maxSteps, conf.repository);
+        EventsProcessor ep = new EventsProcessor(conf.mainQueue, conf.outputQueues, conf.namedPipeLine, conf.maxSteps, conf.drainSize, conf.repository);
         sent.inject(conf.namedPipeLine.get("subpipe"), conf.mainQueue);
         ep.start();
 
@@ -45,6 +45,76 @@ public class TestUserAgent {
         Assert.assertEquals("can't find user agent parsing", "Mobile Safari", family);
     }
 
+    @Test
+    public void testParts() throws ProcessorException {
+        UserAgent ua = new UserAgent();
+        ua.setField(new String[] {"User-Agent"});
+        ua.setDestination("agent");
+        ua.setParts(new String[] {"os"});
+        Assert.assertTrue("configuration failed", ua.configure(new Properties(Collections.emptyMap())));
+
+        String uaString = "Mozilla/5.0 (iPhone; CPU iPhone OS 5_1_1 like Mac OS X) AppleWebKit/534.46 (KHTML, like Gecko) Version/5.1 Mobile/9B206 Safari/7534.48.3";
+
+        for (int i = 0; i < 2; i++) {
+            Event event = Tools.getEvent();
+            event.put("User-Agent", uaString);
+            Assert.assertTrue(ua.process(event));
+            Assert.assertEquals("iOS", event.applyAtPath(Action.GET, new String[] {"agent", "os", "family"}, null, false));
+            Assert.assertEquals("5", event.applyAtPath(Action.GET, new String[] {"agent", "os", "major"}, null, false));
+            Assert.assertNull(event.applyAtPath(Action.GET, new String[] {"agent", "userAgent"}, null, false));
+            Assert.assertNull(event.applyAtPath(Action.GET, new String[] {"agent", "device"}, null, false));
+        }
+    }
+
+    @Test
+    public void testOther() throws ProcessorException {
+        UserAgent ua = new UserAgent();
+        ua.setField(new String[] {"User-Agent"});
+        ua.setDestination("agent");
+        Assert.assertTrue("configuration failed", ua.configure(new Properties(Collections.emptyMap())));
+
+        Event event = Tools.getEvent();
+        event.put("User-Agent", "not a known agent");
+        Assert.assertTrue(ua.process(event));
+        Assert.assertEquals("Other", event.applyAtPath(Action.GET, new String[] {"agent", "userAgent", "family"}, null, false));
+        Assert.assertEquals("Other", event.applyAtPath(Action.GET, new String[] {"agent", "os", "family"}, null, false));
+        Assert.assertEquals("Other", event.applyAtPath(Action.GET, new String[] {"agent", "device"}, null, false));
+    }
+
+    @Test
+    public void testWeightOffHeap() throws ProcessorException {
+        UserAgent ua = new UserAgent();
+        ua.setField(new String[] {"User-Agent"});
+        ua.setDestination("agent");
+        // Room for a single user agent in the heap, the other are evicted to the off heap tier
+        ua.setCacheWeight(200);
+        ua.setOffHeapSize(1024 * 1024);
+        Assert.assertTrue("configuration failed", ua.configure(new Properties(Collections.emptyMap())));
+
+        String[] uaStrings = new String[] {
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 5_1_1 like Mac OS X) AppleWebKit/534.46 (KHTML, like Gecko) Version/5.1 Mobile/9B206 Safari/7534.48.3",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/90.0.4430.93 Safari/537.36",
+            "Mozilla/5.0 (X11; Linux x86_64; rv:88.0) Gecko/20100101 Firefox/88.0",
+        };
+        String[] families = new String[] {"Mobile Safari", "Chrome", "Firefox"};
+        for (int j = 0; j < 2; j++) {
+            for (int i = 0; i < uaStrings.length; i++) {
+                Event event = Tools.getEvent();
+                event.put("User-Agent", uaStrings[i]);
+                Assert.assertTrue(ua.process(event));
+                Assert.assertEquals(families[i], event.applyAtPath(Action.GET, new String[] {"agent", "userAgent", "family"}, null, false));
+            }
+        }
+    }
+
+    @Test
+    public void testBadPart() {
+        UserAgent ua = new UserAgent();
+        ua.setField(new String[] {"User-Agent"});
+        ua.setParts(new String[] {"browser"});
+        Assert.assertFalse(ua.configure(new Properties(Collections.emptyMap())));
+    }
+
     @Test
     public void testDownload() throws ProcessorException {
         UserAgent ua = new UserAgent();
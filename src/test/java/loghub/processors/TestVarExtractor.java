@@ -1,6 +1,9 @@
 package loghub.processors;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.logging.log4j.Level;
@@ -82,4 +85,78 @@ public class TestVarExtractor {
         Assert.assertEquals("key message not found", "noise error;", e.get("message"));
     }
 
+    @Test
+    public void testTokenizer() throws ProcessorException {
+        VarExtractor t = new VarExtractor();
+        t.setField(new String[] {".message"});
+        t.setMode("tokenizer");
+        Event e = Tools.getEvent();
+        e.put("message", "noise src=1.2.3.4 action=\"allow all\" msg=a\\ b;user=bob,count=2 =");
+        e.process(t);
+        Assert.assertEquals("1.2.3.4", e.get("src"));
+        Assert.assertEquals("allow all", e.get("action"));
+        Assert.assertEquals("a b", e.get("msg"));
+        Assert.assertEquals("bob", e.get("user"));
+        Assert.assertEquals("2", e.get("count"));
+        Assert.assertEquals("noise =", e.get("message"));
+    }
+
+    @Test
+    public void testTokenizerSeparators() throws ProcessorException {
+        VarExtractor t = new VarExtractor();
+        t.setField(new String[] {".message"});
+        t.setMode("tokenizer");
+        t.setSeparators(";");
+        t.setKeyValueSeparators(":");
+        t.setEscape("");
+        Event e = Tools.getEvent();
+        e.put("message", "a: hello world ; b:c\\d;");
+        e.process(t);
+        Assert.assertEquals("hello world", e.get("a"));
+        Assert.assertEquals("c\\d", e.get("b"));
+        Assert.assertNull(e.get("message"));
+    }
+
+    @Test
+    public void testTokenizerDuplicates() throws ProcessorException {
+        VarExtractor t = new VarExtractor();
+        t.setField(new String[] {".message"});
+        t.setMode("tokenizer");
+        t.setDuplicateKeys("list");
+        Event e = Tools.getEvent();
+        e.put("message", "a=1 a=2 a=3 b=1");
+        e.process(t);
+        Assert.assertEquals(Arrays.asList("1", "2", "3"), e.get("a"));
+        Assert.assertEquals("1", e.get("b"));
+
+        t.setDuplicateKeys("first");
+        e = Tools.getEvent();
+        e.put("message", "a=1 a=2");
+        e.process(t);
+        Assert.assertEquals("1", e.get("a"));
+    }
+
+    @Test
+    public void testTokenizerExistingValues() throws ProcessorException {
+        VarExtractor t = new VarExtractor();
+        t.setField(new String[] {".message"});
+        t.setMode("tokenizer");
+        // The values already in the event are replaced, and never modified
+        t.setDuplicateKeys("first");
+        Event e = Tools.getEvent();
+        e.put("a", "0");
+        e.put("message", "a=1 a=2");
+        e.process(t);
+        Assert.assertEquals("1", e.get("a"));
+
+        t.setDuplicateKeys("list");
+        e = Tools.getEvent();
+        List<String> existing = Collections.unmodifiableList(Arrays.asList("0"));
+        e.put("a", existing);
+        e.put("message", "a=1 a=2");
+        e.process(t);
+        Assert.assertEquals(Arrays.asList("1", "2"), e.get("a"));
+        Assert.assertEquals(Arrays.asList("0"), existing);
+    }
+
 }
@@ -0,0 +1,117 @@
+package loghub.receivers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import loghub.Event;
+import loghub.LogUtils;
+import loghub.Pipeline;
+import loghub.PriorityBlockingQueue;
+import loghub.Tools;
+import loghub.configuration.Properties;
+import loghub.decoders.Json;
+
+public class TestGenerator {
+
+    private static Logger logger;
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    @BeforeClass
+    static public void configure() throws IOException {
+        Tools.configure();
+        logger = LogManager.getLogger();
+        LogUtils.setLevel(logger, Level.TRACE, "loghub.receivers.Generator");
+    }
+
+    private PriorityBlockingQueue run(int count, Consumer<Generator.Builder> configure) throws InterruptedException {
+        PriorityBlockingQueue queue = new PriorityBlockingQueue();
+        Generator.Builder builder = Generator.getBuilder();
+        builder.setCount(count);
+        builder.setRate(0);
+        builder.setReportInterval(0);
+        configure.accept(builder);
+        Generator r = builder.build();
+        r.setOutQueue(queue);
+        r.setPipeline(new Pipeline(Collections.emptyList(), "testgenerator", null));
+        Assert.assertTrue(r.configure(new Properties(Collections.emptyMap())));
+        r.start();
+        r.join(5000);
+        Assert.assertEquals(count, r.getEmitted());
+        Assert.assertEquals(count, queue.size());
+        return queue;
+    }
+
+    @Test(timeout = 10000)
+    public void testCounter() throws InterruptedException {
+        PriorityBlockingQueue queue = run(1000, b -> b.setThreads(4));
+        Set<String> messages = new HashSet<>();
+        queue.forEach(e -> messages.add((String) e.get("message")));
+        Assert.assertEquals(1000, messages.size());
+        Assert.assertTrue(messages.contains("0"));
+        Assert.assertTrue(messages.contains("999"));
+    }
+
+    @Test(timeout = 10000)
+    public void testSyslog() throws InterruptedException {
+        PriorityBlockingQueue queue = run(1, b -> b.setShape(Generator.Shape.SYSLOG));
+        String message = (String) queue.take().get("message");
+        Assert.assertTrue(message, message.matches("<14>1 \\d{4}-\\d\\d-\\d\\dT\\d\\d:\\d\\d:\\d\\d\\.\\d{3}Z \\S+ loghub 0 - - generated event 0"));
+    }
+
+    @Test(timeout = 10000)
+    public void testJson() throws InterruptedException {
+        PriorityBlockingQueue queue = run(2, b -> {
+            b.setShape(Generator.Shape.JSON);
+            b.setDecoder(Json.getBuilder().build());
+        });
+        Event e = queue.take();
+        Assert.assertEquals("generated event " + e.get("seq"), e.get("message"));
+        Assert.assertEquals(0, e.get("thread"));
+    }
+
+    @Test(timeout = 10000)
+    public void testFile() throws InterruptedException, IOException {
+        Path sample = testFolder.newFile("sample.log").toPath();
+        Files.write(sample, Arrays.asList("line1", "", "line2"), StandardCharsets.UTF_8);
+        PriorityBlockingQueue queue = run(4, b -> {
+            b.setShape(Generator.Shape.FILE);
+            b.setSampleFile(sample.toString());
+        });
+        List<String> messages = Arrays.asList("line1", "line2", "line1", "line2");
+        for (String m: messages) {
+            Assert.assertEquals(m, queue.take().get("message"));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testRate() throws InterruptedException {
+        long start = System.nanoTime();
+        run(100, b -> {
+            b.setRate(500);
+            b.setThreads(2);
+        });
+        // 100 events at 500 events/s needs 200 ms
+        long duration = (System.nanoTime() - start) / 1_000_000;
+        Assert.assertTrue(Long.toString(duration), duration >= 190);
+    }
+
+}
@@ -0,0 +1,161 @@
+package loghub.receivers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.codahale.metrics.Meter;
+
+import loghub.Event;
+import loghub.LogUtils;
+import loghub.Pipeline;
+import loghub.PriorityBlockingQueue;
+import loghub.Tools;
+import loghub.metrics.Stats;
+
+public class TestReceiver {
+
+    private static Logger logger;
+
+    @SelfDecoder
+    private static class StubReceiver extends Receiver {
+        public static class Builder extends Receiver.Builder<StubReceiver> {
+            @Override
+            public StubReceiver build() {
+                return new StubReceiver(this);
+            }
+        };
+        protected StubReceiver(Builder builder) {
+            super(builder);
+        }
+        @Override
+        public String getReceiverName() {
+            return "StubReceiver";
+        }
+        @Override
+        public void run() {
+        }
+    }
+
+    @Blocking(true)
+    private static class BlockingStubReceiver extends StubReceiver {
+        protected BlockingStubReceiver(Builder builder) {
+            super(builder);
+        }
+    }
+
+    @BeforeClass
+    static public void configure() throws IOException {
+        Tools.configure();
+        logger = LogManager.getLogger();
+        LogUtils.setLevel(logger, Level.TRACE, "loghub.receivers.Receiver");
+    }
+
+    @Before
+    public void reset() {
+        Stats.reset();
+    }
+
+    private final Pipeline pipeline = new Pipeline(Collections.emptyList(), "testreceiver", null);
+
+    private <R extends Receiver> R getReceiver(R r, PriorityBlockingQueue queue) {
+        r.setOutQueue(queue);
+        r.setPipeline(pipeline);
+        return r;
+    }
+
+    private List<Event> getEvents(int count) {
+        List<Event> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Event ev = Tools.getEvent();
+            ev.put("message", i);
+            events.add(ev);
+        }
+        return events;
+    }
+
+    @Test
+    public void testSendStream() {
+        PriorityBlockingQueue queue = new PriorityBlockingQueue();
+        StubReceiver r = getReceiver(new StubReceiver(new StubReceiver.Builder()), queue);
+        List<Event> events = getEvents(2);
+        Event nocontext = Event.emptyEvent(null);
+        Assert.assertEquals(2, r.send(Stream.of(events.get(0), null, nocontext, events.get(1))));
+        Assert.assertEquals(2, queue.size());
+        for (Event ev: events) {
+            Assert.assertSame(ev, queue.poll());
+            Assert.assertEquals("testreceiver", ev.getCurrentPipeline());
+        }
+        Assert.assertEquals(2, Stats.getMetric(Meter.class, r, "count").getCount());
+        Assert.assertEquals(1, Stats.getMetric(Meter.class, r, "error").getCount());
+        Assert.assertEquals(1, Stats.getMetric(Meter.class, r, "failedDecode").getCount());
+        // The null event was replaced by an empty one, ended with the one without context
+        Assert.assertEquals(2, Stats.getReceived());
+        Assert.assertEquals(2, Stats.getInflight());
+    }
+
+    @Test
+    public void testSendStreamFull() {
+        PriorityBlockingQueue queue = new PriorityBlockingQueue(3, 0);
+        StubReceiver r = getReceiver(new StubReceiver(new StubReceiver.Builder()), queue);
+        List<Event> events = getEvents(5);
+        Assert.assertEquals(3, r.send(events.stream()));
+        Assert.assertEquals(3, queue.size());
+        for (Event ev: events.subList(0, 3)) {
+            Assert.assertSame(ev, queue.poll());
+        }
+        Assert.assertEquals(3, Stats.getMetric(Meter.class, r, "count").getCount());
+        Assert.assertEquals(2, Stats.getMetric(Meter.class, r, "blocked").getCount());
+        // The tail was ended
+        Assert.assertEquals(2, Stats.getReceived());
+        Assert.assertEquals(3, Stats.getInflight());
+    }
+
+    @Test(timeout = 5000)
+    public void testSendStreamInterrupted() throws InterruptedException {
+        PriorityBlockingQueue queue = new PriorityBlockingQueue(3, 0);
+        BlockingStubReceiver r = getReceiver(new BlockingStubReceiver(new StubReceiver.Builder()), queue);
+        List<Event> events = getEvents(5);
+        AtomicInteger sent = new AtomicInteger(-1);
+        AtomicBoolean interrupted = new AtomicBoolean(false);
+        Thread sender = new Thread(() -> {
+            sent.set(r.send(events.stream()));
+            interrupted.set(Thread.currentThread().isInterrupted());
+        });
+        sender.start();
+        // Blocked when the queue is full, until interrupted
+        while (queue.size() < 3 || sender.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+        sender.interrupt();
+        sender.join();
+        Assert.assertEquals(3, sent.get());
+        Assert.assertTrue(interrupted.get());
+        Assert.assertEquals(3, queue.size());
+        Assert.assertEquals(3, Stats.getMetric(Meter.class, r, "count").getCount());
+        Assert.assertEquals(2, Stats.getMetric(Meter.class, r, "blocked").getCount());
+        Assert.assertEquals(2, Stats.getReceived());
+    }
+
+    @Test
+    public void testSendStreamEmpty() {
+        PriorityBlockingQueue queue = new PriorityBlockingQueue();
+        StubReceiver r = getReceiver(new StubReceiver(new StubReceiver.Builder()), queue);
+        Assert.assertEquals(0, r.send(Stream.empty()));
+        Assert.assertEquals(0, queue.size());
+        Assert.assertEquals(0, Stats.getMetric(Meter.class, r, "count").getCount());
+    }
+
+}
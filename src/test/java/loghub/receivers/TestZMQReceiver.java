@@ -8,9 +8,13 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
@@ -21,6 +25,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.zeromq.SocketType;
+import org.zeromq.ZMQ.Socket;
 
 import loghub.BeanChecks;
 import loghub.BeanChecks.BeanInfo;
@@ -152,6 +157,43 @@ public class TestZMQReceiver {
 
     }
 
+    @Test(timeout=5000)
+    public void testMultipart() throws InterruptedException, IOException, ZMQCheckedException {
+        String rendezvous = "tcp://localhost:" + Tools.tryGetPort();
+        PriorityBlockingQueue receiveQueue = new PriorityBlockingQueue();
+        ZMQ.Builder builder = ZMQ.getBuilder();
+        builder.setType(Sockets.PULL.name());
+        builder.setMethod("BIND");
+        builder.setDecoder(StringCodec.getBuilder().build());
+        builder.setListen(rendezvous);
+        builder.setMaxFrames(2);
+
+        Properties p = new Properties(Collections.singletonMap("zmq.keystore", Paths.get(testFolder.newFolder().getAbsolutePath(), "zmqtest.jks").toString()));
+        try (ZMQ receiver = builder.build();
+             Socket push = tctxt.getFactory().getBuilder(Method.CONNECT, SocketType.PUSH, rendezvous).build()) {
+            receiver.setOutQueue(receiveQueue);
+            receiver.setPipeline(new Pipeline(Collections.emptyList(), "testone", null));
+            Assert.assertTrue(receiver.configure(p));
+            receiver.start();
+            // Two multipart messages, more frames than maxFrames
+            for (int i = 0; i < 2; i++) {
+                for (int j = 0; j < 4; j++) {
+                    push.sendMore(String.format("message %d", i * 5 + j));
+                }
+                push.send(String.format("message %d", i * 5 + 4));
+            }
+            Set<String> messages = new HashSet<>();
+            for (int i = 0; i < 10; i++) {
+                Event e = receiveQueue.poll(2000, TimeUnit.MILLISECONDS);
+                Assert.assertNotNull("No event received", e);
+                messages.add(e.get("message").toString());
+            }
+            Assert.assertEquals(IntStream.range(0, 10).mapToObj(i -> "message " + i).collect(Collectors.toSet()), messages);
+        } finally {
+            p.zSocketFactory.close();
+        }
+    }
+
     @Test
     public void testBeans() throws ClassNotFoundException, IntrospectionException {
         BeanChecks.beansCheck(logger, "loghub.receivers.ZMQ"
@@ -161,6 +203,7 @@ public class TestZMQReceiver {
                               ,BeanInfo.build("hwm", Integer.TYPE)
                               ,BeanInfo.build("serverKey", String.class)
                               ,BeanInfo.build("security", String.class)
+                              ,BeanInfo.build("maxFrames", Integer.TYPE)
                         );
     }
 
@@ -1,12 +1,16 @@
 package loghub.senders;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Semaphore;
 import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
@@ -159,4 +163,76 @@ public class TestFile {
         Assert.assertEquals(1L, Stats.getFailed());
     }
 
+    @Test(timeout=5000)
+    public void testRotation() throws IOException, InterruptedException, SendException, EncodeException {
+        String pattern = Paths.get(folder.getRoot().getCanonicalPath(), "rolled-${seq%02d}.log").toString();
+        StringField.Builder builder1 = StringField.getBuilder();
+        builder1.setFormat("${message%s}");
+        File.Builder fb = File.getBuilder();
+        fb.setFileName(pattern);
+        fb.setEncoder(builder1.build());
+        fb.setSeparator("\n");
+        fb.setMaxSize(4);
+        fb.setCompression("gz");
+        fb.setSyncPolicy(File.SyncPolicy.BATCH);
+        File fsend = fb.build();
+        fsend.setInQueue(queue);
+        Assert.assertTrue(fsend.configure(new Properties(Collections.emptyMap())));
+        for (int i = 0; i < 3; i++) {
+            Event ev = Event.emptyEvent(new BlockingConnectionContext());
+            ev.put("message", "a" + i);
+            Assert.assertTrue(fsend.send(ev));
+            ConnectionContext<Semaphore> ctxt = ev.getConnectionContext();
+            ctxt.getLocalAddress().acquire();
+        }
+        fsend.customStopSending();
+        Assert.assertEquals(3L, Stats.getSent());
+        Assert.assertTrue(fsend.getFileName().endsWith("rolled-02.log"));
+        Assert.assertEquals(3, Files.size(Paths.get(fsend.getFileName())));
+        Path compressed = folder.getRoot().toPath().resolve("rolled-00.log.gz");
+        while (! Files.exists(folder.getRoot().toPath().resolve("rolled-01.log.gz")) || Files.exists(folder.getRoot().toPath().resolve("rolled-01.log"))) {
+            Thread.sleep(10);
+        }
+        try (InputStream is = new GZIPInputStream(Files.newInputStream(compressed))) {
+            byte[] buffer = new byte[10];
+            Assert.assertEquals(3, is.read(buffer));
+            Assert.assertEquals("a0\n", new String(buffer, 0, 3, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test(timeout=5000)
+    public void testBatch() throws IOException, InterruptedException {
+        send(i -> {i.setTruncate(true); i.setSeparator("\n"); i.setBatchSize(1); }, 2, true);
+    }
+
+    @Test(timeout=5000)
+    public void testInterrupted() throws IOException, SendException, EncodeException {
+        outFile = Paths.get(folder.getRoot().getCanonicalPath(), "file1").toAbsolutePath().toString();
+        StringField.Builder builder1 = StringField.getBuilder();
+        builder1.setFormat("${message%s}");
+        File.Builder fb = File.getBuilder();
+        fb.setFileName(outFile);
+        fb.setEncoder(builder1.build());
+        fb.setSeparator("\n");
+        fb.setTruncate(true);
+        File fsend = fb.build();
+        fsend.setInQueue(queue);
+        Assert.assertTrue(fsend.configure(new Properties(Collections.emptyMap())));
+        try {
+            for (int i = 0; i < 2; i++) {
+                Event ev = Tools.getEvent();
+                ev.put("message", "a" + i);
+                // An interruption closes the file, it must be opened again
+                Thread.currentThread().interrupt();
+                Assert.assertTrue(fsend.send(ev));
+                Assert.assertTrue(Thread.interrupted());
+            }
+        } finally {
+            Thread.interrupted();
+            fsend.customStopSending();
+        }
+        Assert.assertEquals(2L, Stats.getSent());
+        Assert.assertEquals("a0\na1\n", new String(Files.readAllBytes(Paths.get(outFile)), StandardCharsets.UTF_8));
+    }
+
 }
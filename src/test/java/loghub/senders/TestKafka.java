@@ -0,0 +1,113 @@
+package loghub.senders;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Consumer;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import loghub.Event;
+import loghub.LogUtils;
+import loghub.Tools;
+import loghub.configuration.Properties;
+import loghub.encoders.StringField;
+import loghub.metrics.Stats;
+
+public class TestKafka {
+
+    private static Logger logger;
+
+    @BeforeClass
+    static public void configure() throws IOException {
+        Tools.configure();
+        logger = LogManager.getLogger();
+        LogUtils.setLevel(logger, Level.TRACE, "loghub.senders.Kafka");
+    }
+
+    private List<ProducerRecord<byte[], byte[]>> run(int batchSize, int events, MockProducer<byte[], byte[]> mock, Consumer<Kafka.Builder> configure) throws InterruptedException {
+        Stats.reset();
+        StringField.Builder sfb = StringField.getBuilder();
+        sfb.setFormat("${message%s}");
+        Kafka.Builder builder = Kafka.getBuilder();
+        builder.setEncoder(sfb.build());
+        builder.setTopic("loghub-${topic%s}");
+        builder.setKey("${host%s}");
+        builder.setBatchSize(batchSize);
+        configure.accept(builder);
+        Kafka sender = new Kafka(builder) {
+            @Override
+            Producer<byte[], byte[]> getProducer(Map<String, Object> props) {
+                Assert.assertEquals("localhost:9092", props.get("bootstrap.servers"));
+                return mock;
+            }
+        };
+        ArrayBlockingQueue<Event> queue = new ArrayBlockingQueue<>(events);
+        sender.setInQueue(queue);
+        Assert.assertTrue(sender.configure(new Properties(Collections.emptyMap())));
+        sender.start();
+        for (int i = 0; i < events; i++) {
+            Event ev = Tools.getEvent();
+            ev.put("message", "message" + i);
+            ev.put("topic", "t" + (i % 2));
+            ev.put("host", "host" + i);
+            queue.add(ev);
+        }
+        while (Stats.getSent() + Stats.getFailed() < events) {
+            Thread.sleep(10);
+        }
+        sender.close();
+        return mock.history();
+    }
+
+    @Test(timeout = 5000)
+    public void testSimple() throws InterruptedException {
+        MockProducer<byte[], byte[]> mock = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+        List<ProducerRecord<byte[], byte[]>> records = run(-1, 4, mock, b -> { });
+        Assert.assertEquals(4, records.size());
+        ProducerRecord<byte[], byte[]> first = records.get(0);
+        Assert.assertEquals("loghub-t0", first.topic());
+        Assert.assertEquals("host0", new String(first.key(), StandardCharsets.UTF_8));
+        Assert.assertEquals("message0", new String(first.value(), StandardCharsets.UTF_8));
+        Assert.assertEquals("loghub-t1", records.get(1).topic());
+        Assert.assertEquals(4, Stats.getSent());
+        Assert.assertTrue(mock.closed());
+    }
+
+    @Test(timeout = 5000)
+    public void testBatch() throws InterruptedException {
+        MockProducer<byte[], byte[]> mock = new MockProducer<>(false, new ByteArraySerializer(), new ByteArraySerializer());
+        List<ProducerRecord<byte[], byte[]>> records = run(5, 10, mock, b -> b.setCompression("GZIP"));
+        Assert.assertEquals(10, records.size());
+        Assert.assertEquals(10, Stats.getSent());
+        Assert.assertEquals(0, Stats.getFailed());
+    }
+
+    @Test(timeout = 5000)
+    public void testFailure() throws InterruptedException {
+        MockProducer<byte[], byte[]> mock = new MockProducer<byte[], byte[]>(false, new ByteArraySerializer(), new ByteArraySerializer()) {
+            @Override
+            public synchronized void flush() {
+                errorNext(new IllegalStateException("Broker gone"));
+                super.flush();
+            }
+        };
+        List<ProducerRecord<byte[], byte[]>> records = run(2, 2, mock, b -> { });
+        Assert.assertEquals(2, records.size());
+        Assert.assertEquals(1, Stats.getSent());
+        Assert.assertEquals(1, Stats.getFailed());
+    }
+
+}
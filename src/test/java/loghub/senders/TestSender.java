@@ -0,0 +1,97 @@
+package loghub.senders;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import loghub.Event;
+import loghub.LogUtils;
+import loghub.Tools;
+import loghub.configuration.Properties;
+import loghub.encoders.StringField;
+import loghub.metrics.Stats;
+
+public class TestSender {
+
+    private static Logger logger;
+
+    @BeforeClass
+    static public void configure() throws IOException {
+        Tools.configure();
+        logger = LogManager.getLogger();
+        LogUtils.setLevel(logger, Level.TRACE, "loghub.senders.Sender");
+    }
+
+    /**
+     * Fails the events with a message ending with 3
+     */
+    private static class FailingSender extends InMemorySender {
+        FailingSender(Builder builder) {
+            super(builder);
+        }
+        @Override
+        public boolean send(Event e) {
+            return ((Integer) e.get("message")) % 10 != 3 && super.send(e);
+        }
+    }
+
+    private void run(InMemorySender sender, int count, int drainSize) throws InterruptedException {
+        LinkedBlockingQueue<Event> queue = new LinkedBlockingQueue<>();
+        sender.setInQueue(queue);
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("drainSize", drainSize);
+        // Properties resets the stats, so it's done before creating the events
+        Assert.assertTrue(sender.configure(new Properties(settings)));
+        for (int i = 0; i < count; i++) {
+            Event ev = Tools.getEvent();
+            ev.put("message", i);
+            queue.add(ev);
+        }
+        sender.start();
+        while (Stats.getReceived() < count) {
+            Thread.sleep(10);
+        }
+        sender.stopSending();
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    private InMemorySender.Builder getBuilder() {
+        StringField.Builder sfb = StringField.getBuilder();
+        sfb.setFormat("${message%s}");
+        InMemorySender.Builder builder = InMemorySender.getBuilder();
+        builder.setEncoder(sfb.build());
+        return builder;
+    }
+
+    @Test(timeout = 5000)
+    public void testBatches() throws InterruptedException {
+        InMemorySender sender = getBuilder().build();
+        run(sender, 100, 8);
+        List<Object> messages = sender.getSendedEvents().stream().map(e -> e.get("message")).collect(Collectors.toList());
+        Assert.assertEquals(IntStream.range(0, 100).boxed().collect(Collectors.toList()), messages);
+        Assert.assertEquals(100, Stats.getSent());
+        Assert.assertEquals(0, Stats.getFailed());
+    }
+
+    @Test(timeout = 5000)
+    public void testFailuresInBatch() throws InterruptedException {
+        InMemorySender sender = new FailingSender(getBuilder());
+        run(sender, 20, 32);
+        // A failure doesn't stop the rest of the batch
+        Assert.assertEquals(18, sender.getSendedEvents().size());
+        Assert.assertEquals(18, Stats.getSent());
+        Assert.assertEquals(2, Stats.getFailed());
+    }
+
+}
@@ -0,0 +1,101 @@
+package loghub.senders;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import loghub.Event;
+import loghub.LogUtils;
+import loghub.Tools;
+import loghub.configuration.Properties;
+import loghub.encoders.StringField;
+import loghub.metrics.Stats;
+
+public class TestUdp {
+
+    private static Logger logger;
+
+    @BeforeClass
+    static public void configure() throws IOException {
+        Tools.configure();
+        logger = LogManager.getLogger();
+        LogUtils.setLevel(logger, Level.TRACE, "loghub.senders.Udp");
+    }
+
+    private Set<String> run(int batchSize, boolean pack, int mtu, int events) throws IOException, InterruptedException {
+        Stats.reset();
+        try (DatagramChannel server = DatagramChannel.open()) {
+            server.bind(new InetSocketAddress("127.0.0.1", 0));
+            StringField.Builder sfb = StringField.getBuilder();
+            sfb.setFormat("${message%s}");
+            Udp.Builder builder = Udp.getBuilder();
+            builder.setEncoder(sfb.build());
+            builder.setDestination("127.0.0.1");
+            builder.setPort(((InetSocketAddress) server.getLocalAddress()).getPort());
+            builder.setBatchSize(batchSize);
+            builder.setPack(pack);
+            builder.setMtu(mtu);
+            builder.setSockets(2);
+            Udp sender = builder.build();
+            ArrayBlockingQueue<Event> queue = new ArrayBlockingQueue<>(events);
+            sender.setInQueue(queue);
+            Assert.assertTrue(sender.configure(new Properties(Collections.emptyMap())));
+            sender.start();
+            for (int i = 0; i < events; i++) {
+                Event ev = Tools.getEvent();
+                ev.put("message", "message" + i);
+                queue.add(ev);
+            }
+            Set<String> datagrams = new HashSet<>();
+            ByteBuffer buffer = ByteBuffer.allocate(2048);
+            int received = 0;
+            while (received < events) {
+                buffer.clear();
+                server.receive(buffer);
+                buffer.flip();
+                String datagram = StandardCharsets.UTF_8.decode(buffer).toString();
+                datagrams.add(datagram);
+                received += datagram.split("\n").length;
+            }
+            sender.close();
+            return datagrams;
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testSimple() throws IOException, InterruptedException {
+        Set<String> datagrams = run(-1, false, 1472, 3);
+        Assert.assertEquals(3, datagrams.size());
+        Assert.assertTrue(datagrams.contains("message0"));
+    }
+
+    @Test(timeout = 5000)
+    public void testPacked() throws IOException, InterruptedException {
+        // 4 messages of 8 bytes fit in 35 bytes with the separators
+        Set<String> datagrams = run(8, true, 35, 8);
+        Assert.assertEquals(2, datagrams.size());
+        Assert.assertTrue(datagrams.contains("message0\nmessage1\nmessage2\nmessage3"));
+        Assert.assertTrue(datagrams.contains("message4\nmessage5\nmessage6\nmessage7"));
+    }
+
+    @Test(timeout = 5000)
+    public void testBatchedUnpacked() throws IOException, InterruptedException {
+        Set<String> datagrams = run(4, false, 1472, 4);
+        Assert.assertEquals(4, datagrams.size());
+        Assert.assertTrue(datagrams.contains("message3"));
+    }
+
+}
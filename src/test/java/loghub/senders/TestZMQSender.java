@@ -63,19 +63,28 @@ public class TestZMQSender {
 
     private CountDownLatch latch;
     private final StringBuffer received = new StringBuffer();
+    private final AtomicInteger maxFramesSeen = new AtomicInteger();
+    private long injectPause = 50;
 
     public String process(Socket socket) {
         String in = socket.recvStr();
-        if (in != null) {
-            received.append(in);
+        // Each frame of a multipart message is a batch
+        int frames = 0;
+        String frame = in;
+        while (frame != null) {
+            received.append(frame);
             latch.countDown();
+            frames++;
+            frame = socket.hasReceiveMore() ? socket.recvStr() : null;
         }
+        maxFramesSeen.accumulateAndGet(frames, Math::max);
         return in;
     }
 
     private void dotest(Consumer<ZMQ.Builder> configure, Consumer<ZMQSink.Builder<String>> sinkconfigure, String pattern)
                     throws IOException, InterruptedException, ZMQCheckedException {
         received.setLength(0);
+        maxFramesSeen.set(0);
         ZMQSocketFactory ctx = tctxt.getFactory();
 
         Properties p = new Properties(Collections.singletonMap("zmq.keystore", Paths.get(testFolder.newFolder("server").getAbsolutePath(), "zmqtest.jks").toString()));
@@ -97,7 +106,7 @@ public class TestZMQSender {
                     Event ev = Event.emptyEvent(ConnectionContext.EMPTY);
                     ev.put("message", count.incrementAndGet());
                     queue.offer(ev);
-                    Thread.sleep(50);
+                    Thread.sleep(injectPause);
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -155,6 +164,31 @@ public class TestZMQSender {
         }, s -> s.setMethod(Method.CONNECT), "(\\[\\{\"message\":\\d+\\},\\{\"message\":\\d+\\}\\])+");
     }
 
+    @Test(timeout=5000)
+    public void batchMultipart() throws IOException, InterruptedException, ZMQCheckedException {
+        // Many workers and no pause, so batches are waiting for the socket and are sent together
+        injectPause = 1;
+        dotest((s) -> {
+            s.setMethod(Method.CONNECT.name());
+            s.setBatchSize(1);
+            s.setWorkers(4);
+            s.setMaxFrames(3);
+        }, s -> s.setMethod(Method.BIND), "(\\[\\{\"message\":\\d+\\}\\])+");
+        Assert.assertTrue(maxFramesSeen.get() >= 1 && maxFramesSeen.get() <= 3);
+    }
+
+    @Test(timeout=5000)
+    public void batchSingleFrame() throws IOException, InterruptedException, ZMQCheckedException {
+        injectPause = 1;
+        dotest((s) -> {
+            s.setMethod(Method.CONNECT.name());
+            s.setBatchSize(1);
+            s.setWorkers(4);
+            s.setMaxFrames(1);
+        }, s -> s.setMethod(Method.BIND), "(\\[\\{\"message\":\\d+\\}\\])+");
+        Assert.assertEquals(1, maxFramesSeen.get());
+    }
+
     private String getRemoteIdentity(String dir) {
         try {
             Path keyPubpath = Paths.get(testFolder.getRoot().getPath(), dir, "zmqtest.pub");
@@ -197,6 +231,7 @@ public class TestZMQSender {
                               , BeanInfo.build("hwm", Integer.TYPE)
                               , BeanInfo.build("serverKey", String.class)
                               , BeanInfo.build("security", String.class)
+                              , BeanInfo.build("maxFrames", Integer.TYPE)
                         );
     }
 